@@ -0,0 +1,103 @@
+package com.nastia.benchmark;
+
+import com.nastia.Main;
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerDAO;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Starts the customer application without a web server on a fresh embedded H2 database in PostgreSQL mode,
+ * so benchmarks exercise the real beans, Flyway schema and JPA mappings.
+ */
+final class BenchmarkApplication {
+
+    private static final int SEED_CHUNK_SIZE = 10_000; // Customers inserted per batch while seeding.
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * Starts a new application context backed by its own in-memory database.
+     *
+     * @param extraProperties Additional properties, in {@code key=value} form.
+     * @return The running application context.
+     */
+    static ConfigurableApplicationContext start(String... extraProperties) {
+        // Passed as command line arguments, so they take precedence over application.yml.
+        List<String> arguments = databaseArguments();
+        arguments.add("--logging.level.root=WARN");
+        for (String property : extraProperties) {
+            arguments.add("--" + property);
+        }
+        return new SpringApplicationBuilder(Main.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments.toArray(String[]::new));
+    }
+
+    /**
+     * Returns the command line arguments pointing the application at a new, empty in-memory H2 database.
+     */
+    static List<String> databaseArguments() {
+        return new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:bench-" + UUID.randomUUID()
+                        + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+        ));
+    }
+
+    /**
+     * Returns the properties configuring the sharded DAO with the given number of new, empty in-memory H2 databases.
+     *
+     * @param shards The number of shard databases.
+     * @return The properties, in {@code key=value} form.
+     */
+    static String[] shardProperties(int shards) {
+        List<String> properties = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            properties.add("customer.sharding.shards[" + i + "].url=jdbc:h2:mem:shard-" + i + "-" + UUID.randomUUID()
+                    + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1");
+            properties.add("customer.sharding.shards[" + i + "].username=sa");
+        }
+        return properties.toArray(String[]::new);
+    }
+
+    /**
+     * Fills a DAO with generated customers whose emails are {@link #email(int)} for 0 until {@code rows}.
+     *
+     * @param customerDAO The DAO to fill.
+     * @param rows        The number of customers to insert.
+     * @return The IDs of the inserted customers, in insertion order.
+     */
+    static int[] seed(CustomerDAO customerDAO, int rows) {
+        int[] ids = new int[rows];
+        List<Customer> chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+        int start = 0;
+        for (int i = 0; i < rows; i++) {
+            chunk.add(new Customer("Customer " + i, email(i), 18 + i % 80));
+            if (chunk.size() == SEED_CHUNK_SIZE || i == rows - 1) {
+                customerDAO.insertCustomers(chunk);
+                for (int j = 0; j < chunk.size(); j++) {
+                    ids[start + j] = chunk.get(j).getId();
+                }
+                start += chunk.size();
+                chunk.clear();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the email of the i-th generated customer.
+     */
+    static String email(int i) {
+        return "customer-" + i + "@bench.test";
+    }
+}
@@ -0,0 +1,148 @@
+package com.nastia.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Closed-loop HTTP load test against a running customer service, used to compare the
+ * platform-thread and virtual-thread modes under the same load.
+ *
+ * Each of {@code concurrency} clients repeatedly fetches a random customer by ID, and every tenth
+ * request fetches a page of the listing. At the end the throughput, the latency percentiles and the
+ * status code counts are printed as one JSON line.
+ *
+ * Arguments are {@code key=value} pairs: {@code url} (default http://localhost:8080),
+ * {@code concurrency} (default 200), {@code duration} in seconds (default 30),
+ * {@code ids}, the highest customer ID to request (default 1000) and {@code apiKeys}, the number of
+ * distinct X-API-Key values the clients are spread over to appear as separate rate-limited clients
+ * (default 0: no key, so all clients share the budget of one IP address).
+ */
+public final class CustomerApiLoadTest {
+
+    private CustomerApiLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "200"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int ids = Integer.parseInt(options.getOrDefault("ids", "1000"));
+        int apiKeys = Integer.parseInt(options.getOrDefault("apiKeys", "0"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors())))
+                .build();
+        long deadline = System.nanoTime() + Duration.ofSeconds(durationSeconds).toNanos();
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        Future<?>[] futures = new Future<?>[concurrency];
+        Worker[] workers = new Worker[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(client, url, ids, deadline, apiKeys == 0 ? null : "load-test-" + i % apiKeys);
+            futures[i] = clients.submit(workers[i]);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        clients.shutdown();
+
+        int total = Arrays.stream(workers).mapToInt(w -> w.count).sum();
+        long[] latencies = new long[total];
+        int offset = 0;
+        Map<Integer, Integer> statuses = new HashMap<>();
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+            worker.statuses.forEach((status, count) -> statuses.merge(status, count, Integer::sum));
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf(
+                "{\"concurrency\":%d,\"durationSeconds\":%d,\"requests\":%d,\"throughputPerSecond\":%.1f,"
+                        + "\"p50Millis\":%.2f,\"p99Millis\":%.2f,\"p999Millis\":%.2f,\"maxMillis\":%.2f,\"statuses\":%s}%n",
+                concurrency, durationSeconds, total, (double) total / durationSeconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                total == 0 ? 0.0 : latencies[total - 1] / 1e6,
+                statuses.toString().replace('=', ':').replaceAll("(\\d+):", "\"$1\":")
+        );
+    }
+
+    private static double percentile(long[] sortedNanos, double quantile) {
+        if (sortedNanos.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(quantile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * One closed-loop client: sends the next request as soon as the previous response arrived.
+     */
+    private static final class Worker implements Runnable {
+
+        private final HttpClient client;
+        private final String url;
+        private final int ids;
+        private final long deadline;
+        private final String apiKey; // Value of the X-API-Key header, or null to send none.
+        private long[] latencies = new long[1024]; // Latency of each request, in nanoseconds.
+        private int count; // Number of requests completed.
+        private final Map<Integer, Integer> statuses = new HashMap<>(); // Response count per status code, -1 for I/O errors.
+
+        private Worker(HttpClient client, String url, int ids, long deadline, String apiKey) {
+            this.client = client;
+            this.url = url;
+            this.ids = ids;
+            this.deadline = deadline;
+            this.apiKey = apiKey;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                String path = count % 10 == 9
+                        ? "/api/v1/customers?limit=100&after=" + random.nextInt(ids)
+                        : "/api/v1/customers/" + (1 + random.nextInt(ids));
+                HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url + path))
+                        .timeout(Duration.ofSeconds(30))
+                        .GET();
+                if (apiKey != null) {
+                    builder.header("X-API-Key", apiKey);
+                }
+                HttpRequest request = builder.build();
+                long start = System.nanoTime();
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (Exception e) {
+                    status = -1;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+                statuses.merge(status, 1, Integer::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.nastia.benchmark;
+
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerDAO;
+import com.nastia.customer.CustomerFilter;
+import com.nastia.customer.CustomerSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the CustomerDAO operations against the in-memory "list" implementation, the
+ * "jpa" implementation on an embedded database and the "sharded" implementation on
+ * {@value #SHARDS} embedded databases, at several table sizes.
+ * Runs single-threaded; {@link MultiThreaded} runs the same operations from several threads.
+ * Updates read and write back whole versioned customers, so each thread updates its own slice of the
+ * seeded IDs: two threads updating the same customer would fail on the optimistic lock instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class CustomerDAOBenchmark {
+
+    @Param({"list", "jpa", "sharded"})
+    public String backend; // Qualifier of the CustomerDAO bean under test.
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows; // Number of customers in the store before measuring.
+
+    private static final int PAGE_SIZE = 100; // Page size of the filtered listings.
+    private static final int SHARDS = 4; // Number of shard databases of the "sharded" backend.
+
+    private ConfigurableApplicationContext context;
+    private CustomerDAO customerDAO;
+    private int[] ids; // IDs of the seeded customers.
+    private final AtomicInteger nextEmail = new AtomicInteger(); // Source of unique emails for inserts.
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = backend.equals("sharded")
+                ? BenchmarkApplication.start(BenchmarkApplication.shardProperties(SHARDS))
+                : BenchmarkApplication.start();
+        customerDAO = context.getBean(backend, CustomerDAO.class);
+        ids = BenchmarkApplication.seed(customerDAO, rows);
+        nextEmail.set(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Customer> selectCustomerById() {
+        return customerDAO.selectCustomerById(randomId());
+    }
+
+    @Benchmark
+    public boolean existsPersonWithEmail() {
+        // Half of the lookups hit an existing email, half miss.
+        int i = ThreadLocalRandom.current().nextInt(rows * 2);
+        return customerDAO.existsPersonWithEmail(BenchmarkApplication.email(i));
+    }
+
+    @Benchmark
+    public Customer insertCustomer() {
+        int i = nextEmail.getAndIncrement();
+        Customer customer = new Customer("Inserted " + i, BenchmarkApplication.email(i), 30);
+        customerDAO.insertCustomer(customer);
+        return customer;
+    }
+
+    @Benchmark
+    public Customer updateCustomer(IdSlice slice) {
+        Customer customer = customerDAO.selectCustomerById(slice.randomId(ids)).orElseThrow();
+        customer.setAge(18 + ThreadLocalRandom.current().nextInt(80));
+        customerDAO.updateCustomer(customer);
+        return customer;
+    }
+
+    @Benchmark
+    public List<Customer> selectAllCustomers() {
+        return customerDAO.selectAllCustomers();
+    }
+
+    @Benchmark
+    public List<Customer> selectCustomersByAgeRange() {
+        // Ten years out of the 80 the seeded ages span, ordered by age.
+        int minAge = 18 + ThreadLocalRandom.current().nextInt(70);
+        CustomerFilter filter = new CustomerFilter(minAge, minAge + 9, null, null, null, null);
+        return customerDAO.selectCustomers(filter, new CustomerSort(CustomerSort.Field.AGE, false), null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Customer> selectCustomersByNamePrefix() {
+        String prefix = "customer " + ThreadLocalRandom.current().nextInt(100);
+        CustomerFilter filter = new CustomerFilter(null, null, prefix, null, null, null);
+        return customerDAO.selectCustomers(filter, CustomerSort.BY_ID, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Customer> searchCustomers() {
+        String text = "-" + ThreadLocalRandom.current().nextInt(1000) + "@";
+        CustomerFilter filter = new CustomerFilter(null, null, null, null, null, text);
+        return customerDAO.selectCustomers(filter, CustomerSort.BY_ID, null, PAGE_SIZE);
+    }
+
+    private int randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    /**
+     * The share of the seeded IDs one benchmark thread works on, disjoint from those of the other threads.
+     */
+    @State(Scope.Thread)
+    public static class IdSlice {
+
+        private int index; // Position of the thread among the benchmark threads.
+        private int count; // Number of benchmark threads.
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            index = params.getThreadIndex();
+            count = params.getThreadCount();
+        }
+
+        /**
+         * Picks a random ID of this thread's slice.
+         *
+         * @param ids The IDs of all seeded customers.
+         * @return An ID no other thread picks.
+         */
+        int randomId(int[] ids) {
+            int from = (int) ((long) ids.length * index / count);
+            int to = (int) ((long) ids.length * (index + 1) / count);
+            return ids[from + ThreadLocalRandom.current().nextInt(to - from)];
+        }
+    }
+
+    /**
+     * The same benchmarks, run concurrently from several threads against the shared store.
+     */
+    @Threads(8)
+    public static class MultiThreaded extends CustomerDAOBenchmark {
+    }
+}
@@ -0,0 +1,85 @@
+package com.nastia.benchmark;
+
+import com.nastia.customer.CustomerDAO;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures how much memory the "list" DAO and the off-heap "snapshot" DAO take per customer.
+ *
+ * For each backend it starts the application on a fresh in-memory H2 database, measures the used heap and
+ * direct memory after a full collection, fills the store and measures again. The list DAO is filled directly;
+ * the snapshot is filled by seeding the database through the JPA DAO first and then loading the snapshot from
+ * it, so only the snapshot itself is counted. Each backend is printed as one JSON line.
+ *
+ * Arguments are {@code key=value} pairs: {@code rows}, the number of customers (default 1000000).
+ * Run with {@code -Dbenchmark.main=com.nastia.benchmark.CustomerFootprintBenchmark}.
+ */
+public final class CustomerFootprintBenchmark {
+
+    private CustomerFootprintBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        int rows = Integer.parseInt(options.getOrDefault("rows", "1000000"));
+
+        for (String backend : new String[]{"list", "snapshot"}) {
+            String[] properties = {CustomerSnapshotBenchmark.QUIET_RELAY};
+            try (ConfigurableApplicationContext context = BenchmarkApplication.start(properties)) {
+                CustomerDAO customerDAO = context.getBean(backend, CustomerDAO.class);
+                int[] ids;
+                long[] before;
+                if (backend.equals("snapshot")) {
+                    ids = BenchmarkApplication.seed(context.getBean("jpa", CustomerDAO.class), rows);
+                    before = usedMemory();
+                    customerDAO.selectCustomerById(ids[0]);
+                } else {
+                    before = usedMemory();
+                    ids = BenchmarkApplication.seed(customerDAO, rows);
+                }
+                long[] after = usedMemory();
+                if (customerDAO.selectCustomerById(ids[ids.length - 1]).isEmpty()) {
+                    throw new IllegalStateException(backend + " lost customer " + ids[ids.length - 1]);
+                }
+                double heap = (after[0] - before[0]) / (double) rows;
+                double offHeap = (after[1] - before[1]) / (double) rows;
+                System.out.printf(
+                        "{\"backend\":\"%s\",\"rows\":%d,\"heapBytesPerCustomer\":%.1f,"
+                                + "\"offHeapBytesPerCustomer\":%.1f,\"totalBytesPerCustomer\":%.1f}%n",
+                        backend, rows, heap, offHeap, heap + offHeap
+                );
+            }
+        }
+    }
+
+    /**
+     * Returns the used heap and direct memory after a full collection.
+     *
+     * @return The used heap bytes and the used direct buffer bytes.
+     */
+    private static long[] usedMemory() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+        return new long[]{memory.getHeapMemoryUsage().getUsed(), direct};
+    }
+}
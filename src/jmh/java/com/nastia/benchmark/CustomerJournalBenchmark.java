@@ -0,0 +1,165 @@
+package com.nastia.benchmark;
+
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerListDataAccessService;
+import com.nastia.customer.CustomerListPersistenceProperties;
+import com.nastia.customer.CustomerUpdateRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures what persisting the "list" DAO costs: the write throughput with the journal off, in group sync mode and
+ * in interval sync mode, on a store of {@code rows} customers. {@link Recovery} measures how long a store of that
+ * size takes to recover at startup, from its journal alone or from a snapshot and a journal tail.
+ * The DAO is created directly, without an application context, on a directory under the temporary directory;
+ * point {@code java.io.tmpdir} at the disk to measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CustomerJournalBenchmark {
+
+    @Param({"off", "group", "interval"})
+    public String sync; // Sync mode of the journal, or "off" to keep the customers in memory only.
+
+    @Param({"1000000"})
+    public int rows; // Number of customers in the store before measuring.
+
+    private Path directory; // Directory of the snapshot and journal.
+    private CustomerListDataAccessService customerDAO;
+    private int[] ids; // IDs of the seeded customers.
+    private final AtomicInteger nextEmail = new AtomicInteger(); // Source of unique emails for inserts.
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("customer-journal-");
+        customerDAO = new CustomerListDataAccessService(properties(directory, sync, DataSize.ofMegabytes(256)));
+        ids = BenchmarkApplication.seed(customerDAO, rows);
+        nextEmail.set(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        customerDAO.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Customer insertCustomer() {
+        int i = nextEmail.getAndIncrement();
+        Customer customer = new Customer("Inserted " + i, BenchmarkApplication.email(i), 30);
+        customerDAO.insertCustomer(customer);
+        return customer;
+    }
+
+    @Benchmark
+    public Optional<Customer> updateCustomerFields() {
+        int id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        CustomerUpdateRequest update = new CustomerUpdateRequest(null, null, 18 + ThreadLocalRandom.current().nextInt(80));
+        return customerDAO.updateCustomerFields(id, update, null);
+    }
+
+    /**
+     * Returns the persistence settings of a benchmark.
+     *
+     * @param directory    The directory of the snapshot and journal.
+     * @param sync         The sync mode, in lower case, or "off".
+     * @param compactAfter The journal size beyond which compact() writes a snapshot.
+     */
+    static CustomerListPersistenceProperties properties(Path directory, String sync, DataSize compactAfter) {
+        boolean enabled = !sync.equals("off");
+        return new CustomerListPersistenceProperties(
+                enabled,
+                directory,
+                enabled ? CustomerListPersistenceProperties.Sync.valueOf(sync.toUpperCase()) : CustomerListPersistenceProperties.Sync.GROUP,
+                Duration.ofMillis(100),
+                DataSize.ofMegabytes(64),
+                compactAfter
+        );
+    }
+
+    /**
+     * Measures the startup time of a persistent store of {@code rows} customers, whose last {@value #TAIL} changes
+     * were updates. With the "journal" layout all of it is replayed from the journal; with the "snapshot" layout the
+     * customers are loaded from a snapshot and only the updates are replayed. Indexes are rebuilt in both.
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    @Fork(1)
+    @Threads(1)
+    public static class Recovery {
+
+        private static final int TAIL = 100_000; // Number of updates journaled after the snapshot.
+
+        @Param({"journal", "snapshot"})
+        public String layout; // What the store is recovered from.
+
+        @Param({"1000000"})
+        public int rows; // Number of customers in the store.
+
+        private Path directory; // Directory of the snapshot and journal.
+        private CustomerListDataAccessService recovered; // The store recovered by the last invocation.
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("customer-recovery-");
+            try (CustomerListDataAccessService customerDAO = new CustomerListDataAccessService(
+                    properties(directory, "group", DataSize.ofBytes(0)))) {
+                int[] ids = BenchmarkApplication.seed(customerDAO, rows);
+                if (layout.equals("snapshot")) {
+                    customerDAO.compact();
+                }
+                for (int i = 0; i < TAIL; i++) {
+                    customerDAO.updateCustomerFields(ids[i % ids.length], new CustomerUpdateRequest(null, null, 18 + i % 80), null);
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void closeRecovered() throws IOException {
+            recovered.close();
+            recovered = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+
+        @Benchmark
+        public CustomerListDataAccessService recover() throws IOException {
+            recovered = new CustomerListDataAccessService(properties(directory, "group", DataSize.ofMegabytes(256)));
+            return recovered;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.nastia.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerJsonHttpMessageConverter;
+import com.nastia.customer.CustomerPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing customer responses with the dedicated CustomerJsonHttpMessageConverter against Spring's
+ * default Jackson converter on the application's ObjectMapper. Both write into a stream that only counts bytes,
+ * so the benchmark measures serialization alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class CustomerJsonBenchmark {
+
+    @Param({"jackson", "customer"})
+    public String converter; // The default Jackson converter or the dedicated customer converter.
+
+    @Param({"1", "100", "1000"})
+    public int pageSize; // Number of customers on the written page.
+
+    private ConfigurableApplicationContext context;
+    private HttpMessageConverter<Object> messageConverter;
+    private CustomerPage page;
+    private Customer customer;
+    private final CountingOutputMessage outputMessage = new CountingOutputMessage();
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        messageConverter = converter.equals("jackson")
+                ? new MappingJackson2HttpMessageConverter(context.getBean(ObjectMapper.class))
+                : (HttpMessageConverter<Object>) (HttpMessageConverter<?>) context.getBean(CustomerJsonHttpMessageConverter.class);
+        List<Customer> customers = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            Customer generated = new Customer(i + 1, "Customer " + i, BenchmarkApplication.email(i), 18 + i % 80);
+            generated.setVersion((long) i % 5);
+            customers.add(generated);
+        }
+        page = new CustomerPage(customers, String.valueOf(pageSize));
+        customer = customers.get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long writePage() throws IOException {
+        outputMessage.reset();
+        messageConverter.write(page, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage.bytes;
+    }
+
+    @Benchmark
+    public long writeCustomer() throws IOException {
+        outputMessage.reset();
+        messageConverter.write(customer, MediaType.APPLICATION_JSON, outputMessage);
+        return outputMessage.bytes;
+    }
+
+    /**
+     * Output message discarding the body and counting its bytes, so the output cannot be optimized away.
+     */
+    private static final class CountingOutputMessage extends OutputStream implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private long bytes;
+
+        void reset() {
+            headers.clear();
+            bytes = 0;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return this;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.nastia.benchmark;
+
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerDAO;
+import com.nastia.customer.CustomerPage;
+import com.nastia.customer.CustomerRegistrationRequest;
+import com.nastia.customer.CustomerService;
+import com.nastia.customer.CustomerUpdateRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks CustomerService end to end (validation, cache and JPA DAO) on an embedded database.
+ * Runs single-threaded; {@link MultiThreaded} runs the same operations from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class CustomerServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows; // Number of customers in the database before measuring.
+
+    private ConfigurableApplicationContext context;
+    private CustomerService customerService;
+    private int[] ids; // IDs of the seeded customers.
+    private final AtomicInteger nextEmail = new AtomicInteger(); // Source of unique emails for registrations.
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        customerService = context.getBean(CustomerService.class);
+        ids = BenchmarkApplication.seed(context.getBean("jpa", CustomerDAO.class), rows);
+        nextEmail.set(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Customer getCustomer() {
+        return customerService.getCustomer(randomId());
+    }
+
+    @Benchmark
+    public void addCustomer() {
+        int i = nextEmail.getAndIncrement();
+        customerService.addCustomer(new CustomerRegistrationRequest("Registered " + i, BenchmarkApplication.email(i), 30));
+    }
+
+    @Benchmark
+    public void updateCustomer() {
+        int i = nextEmail.getAndIncrement();
+        customerService.updateCustomer(randomId(), new CustomerUpdateRequest("Renamed " + i, null, null));
+    }
+
+    @Benchmark
+    public CustomerPage getCustomersPage() {
+        return customerService.getCustomersPage(randomId(), 100);
+    }
+
+    private int randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    /**
+     * The same benchmarks, run concurrently from several threads against the shared database.
+     */
+    @Threads(8)
+    public static class MultiThreaded extends CustomerServiceBenchmark {
+    }
+}
@@ -0,0 +1,85 @@
+package com.nastia.benchmark;
+
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerDAO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookup latency distribution of the off-heap "snapshot" DAO with the heap-based "list" DAO.
+ * Runs in sample mode, so JMH reports percentiles; compare the p0.99 rows of the two backends.
+ * {@link CustomerFootprintBenchmark} measures the memory per customer of the same two backends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CustomerSnapshotBenchmark {
+
+    @Param({"list", "snapshot"})
+    public String backend; // Qualifier of the CustomerDAO bean under test.
+
+    @Param({"100000", "1000000"})
+    public int rows; // Number of customers in the store before measuring.
+
+    // Keeps the outbox relay from replaying the seeded rows to the snapshot while measuring.
+    static final String QUIET_RELAY = "customer.outbox.relay-interval=3600000";
+
+    private ConfigurableApplicationContext context;
+    private CustomerDAO customerDAO;
+    private int[] ids; // IDs of the seeded customers.
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(QUIET_RELAY);
+        customerDAO = context.getBean(backend, CustomerDAO.class);
+        ids = BenchmarkApplication.seed(customerDAO, rows);
+        customerDAO.selectCustomerById(ids[0]); // Loads the snapshot before measuring.
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Customer> selectCustomerById() {
+        return customerDAO.selectCustomerById(randomId());
+    }
+
+    @Benchmark
+    public Optional<Long> selectCustomerVersion() {
+        return customerDAO.selectCustomerVersion(randomId());
+    }
+
+    @Benchmark
+    public boolean existsPersonWithEmail() {
+        // Half of the lookups hit an existing email, half miss.
+        int i = ThreadLocalRandom.current().nextInt(rows * 2);
+        return customerDAO.existsPersonWithEmail(BenchmarkApplication.email(i));
+    }
+
+    private int randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
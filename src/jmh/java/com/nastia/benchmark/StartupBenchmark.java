@@ -0,0 +1,131 @@
+package com.nastia.benchmark;
+
+import com.nastia.Main;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from launching the customer service until it answers its first listing request,
+ * used to compare the seeded dev profile with the prod profile and the plain JVM with AOT and native builds.
+ *
+ * Each run starts a new process on a fresh in-memory H2 database, polls
+ * {@code GET /api/v1/customers?limit=1} until it returns 200 and then stops the process. At the end the
+ * minimum, median and maximum time-to-first-request are printed as one JSON line.
+ *
+ * Arguments are {@code key=value} pairs: {@code mode} ({@code jvm}, {@code aot} or {@code native},
+ * default jvm), {@code command}, the native executable for the native mode (default target/spring-boot-example),
+ * {@code profiles} (default prod), {@code runs} (default 5) and {@code port} (default 8090).
+ * The aot mode needs classes processed by {@code mvn -Pnative package}.
+ */
+public final class StartupBenchmark {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2); // Give up on a run after this long.
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        String mode = options.getOrDefault("mode", "jvm");
+        String profiles = options.getOrDefault("profiles", "prod");
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        int port = Integer.parseInt(options.getOrDefault("port", "8090"));
+
+        List<String> command = new ArrayList<>();
+        switch (mode) {
+            case "jvm", "aot" -> {
+                command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+                if (mode.equals("aot")) {
+                    command.add("-Dspring.aot.enabled=true");
+                }
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(Main.class.getName());
+            }
+            case "native" -> command.add(options.getOrDefault("command", "target/spring-boot-example"));
+            default -> throw new IllegalArgumentException("Unknown mode '" + mode + "', expected jvm, aot or native");
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/customers?limit=1"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+
+        long[] timings = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            List<String> arguments = new ArrayList<>(command);
+            arguments.addAll(BenchmarkApplication.databaseArguments());
+            arguments.add("--server.port=" + port);
+            arguments.add("--management.server.port=0");
+            arguments.add("--spring.profiles.active=" + profiles);
+
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(arguments)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            try {
+                timings[run] = awaitFirstResponse(client, request, process, start);
+            } finally {
+                process.destroy();
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            }
+        }
+        Arrays.sort(timings);
+
+        System.out.printf(
+                "{\"mode\":\"%s\",\"profiles\":\"%s\",\"runs\":%d,"
+                        + "\"minMillis\":%.1f,\"medianMillis\":%.1f,\"maxMillis\":%.1f}%n",
+                mode, profiles, runs,
+                timings[0] / 1e6, timings[runs / 2] / 1e6, timings[runs - 1] / 1e6
+        );
+    }
+
+    /**
+     * Polls the service until it answers with 200.
+     *
+     * @return The nanoseconds elapsed since {@code start}.
+     */
+    private static long awaitFirstResponse(HttpClient client, HttpRequest request, Process process, long start)
+            throws InterruptedException {
+        long deadline = start + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with status " + process.exitValue() + " before answering");
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return System.nanoTime() - start;
+                }
+            } catch (IOException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Application did not answer within " + STARTUP_TIMEOUT);
+    }
+}
@@ -1,17 +1,21 @@
 package com.nastia;
 
 import com.nastia.customer.Customer;
-import com.nastia.customer.CustomerRepository;
+import com.nastia.customer.CustomerRegistrationRequest;
+import com.nastia.customer.CustomerService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.util.List;
 
 
 @SpringBootApplication
+@EnableScheduling // Runs the customer outbox relay in the background.
 
 public class Main {
 
@@ -20,8 +24,14 @@ public class Main {
         SpringApplication.run(Main.class, args);
 
     }
+    /**
+     * Seeds two sample customers, for local development only: production schemas are managed by
+     * Flyway alone and no data is written at startup. The customers go through the service, so they
+     * land in whichever data store is configured, the in-memory list included.
+     */
     @Bean
-    CommandLineRunner runner(CustomerRepository customerRepository){
+    @Profile("dev") // Sample data is only wanted on developer machines.
+    CommandLineRunner runner(CustomerService customerService){
         return args ->{
 
             Customer alex = new Customer(
@@ -35,8 +45,12 @@ public class Main {
                     "jamila@gmail.com",
                     19
             );
-            List<Customer> customers = List.of(alex, jamila);
-            customerRepository.saveAll(customers);
+            // The data store may outlive restarts; customers whose email is already taken are rejected individually.
+            List<CustomerRegistrationRequest> customers = List.of(alex, jamila).stream()
+                    .map(customer -> new CustomerRegistrationRequest(customer.getName(), customer.getEmail(), customer.getAge()))
+                    .toList();
+            // Registered through the service, so the change counter and the outbox see the seeded customers.
+            customerService.addCustomers(customers);
 
         };
     }
@@ -0,0 +1,183 @@
+package com.nastia.admission;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Servlet filter limiting how many API requests run at once, with a limit that adapts to how the service copes.
+ *
+ * The limit grows by one for every limit's worth of requests that complete while it is in use, and shrinks by
+ * the {@code backoff} factor when a request finds threads queueing for a Hikari connection, or when the recent
+ * average latency exceeds the long-term average by the {@code latency-tolerance} factor. Comparing two averages
+ * over the same mix of requests keeps slow endpoints from passing for overload. The limit shrinks at most once
+ * per round trip: only requests that started after the last decrease can cause the next one. So it settles just
+ * below the point where the connection pool saturates, and requests beyond it are turned away at once with
+ * 503 Service Unavailable rather than queueing for a connection. Unlike {@link ConcurrencyLimitFilter}, no
+ * request waits: shedding early keeps latency flat for the admitted ones.
+ *
+ * A request processed asynchronously, such as a streamed listing or an export, keeps its slot until its response
+ * is complete, not just until its handler returns. Its duration is not fed into the latency averages, as it
+ * grows with the size of the response rather than with load. Change-event subscriptions stay open indefinitely
+ * and mostly idle, so they are not limited here; the rate limit still applies to them.
+ */
+@Component // Registers the filter with the servlet container.
+@ConditionalOnProperty(name = "customer.adaptive-concurrency.enabled", havingValue = "true") // Only active when enabled.
+@Order(Ordered.HIGHEST_PRECEDENCE + 20) // Runs after the per-client rate limit.
+public class AdaptiveConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String METRIC = "customer.admission.requests"; // Name of the admission counters.
+    private static final String EVENTS_PATH = "/customers/events"; // Ending of the change-event subscription path.
+
+    private final HikariDataSource pool; // The pool whose waiting threads signal saturation.
+    private final int minLimit; // The limit never drops below this.
+    private final int maxLimit; // The limit never grows beyond this.
+    private final double latencyTolerance; // Recent over long-term average latency, as a factor, that counts as overload.
+    private final double backoff; // Factor the limit is multiplied with on overload.
+    private final AtomicInteger inFlight = new AtomicInteger(); // Requests currently admitted.
+    private final AtomicLong limitBits; // The current limit, a double stored as its raw long bits.
+    private volatile long recentLatencyNanos; // Average latency of about the last 16 requests.
+    private volatile long longTermLatencyNanos; // Average latency of about the last 1024 requests.
+    private final AtomicLong lastDecreaseNanos = new AtomicLong(System.nanoTime()); // When the limit was last decreased.
+    private final Counter admitted; // Requests let through.
+    private final Counter rejected; // Requests turned away.
+
+    /**
+     * Constructs the filter.
+     *
+     * @param pool             The primary connection pool.
+     * @param initialLimit     The limit to start with.
+     * @param minLimit         The lowest the limit may drop to.
+     * @param maxLimit         The highest the limit may grow to.
+     * @param latencyTolerance The factor of recent over long-term average latency that counts as overload.
+     * @param backoff          The factor the limit is multiplied with on overload.
+     * @param meterRegistry    The registry the limit gauges and admission counters are registered with.
+     */
+    public AdaptiveConcurrencyLimitFilter(@Qualifier("primaryDataSource") HikariDataSource pool,
+                                          @Value("${customer.adaptive-concurrency.initial-limit:20}") int initialLimit,
+                                          @Value("${customer.adaptive-concurrency.min-limit:4}") int minLimit,
+                                          @Value("${customer.adaptive-concurrency.max-limit:200}") int maxLimit,
+                                          @Value("${customer.adaptive-concurrency.latency-tolerance:2.0}") double latencyTolerance,
+                                          @Value("${customer.adaptive-concurrency.backoff:0.9}") double backoff,
+                                          MeterRegistry meterRegistry) {
+        this.pool = pool;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.backoff = backoff;
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+        Gauge.builder("customer.admission.concurrency.limit", this, AdaptiveConcurrencyLimitFilter::limit).register(meterRegistry);
+        Gauge.builder("customer.admission.concurrency.in-flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        this.admitted = counter(meterRegistry, "admitted");
+        this.rejected = counter(meterRegistry, "rejected");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/") || request.getRequestURI().endsWith(EVENTS_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        int limit = (int) limit();
+        if (inFlight.incrementAndGet() > limit) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "server is at its concurrency limit");
+            return;
+        }
+        admitted.increment();
+        long start = System.nanoTime();
+        boolean deferred = false;
+        try {
+            filterChain.doFilter(request, response);
+            deferred = AsyncRelease.deferIfAsync(request, inFlight::decrementAndGet);
+        } finally {
+            if (!deferred) {
+                int concurrent = inFlight.getAndDecrement();
+                onCompletion(start, System.nanoTime(), concurrent, limit);
+            }
+        }
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return The number of requests allowed to run at once, with its fractional part.
+     */
+    double limit() {
+        return Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * Adjusts the limit after a request completed.
+     *
+     * @param start      When the request was admitted.
+     * @param end        When it completed.
+     * @param concurrent The number of requests running just before it completed, itself included.
+     * @param limit      The limit the request was admitted under.
+     */
+    private void onCompletion(long start, long end, int concurrent, int limit) {
+        long latency = end - start;
+        // Exponential moving averages; concurrent updates may lose a sample, which they can afford.
+        long recent = recentLatencyNanos;
+        long longTerm = longTermLatencyNanos;
+        recent = recent == 0 ? latency : recent + ((latency - recent) >> 4);
+        longTerm = longTerm == 0 ? latency : longTerm + ((latency - longTerm) >> 10);
+        recentLatencyNanos = recent;
+        longTermLatencyNanos = longTerm;
+
+        boolean overloaded = threadsAwaitingConnection() > 0 || recent > latencyTolerance * longTerm;
+        if (overloaded) {
+            long lastDecrease = lastDecreaseNanos.get();
+            if (start - lastDecrease > 0 && lastDecreaseNanos.compareAndSet(lastDecrease, end)) {
+                update(current -> Math.max(minLimit, current * backoff));
+            }
+        } else if (concurrent * 2 >= limit) {
+            update(current -> Math.min(maxLimit, current + 1 / current));
+        }
+    }
+
+    private void update(DoubleUnaryOperator change) {
+        long bits;
+        long next;
+        do {
+            bits = limitBits.get();
+            next = Double.doubleToRawLongBits(change.applyAsDouble(Double.longBitsToDouble(bits)));
+        } while (!limitBits.compareAndSet(bits, next));
+    }
+
+    private int threadsAwaitingConnection() {
+        HikariPoolMXBean poolBean = pool.getHikariPoolMXBean();
+        return poolBean == null ? 0 : poolBean.getThreadsAwaitingConnection();
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder(METRIC)
+                .tag("limiter", "concurrency")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,67 @@
+package com.nastia.admission;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletRequest;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Frees what an asynchronously processed request holds, such as a concurrency slot, once its response is
+ * complete, failed or timed out, rather than when its handler returns. Streamed listings and exports do their
+ * database work after that, while the response is written.
+ */
+final class AsyncRelease implements AsyncListener {
+
+    private final Runnable release; // Frees what the request holds.
+    private final AtomicBoolean released = new AtomicBoolean(); // Errors and timeouts are followed by completion.
+
+    private AsyncRelease(Runnable release) {
+        this.release = release;
+    }
+
+    /**
+     * Defers a release until the response is complete, failed or timed out, if the request went asynchronous.
+     * The release then runs exactly once.
+     *
+     * @param request The request, after the filter chain returned.
+     * @param release Frees what the request holds.
+     * @return True if the release was deferred; false if the request is done and the caller releases at once.
+     */
+    static boolean deferIfAsync(ServletRequest request, Runnable release) {
+        if (!request.isAsyncStarted()) {
+            return false;
+        }
+        request.getAsyncContext().addListener(new AsyncRelease(release));
+        return true;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        release();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        release();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        release();
+    }
+
+    /**
+     * Keeps listening if processing goes asynchronous again after a dispatch.
+     */
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        event.getAsyncContext().addListener(this);
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.nastia.admission;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Servlet filter capping the number of API requests processed at the same time.
+ *
+ * With virtual threads every incoming request gets its own thread, so the thread pool no longer
+ * limits how many requests reach the database at once. This filter restores a limit sized to the
+ * connection pool: requests beyond it wait briefly for a permit and are turned away with
+ * 503 Service Unavailable if none frees up, instead of piling up on the Hikari pool.
+ *
+ * A streamed listing or an export reads the database while its response is written, after its handler returned,
+ * so an asynchronously processed request keeps its permit until its response is complete. Change-event
+ * subscriptions stay open indefinitely and would hold a permit for as long, so they are not limited here.
+ */
+@Component // Registers the filter with the servlet container.
+@ConditionalOnProperty(name = "customer.concurrency-limit.enabled", havingValue = "true") // Only active when enabled.
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String EVENTS_PATH = "/customers/events"; // Ending of the change-event subscription path.
+
+    private final Semaphore permits; // One permit per request allowed to run concurrently.
+    private final long maxWaitNanos; // How long a request may wait for a permit before being rejected.
+
+    /**
+     * Constructs the filter.
+     *
+     * @param maxConcurrentRequests The number of API requests allowed to run at the same time.
+     * @param maxWait               How long a request may wait for a permit.
+     */
+    public ConcurrencyLimitFilter(@Value("${customer.concurrency-limit.max-concurrent-requests:20}") int maxConcurrentRequests,
+                                  @Value("${customer.concurrency-limit.max-wait:500ms}") Duration maxWait) {
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/") || request.getRequestURI().endsWith(EVENTS_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "too many concurrent requests");
+            return;
+        }
+        boolean deferred = false;
+        try {
+            filterChain.doFilter(request, response);
+            deferred = AsyncRelease.deferIfAsync(request, permits::release);
+        } finally {
+            if (!deferred) {
+                permits.release();
+            }
+        }
+    }
+}
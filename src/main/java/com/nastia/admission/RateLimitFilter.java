@@ -0,0 +1,118 @@
+package com.nastia.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Servlet filter giving every client its own request budget, so one client hammering the API cannot
+ * starve the others.
+ *
+ * Clients are identified by their API key header if it carries one of the configured {@code api-keys}, and by
+ * their IP address otherwise, so a client cannot escape its budget by sending a new made-up key with every
+ * request. Each client has a
+ * {@link TokenBucket} per {@link RequestClass}, so reads, writes and full listings are limited separately:
+ * a client streaming the whole table keeps its budget for lookups. A request finding its bucket empty is
+ * answered with 429 Too Many Requests before it reaches a controller, with Retry-After telling the client when
+ * its next permit is due.
+ */
+@Component // Registers the filter with the servlet container.
+@ConditionalOnProperty(name = "customer.rate-limit.enabled", havingValue = "true") // Only active when enabled.
+@EnableConfigurationProperties(RateLimitProperties.class) // Binds the budgets, only needed when the filter is active.
+@Order(Ordered.HIGHEST_PRECEDENCE + 10) // Runs before the concurrency limits, so rejected clients take no slot.
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String METRIC = "customer.admission.requests"; // Name of the admission counters.
+
+    private final RateLimitProperties properties; // The budgets.
+    private final Set<String> apiKeys; // Keys that identify a client.
+    private final Cache<String, TokenBucket[]> bucketsByClient; // Buckets of each client, indexed by request class.
+    private final Counter[] admitted = new Counter[RequestClass.values().length]; // Admitted requests per class.
+    private final Counter[] rejected = new Counter[RequestClass.values().length]; // Rejected requests per class.
+
+    /**
+     * Constructs the filter.
+     *
+     * @param properties    The budgets and client tracking settings.
+     * @param meterRegistry The registry the admission counters are registered with.
+     */
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.apiKeys = Set.copyOf(properties.apiKeys());
+        this.bucketsByClient = Caffeine.newBuilder()
+                .maximumSize(properties.maxClients())
+                .expireAfterAccess(properties.idleTimeout())
+                .build();
+        for (RequestClass requestClass : RequestClass.values()) {
+            admitted[requestClass.ordinal()] = counter(meterRegistry, requestClass, "admitted");
+            rejected[requestClass.ordinal()] = counter(meterRegistry, requestClass, "rejected");
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestClass requestClass = RequestClass.of(request);
+        TokenBucket bucket = bucketsByClient.get(clientOf(request), client -> newBuckets())[requestClass.ordinal()];
+        long waitNanos = bucket.tryAcquire(System.nanoTime());
+        if (waitNanos > 0) {
+            rejected[requestClass.ordinal()].increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString((waitNanos + 999_999_999L) / 1_000_000_000L));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "rate limit exceeded");
+            return;
+        }
+        admitted[requestClass.ordinal()].increment();
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Identifies the client of a request.
+     *
+     * @return {@code key:} and the API key if it is a known one, otherwise {@code ip:} and the remote address.
+     */
+    private String clientOf(HttpServletRequest request) {
+        String apiKey = request.getHeader(properties.apiKeyHeader());
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+
+    private TokenBucket[] newBuckets() {
+        TokenBucket[] buckets = new TokenBucket[RequestClass.values().length];
+        buckets[RequestClass.READ.ordinal()] = bucket(properties.reads());
+        buckets[RequestClass.WRITE.ordinal()] = bucket(properties.writes());
+        buckets[RequestClass.FULL_LIST.ordinal()] = bucket(properties.fullLists());
+        return buckets;
+    }
+
+    private static TokenBucket bucket(RateLimitProperties.Budget budget) {
+        return new TokenBucket(budget.permitsPerSecond(), budget.burst());
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, RequestClass requestClass, String outcome) {
+        return Counter.builder(METRIC)
+                .tag("limiter", "rate-limit")
+                .tag("class", requestClass.tag())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
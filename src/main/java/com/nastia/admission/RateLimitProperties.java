@@ -0,0 +1,40 @@
+package com.nastia.admission;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A record binding the {@code customer.rate-limit} properties: the per-client budgets of the API.
+ */
+@ConfigurationProperties("customer.rate-limit") // Binds the customer.rate-limit properties.
+public record RateLimitProperties(
+        // Header identifying the client; clients without it are identified by their IP address.
+        @DefaultValue("X-API-Key") String apiKeyHeader,
+        // The API keys issued to clients; a request carrying any other key is identified by its IP address.
+        @DefaultValue List<String> apiKeys,
+        // Budget of reads: lookups and listing pages.
+        @DefaultValue Budget reads,
+        // Budget of writes: registrations, updates and deletes.
+        @DefaultValue Budget writes,
+        // Budget of streamed listings and exports of all customers.
+        @DefaultValue Budget fullLists,
+        // Maximum number of clients whose buckets are kept; the least recently seen ones are dropped first.
+        @DefaultValue("100000") long maxClients,
+        // How long a client's buckets are kept after its last request; a returning client starts with full buckets.
+        @DefaultValue("10m") Duration idleTimeout
+) {
+
+    /**
+     * A record describing the token bucket of one class of requests.
+     */
+    public record Budget(
+            // Sustained number of requests per second.
+            @DefaultValue("10") double permitsPerSecond,
+            // Number of requests a client may send at once after being idle.
+            @DefaultValue("20") int burst
+    ) {
+    }
+}
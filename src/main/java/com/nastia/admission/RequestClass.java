@@ -0,0 +1,38 @@
+package com.nastia.admission;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * The classes of API requests that get separate rate-limit budgets.
+ */
+enum RequestClass {
+    READ("read"),
+    WRITE("write"),
+    FULL_LIST("full-list");
+
+    private final String tag; // Value of the class tag on the admission metrics.
+
+    RequestClass(String tag) {
+        this.tag = tag;
+    }
+
+    String tag() {
+        return tag;
+    }
+
+    /**
+     * Classifies a request: the streamed listing and the export of every customer are full lists, other safe
+     * methods are reads, and everything else is a write.
+     *
+     * @param request The request.
+     * @return The class of the request.
+     */
+    static RequestClass of(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!method.equals("GET") && !method.equals("HEAD") && !method.equals("OPTIONS")) {
+            return WRITE;
+        }
+        String uri = request.getRequestURI();
+        return uri.endsWith("/customers/stream") || uri.endsWith("/customers/export") ? FULL_LIST : READ;
+    }
+}
@@ -0,0 +1,50 @@
+package com.nastia.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, kept as a single theoretical arrival time (the generic cell rate algorithm).
+ *
+ * Instead of a token count and a refill timestamp, the bucket stores the time at which it would be full again
+ * if no further permit were taken. Taking a permit pushes that time one interval further; the permit is refused
+ * if that would put it more than a full burst ahead of now. Both steps are one compare-and-set on one long,
+ * so concurrent requests of the same client never block each other.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos; // Time it takes to earn one permit.
+    private final long capacityNanos; // Time it takes to earn a full burst.
+    private final AtomicLong theoreticalArrival; // When the bucket is full again, in System.nanoTime() terms.
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param permitsPerSecond The sustained rate of permits.
+     * @param burst            The number of permits that can be taken at once from a full bucket.
+     */
+    TokenBucket(double permitsPerSecond, int burst) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.capacityNanos = intervalNanos * Math.max(1, burst);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a permit if one is available.
+     *
+     * @param now The current System.nanoTime().
+     * @return 0 if a permit was taken, otherwise the nanoseconds until one will be available.
+     */
+    long tryAcquire(long now) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - now > 0 ? arrival : now) + intervalNanos;
+            long ahead = next - now;
+            if (ahead > capacityNanos) {
+                return ahead - capacityNanos;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.nastia.cache;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A record describing which cached customers are stale after customers changed.
+ */
+public record CustomerCacheInvalidation(
+        // IDs of the changed customers.
+        Set<Integer> customerIds,
+        // Whether every cached customer is stale, because it is not known which ones changed.
+        boolean all
+) {
+
+    /**
+     * Returns the invalidation of the given customers.
+     *
+     * @param customerIds The IDs of the changed customers.
+     * @return An invalidation covering these customers only.
+     */
+    public static CustomerCacheInvalidation of(Collection<Integer> customerIds) {
+        return new CustomerCacheInvalidation(Set.copyOf(customerIds), false);
+    }
+
+    /**
+     * Returns the invalidation of every customer.
+     *
+     * @return An invalidation covering all customers.
+     */
+    public static CustomerCacheInvalidation everything() {
+        return new CustomerCacheInvalidation(Set.of(), true);
+    }
+}
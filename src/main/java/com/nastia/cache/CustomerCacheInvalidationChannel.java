@@ -0,0 +1,26 @@
+package com.nastia.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Channel carrying cache invalidations between the instances of the application, so a customer changed on one
+ * instance is not served from the caches of the others. The implementation is selected with
+ * {@code customer.second-level-cache.invalidation}.
+ */
+public interface CustomerCacheInvalidationChannel {
+
+    /**
+     * Sends an invalidation to the other instances. Called once the changes it covers are committed.
+     *
+     * @param invalidation The invalidation to send.
+     */
+    void publish(CustomerCacheInvalidation invalidation);
+
+    /**
+     * Registers a receiver of the invalidations of every instance. A receiver may also be handed this instance's
+     * own invalidations, so evicting the same customer twice must be harmless; it must not throw.
+     *
+     * @param receiver The receiver to hand invalidations to.
+     */
+    void subscribe(Consumer<CustomerCacheInvalidation> receiver);
+}
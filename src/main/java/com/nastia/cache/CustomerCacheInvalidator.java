@@ -0,0 +1,93 @@
+package com.nastia.cache;
+
+import com.nastia.customer.Customer;
+import com.nastia.outbox.CustomerChangeEvent;
+import com.nastia.outbox.CustomerChangeListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps the Hibernate second-level cache of customers consistent with the changes Hibernate does not see itself:
+ * those written here with plain JDBC, which bypass the persistence context, and those made by other instances.
+ * Once a change commits, the changed customers and the cached queries on customers are invalidated here and the
+ * invalidation is published on the channel; invalidations received from the channel are applied the same way.
+ * Cached email resolutions are dropped as a whole, as cached query results are: the email an updated customer
+ * had before is not known here, and a resolution is a single query away.
+ */
+@Component // Registers the invalidator as a Spring-managed bean, picked up as an outbox change listener.
+public class CustomerCacheInvalidator implements CustomerChangeListener {
+
+    private final SessionFactoryImplementor sessionFactory; // Owns the second-level cache.
+    private final CustomerCacheInvalidationChannel channel; // Carries invalidations to and from the other instances.
+    private final String[] querySpaces; // Tables whose cached query results a customer change makes stale.
+    private final Counter committedInvalidations; // Invalidations of changes committed here.
+    private final Counter receivedInvalidations; // Invalidations received from the channel.
+
+    /**
+     * Constructs the invalidator and subscribes it to the channel.
+     *
+     * @param entityManagerFactory The JPA entity manager factory, a Hibernate session factory.
+     * @param channel              The channel invalidations travel over.
+     * @param meterRegistry        The registry the invalidation counters are registered with.
+     */
+    public CustomerCacheInvalidator(EntityManagerFactory entityManagerFactory,
+                                    CustomerCacheInvalidationChannel channel,
+                                    MeterRegistry meterRegistry) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.channel = channel;
+        this.querySpaces = (String[]) sessionFactory.getMappingMetamodel()
+                .getEntityDescriptor(Customer.class)
+                .getQuerySpaces();
+        this.committedInvalidations = counter(meterRegistry, "commit");
+        this.receivedInvalidations = counter(meterRegistry, "channel");
+        channel.subscribe(invalidation -> {
+            receivedInvalidations.increment();
+            invalidate(invalidation);
+        });
+    }
+
+    /**
+     * Invalidates customers changed by a committed transaction, here first, then on the other instances.
+     *
+     * @param type      The kind of change.
+     * @param customers The changed customers.
+     */
+    @Override
+    public void afterCommit(CustomerChangeEvent.Type type, List<Customer> customers) {
+        CustomerCacheInvalidation invalidation = CustomerCacheInvalidation.of(customers.stream().map(Customer::getId).toList());
+        committedInvalidations.increment();
+        invalidate(invalidation);
+        channel.publish(invalidation);
+    }
+
+    /**
+     * Evicts the invalidated customers and every email resolution, and marks the customer table as changed now,
+     * so the results of queries on it, including those still running, are no longer served from the query cache.
+     */
+    private void invalidate(CustomerCacheInvalidation invalidation) {
+        sessionFactory.getCache().evictNaturalIdData(Customer.class);
+        if (invalidation.all()) {
+            sessionFactory.getCache().evictEntityData(Customer.class);
+        } else {
+            for (Integer customerId : invalidation.customerIds()) {
+                sessionFactory.getCache().evictEntityData(Customer.class, customerId);
+            }
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            sessionFactory.getCache().getTimestampsCache().invalidate(querySpaces, (SharedSessionContractImplementor) session);
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("customer.cache.invalidations")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+}
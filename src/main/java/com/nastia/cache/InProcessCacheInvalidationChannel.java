@@ -0,0 +1,27 @@
+package com.nastia.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Invalidation channel within a single JVM: a published invalidation is handed to every receiver at once, on the
+ * publishing thread. Suits a single instance, and stands in for a real channel in tests, where the application
+ * contexts playing several instances can share one channel.
+ */
+public class InProcessCacheInvalidationChannel implements CustomerCacheInvalidationChannel {
+
+    private final List<Consumer<CustomerCacheInvalidation>> receivers = new CopyOnWriteArrayList<>(); // Registered receivers.
+
+    @Override
+    public void publish(CustomerCacheInvalidation invalidation) {
+        for (Consumer<CustomerCacheInvalidation> receiver : receivers) {
+            receiver.accept(invalidation);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CustomerCacheInvalidation> receiver) {
+        receivers.add(receiver);
+    }
+}
@@ -0,0 +1,88 @@
+package com.nastia.cache;
+
+import com.nastia.outbox.CustomerChangeEvent;
+import com.nastia.outbox.CustomerOutbox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Invalidation channel riding on the customer outbox, which every instance shares. Nothing has to be sent: every
+ * change is already recorded in the outbox by the transaction making it, so its invalidation commits, or rolls back,
+ * together with it. Each instance follows the published events from the offset it started at and hands the
+ * customers they name to the receivers, so a change made elsewhere is invalidated here within one relay interval
+ * plus one poll interval. Should events this instance had not read yet have been purged, everything is invalidated.
+ */
+public class OutboxCacheInvalidationChannel implements CustomerCacheInvalidationChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxCacheInvalidationChannel.class);
+
+    private final CustomerOutbox outbox; // The outbox whose published events are followed.
+    private final int batchSize; // Maximum number of events read at once.
+    private final List<Consumer<CustomerCacheInvalidation>> receivers = new CopyOnWriteArrayList<>(); // Registered receivers.
+    private long offset = -1; // Offset of the last event read, -1 before the first poll; only touched by the poller.
+
+    /**
+     * Constructs the channel.
+     *
+     * @param outbox    The customer outbox.
+     * @param batchSize The maximum number of events read at once.
+     */
+    public OutboxCacheInvalidationChannel(CustomerOutbox outbox, int batchSize) {
+        this.outbox = outbox;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Does nothing: the outbox row of every change already carries its invalidation to the other instances.
+     */
+    @Override
+    public void publish(CustomerCacheInvalidation invalidation) {
+    }
+
+    @Override
+    public void subscribe(Consumer<CustomerCacheInvalidation> receiver) {
+        receivers.add(receiver);
+    }
+
+    /**
+     * Reads the events published since the last poll and hands their invalidation to the receivers.
+     * The first poll only takes note of the current offset; caches start out empty, so nothing is stale yet.
+     */
+    @Scheduled(fixedDelayString = "${customer.second-level-cache.poll-interval:500}") // Milliseconds between the end of a poll and the next.
+    public void poll() {
+        if (offset < 0) {
+            offset = outbox.lastOffset();
+            return;
+        }
+        List<CustomerChangeEvent> events;
+        do {
+            events = outbox.selectAfter(offset, batchSize);
+            if (events.isEmpty()) {
+                return;
+            }
+            CustomerCacheInvalidation invalidation = events.get(0).offset() == offset + 1
+                    ? CustomerCacheInvalidation.of(events.stream().map(CustomerChangeEvent::customerId).toList())
+                    : CustomerCacheInvalidation.everything();
+            offset = events.get(events.size() - 1).offset();
+            deliver(invalidation);
+        } while (events.size() == batchSize);
+    }
+
+    /**
+     * Hands an invalidation to every receiver. A failing receiver does not keep the others from receiving it.
+     */
+    private void deliver(CustomerCacheInvalidation invalidation) {
+        for (Consumer<CustomerCacheInvalidation> receiver : receivers) {
+            try {
+                receiver.accept(invalidation);
+            } catch (RuntimeException e) {
+                log.warn("Invalidating customers up to offset {} failed", offset, e);
+            }
+        }
+    }
+}
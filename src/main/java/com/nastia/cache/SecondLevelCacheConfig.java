@@ -0,0 +1,93 @@
+package com.nastia.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.nastia.customer.Customer;
+import com.nastia.outbox.CustomerOutbox;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Configuration class of the Hibernate second-level cache of customers.
+ * The regions live in a Caffeine JCache cache manager of their own, created here with their bounds and handed to
+ * Hibernate; the cache itself is switched on in application.yml.
+ */
+@Configuration // Marks this class as a source of bean definitions.
+@EnableConfigurationProperties(SecondLevelCacheProperties.class) // Binds the second-level cache properties.
+public class SecondLevelCacheConfig {
+
+    /**
+     * Creates the cache manager holding the second-level cache regions: customers, email resolutions and query
+     * results, each bounded in size and age, and the update timestamps of tables, which must never be evicted.
+     * Hibernate fails to start on any other region, so a region without bounds cannot slip in.
+     * The manager comes from a provider of its own rather than the JVM-wide one, so several application contexts
+     * in one JVM, as in tests, do not share, or clash over, the same regions.
+     *
+     * @param properties The second-level cache properties.
+     * @return The cache manager, closed with the application context.
+     */
+    @Bean(destroyMethod = "close") // Releases the caches when the context closes.
+    public CacheManager secondLevelCacheManager(SecondLevelCacheProperties properties) {
+        CacheManager cacheManager = new CaffeineCachingProvider()
+                .getCacheManager(URI.create("customer-second-level-cache"), getClass().getClassLoader());
+        cacheManager.createCache(Customer.CACHE_REGION,
+                region(properties.maximumSize(), properties.expireAfterWrite()));
+        cacheManager.createCache(Customer.NATURAL_ID_CACHE_REGION,
+                region(properties.naturalIdMaximumSize(), properties.expireAfterWrite()));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                region(properties.queryMaximumSize(), properties.expireAfterWrite()));
+        CaffeineConfiguration<Object, Object> timestamps = new CaffeineConfiguration<>();
+        timestamps.setStoreByValue(false);
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, timestamps);
+        return cacheManager;
+    }
+
+    /**
+     * Hands the cache manager to Hibernate's JCache region factory.
+     *
+     * @param secondLevelCacheManager The cache manager holding the regions.
+     * @return The customizer adding the cache manager to the Hibernate properties.
+     */
+    @Bean // Registers the customizer as a Spring bean, applied by the JPA auto-configuration.
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return hibernateProperties -> hibernateProperties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+    }
+
+    /**
+     * Creates the channel invalidations travel over: within this JVM, which suits a single instance and tests, or
+     * through the outbox, which every instance shares.
+     *
+     * @param properties The second-level cache properties.
+     * @param outbox     The customer outbox.
+     * @return The invalidation channel.
+     */
+    @Bean // Registers the channel as a Spring bean.
+    public CustomerCacheInvalidationChannel customerCacheInvalidationChannel(SecondLevelCacheProperties properties,
+                                                                             CustomerOutbox outbox) {
+        return switch (properties.invalidation()) {
+            case IN_PROCESS -> new InProcessCacheInvalidationChannel();
+            case OUTBOX -> new OutboxCacheInvalidationChannel(outbox, properties.pollBatchSize());
+        };
+    }
+
+    /**
+     * Returns the configuration of a region bounded in size and age. Entries are kept by reference, as Hibernate
+     * caches immutable copies of the state anyway.
+     */
+    private static CaffeineConfiguration<Object, Object> region(long maximumSize, Duration expireAfterWrite) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        return configuration;
+    }
+}
@@ -0,0 +1,37 @@
+package com.nastia.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * A record binding the {@code customer.second-level-cache} properties: how large the Hibernate second-level cache
+ * regions of customers are, and how their invalidations reach the other instances.
+ */
+@ConfigurationProperties("customer.second-level-cache") // Binds the customer.second-level-cache properties.
+public record SecondLevelCacheProperties(
+        // Channel invalidations travel over: in this JVM only, or through the outbox every instance shares.
+        @DefaultValue("in-process") Invalidation invalidation,
+        // Maximum number of customers kept in the customer region.
+        @DefaultValue("100000") long maximumSize,
+        // Maximum number of email to ID resolutions kept in the natural-id region.
+        @DefaultValue("100000") long naturalIdMaximumSize,
+        // Maximum number of query results kept in the query cache.
+        @DefaultValue("10000") long queryMaximumSize,
+        // How long an entry is kept at most; bounds how stale it can get should an invalidation never arrive.
+        @DefaultValue("10m") Duration expireAfterWrite,
+        // Maximum number of outbox events the outbox channel reads at once.
+        @DefaultValue("1000") int pollBatchSize
+) {
+
+    /**
+     * Channel invalidations travel over.
+     */
+    public enum Invalidation {
+        // Within this JVM only; suits a single instance, and tests.
+        IN_PROCESS,
+        // Through the customer outbox, followed by every instance.
+        OUTBOX
+    }
+}
@@ -0,0 +1,16 @@
+package com.nastia.customer;
+
+import java.util.List;
+
+/**
+ * A record reporting the outcome of a bulk update or bulk delete request.
+ */
+public record BulkChangeResult(
+        // Number of distinct customers the request named.
+        int requested,
+        // Number of customers updated or deleted; customers an update would not change are not counted.
+        int changed,
+        // IDs of the requested customers that do not exist, in request order.
+        List<Integer> missingIds
+) {
+}
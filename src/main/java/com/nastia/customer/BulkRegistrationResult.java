@@ -0,0 +1,32 @@
+package com.nastia.customer;
+
+/**
+ * A record reporting the outcome of one customer of a bulk registration request.
+ */
+public record BulkRegistrationResult(
+        // Position of the customer in the request array.
+        int index,
+        // Whether the customer was created or rejected.
+        Status status,
+        // The ID allocated to the customer, or null if it was rejected.
+        Integer customerId,
+        // Why the customer was rejected, or null if it was created.
+        String message
+) {
+
+    /**
+     * Outcome of a single registration within a bulk request.
+     */
+    public enum Status {
+        CREATED,
+        FAILED
+    }
+
+    static BulkRegistrationResult created(int index, Integer customerId) {
+        return new BulkRegistrationResult(index, Status.CREATED, customerId, null);
+    }
+
+    static BulkRegistrationResult failed(int index, String message) {
+        return new BulkRegistrationResult(index, Status.FAILED, null, message);
+    }
+}
@@ -0,0 +1,25 @@
+package com.nastia.customer;
+
+/**
+ * A record carrying the update of one customer within a bulk update request.
+ */
+public record BulkUpdateRequest(
+        // The ID of the customer to update.
+        Integer id,
+        // The new name of the customer, or null to leave it unchanged.
+        String name,
+        // The new email of the customer, or null to leave it unchanged.
+        String email,
+        // The new age of the customer, or null to leave it unchanged.
+        Integer age
+) {
+
+    /**
+     * Returns the fields to change, without the customer ID.
+     *
+     * @return The update in the form of a single customer update.
+     */
+    CustomerUpdateRequest changes() {
+        return new CustomerUpdateRequest(name, email, age);
+    }
+}
@@ -0,0 +1,230 @@
+package com.nastia.customer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.nastia.cache.CustomerCacheInvalidation;
+import com.nastia.cache.CustomerCacheInvalidationChannel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Read-through caching decorator around another CustomerDAO, by default the timed JPA one.
+ * Customers looked up by ID are kept in a bounded Caffeine cache (W-TinyLFU eviction with a
+ * time-to-live), and every write through this DAO invalidates the affected entry once the
+ * delegate has applied it, so reads never see a customer older than the last write.
+ * Customers changed on other instances are invalidated as their invalidations arrive over the channel.
+ * Cache misses are loaded from the primary database, never from a read replica that may not have caught up
+ * with the last write yet, since whatever is loaded is served until the next invalidation or expiry.
+ * Listings and email checks are passed straight through to the delegate.
+ */
+@Repository("cached") // Registers this decorator as a Spring-managed repository, with "cached" as its identifier.
+public class CachingCustomerDAO implements CustomerDAO {
+
+    private final CustomerDAO delegate; // The DAO holding the source of truth.
+    private final Cache<Integer, Customer> customersById; // Cached customers keyed by their ID.
+    private final TransactionTemplate primaryRead; // Read-write transaction a miss is loaded in, which the routing datasource keeps on the primary.
+
+    /**
+     * Constructs the caching decorator.
+     *
+     * @param delegate            The DAO to read through to and write through to.
+     * @param maximumSize         The maximum number of customers kept in the cache.
+     * @param expireAfterWrite    How long a cached customer may be served before it is reloaded.
+     * @param invalidationChannel The channel invalidations of customers changed elsewhere arrive on.
+     * @param transactionManager  The primary (JDBC) transaction manager, cache misses are loaded under.
+     */
+    public CachingCustomerDAO(@Qualifier("metered") CustomerDAO delegate,
+                              @Value("${customer.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${customer.cache.expire-after-write:5m}") Duration expireAfterWrite,
+                              CustomerCacheInvalidationChannel invalidationChannel,
+                              PlatformTransactionManager transactionManager) {
+        this.delegate = delegate;
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        this.customersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        invalidationChannel.subscribe(this::invalidate);
+    }
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counters of the cache.
+     *
+     * @return The current cache statistics.
+     */
+    public CacheStats stats() {
+        return customersById.stats();
+    }
+
+    /**
+     * Returns the approximate number of customers currently cached.
+     *
+     * @return The estimated cache size.
+     */
+    public long estimatedSize() {
+        return customersById.estimatedSize();
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return delegate.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return delegate.selectCustomersAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit) {
+        return delegate.selectCustomers(filter, sort, after, limit);
+    }
+
+    @Override
+    public void streamAllCustomers(int chunkSize, Consumer<Customer> consumer) {
+        delegate.streamAllCustomers(chunkSize, consumer);
+    }
+
+    @Override
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        delegate.exportCustomersAsCsv(outputStream);
+    }
+
+    /**
+     * Retrieves a customer by ID, loading it from the delegate on a cache miss.
+     * The miss is loaded in a read-write transaction, which the delegate's read-only one joins, so it is read
+     * from the primary. Missing customers are not cached. A copy is returned, so callers may modify it freely.
+     *
+     * @param id The ID of the customer to retrieve.
+     * @return An Optional containing the found customer or an empty Optional if no customer is found.
+     */
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        Customer customer = customersById.get(id, key -> primaryRead.execute(status -> delegate.selectCustomerById(key).orElse(null)));
+        return customer == null ? Optional.empty() : Optional.of(new Customer(customer));
+    }
+
+    /**
+     * Retrieves the version of a customer, answering from the cache when the customer is cached.
+     * A miss is passed to the delegate without loading the customer into the cache.
+     *
+     * @param id The ID of the customer.
+     * @return An Optional containing the customer's version or an empty Optional if no customer is found.
+     */
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer id) {
+        Customer customer = customersById.getIfPresent(id);
+        return customer != null ? Optional.of(customer.getVersion()) : delegate.selectCustomerVersion(id);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        delegate.insertCustomer(customer);
+        if (customer.getId() != null) {
+            customersById.invalidate(customer.getId());
+        }
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        delegate.insertCustomers(customers);
+        customers.forEach(customer -> customersById.invalidate(customer.getId()));
+    }
+
+    @Override
+    public Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers) {
+        Optional<List<Customer>> inserted = delegate.importCustomers(importId, firstRow, customers);
+        inserted.ifPresent(list -> list.forEach(customer -> customersById.invalidate(customer.getId())));
+        return inserted;
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return delegate.selectExistingEmails(emails);
+    }
+
+    @Override
+    public Set<Integer> selectExistingIds(Collection<Integer> ids) {
+        return delegate.selectExistingIds(ids);
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        return delegate.existsPersonWithEmail(email);
+    }
+
+    /**
+     * Checks if a customer exists, answering from the cache when the customer is cached.
+     *
+     * @param id The ID to check for existence.
+     * @return True if a customer with the specified ID exists, false otherwise.
+     */
+    @Override
+    public boolean existsPersonWithId(Integer id) {
+        return customersById.getIfPresent(id) != null || delegate.existsPersonWithId(id);
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId) {
+        delegate.deleteCustomerById(customerId);
+        customersById.invalidate(customerId);
+    }
+
+    @Override
+    public Set<Integer> deleteCustomersByIds(Collection<Integer> ids) {
+        Set<Integer> deleted = delegate.deleteCustomersByIds(ids);
+        customersById.invalidateAll(deleted);
+        return deleted;
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        delegate.updateCustomer(update);
+        customersById.invalidate(update.getId());
+    }
+
+    @Override
+    public Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        Optional<Customer> updated = delegate.updateCustomerFields(id, update, expectedVersion);
+        customersById.invalidate(id);
+        return updated;
+    }
+
+    @Override
+    public List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates) {
+        List<Customer> updated = delegate.updateCustomersFields(updates);
+        customersById.invalidateAll(updates.keySet());
+        return updated;
+    }
+
+    @Override
+    public boolean countsChanges() {
+        return delegate.countsChanges();
+    }
+
+    /**
+     * Drops the customers named by an invalidation from the cache.
+     */
+    private void invalidate(CustomerCacheInvalidation invalidation) {
+        if (invalidation.all()) {
+            customersById.invalidateAll();
+        } else {
+            customersById.invalidateAll(invalidation.customerIds());
+        }
+    }
+}
@@ -1,19 +1,39 @@
 package com.nastia.customer;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.util.Objects;
 
 /**
  * Customer entity representing a customer record in the database.
+ * Customers are kept in the Hibernate second-level cache, in the {@value #CACHE_REGION} region, and the email
+ * is their natural id, so lookups by email resolve to an ID through the {@value #NATURAL_ID_CACHE_REGION} region.
  */
 @Entity // Marks this class as a JPA entity.
+@Cacheable // Lets the second-level cache hold customers.
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Customer.CACHE_REGION) // Updates through Hibernate replace the cached entry once committed.
+@NaturalIdCache(region = Customer.NATURAL_ID_CACHE_REGION) // Caches which customer an email belongs to.
+@Table(
+        name = "customer", // Maps the entity to the table created by the Flyway migrations.
+        uniqueConstraints = @UniqueConstraint(
+                name = "customer_email_unique", // Mirrors the unique index on email declared in V2.
+                columnNames = "email"
+        )
+)
 public class Customer {
 
+    public static final String CACHE_REGION = "customer"; // Second-level cache region of customers.
+    public static final String NATURAL_ID_CACHE_REGION = "customer-email"; // Second-level cache region of email to ID resolutions.
+
     @Id // Indicates the primary key of the entity.
     @SequenceGenerator(
             name = "customer_id_sequence", // Defines a sequence generator named "customer_id_sequence".
-            sequenceName = "customer_id_sequence" // Specifies the database sequence name to use.
+            sequenceName = "customer_id_sequence", // Specifies the database sequence name to use.
+            allocationSize = CustomerIdAllocator.BLOCK_SIZE // Reserves a block of IDs per nextval, matching the sequence increment.
     )
     @GeneratedValue(
             strategy = GenerationType.SEQUENCE, // Indicates that the ID should be generated using a database sequence.
@@ -24,12 +44,17 @@ public class Customer {
     @Column(nullable = false) // Specifies that the name column cannot be null in the database.
     private String name; // Stores the customer's name.
 
+    @NaturalId(mutable = true) // Identifies a customer besides the ID; mutable, as the email can be updated.
     @Column(nullable = false) // Specifies that the email column cannot be null.
     private String email; // Stores the customer's email address.
 
     @Column(nullable = false) // Specifies that the age column cannot be null.
     private Integer age; // Stores the customer's age.
 
+    @Version // Enables optimistic locking: the version is compared and incremented on every update.
+    @Column(nullable = false) // Specifies that the version column cannot be null.
+    private Long version; // Number of times the customer has been updated.
+
     /**
      * Default constructor required by JPA.
      */
@@ -62,6 +87,16 @@ public class Customer {
         this.age = age;
     }
 
+    /**
+     * Copy constructor creating a detached copy of another customer.
+     * Used by in-memory stores so callers can never mutate the stored instance.
+     * @param other The customer to copy.
+     */
+    public Customer(Customer other) {
+        this(other.id, other.name, other.email, other.age);
+        this.version = other.version;
+    }
+
     // Getters and Setters for each of the properties.
 
     public Integer getId() {
@@ -96,6 +131,14 @@ public class Customer {
         this.age = age;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         // Method to compare this customer to another object.
@@ -122,6 +165,7 @@ public class Customer {
                 ", name='" + name + '\'' +
                 ", email='" + email + '\'' +
                 ", age=" + age +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,73 @@
+package com.nastia.customer;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint exposing the statistics of the customer cache at /actuator/customercache,
+ * so the cache can be sized from its hit rate and eviction count. Those of the Hibernate second-level
+ * cache regions below it are reported under {@code secondLevel}.
+ */
+@Component // Registers the endpoint as a Spring-managed bean.
+@Endpoint(id = "customercache") // Exposes this bean as an actuator endpoint.
+public class CustomerCacheEndpoint {
+
+    private final CachingCustomerDAO cachingCustomerDAO; // The cache whose statistics are reported.
+    private final Statistics statistics; // Hibernate statistics, including those of the second-level cache.
+
+    /**
+     * Constructs the endpoint.
+     *
+     * @param cachingCustomerDAO   The caching DAO to report on.
+     * @param entityManagerFactory The JPA entity manager factory, a Hibernate session factory.
+     */
+    public CustomerCacheEndpoint(CachingCustomerDAO cachingCustomerDAO, EntityManagerFactory entityManagerFactory) {
+        this.cachingCustomerDAO = cachingCustomerDAO;
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Reports the current cache statistics.
+     *
+     * @return The hit, miss and eviction counters along with the current cache size, and the hit, miss and put
+     *         counters of the second-level cache of customers, of email resolutions and of queries.
+     */
+    @ReadOperation // Maps HTTP GET requests on the endpoint to this method.
+    public Map<String, Object> stats() {
+        CacheStats stats = cachingCustomerDAO.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cachingCustomerDAO.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+        Map<String, Object> secondLevel = new LinkedHashMap<>();
+        CacheRegionStatistics customers = statistics.getDomainDataRegionStatistics(Customer.CACHE_REGION);
+        secondLevel.put("customers", counters(customers.getHitCount(), customers.getMissCount(), customers.getPutCount()));
+        secondLevel.put("naturalIds", counters(statistics.getNaturalIdCacheHitCount(),
+                statistics.getNaturalIdCacheMissCount(), statistics.getNaturalIdCachePutCount()));
+        secondLevel.put("queries", counters(statistics.getQueryCacheHitCount(),
+                statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount()));
+        result.put("secondLevel", secondLevel);
+        return result;
+    }
+
+    private static Map<String, Object> counters(long hitCount, long missCount, long putCount) {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("hitCount", hitCount);
+        counters.put("missCount", missCount);
+        counters.put("putCount", putCount);
+        counters.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        return counters;
+    }
+}
@@ -0,0 +1,78 @@
+package com.nastia.customer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Table-level change counter of the customer collection, spread over the rows of {@code customer_change}.
+ * Writers bump it in the transaction of their change, right before it commits, and readers read it before the
+ * data: a reader seeing the new counter also sees the change, and a crash can never commit a change without its
+ * count. At worst a reader pairs the old counter with new data, which only costs the client one extra full
+ * response. The row lock is taken last and held only while the transaction commits, and each write bumps a
+ * randomly picked row, so concurrent writers rarely queue on the same lock at all. The counter is the sum of
+ * the rows, which grows with every committed write. Because it lives in the database it is shared by every
+ * instance of the service.
+ */
+@Component // Marks this class as a Spring-managed component.
+public class CustomerChangeCounter {
+
+    private static final int SLOTS = 16; // Matches the rows of customer_change, with IDs from 1.
+
+    private final JdbcTemplate jdbcTemplate; // Used to read and bump the counter row.
+
+    /**
+     * Constructs the counter.
+     *
+     * @param jdbcTemplate JDBC template on the customer datasource.
+     */
+    public CustomerChangeCounter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Reads the current value of the counter, the sum of its rows.
+     *
+     * @return The number of changes counted so far.
+     */
+    public long current() {
+        return jdbcTemplate.queryForObject("SELECT SUM(version) FROM customer_change", Long.class);
+    }
+
+    /**
+     * Counts the changes of the current transaction: the counter is bumped once, right before the transaction
+     * commits, however often this is called within it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY) // The count must commit, or roll back, with the change.
+    public void incrementOnCommit() {
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                increment();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(CustomerChangeCounter.this);
+            }
+        });
+    }
+
+    /**
+     * Counts a change made without a transaction this counter can join, such as one in memory or on the shards.
+     * Must be called after the change is made; the row lock is only held for this statement.
+     */
+    public void increment() {
+        jdbcTemplate.update("UPDATE customer_change SET version = version + 1 WHERE id = ?",
+                ThreadLocalRandom.current().nextInt(SLOTS) + 1);
+    }
+}
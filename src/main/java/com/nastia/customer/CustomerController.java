@@ -1,7 +1,20 @@
 package com.nastia.customer;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.nastia.exception.RequestValidationException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 
@@ -11,44 +24,215 @@ import java.util.List;
  */
 @RestController // Marks this class as a controller where every method returns a domain object instead of a view.
 @RequestMapping("api/v1/customers") // Maps HTTP requests to handler methods of MVC and REST controllers.
+@Profile("!reactive") // Replaced by ReactiveCustomerController when the reactive stack is selected.
 public class CustomerController {
 
+    static final String NDJSON = "application/x-ndjson"; // Media type of the streamed listing, one JSON object per line.
+    static final String CSV = "text/csv"; // Media type of CSV exports and imports.
+    private static final int STREAM_FLUSH_ROWS = 500; // Lines of a streamed listing sent to the client at once.
+
     private final CustomerService customerService; // Declares a dependency on the CustomerService.
+    private final CustomerJsonWriter jsonWriter; // Serializes customers written to the streamed listing.
+    private final CustomerImporter importer; // Loads imported files.
 
     /**
      * Constructs a CustomerController with a CustomerService.
      * @param customerService The service layer for customer operations, injected by Spring's dependency injection.
+     * @param jsonWriter The customer JSON writer, also behind the converter of the other customer responses.
+     * @param importer The importer of customer files.
      */
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(CustomerService customerService, CustomerJsonWriter jsonWriter, CustomerImporter importer) {
         this.customerService = customerService;
+        this.jsonWriter = jsonWriter;
+        this.importer = importer;
     }
 
     /**
-     * Handles GET requests to retrieve all customers.
-     * @return A list of all customers.
+     * Handles GET requests to retrieve a page of customers, using keyset pagination on the customer ID.
+     * Filtering and sorting happen in the database, so only the requested page is transferred.
+     * @param after The cursor returned with the previous page; omit it to get the first page.
+     * @param limit The maximum number of customers on the page.
+     * @param minAge The minimum age, inclusive.
+     * @param maxAge The maximum age, inclusive.
+     * @param name A case-insensitive prefix of the name.
+     * @param email A case-insensitive prefix of the email.
+     * @param domain The email domain, e.g. {@code gmail.com}.
+     * @param search Case-insensitive text the name or email must contain.
+     * @param sort The order of the page, e.g. {@code age,desc}; by ID if omitted.
+     * @param webRequest The current request, checked against the collection ETag.
+     * @return The requested page together with the cursor of the next one, or null when answered with 304 Not Modified.
      */
     @GetMapping // Maps HTTP GET requests onto specific handler methods.
-    public List<Customer> getCustomers() {
-        return customerService.getAllCustomers();
+    public CustomerPage getCustomers(@RequestParam(value = "after", required = false) String after,
+                                     @RequestParam(value = "limit", defaultValue = "" + CustomerService.DEFAULT_PAGE_SIZE) int limit,
+                                     @RequestParam(value = "minAge", required = false) Integer minAge,
+                                     @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                     @RequestParam(value = "name", required = false) String name,
+                                     @RequestParam(value = "email", required = false) String email,
+                                     @RequestParam(value = "domain", required = false) String domain,
+                                     @RequestParam(value = "q", required = false) String search,
+                                     @RequestParam(value = "sort", required = false) String sort,
+                                     WebRequest webRequest) {
+        if (webRequest.checkNotModified(collectionETag())) {
+            return null;
+        }
+        CustomerFilter filter = new CustomerFilter(minAge, maxAge, name, email, domain, search);
+        return customerService.getCustomersPage(filter, CustomerSort.parse(sort), after, limit);
+    }
+
+    /**
+     * Handles GET requests to stream all customers as newline-delimited JSON.
+     * Customers are written as they are read and flushed to the client every {@value #STREAM_FLUSH_ROWS} lines,
+     * so the full table is never held in memory and the client receives them while the rest is still read.
+     * @param webRequest The current request, checked against the collection ETag.
+     * @return A streaming body writing one customer per line, or null when answered with 304 Not Modified.
+     */
+    @GetMapping(value = "/stream", produces = NDJSON) // Maps streaming GET requests, served as NDJSON.
+    public ResponseEntity<StreamingResponseBody> streamCustomers(WebRequest webRequest) {
+        if (webRequest.checkNotModified(collectionETag())) {
+            return null;
+        }
+        // Set explicitly, as streaming bodies skip content negotiation and the server only compresses typed responses.
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(ndjsonBody());
+    }
+
+    /**
+     * Handles GET requests to export all customers as a file to download, for backups and migrations.
+     * The file is written as it is read from the database, so its size is not limited by memory.
+     * @param format The file format: {@code csv}, with a header row, or {@code ndjson}.
+     * @return A streaming body writing the file.
+     */
+    @GetMapping("/export") // Maps HTTP GET requests for a full export onto this handler method.
+    public ResponseEntity<StreamingResponseBody> exportCustomers(@RequestParam(value = "format", defaultValue = "csv") String format) {
+        StreamingResponseBody body;
+        MediaType mediaType;
+        switch (format) {
+            case "csv" -> {
+                body = customerService::exportCustomersAsCsv;
+                mediaType = MediaType.parseMediaType(CSV + ";charset=UTF-8");
+            }
+            case "ndjson" -> {
+                body = ndjsonBody();
+                mediaType = MediaType.parseMediaType(NDJSON);
+            }
+            default -> throw new RequestValidationException("format must be csv or ndjson");
+        }
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("customers." + format).build().toString())
+                .body(body);
+    }
+
+    /**
+     * Handles POST requests to import customers from a CSV or NDJSON file, as produced by an export.
+     * The file is loaded while it is uploaded, in parallel chunks; customers whose email is taken are skipped.
+     * An interrupted import is resumed by sending the same file again with the importId of the first attempt.
+     * @param importId The ID of an import to resume; omit it to start a new one, whose ID is returned.
+     * @param contentType The Content-Type of the file: text/csv or application/x-ndjson.
+     * @param file The uploaded file.
+     * @return The number of customers imported and of rows skipped.
+     * @throws IOException If reading the upload fails.
+     */
+    @PostMapping(value = "/import", consumes = {CSV, NDJSON}) // Maps HTTP POST requests with a file to import onto this handler method.
+    public CustomerImportResult importCustomers(@RequestParam(value = "importId", required = false) String importId,
+                                                @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                InputStream file) throws IOException {
+        if (MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(NDJSON))) {
+            return importer.importNdjson(importId, file);
+        }
+        return importer.importCsv(importId, file);
+    }
+
+    /**
+     * Builds a streaming body writing all customers as newline-delimited JSON, flushed chunk by chunk.
+     */
+    private StreamingResponseBody ndjsonBody() {
+        return outputStream -> {
+            try (JsonGenerator generator = jsonWriter.createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null); // Lines are separated by the newline written below.
+                int[] unflushed = {0};
+                customerService.streamAllCustomers(customer -> {
+                    try {
+                        jsonWriter.writeCustomer(generator, customer);
+                        generator.writeRaw('\n');
+                        if (++unflushed[0] == STREAM_FLUSH_ROWS) {
+                            generator.flush();
+                            unflushed[0] = 0;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
     }
 
     /**
      * Handles GET requests to retrieve a specific customer by their ID.
+     * The response carries the customer's version as a strong ETag. A request whose If-None-Match
+     * still matches the current version is answered with 304 Not Modified after looking up only
+     * the version, without loading or serializing the customer.
      * @param customerId The ID of the customer to retrieve.
-     * @return The customer with the specified ID.
+     * @param webRequest The current request, checked against the customer's ETag.
+     * @return The customer with the specified ID, or null when answered with 304 Not Modified.
      */
     @GetMapping("/{customerId}") // Maps HTTP GET requests for a customer's ID onto specific handler methods.
-    public Customer getCustomer(@PathVariable("customerId") Integer customerId) {
-        return customerService.getCustomer(customerId);
+    public ResponseEntity<Customer> getCustomer(@PathVariable("customerId") Integer customerId, WebRequest webRequest) {
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && webRequest.checkNotModified(eTag(customerService.getCustomerVersion(customerId)))) {
+            return null;
+        }
+        Customer customer = customerService.getCustomer(customerId);
+        return ResponseEntity.ok().eTag(eTag(customer.getVersion())).body(customer);
     }
 
     /**
      * Handles POST requests to register a new customer.
+     * With write-behind enabled the customer is only queued, so the response is 202 Accepted and carries
+     * the allocated customer, its location and its ETag; the customer can be read back right away.
      * @param request The request body containing the new customer's information.
+     * @return An empty 200 response, or 202 Accepted with the new customer in write-behind mode.
      */
     @PostMapping // Maps HTTP POST requests onto specific handler methods, used to create a new customer.
-    public void registerCustomer(@RequestBody CustomerRegistrationRequest request) {
-        customerService.addCustomer(request);
+    public ResponseEntity<Customer> registerCustomer(@RequestBody CustomerRegistrationRequest request) {
+        Customer customer = customerService.addCustomer(request);
+        if (!customerService.isWriteBehind()) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}").buildAndExpand(customer.getId()).toUri())
+                .eTag(eTag(customer.getVersion()))
+                .body(customer);
+    }
+
+    /**
+     * Handles POST requests to register many customers at once.
+     * @param requests The request body containing an array of new customers.
+     * @return The outcome of each registration, in the order of the request.
+     */
+    @PostMapping("/bulk") // Maps HTTP POST requests for bulk registration onto this handler method.
+    public List<BulkRegistrationResult> registerCustomers(@RequestBody List<CustomerRegistrationRequest> requests) {
+        return customerService.addCustomers(requests);
+    }
+
+    /**
+     * Handles PATCH requests to update many customers at once, all or nothing.
+     * @param requests The request body containing an array of updates, each with the ID of its customer.
+     * @return The number of customers updated and the IDs that do not exist.
+     */
+    @PatchMapping("/bulk") // Maps HTTP PATCH requests for bulk updates onto this handler method.
+    public BulkChangeResult updateCustomers(@RequestBody List<BulkUpdateRequest> requests) {
+        return customerService.updateCustomers(requests);
+    }
+
+    /**
+     * Handles POST requests to delete many customers at once.
+     * @param ids The request body containing an array of customer IDs.
+     * @return The number of customers deleted and the IDs that do not exist.
+     */
+    @PostMapping("/bulk/delete") // Maps HTTP POST requests for bulk deletes onto this handler method.
+    public BulkChangeResult deleteCustomers(@RequestBody List<Integer> ids) {
+        return customerService.deleteCustomersByIds(ids);
     }
 
     /**
@@ -62,12 +246,60 @@ public class CustomerController {
 
     /**
      * Handles PUT requests to update an existing customer's information.
+     * With an If-Match header carrying the customer's version, the update is only applied if nobody
+     * else has modified the customer since that version was read.
      * @param customerId The ID of the customer to update.
+     * @param ifMatch The optional If-Match header, e.g. {@code "3"}.
      * @param updateRequest The request body containing the customer's updated information.
+     * @return An empty response carrying the ETag of the updated customer, 202 Accepted in write-behind mode.
      */
     @PutMapping("{customerId}") // Maps HTTP PUT requests onto specific handler methods, used to update a customer's information.
-    public void deleteCustomer(@PathVariable("customerId") Integer customerId,
-                               @RequestBody CustomerUpdateRequest updateRequest) {
-        customerService.updateCustomer(customerId, updateRequest);
+    public ResponseEntity<Void> deleteCustomer(@PathVariable("customerId") Integer customerId,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                               @RequestBody CustomerUpdateRequest updateRequest) {
+        Customer updated = customerService.updateCustomer(customerId, updateRequest, parseVersion(ifMatch));
+        ResponseEntity.BodyBuilder response = customerService.isWriteBehind() ? ResponseEntity.accepted() : ResponseEntity.ok();
+        return response.eTag(eTag(updated.getVersion())).build();
+    }
+
+    /**
+     * Builds the strong ETag of a customer from its version, the form If-Match and If-None-Match expect.
+     * @param version The customer's version.
+     * @return The quoted ETag, e.g. {@code "3"}.
+     */
+    static String eTag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Builds the ETag of the customer collection from the table-level change counter.
+     * The counter is read before any customer, so a listing is never tagged newer than its content.
+     * The tag is weak, since the server compresses listings and does not compress responses with a strong ETag.
+     * @return The weak ETag, e.g. {@code W/"customers-42"}.
+     */
+    private String collectionETag() {
+        return "W/\"customers-" + customerService.getChangeCount() + "\"";
+    }
+
+    /**
+     * Parses the customer version out of an If-Match header.
+     * Throws RequestValidationException if the header is not a quoted version number.
+     * @param ifMatch The header value, possibly null.
+     * @return The version, or null if the header is absent or matches any version.
+     */
+    static Long parseVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+        try {
+            return Long.valueOf(tag);
+        } catch (NumberFormatException e) {
+            throw new RequestValidationException("If-Match must carry the customer version");
+        }
     }
 }
@@ -0,0 +1,140 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV encoding of customers, in the dialect of PostgreSQL's {@code COPY ... WITH (FORMAT csv)}: comma-separated,
+ * newline-terminated, with a field quoted only if it contains a comma, a quote or a line break, and quotes
+ * inside it doubled. Files written here and files written by COPY are therefore interchangeable.
+ */
+final class CustomerCsv {
+
+    static final String HEADER = "id,name,email,age,version"; // Header row of an export.
+    private static final int MAX_FIELD_LENGTH = 4096; // Longer fields are rejected rather than buffered.
+
+    private CustomerCsv() {
+    }
+
+    /**
+     * Appends a customer as one CSV row, with all columns of an export.
+     *
+     * @param out      The destination.
+     * @param customer The customer.
+     * @throws IOException If writing fails.
+     */
+    static void writeRow(Appendable out, Customer customer) throws IOException {
+        out.append(Integer.toString(customer.getId())).append(',');
+        writeField(out, customer.getName());
+        out.append(',');
+        writeField(out, customer.getEmail());
+        out.append(',').append(Integer.toString(customer.getAge()))
+                .append(',').append(Long.toString(customer.getVersion()))
+                .append('\n');
+    }
+
+    /**
+     * Appends a field, quoting it if it contains a character that would otherwise end it.
+     *
+     * @param out   The destination.
+     * @param value The field value.
+     * @throws IOException If writing fails.
+     */
+    static void writeField(Appendable out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    /**
+     * Streaming CSV parser reading one record at a time, so a file of any size is parsed in constant memory.
+     * Records may end with LF or CRLF; quoted fields may span lines.
+     */
+    static final class Parser {
+
+        private final Reader reader; // The CSV text, expected to be buffered.
+        private long record; // Number of records read so far, the header included.
+
+        Parser(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Returns the number of the last record read, counting from 1 for the header.
+         */
+        long record() {
+            return record;
+        }
+
+        /**
+         * Reads the next record.
+         * Throws RequestValidationException if a field is unterminated or too long.
+         *
+         * @return The fields of the record, or null at the end of the input.
+         * @throws IOException If reading fails.
+         */
+        List<String> next() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            record++;
+            List<String> fields = new ArrayList<>(5);
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new RequestValidationException("row %d: unterminated quoted field".formatted(record - 1));
+                    }
+                    if (c == '"') {
+                        c = reader.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue; // Look at the character after the closing quote as an unquoted one.
+                        }
+                    }
+                    append(field, c);
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c == '"' && field.isEmpty()) {
+                    quoted = true;
+                } else if (c != '\r') {
+                    append(field, c);
+                }
+                c = reader.read();
+            }
+        }
+
+        private void append(StringBuilder field, int c) {
+            if (field.length() == MAX_FIELD_LENGTH) {
+                throw new RequestValidationException(
+                        "row %d: field longer than %d characters".formatted(record - 1, MAX_FIELD_LENGTH));
+            }
+            field.append((char) c);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors of the customer listing.
+ * A cursor carries the sort key of the last customer of a page, its sort value and ID, so the next page resumes
+ * right after that key even if the customer has since been changed or deleted. Listings ordered by ID use the ID
+ * itself as their cursor; other orders use the URL-safe Base64 of the sort, the ID and the sort value.
+ */
+final class CustomerCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding(); // Keeps cursors URL-safe.
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private CustomerCursor() {
+    }
+
+    /**
+     * Returns the cursor of the page following a customer.
+     *
+     * @param sort The order of the listing.
+     * @param last The last customer of the page.
+     * @return The opaque cursor.
+     */
+    static String encode(CustomerSort sort, Customer last) {
+        if (sort.field() == CustomerSort.Field.ID) {
+            return last.getId().toString();
+        }
+        String key = direction(sort) + '\n' + last.getId() + '\n' + value(sort.field(), last);
+        return ENCODER.encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor into the sort key the next page starts after: a customer with only its ID and sort field set.
+     * Throws RequestValidationException if the cursor is malformed or was issued for another order.
+     *
+     * @param sort   The order of the listing.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @return The sort key, or null for the first page.
+     */
+    static Customer decode(CustomerSort sort, String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        if (sort.field() == CustomerSort.Field.ID) {
+            return new Customer(number(cursor), null, null, null);
+        }
+        String[] parts;
+        try {
+            parts = new String(DECODER.decode(cursor), StandardCharsets.UTF_8).split("\n", 3);
+        } catch (IllegalArgumentException e) {
+            throw invalnumber();
+        }
+        if (parts.length != 3) {
+            throw invalnumber();
+        }
+        if (!parts[0].equals(direction(sort))) {
+            throw new RequestValidationException("the cursor belongs to a listing in another order, restart from the first page");
+        }
+        Customer key = new Customer(number(parts[1]), null, null, null);
+        switch (sort.field()) {
+            case NAME -> key.setName(parts[2]);
+            case EMAIL -> key.setEmail(parts[2]);
+            case AGE -> key.setAge(number(parts[2]));
+            default -> throw invalnumber();
+        }
+        return key;
+    }
+
+    private static String direction(CustomerSort sort) {
+        return sort.field().attribute() + (sort.descending() ? ",desc" : ",asc");
+    }
+
+    private static String value(CustomerSort.Field field, Customer customer) {
+        return switch (field) {
+            case NAME -> customer.getName();
+            case EMAIL -> customer.getEmail();
+            case AGE -> customer.getAge().toString();
+            case ID -> customer.getId().toString();
+        };
+    }
+
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalnumber();
+        }
+    }
+
+    private static RequestValidationException invalnumber() {
+        return new RequestValidationException("after is not a valid cursor");
+    }
+}
@@ -1,7 +1,13 @@
 package com.nastia.customer;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Interface for data access operations related to customers.
@@ -15,6 +21,47 @@ public interface CustomerDAO {
      */
     List<Customer> selectAllCustomers();
 
+    /**
+     * Retrieves a page of customers ordered by ID, starting right after the given ID (keyset pagination).
+     *
+     * @param afterId the ID of the last customer of the previous page, or null to start from the beginning.
+     * @param limit   the maximum number of customers to return.
+     * @return a list of at most {@code limit} customers with an ID greater than {@code afterId}, ordered by ID.
+     */
+    List<Customer> selectCustomersAfter(Integer afterId, int limit);
+
+    /**
+     * Retrieves a page of the customers matching a filter, in the given order, starting right after a cursor.
+     * The filtering, sorting and limiting happen in the data store, so only the page itself is read.
+     *
+     * @param filter the filters the customers must match.
+     * @param sort   the order of the listing.
+     * @param after  the last customer of the previous page, or null to start from the beginning;
+     *               only its ID and sort field are read.
+     * @param limit  the maximum number of customers to return.
+     * @return a list of at most {@code limit} matching customers, in the given order.
+     */
+    List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit);
+
+    /**
+     * Streams all customers ordered by ID to the given consumer.
+     * Customers are fetched in chunks, so only one chunk is held in memory at a time.
+     *
+     * @param chunkSize the number of customers to fetch per chunk.
+     * @param consumer  the consumer receiving each customer in ID order.
+     */
+    void streamAllCustomers(int chunkSize, Consumer<Customer> consumer);
+
+    /**
+     * Writes all customers ordered by ID to a stream as CSV, a header row first, in the format of
+     * {@code COPY ... WITH (FORMAT csv, HEADER)}. Customers are written as they are read, so memory use
+     * does not grow with the number of customers.
+     *
+     * @param outputStream the stream receiving the UTF-8 encoded CSV; it is flushed but not closed.
+     * @throws IOException if writing to the stream fails.
+     */
+    void exportCustomersAsCsv(OutputStream outputStream) throws IOException;
+
     /**
      * Retrieves a customer by their ID.
      *
@@ -23,6 +70,14 @@ public interface CustomerDAO {
      */
     Optional<Customer> selectCustomerById(Integer id);
 
+    /**
+     * Retrieves only the version of a customer, without loading the rest of the row.
+     *
+     * @param id the ID of the customer.
+     * @return an Optional containing the customer's version, or an empty Optional if no customer is found.
+     */
+    Optional<Long> selectCustomerVersion(Integer id);
+
     /**
      * Inserts a new customer into the data store.
      *
@@ -30,6 +85,44 @@ public interface CustomerDAO {
      */
     void insertCustomer(Customer customer);
 
+    /**
+     * Inserts a batch of new customers into the data store, all or nothing.
+     * IDs are allocated for customers without one and written back to them.
+     *
+     * @param customers the customers to insert.
+     */
+    void insertCustomers(List<Customer> customers);
+
+    /**
+     * Loads one chunk of a customer import: inserts the customers whose email is not taken yet, skipping the
+     * others, and records the chunk as loaded. IDs are allocated for the inserted customers.
+     * A chunk recorded as loaded by an earlier run of the same import is skipped as a whole, so an
+     * interrupted import can be run again from the start; since taken emails are skipped too, loading a
+     * chunk twice never registers a customer twice.
+     *
+     * @param importId  the ID of the import.
+     * @param firstRow  the position of the chunk's first row in the imported file, identifying the chunk.
+     * @param customers the customers of the chunk.
+     * @return the customers inserted, or an empty Optional if the chunk had been loaded before.
+     */
+    Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers);
+
+    /**
+     * Finds which of the given emails are already taken, in a single lookup.
+     *
+     * @param emails the emails to check.
+     * @return the subset of the given emails that belong to existing customers.
+     */
+    Set<String> selectExistingEmails(Collection<String> emails);
+
+    /**
+     * Finds which of the given IDs belong to existing customers, in a single lookup.
+     *
+     * @param ids the IDs to check.
+     * @return the subset of the given IDs that belong to existing customers.
+     */
+    Set<Integer> selectExistingIds(Collection<Integer> ids);
+
     /**
      * Checks if a customer exists in the data store with the specified email.
      *
@@ -53,10 +146,54 @@ public interface CustomerDAO {
      */
     void deleteCustomerById(Integer customerId);
 
+    /**
+     * Deletes the customers with the given IDs in a single set-based write, all or nothing.
+     *
+     * @param ids the IDs of the customers to delete.
+     * @return the IDs of the customers that were deleted; the others did not exist.
+     */
+    Set<Integer> deleteCustomersByIds(Collection<Integer> ids);
+
     /**
      * Updates the information of an existing customer in the data store.
      *
      * @param update the customer object containing the updated information.
      */
     void updateCustomer(Customer update);
+
+    /**
+     * Applies a partial update to a customer in a single conditional write.
+     * Only the non-null fields of the update are written, and only if at least one of them differs
+     * from the stored value. On success the customer's version is incremented.
+     * Throws DuplicateResourceException if the new email belongs to another customer.
+     *
+     * @param id              the ID of the customer to update.
+     * @param update          the fields to change; null fields are left untouched.
+     * @param expectedVersion the version the caller last saw, or null to update whatever the current version is.
+     * @return the updated customer, or an empty Optional if nothing was written because the customer
+     * does not exist, its version differs from {@code expectedVersion}, or the update changes nothing.
+     */
+    Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion);
+
+    /**
+     * Applies partial updates to many customers in a single set-based write, all or nothing.
+     * Each update behaves like {@link #updateCustomerFields} without a version check: only its non-null fields
+     * are written, only if one of them differs from the stored value, and the customer's version is incremented.
+     * Throws DuplicateResourceException, writing nothing, if a new email belongs to another customer.
+     *
+     * @param updates the fields to change, keyed by the ID of the customer; null fields are left untouched.
+     * @return the updated customers; customers that do not exist or that no update changes are left out.
+     */
+    List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates);
+
+    /**
+     * Returns whether this data store bumps the table-level change counter in the transaction of every write
+     * itself, so the count commits together with the change. Writes to the other data stores are counted by
+     * their callers once they return.
+     *
+     * @return true if writes are counted by the data store.
+     */
+    default boolean countsChanges() {
+        return false;
+    }
 }
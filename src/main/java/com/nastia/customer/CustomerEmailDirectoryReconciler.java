@@ -0,0 +1,55 @@
+package com.nastia.customer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Periodically sweeps the email directory of the sharded customer DAO for customers without a claim and claims
+ * without a customer, see {@link CustomerShardedDataAccessService#backfillEmailDirectory()} and
+ * {@link CustomerShardedDataAccessService#reconcileEmailDirectory(Duration)}. A missing claim, left by writes made
+ * while another data store was in use, lets a second customer register the same email; an orphaned claim keeps
+ * its email taken for good, so new customers could never register with it. The first sweep runs at startup.
+ */
+@Component // Marks this class as a Spring-managed component, scheduled by Spring's task scheduler.
+@ConditionalOnProperty(name = "customer.sharding.reconcile.enabled", havingValue = "true") // Only active when enabled.
+public class CustomerEmailDirectoryReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerEmailDirectoryReconciler.class);
+
+    private final CustomerShardedDataAccessService shardedDAO; // The DAO owning the directory.
+    private final Duration grace; // How old a claim must be before it may be taken for an orphan.
+
+    /**
+     * Constructs the reconciler.
+     *
+     * @param shardedDAO The sharded customer DAO.
+     * @param grace      How long a write may take between claiming an email and committing its shard row.
+     */
+    public CustomerEmailDirectoryReconciler(@Qualifier("sharded") CustomerShardedDataAccessService shardedDAO,
+                                            @Value("${customer.sharding.reconcile.grace:5m}") Duration grace) {
+        this.shardedDAO = shardedDAO;
+        this.grace = grace;
+    }
+
+    /**
+     * Adds the missing claims and removes the orphaned ones of the directory, logging how many were found.
+     */
+    @Scheduled(fixedDelayString = "${customer.sharding.reconcile.interval:3600000}") // Milliseconds between sweeps.
+    public void reconcile() {
+        int added = shardedDAO.backfillEmailDirectory();
+        if (added > 0) {
+            log.warn("Added {} missing email directory claims", added);
+        }
+        int removed = shardedDAO.reconcileEmailDirectory(grace);
+        if (removed > 0) {
+            log.warn("Removed {} email directory claims without a customer", removed);
+        }
+    }
+}
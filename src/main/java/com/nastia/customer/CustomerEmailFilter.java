@@ -0,0 +1,78 @@
+package com.nastia.customer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * In-process filter answering "definitely not taken" for most unused emails without a database round trip.
+ * It is warmed from the customer table once the application is ready and kept current by the JPA DAO,
+ * which records every email it inserts or updates. Until warm-up has finished every email is reported
+ * as possibly taken, so callers fall back to the database. Deleted emails stay in the filter until the
+ * next restart; they only cost an extra query. The unique index on email remains the source of truth.
+ */
+@Component // Marks this class as a Spring-managed component.
+public class CustomerEmailFilter {
+
+    private static final int WARM_UP_PAGE_SIZE = 1000; // Number of emails read per page during warm-up.
+
+    private final CustomerRepository customerRepository; // Used to read the existing emails during warm-up.
+    private final EmailBloomFilter filter; // The underlying probabilistic set of emails.
+    private volatile boolean warm; // Whether warm-up has finished, so negatives can be trusted.
+
+    /**
+     * Constructs the filter.
+     *
+     * @param customerRepository        Spring Data JPA repository for Customer entities.
+     * @param expectedInsertions        The number of emails the filter is sized for.
+     * @param falsePositiveProbability  The wanted false positive probability at that size.
+     */
+    public CustomerEmailFilter(CustomerRepository customerRepository,
+                               @Value("${customer.email-filter.expected-insertions:1000000}") long expectedInsertions,
+                               @Value("${customer.email-filter.false-positive-probability:0.01}") double falsePositiveProbability) {
+        this.customerRepository = customerRepository;
+        this.filter = new EmailBloomFilter(expectedInsertions, falsePositiveProbability);
+    }
+
+    /**
+     * Loads every existing email into the filter, one keyset page of the email index at a time.
+     * Only the emails are read, so warm-up neither builds entities nor fills the second-level cache with them.
+     * Emails written while warm-up runs are recorded by the DAO directly, so none are missed.
+     */
+    @EventListener(ApplicationReadyEvent.class) // Runs once the application has started.
+    public void warmUp() {
+        String afterEmail = "";
+        List<String> page;
+        do {
+            page = customerRepository.findEmailsAfter(afterEmail, Limit.of(WARM_UP_PAGE_SIZE));
+            for (String email : page) {
+                filter.put(email);
+                afterEmail = email;
+            }
+        } while (page.size() == WARM_UP_PAGE_SIZE);
+        warm = true;
+    }
+
+    /**
+     * Records an email that is about to be written to the database.
+     *
+     * @param email The email to record.
+     */
+    public void add(String email) {
+        filter.put(email);
+    }
+
+    /**
+     * Checks whether an email may already be taken.
+     *
+     * @param email The email to check.
+     * @return False only if the email is definitely not taken, true if the database has to be asked.
+     */
+    public boolean mightBeTaken(String email) {
+        return !warm || filter.mightContain(email);
+    }
+}
@@ -0,0 +1,89 @@
+package com.nastia.customer;
+
+import java.util.Locale;
+
+/**
+ * A record representing the filters of a customer listing. Every filter is optional and all given filters must match.
+ * Text filters are case-insensitive and normalized to lower case on construction; blank ones are dropped.
+ */
+public record CustomerFilter(
+        // Minimum age, inclusive.
+        Integer minAge,
+        // Maximum age, inclusive.
+        Integer maxAge,
+        // Prefix the customer's name must start with.
+        String name,
+        // Prefix the customer's email must start with.
+        String email,
+        // Domain the customer's email must belong to, e.g. "gmail.com".
+        String emailDomain,
+        // Text the customer's name or email must contain.
+        String search
+) {
+
+    /**
+     * A filter matching every customer.
+     */
+    public static final CustomerFilter NONE = new CustomerFilter(null, null, null, null, null, null);
+
+    public CustomerFilter {
+        name = normalize(name);
+        email = normalize(email);
+        emailDomain = normalize(emailDomain);
+        search = normalize(search);
+    }
+
+    /**
+     * Checks whether no filter is set.
+     *
+     * @return true if this filter matches every customer.
+     */
+    public boolean isEmpty() {
+        return minAge == null && maxAge == null && name == null && email == null && emailDomain == null && search == null;
+    }
+
+    /**
+     * Checks whether a customer matches every filter, with the same semantics as the database query.
+     *
+     * @param customer the customer to check.
+     * @return true if the customer matches.
+     */
+    public boolean matches(Customer customer) {
+        if (minAge != null && customer.getAge() < minAge) {
+            return false;
+        }
+        if (maxAge != null && customer.getAge() > maxAge) {
+            return false;
+        }
+        String customerName = lowerCase(customer.getName());
+        String customerEmail = lowerCase(customer.getEmail());
+        if (name != null && !customerName.startsWith(name)) {
+            return false;
+        }
+        if (email != null && !customerEmail.startsWith(email)) {
+            return false;
+        }
+        if (emailDomain != null && !customerEmail.endsWith("@" + emailDomain)) {
+            return false;
+        }
+        return search == null || customerName.contains(search) || customerEmail.contains(search);
+    }
+
+    /**
+     * Returns the domain part of an email in lower case, the key emails are filtered by domain on.
+     *
+     * @param email the email address.
+     * @return the part after the last '@', or an empty string if there is none.
+     */
+    static String domainOf(String email) {
+        return lowerCase(email.substring(email.lastIndexOf('@') + 1));
+    }
+
+    static String lowerCase(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalize(String value) {
+        return value == null || value.isBlank() ? null : lowerCase(value.trim());
+    }
+}
@@ -0,0 +1,43 @@
+package com.nastia.customer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out customer IDs from {@code customer_id_sequence} in pooled blocks, for rows written with plain JDBC.
+ * Every {@code nextval} reserves a whole block of {@link #BLOCK_SIZE} IDs ending at the returned value,
+ * the same interpretation Hibernate's pooled optimizer applies to the sequence, so IDs allocated here
+ * never collide with IDs Hibernate assigns to entities it persists itself.
+ */
+@Component // Marks this class as a Spring-managed component.
+public class CustomerIdAllocator {
+
+    static final int BLOCK_SIZE = 50; // Must match the sequence increment and the @SequenceGenerator allocation size.
+
+    private final JdbcTemplate jdbcTemplate; // Used to draw blocks from the sequence.
+    private int next = 1; // Next ID to hand out from the current block.
+    private int last = 0; // Last ID of the current block.
+
+    /**
+     * Constructs the allocator.
+     *
+     * @param jdbcTemplate JDBC template on the customer datasource.
+     */
+    public CustomerIdAllocator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Allocates the next customer ID, drawing a new block from the sequence when the current one is used up.
+     *
+     * @return A customer ID no other writer will use.
+     */
+    public synchronized int nextId() {
+        if (next > last) {
+            Integer high = jdbcTemplate.queryForObject("SELECT nextval('customer_id_sequence')", Integer.class);
+            last = high;
+            next = Math.max(1, high - BLOCK_SIZE + 1);
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,24 @@
+package com.nastia.customer;
+
+import java.util.List;
+
+/**
+ * A record summarizing a customer import.
+ */
+public record CustomerImportResult(
+        // Identifies the import; running it again with the same ID skips the chunks already loaded.
+        String importId,
+        // Number of rows read from the file.
+        long rows,
+        // Number of customers registered.
+        long imported,
+        // Number of valid rows skipped because their email was already taken, by an existing customer or an earlier row.
+        long duplicates,
+        // Number of rows skipped because a field was missing or invalid.
+        long invalid,
+        // Number of valid rows skipped because their chunk was loaded by an earlier run of the import.
+        long resumed,
+        // Why the first invalid rows were skipped, at most ten of them.
+        List<String> errors
+) {
+}
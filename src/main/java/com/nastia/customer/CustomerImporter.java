@@ -0,0 +1,332 @@
+package com.nastia.customer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.nastia.exception.RequestValidationException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Imports customers from CSV or NDJSON files of any size.
+ *
+ * The file is parsed as it arrives and cut into chunks of {@code chunk-size} rows. Up to {@code parallelism}
+ * chunks are loaded at once on a pool of loader threads, each in its own transaction, while the request thread
+ * parses ahead; when all loaders are busy, parsing waits, so at most {@code parallelism + 1} chunks are held in
+ * memory however large the file is. Customers whose email is already taken are skipped rather than failing their
+ * chunk, and every loaded chunk is checkpointed under the import's ID, so an import interrupted by a failure or a
+ * dropped connection is resumed by sending the same file again with the same ID.
+ *
+ * IDs in the file are ignored: imported customers get new IDs, as registered customers do.
+ */
+@Component // Marks this class as a Spring-managed component.
+public class CustomerImporter {
+
+    private static final int MAX_IMPORT_ID_LENGTH = 64; // Matches the import_id column of the checkpoints.
+    private static final int MAX_FIELD_LENGTH = 255; // Matches the name and email columns.
+    private static final int MAX_REPORTED_ERRORS = 10; // Number of invalid rows described in the result.
+
+    private final CustomerDAO customerDAO;
+    private final CustomerChangeCounter changeCounter; // Counts writes the DAO does not count itself, for the collection ETag.
+    private final ObjectReader jsonReader; // Reads the lines of an NDJSON file as trees, one at a time.
+    private final int chunkSize; // Rows per chunk, each loaded in one transaction.
+    private final int parallelism; // Chunks loaded at once per import.
+    private final ExecutorService loaders; // Threads loading chunks, shared by all imports.
+    private final Timer importTimer;
+
+    /**
+     * Constructs the importer.
+     *
+     * @param customerDAO   The data access object the chunks are loaded through.
+     * @param changeCounter The table-level change counter, bumped after every chunk that registered customers, unless the DAO counted it.
+     * @param objectMapper  The Jackson mapper configured by Spring Boot.
+     * @param chunkSize     The number of rows per chunk.
+     * @param parallelism   The number of chunks loaded at once per import.
+     * @param loaderThreads The number of loader threads shared by all imports.
+     * @param meterRegistry The registry the import timer is registered with.
+     */
+    public CustomerImporter(@Qualifier("cached") CustomerDAO customerDAO,
+                            CustomerChangeCounter changeCounter,
+                            ObjectMapper objectMapper,
+                            @Value("${customer.import.chunk-size:5000}") int chunkSize,
+                            @Value("${customer.import.parallelism:4}") int parallelism,
+                            @Value("${customer.import.loader-threads:8}") int loaderThreads,
+                            MeterRegistry meterRegistry) {
+        this.customerDAO = customerDAO;
+        this.changeCounter = changeCounter;
+        this.jsonReader = objectMapper.readerFor(JsonNode.class);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("customer-import-");
+        threadFactory.setDaemon(true);
+        this.loaders = Executors.newFixedThreadPool(loaderThreads, threadFactory);
+        this.importTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "importCustomers");
+    }
+
+    /**
+     * Imports customers from a CSV file whose header row names at least the name, email and age columns,
+     * in any order; other columns, such as the id and version of an export, are ignored.
+     * Throws RequestValidationException if the header is missing, the file is malformed or the import ID is invalid;
+     * rows loaded before a malformed row stay loaded and are skipped when the import is resumed.
+     *
+     * @param importId The ID of the import, to resume an earlier run; null to start a new import.
+     * @param input    The CSV file, UTF-8 encoded.
+     * @return The outcome of the import.
+     * @throws IOException If reading the file fails.
+     */
+    public CustomerImportResult importCsv(String importId, InputStream input) throws IOException {
+        CustomerCsv.Parser parser = new CustomerCsv.Parser(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)));
+        List<String> header = parser.next();
+        if (header == null) {
+            throw new RequestValidationException("the file is empty, expected a header row");
+        }
+        List<String> columns = header.stream().map(column -> column.trim().toLowerCase(Locale.ROOT)).toList();
+        int name = columns.indexOf("name");
+        int email = columns.indexOf("email");
+        int age = columns.indexOf("age");
+        if (name < 0 || email < 0 || age < 0) {
+            throw new RequestValidationException("the header row must name the name, email and age columns");
+        }
+        return run(importId, () -> {
+            List<String> fields;
+            do {
+                fields = parser.next();
+            } while (fields != null && fields.size() == 1 && fields.get(0).isBlank()); // Blank lines are no rows.
+            if (fields == null) {
+                return null;
+            }
+            if (fields.size() != columns.size()) {
+                return Row.invalid("expected %d fields but found %d".formatted(columns.size(), fields.size()));
+            }
+            Integer parsedAge;
+            try {
+                parsedAge = fields.get(age).isEmpty() ? null : Integer.valueOf(fields.get(age).trim());
+            } catch (NumberFormatException e) {
+                return Row.invalid("age must be a whole number");
+            }
+            return Row.of(emptyToNull(fields.get(name)), emptyToNull(fields.get(email)), parsedAge);
+        });
+    }
+
+    /**
+     * Imports customers from an NDJSON file, one JSON object with name, email and age per line;
+     * other fields, such as the id and version of an export, are ignored.
+     * Throws RequestValidationException if a line is not valid JSON or the import ID is invalid;
+     * rows loaded before it stay loaded and are skipped when the import is resumed.
+     *
+     * @param importId The ID of the import, to resume an earlier run; null to start a new import.
+     * @param input    The NDJSON file.
+     * @return The outcome of the import.
+     * @throws IOException If reading the file fails.
+     */
+    public CustomerImportResult importNdjson(String importId, InputStream input) throws IOException {
+        try (MappingIterator<JsonNode> nodes = jsonReader.readValues(input)) {
+            long[] line = {0};
+            return run(importId, () -> {
+                JsonNode node;
+                line[0]++;
+                try {
+                    if (!nodes.hasNextValue()) {
+                        return null;
+                    }
+                    node = nodes.nextValue();
+                } catch (JsonProcessingException e) {
+                    throw new RequestValidationException("row %d: malformed JSON".formatted(line[0]));
+                }
+                if (!node.isObject()) {
+                    return Row.invalid("expected a JSON object");
+                }
+                JsonNode age = node.path("age");
+                boolean hasAge = !age.isMissingNode() && !age.isNull();
+                if (hasAge && !(age.isIntegralNumber() && age.canConvertToInt())) {
+                    return Row.invalid("age must be a whole number");
+                }
+                return Row.of(node.path("name").textValue(), node.path("email").textValue(),
+                        hasAge ? Integer.valueOf(age.intValue()) : null);
+            });
+        }
+    }
+
+    /**
+     * Reads all rows of a file, loading them chunk by chunk in parallel, and waits for the last chunk.
+     * A chunk that fails to load stops the import: no further chunks are started, and its exception is
+     * rethrown once the chunks already running are done.
+     */
+    private CustomerImportResult run(String importId, RowReader reader) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (importId == null) {
+                importId = UUID.randomUUID().toString();
+            } else if (importId.isBlank() || importId.length() > MAX_IMPORT_ID_LENGTH) {
+                throw new RequestValidationException(
+                        "importId must be between 1 and %d characters".formatted(MAX_IMPORT_ID_LENGTH));
+            }
+            Progress progress = new Progress();
+            Semaphore slots = new Semaphore(parallelism);
+            long rows = 0;
+            try {
+                long firstRow = 0;
+                List<Customer> chunk = new ArrayList<>(chunkSize);
+                Row row;
+                while ((row = reader.next()) != null) {
+                    rows++;
+                    if (row.error() != null) {
+                        progress.invalid(rows, row.error());
+                    } else {
+                        chunk.add(new Customer(row.name(), row.email(), row.age()));
+                    }
+                    if (rows - firstRow == chunkSize) {
+                        submit(importId, firstRow, chunk, slots, progress);
+                        chunk = new ArrayList<>(chunkSize);
+                        firstRow = rows;
+                    }
+                }
+                submit(importId, firstRow, chunk, slots, progress);
+            } finally {
+                slots.acquireUninterruptibly(parallelism); // Waits for the chunks still loading.
+            }
+            progress.rethrowFailure();
+            return new CustomerImportResult(
+                    importId,
+                    rows,
+                    progress.imported.sum(),
+                    progress.duplicates.sum(),
+                    progress.invalid.sum(),
+                    progress.resumed.sum(),
+                    List.copyOf(progress.errors)
+            );
+        } finally {
+            importTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Hands a chunk to a loader thread once one of the import's slots is free.
+     */
+    private void submit(String importId, long firstRow, List<Customer> chunk, Semaphore slots, Progress progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        slots.acquireUninterruptibly();
+        if (progress.failure.get() != null) {
+            slots.release();
+            progress.rethrowFailure();
+        }
+        loaders.execute(() -> {
+            try {
+                Optional<List<Customer>> inserted = customerDAO.importCustomers(importId, firstRow, chunk);
+                if (inserted.isEmpty()) {
+                    progress.resumed.add(chunk.size());
+                } else {
+                    progress.imported.add(inserted.get().size());
+                    progress.duplicates.add(chunk.size() - inserted.get().size());
+                    if (!inserted.get().isEmpty()) {
+                        countChange();
+                    }
+                }
+            } catch (RuntimeException e) {
+                progress.failure.compareAndSet(null, e);
+            } finally {
+                slots.release();
+            }
+        });
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Reads the rows of a file one at a time.
+     */
+    @FunctionalInterface
+    private interface RowReader {
+
+        /**
+         * Reads the next row.
+         *
+         * @return The row, or null at the end of the file.
+         * @throws IOException If reading the file fails.
+         */
+        Row next() throws IOException;
+    }
+
+    /**
+     * A record holding one row of a file: the customer it describes, or why it is invalid.
+     */
+    private record Row(String name, String email, Integer age, String error) {
+
+        static Row of(String name, String email, Integer age) {
+            if (name == null || email == null || age == null) {
+                return invalid("name, email and age are required");
+            }
+            if (name.length() > MAX_FIELD_LENGTH || email.length() > MAX_FIELD_LENGTH) {
+                return invalid("name and email must be at most %d characters".formatted(MAX_FIELD_LENGTH));
+            }
+            return new Row(name, email, age, null);
+        }
+
+        static Row invalid(String error) {
+            return new Row(null, null, null, error);
+        }
+    }
+
+    /**
+     * Counts of an import in progress, updated by the request thread and the loader threads.
+     */
+    private static final class Progress {
+
+        private final LongAdder imported = new LongAdder();
+        private final LongAdder duplicates = new LongAdder();
+        private final LongAdder invalid = new LongAdder();
+        private final LongAdder resumed = new LongAdder();
+        private final List<String> errors = new ArrayList<>(); // Only touched by the request thread.
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>(); // First chunk that failed.
+
+        void invalid(long row, String error) {
+            invalid.increment();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("row %d: %s".formatted(row, error));
+            }
+        }
+
+        void rethrowFailure() {
+            RuntimeException e = failure.get();
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Counts a write on the table-level change counter, unless the DAO already counted it in the write's transaction.
+     */
+    private void countChange() {
+        if (!customerDAO.countsChanges()) {
+            changeCounter.increment();
+        }
+    }
+}
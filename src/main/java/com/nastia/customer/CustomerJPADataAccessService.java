@@ -1,25 +1,120 @@
 package com.nastia.customer;
 
+import com.nastia.exception.DuplicateResourceException;
+import com.nastia.outbox.CustomerChangeEvent;
+import com.nastia.outbox.CustomerOutbox;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.postgresql.PGConnection;
+import org.postgresql.util.PSQLException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Data access service for Customer entities using JPA.
+ * Every write also records a change event in the customer outbox, in the same transaction.
+ * Lookups and listings run in read-only transactions, which the datasource routes to a read replica;
+ * the duplicate-email checks made before writes deliberately run outside of them, on the primary.
  */
 @Repository("jpa") // Marks this class as a Data Access Object (Repository) that uses JPA for data operations.
 public class CustomerJPADataAccessService implements CustomerDAO {
 
+    private static final String EMAIL_UNIQUE_CONSTRAINT = "customer_email_unique"; // Unique index on the email column.
+    private static final String UNIQUE_VIOLATION = "23505"; // SQLState of a unique violation, on PostgreSQL and H2 alike.
+    private static final int JDBC_BATCH_SIZE = 1000; // Rows per JDBC batch, rewritten into multi-row inserts by the driver.
+    private static final int EMAIL_LOOKUP_CHUNK_SIZE = 1000; // Emails per IN list when checking for existing emails.
+    private static final String[] CUSTOMER_COLUMNS = {"id", "name", "email", "age", "version"}; // Columns returned by updates.
+    // One row of the VALUES list of a bulk update; typed, since a column may hold nothing but nulls.
+    private static final String BULK_UPDATE_ROW =
+            "(CAST(? AS INTEGER), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS INTEGER))";
+    private static final int EXPORT_FETCH_SIZE = 1000; // Rows fetched per round trip by the export cursor.
+    private static final String EXPORT_QUERY = "SELECT id, name, email, age, version FROM customer ORDER BY id";
+    // Per-session staging table a chunk of an import is copied into before it is merged into customer.
+    private static final String CREATE_IMPORT_STAGING = "CREATE TEMPORARY TABLE IF NOT EXISTS customer_import_staging"
+            + " (id INTEGER, name VARCHAR(255), email VARCHAR(255), age INTEGER) ON COMMIT DELETE ROWS";
+    private static final RowMapper<Customer> CUSTOMER_ROW_MAPPER = (resultSet, rowNum) -> {
+        Customer customer = new Customer(
+                resultSet.getInt("id"),
+                resultSet.getString("name"),
+                resultSet.getString("email"),
+                resultSet.getInt("age")
+        );
+        customer.setVersion(resultSet.getLong("version"));
+        return customer;
+    };
+
     private final CustomerRepository customerRepository; // Spring Data JPA repository for Customer entities.
+    private final SessionFactory sessionFactory; // Opens the sessions resolving emails through the natural-id cache.
+    private final CustomerEmailFilter emailFilter; // Answers most duplicate-email checks without a query.
+    private final CustomerIdAllocator idAllocator; // Allocates IDs for rows inserted with plain JDBC.
+    private final JdbcTemplate jdbcTemplate; // Used for batch writes that bypass the persistence context.
+    private final CustomerOutbox outbox; // Records every change in the transaction making it.
+    private final TransactionTemplate readOnlyTransaction; // Runs each page of a streamed listing in its own read-only transaction.
 
     /**
      * Constructs a CustomerJPADataAccessService with a CustomerRepository.
      *
-     * @param customerRepository Spring Data JPA repository for Customer entities.
+     * @param customerRepository   Spring Data JPA repository for Customer entities.
+     * @param entityManagerFactory The JPA entity manager factory, a Hibernate session factory.
+     * @param emailFilter          In-process filter of the emails already taken.
+     * @param idAllocator          Allocator of customer IDs in pooled blocks.
+     * @param jdbcTemplate         JDBC template on the same datasource as the repository.
+     * @param outbox               The outbox change events are written to.
+     * @param transactionManager   The primary (JDBC) transaction manager.
      */
-    public CustomerJPADataAccessService(CustomerRepository customerRepository) {
+    public CustomerJPADataAccessService(CustomerRepository customerRepository,
+                                        EntityManagerFactory entityManagerFactory,
+                                        CustomerEmailFilter emailFilter,
+                                        CustomerIdAllocator idAllocator,
+                                        JdbcTemplate jdbcTemplate,
+                                        CustomerOutbox outbox,
+                                        PlatformTransactionManager transactionManager) {
         this.customerRepository = customerRepository;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.emailFilter = emailFilter;
+        this.idAllocator = idAllocator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.outbox = outbox;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     /**
@@ -28,10 +123,104 @@ public class CustomerJPADataAccessService implements CustomerDAO {
      * @return A List of all Customer entities.
      */
     @Override
+    @Transactional(readOnly = true) // Served by a read replica when one is configured.
     public List<Customer> selectAllCustomers() {
         return customerRepository.findAll();
     }
 
+    /**
+     * Retrieves a page of customers ordered by ID, starting right after the given ID.
+     *
+     * @param afterId The ID of the last customer of the previous page, or null to start from the beginning.
+     * @param limit   The maximum number of customers to return.
+     * @return A List of at most {@code limit} Customer entities ordered by ID.
+     */
+    @Override
+    @Transactional(readOnly = true) // Served by a read replica when one is configured.
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return customerRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId == null ? Integer.MIN_VALUE : afterId,
+                Limit.of(limit)
+        );
+    }
+
+    /**
+     * Retrieves a page of filtered, sorted customers with a single parameterized query.
+     * The filters, the keyset condition on the cursor and the sort order are compiled into one
+     * Criteria query, so the database only returns the rows of the page.
+     *
+     * @param filter The filters the customers must match.
+     * @param sort   The order of the listing.
+     * @param after  The last customer of the previous page, or null to start from the beginning.
+     * @param limit  The maximum number of customers to return.
+     * @return A List of at most {@code limit} matching Customer entities, in the given order.
+     */
+    @Override
+    @Transactional(readOnly = true) // Served by a read replica when one is configured.
+    public List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit) {
+        Specification<Customer> specification = CustomerSpecifications.matching(filter);
+        if (after != null) {
+            specification = specification.and(CustomerSpecifications.after(sort, after));
+        }
+        return customerRepository.findBy(specification, query -> query
+                .sortBy(CustomerSpecifications.toSort(sort))
+                .limit(limit)
+                .all());
+    }
+
+    /**
+     * Streams all customers ordered by ID, walking the table one keyset page at a time.
+     * Each page is loaded in its own short-lived read-only transaction and persistence context,
+     * so entities of earlier pages become garbage as soon as the consumer is done with them.
+     *
+     * @param chunkSize The number of customers to fetch per page.
+     * @param consumer  The consumer receiving each customer.
+     */
+    @Override
+    public void streamAllCustomers(int chunkSize, Consumer<Customer> consumer) {
+        Integer afterId = null;
+        List<Customer> page;
+        do {
+            Integer after = afterId;
+            page = readOnlyTransaction.execute(status -> selectCustomersAfter(after, chunkSize));
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == chunkSize);
+    }
+
+    /**
+     * Writes all customers as CSV. On PostgreSQL the database encodes the rows itself with COPY ... TO STDOUT,
+     * and the driver copies its output straight into the stream. Elsewhere the rows are read through a cursor
+     * fetching {@value #EXPORT_FETCH_SIZE} rows per round trip and encoded here. Either way the export runs in
+     * one read-only transaction, so it is a consistent snapshot, served by a read replica when one is configured.
+     *
+     * @param outputStream The stream receiving the CSV.
+     * @throws IOException If writing to the stream fails.
+     */
+    @Override
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try {
+                    if (connection.isWrapperFor(PGConnection.class)) {
+                        connection.unwrap(PGConnection.class).getCopyAPI()
+                                .copyOut("COPY (" + EXPORT_QUERY + ") TO STDOUT WITH (FORMAT csv, HEADER)", outputStream);
+                        outputStream.flush();
+                    } else {
+                        writeCsv(connection, outputStream);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * Retrieves a customer by their ID.
      *
@@ -39,28 +228,222 @@ public class CustomerJPADataAccessService implements CustomerDAO {
      * @return An Optional containing the found customer or an empty Optional if no customer is found.
      */
     @Override
+    @Transactional(readOnly = true) // Served by a read replica when one is configured.
     public Optional<Customer> selectCustomerById(Integer id) {
         return customerRepository.findById(id);
     }
 
+    /**
+     * Retrieves only the version of a customer, reading a single column by primary key.
+     *
+     * @param id The ID of the customer.
+     * @return An Optional containing the customer's version or an empty Optional if no customer is found.
+     */
+    @Override
+    @Transactional(readOnly = true) // Served by a read replica when one is configured.
+    public Optional<Long> selectCustomerVersion(Integer id) {
+        return customerRepository.findVersionById(id);
+    }
+
     /**
      * Inserts a new customer into the database.
+     * Throws DuplicateResourceException if the unique email index rejects the row.
+     * The insert is flushed right away, so the violation surfaces here rather than at commit.
      *
      * @param customer The customer to insert.
      */
     @Override
+    @Transactional // Writes the customer and its outbox event atomically.
     public void insertCustomer(Customer customer) {
-        customerRepository.save(customer);
+        emailFilter.add(customer.getEmail());
+        try {
+            outbox.append(CustomerChangeEvent.Type.CREATED, customerRepository.saveAndFlush(customer));
+        } catch (DataIntegrityViolationException e) {
+            throw translateIntegrityViolation(e);
+        }
+    }
+
+    /**
+     * Inserts a batch of new customers with JDBC batch inserts in a single transaction.
+     * IDs come from the pooled allocator rather than one nextval per row, and the entities
+     * never enter a persistence context. Throws DuplicateResourceException, rolling back
+     * the whole batch, if the unique email index rejects any of the rows.
+     *
+     * @param customers The customers to insert.
+     */
+    @Override
+    @Transactional // Runs all batches in one transaction, so the insert is all or nothing.
+    public void insertCustomers(List<Customer> customers) {
+        for (Customer customer : customers) {
+            if (customer.getId() == null) {
+                customer.setId(idAllocator.nextId());
+            }
+            emailFilter.add(customer.getEmail());
+        }
+        try {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO customer (id, name, email, age, version) VALUES (?, ?, ?, ?, 0)",
+                    customers,
+                    JDBC_BATCH_SIZE,
+                    (statement, customer) -> {
+                        statement.setInt(1, customer.getId());
+                        statement.setString(2, customer.getName());
+                        statement.setString(3, customer.getEmail());
+                        statement.setInt(4, customer.getAge());
+                        customer.setVersion(0L);
+                    }
+            );
+            outbox.appendAll(CustomerChangeEvent.Type.CREATED, customers);
+        } catch (DataIntegrityViolationException e) {
+            throw translateIntegrityViolation(e);
+        }
+    }
+
+    /**
+     * Loads a chunk of an import in one transaction, together with its checkpoint and the outbox events of
+     * the inserted customers. The checkpoint row is inserted first: its primary key makes a concurrent run
+     * of the same chunk wait for this one, and then skip the chunk. On PostgreSQL the chunk is streamed into a
+     * temporary staging table with COPY ... FROM STDIN and merged with a single INSERT ... SELECT; elsewhere
+     * it is written with batched inserts. Either way ON CONFLICT DO NOTHING lets the unique email index skip
+     * taken emails, including emails repeated within the chunk or taken by a concurrent chunk.
+     *
+     * @param importId  The ID of the import.
+     * @param firstRow  The position of the chunk's first row in the imported file.
+     * @param customers The customers of the chunk.
+     * @return The inserted customers, or an empty Optional if the chunk had been loaded before.
+     */
+    @Override
+    @Transactional // Writes the chunk, its checkpoint and its outbox events atomically.
+    public Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers) {
+        int claimed = jdbcTemplate.update("INSERT INTO customer_import_chunk (import_id, first_row, imported, imported_at)"
+                + " VALUES (?, ?, 0, ?) ON CONFLICT DO NOTHING", importId, firstRow, Timestamp.from(Instant.now()));
+        if (claimed == 0) {
+            return Optional.empty();
+        }
+        List<Integer> ids = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            customer.setId(idAllocator.nextId());
+            ids.add(customer.getId());
+            emailFilter.add(customer.getEmail());
+        }
+        boolean copied = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                return false;
+            }
+            StringBuilder csv = new StringBuilder(customers.size() * 64);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_IMPORT_STAGING);
+                for (Customer customer : customers) {
+                    csv.append(customer.getId()).append(',');
+                    CustomerCsv.writeField(csv, customer.getName());
+                    csv.append(',');
+                    CustomerCsv.writeField(csv, customer.getEmail());
+                    csv.append(',').append(customer.getAge()).append('\n');
+                }
+                connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                        "COPY customer_import_staging (id, name, email, age) FROM STDIN WITH (FORMAT csv)",
+                        new StringReader(csv.toString()));
+                statement.executeUpdate("INSERT INTO customer (id, name, email, age, version)"
+                        + " SELECT id, name, email, age, 0 FROM customer_import_staging ON CONFLICT DO NOTHING");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        });
+        if (!copied) {
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO customer (id, name, email, age, version) VALUES (?, ?, ?, ?, 0) ON CONFLICT DO NOTHING",
+                    customers,
+                    JDBC_BATCH_SIZE,
+                    (statement, customer) -> {
+                        statement.setInt(1, customer.getId());
+                        statement.setString(2, customer.getName());
+                        statement.setString(3, customer.getEmail());
+                        statement.setInt(4, customer.getAge());
+                    }
+            );
+        }
+
+        // Update counts of rewritten batches are not reliable, so the inserted rows are read back by ID.
+        List<Customer> inserted = new ArrayList<>();
+        for (List<Integer> chunk : chunks(ids)) {
+            inserted.addAll(jdbcTemplate.query(
+                    connection -> withIds(connection, "SELECT id, name, email, age, version FROM customer WHERE id = ANY(?)", chunk),
+                    CUSTOMER_ROW_MAPPER
+            ));
+        }
+        if (!inserted.isEmpty()) {
+            outbox.appendAll(CustomerChangeEvent.Type.CREATED, inserted);
+        }
+        jdbcTemplate.update("UPDATE customer_import_chunk SET imported = ? WHERE import_id = ? AND first_row = ?",
+                inserted.size(), importId, firstRow);
+        return Optional.of(inserted);
+    }
+
+    /**
+     * Finds which of the given emails are already taken, with one IN query per chunk of emails.
+     *
+     * @param emails The emails to check.
+     * @return The emails among the given ones that belong to existing customers.
+     */
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        List<String> chunk = new ArrayList<>(EMAIL_LOOKUP_CHUNK_SIZE);
+        for (String email : emails) {
+            if (emailFilter.mightBeTaken(email)) {
+                chunk.add(email);
+            }
+            if (chunk.size() == EMAIL_LOOKUP_CHUNK_SIZE) {
+                existing.addAll(customerRepository.findExistingEmails(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            existing.addAll(customerRepository.findExistingEmails(chunk));
+        }
+        return existing;
+    }
+
+    /**
+     * Finds which of the given IDs exist with one query per chunk of IDs, each passed as a single array parameter.
+     *
+     * @param ids The IDs to check.
+     * @return The IDs among the given ones that belong to existing customers.
+     */
+    @Override
+    public Set<Integer> selectExistingIds(Collection<Integer> ids) {
+        Set<Integer> existing = new HashSet<>();
+        for (List<Integer> chunk : chunks(ids)) {
+            existing.addAll(jdbcTemplate.query(
+                    connection -> withIds(connection, "SELECT id FROM customer WHERE id = ANY(?)", chunk),
+                    (resultSet, rowNum) -> resultSet.getInt(1)
+            ));
+        }
+        return existing;
     }
 
     /**
      * Checks if a customer exists in the database with the specified email.
+     * Emails the in-process filter knows to be unused are answered without a query. Taken emails are resolved
+     * through the natural-id cache to a cached customer; since a cached resolution may still name a customer
+     * whose email another instance has just changed, it only counts if the customer still has the email.
+     * Anything else is answered by the query-cached exists query.
      *
      * @param email The email to check for existence.
      * @return True if a customer with the specified email exists, false otherwise.
      */
     @Override
     public boolean existsPersonWithEmail(String email) {
+        if (!emailFilter.mightBeTaken(email)) {
+            return false;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            Optional<Customer> customer = session.bySimpleNaturalId(Customer.class).loadOptional(email);
+            if (customer.isPresent() && customer.get().getEmail().equals(email)) {
+                return true;
+            }
+        }
         return customerRepository.existsCustomersByEmail(email);
     }
 
@@ -71,28 +454,304 @@ public class CustomerJPADataAccessService implements CustomerDAO {
      * @return True if a customer with the specified ID exists, false otherwise.
      */
     @Override
+    @Transactional(readOnly = true) // Served by a read replica when one is configured.
     public boolean existsPersonWithId(Integer id) {
         return customerRepository.existsCustomerById(id);
     }
 
     /**
-     * Deletes a customer from the database by their ID.
+     * Deletes a customer from the database by their ID, recording its last state in the outbox.
      *
      * @param customerId The ID of the customer to delete.
      */
     @Override
+    @Transactional // Deletes the customer and writes its outbox event atomically.
     public void deleteCustomerById(Integer customerId) {
-        customerRepository.deleteById(customerId);
+        customerRepository.findById(customerId).ifPresent(customer -> {
+            customerRepository.delete(customer);
+            outbox.append(CustomerChangeEvent.Type.DELETED, customer);
+        });
+    }
+
+    /**
+     * Deletes customers with one DELETE ... WHERE id = ANY(?) statement per chunk of {@value #JDBC_BATCH_SIZE}
+     * IDs, all chunks in one transaction. The rows of a chunk are first locked in ID order and read with a query
+     * on the same array, which both tells which IDs exist and gives the outbox the last state of every deleted
+     * customer; the entities never enter a persistence context.
+     *
+     * @param ids The IDs of the customers to delete.
+     * @return The IDs of the customers that were deleted.
+     */
+    @Override
+    @Transactional // Deletes the customers and writes their outbox events atomically.
+    public Set<Integer> deleteCustomersByIds(Collection<Integer> ids) {
+        List<Customer> deleted = new ArrayList<>(ids.size());
+        for (List<Integer> chunk : chunks(ids)) {
+            List<Customer> rows = jdbcTemplate.query(
+                    connection -> withIds(connection,
+                            "SELECT id, name, email, age, version FROM customer WHERE id = ANY(?) ORDER BY id FOR UPDATE", chunk),
+                    CUSTOMER_ROW_MAPPER
+            );
+            if (!rows.isEmpty()) {
+                jdbcTemplate.update(connection -> withIds(connection, "DELETE FROM customer WHERE id = ANY(?)", chunk));
+                deleted.addAll(rows);
+            }
+        }
+        Set<Integer> deletedIds = new HashSet<>(deleted.size() * 2);
+        deleted.forEach(customer -> deletedIds.add(customer.getId()));
+        if (!deleted.isEmpty()) {
+            outbox.appendAll(CustomerChangeEvent.Type.DELETED, deleted);
+        }
+        return deletedIds;
     }
 
     /**
      * Updates the information of an existing customer in the database.
+     * Throws DuplicateResourceException if the unique email index rejects the new email.
      *
      * @param update The customer object containing the updated information.
      */
     @Override
+    @Transactional // Writes the customer and its outbox event atomically.
     public void updateCustomer(Customer update) {
-        customerRepository.save(update);
+        emailFilter.add(update.getEmail());
+        try {
+            outbox.append(CustomerChangeEvent.Type.UPDATED, customerRepository.saveAndFlush(update));
+        } catch (DataIntegrityViolationException e) {
+            throw translateIntegrityViolation(e);
+        }
+    }
+
+    /**
+     * Applies a partial update with one conditional UPDATE ... RETURNING statement.
+     * The SET clause only lists the fields present in the update, and the WHERE clause only matches
+     * if the version is the expected one and at least one of those fields actually changes, so a
+     * single round trip both performs and validates the update. A taken email is reported by the
+     * unique email index and translated into a DuplicateResourceException.
+     *
+     * @param id              The ID of the customer to update.
+     * @param update          The fields to change; null fields are left untouched.
+     * @param expectedVersion The version the caller last saw, or null to skip the version check.
+     * @return The updated customer, or an empty Optional if no row matched.
+     */
+    @Override
+    @Transactional // Writes the customer and its outbox event atomically.
+    public Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        List<String> assignments = new ArrayList<>(3);
+        List<String> changes = new ArrayList<>(3);
+        List<Object> values = new ArrayList<>(3);
+        if (update.name() != null) {
+            assignments.add("name = ?");
+            changes.add("name <> ?");
+            values.add(update.name());
+        }
+        if (update.email() != null) {
+            assignments.add("email = ?");
+            changes.add("email <> ?");
+            values.add(update.email());
+            emailFilter.add(update.email());
+        }
+        if (update.age() != null) {
+            assignments.add("age = ?");
+            changes.add("age <> ?");
+            values.add(update.age());
+        }
+        if (assignments.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String sql = "UPDATE customer SET " + String.join(", ", assignments) + ", version = version + 1"
+                + " WHERE id = ?"
+                + (expectedVersion != null ? " AND version = ?" : "")
+                + " AND (" + String.join(" OR ", changes) + ")";
+        List<Object> arguments = new ArrayList<>(values);
+        arguments.add(id);
+        if (expectedVersion != null) {
+            arguments.add(expectedVersion);
+        }
+        arguments.addAll(values);
+
+        // Asking for the updated columns as generated keys makes the driver append RETURNING to the UPDATE.
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql, CUSTOMER_COLUMNS);
+                for (int i = 0; i < arguments.size(); i++) {
+                    statement.setObject(i + 1, arguments.get(i));
+                }
+                return statement;
+            }, keyHolder);
+        } catch (DataIntegrityViolationException e) {
+            throw translateIntegrityViolation(e);
+        }
+        List<Map<String, Object>> rows = keyHolder.getKeyList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        Customer updated = toCustomer(rows.get(0));
+        outbox.append(CustomerChangeEvent.Type.UPDATED, updated);
+        return Optional.of(updated);
+    }
+
+    /**
+     * Applies partial updates with one UPDATE ... FROM (VALUES ...) ... RETURNING statement per chunk of
+     * {@value #JDBC_BATCH_SIZE} customers, all chunks in one transaction. Each row of the VALUES list carries
+     * a customer ID and its new fields, null where a field is left untouched; the WHERE clause only matches
+     * customers that exist and that at least one of their new fields changes, so missing and unchanged
+     * customers are skipped by the database rather than checked beforehand. The customers are chunked in ID
+     * order, so overlapping batches lock their rows in the same order rather than deadlock.
+     * A taken email is reported by the unique email index and translated into a DuplicateResourceException.
+     *
+     * @param updates The fields to change, keyed by customer ID; null fields are left untouched.
+     * @return The updated customers.
+     */
+    @Override
+    @Transactional // Writes all chunks and their outbox events atomically.
+    public List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates) {
+        List<Map.Entry<Integer, CustomerUpdateRequest>> entries = new ArrayList<>(updates.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        List<Customer> updated = new ArrayList<>(entries.size());
+        for (int start = 0; start < entries.size(); start += JDBC_BATCH_SIZE) {
+            List<Map.Entry<Integer, CustomerUpdateRequest>> chunk =
+                    entries.subList(start, Math.min(entries.size(), start + JDBC_BATCH_SIZE));
+            // The VALUES columns are named apart from the table's, so the RETURNING clause the driver appends is unambiguous.
+            String sql = "UPDATE customer AS c SET name = COALESCE(v.new_name, c.name),"
+                    + " email = COALESCE(v.new_email, c.email), age = COALESCE(v.new_age, c.age), version = c.version + 1"
+                    + " FROM (VALUES " + String.join(", ", Collections.nCopies(chunk.size(), BULK_UPDATE_ROW)) + ")"
+                    + " AS v (new_id, new_name, new_email, new_age)"
+                    + " WHERE c.id = v.new_id AND (c.name <> COALESCE(v.new_name, c.name)"
+                    + " OR c.email <> COALESCE(v.new_email, c.email) OR c.age <> COALESCE(v.new_age, c.age))";
+            for (Map.Entry<Integer, CustomerUpdateRequest> entry : chunk) {
+                if (entry.getValue().email() != null) {
+                    emailFilter.add(entry.getValue().email());
+                }
+            }
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            try {
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(sql, CUSTOMER_COLUMNS);
+                    int index = 1;
+                    for (Map.Entry<Integer, CustomerUpdateRequest> entry : chunk) {
+                        CustomerUpdateRequest update = entry.getValue();
+                        statement.setInt(index++, entry.getKey());
+                        statement.setString(index++, update.name());
+                        statement.setString(index++, update.email());
+                        if (update.age() != null) {
+                            statement.setInt(index++, update.age());
+                        } else {
+                            statement.setNull(index++, Types.INTEGER);
+                        }
+                    }
+                    return statement;
+                }, keyHolder);
+            } catch (DataIntegrityViolationException e) {
+                throw translateIntegrityViolation(e);
+            }
+            keyHolder.getKeyList().forEach(row -> updated.add(toCustomer(row)));
+        }
+        if (!updated.isEmpty()) {
+            outbox.appendAll(CustomerChangeEvent.Type.UPDATED, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * Writes the customers table as CSV, reading it through a forward-only cursor.
+     */
+    private static void writeCsv(Connection connection, OutputStream outputStream) throws SQLException, IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.append(CustomerCsv.HEADER).append('\n');
+        try (PreparedStatement statement = connection.prepareStatement(
+                EXPORT_QUERY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(EXPORT_FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    CustomerCsv.writeRow(writer, CUSTOMER_ROW_MAPPER.mapRow(resultSet, resultSet.getRow()));
+                }
+            }
+        }
+        writer.flush();
     }
-}
 
+    /**
+     * Splits IDs into ascending chunks of {@value #JDBC_BATCH_SIZE}; larger arrays make some databases scan the
+     * array per row. Sorted, the chunks of two overlapping batches lock their rows in the same order, so the
+     * batches wait for each other rather than deadlock.
+     */
+    private static List<List<Integer>> chunks(Collection<Integer> ids) {
+        List<Integer> all = new ArrayList<>(ids);
+        all.sort(null);
+        List<List<Integer>> chunks = new ArrayList<>((all.size() + JDBC_BATCH_SIZE - 1) / JDBC_BATCH_SIZE);
+        for (int start = 0; start < all.size(); start += JDBC_BATCH_SIZE) {
+            chunks.add(all.subList(start, Math.min(all.size(), start + JDBC_BATCH_SIZE)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Prepares a statement whose only parameter is an array of customer IDs, as in {@code id = ANY(?)}.
+     * A single array parameter keeps the statement text the same however many IDs there are.
+     */
+    private static PreparedStatement withIds(Connection connection, String sql, Collection<Integer> ids)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+        return statement;
+    }
+
+    /**
+     * Builds a customer from the columns an UPDATE returned as generated keys.
+     */
+    private static Customer toCustomer(Map<String, Object> row) {
+        Customer customer = new Customer(
+                ((Number) row.get("id")).intValue(),
+                (String) row.get("name"),
+                (String) row.get("email"),
+                ((Number) row.get("age")).intValue()
+        );
+        customer.setVersion(((Number) row.get("version")).longValue());
+        return customer;
+    }
+
+    /**
+     * Translates a violation of the unique email index into a DuplicateResourceException.
+     * The violated constraint is taken from Hibernate or the PostgreSQL driver when they report it; otherwise a
+     * unique violation, SQLState 23505, is taken to be on the email, the only unique column besides the ID,
+     * which is always allocated here. Any other integrity violation is returned unchanged.
+     *
+     * @param e The integrity violation reported by the database.
+     * @return The exception to throw.
+     */
+    private static RuntimeException translateIntegrityViolation(DataIntegrityViolationException e) {
+        String constraint = violatedConstraint(e);
+        boolean duplicateEmail = constraint != null
+                ? constraint.toLowerCase().contains(EMAIL_UNIQUE_CONSTRAINT)
+                : e.getMostSpecificCause() instanceof SQLException cause && UNIQUE_VIOLATION.equals(cause.getSQLState());
+        return duplicateEmail ? new DuplicateResourceException("email already taken") : e;
+    }
+
+    /**
+     * Returns the name of the constraint an integrity violation broke, or null if no cause names it.
+     */
+    private static String violatedConstraint(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName();
+            }
+            if (cause instanceof PSQLException psqlException && psqlException.getServerErrorMessage() != null) {
+                return psqlException.getServerErrorMessage().getConstraint();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true: every write appends to the outbox, which bumps the change counter in the write's transaction.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean countsChanges() {
+        return true;
+    }
+}
@@ -0,0 +1,655 @@
+package com.nastia.customer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable log of the changes to the customers of the "list" DAO: an append-only, memory-mapped journal,
+ * compacted from time to time into a snapshot.
+ *
+ * Every change is appended as a record holding the whole new state of a customer, or the ID of a deleted one,
+ * preceded by its length and a CRC-32C checksum; replaying records in order is therefore idempotent. The journal
+ * file is mapped in regions of {@code journal-region-size}, so an append is a memory copy. A background thread
+ * fsyncs the written range: in group mode as soon as a writer waits for it, one fsync covering every write that
+ * arrived meanwhile, in interval mode every sync interval. Written pages belong to the kernel, so a crash of the
+ * process loses nothing in either mode; in interval mode a crash of the machine loses up to one interval.
+ *
+ * Snapshots are written while writes go on. The journal is first rotated to a new generation, and the snapshot of
+ * that generation holds every customer as read after all writes journaled before the rotation were applied; it may
+ * already reflect records of the new journal, which replaying them again does not change. Recovery loads the newest
+ * complete snapshot and replays the journals from its generation on, stopping at the first record whose checksum
+ * fails, the tail torn by a crash. The journal is cut there, so new records never run into stale ones.
+ */
+final class CustomerJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerJournal.class);
+
+    private static final int JOURNAL_MAGIC = 0x434a524e; // "CJRN", first bytes of a journal file.
+    private static final int SNAPSHOT_MAGIC = 0x43534e50; // "CSNP", first bytes of a snapshot file.
+    private static final int FORMAT = 1; // Version of the file layouts.
+    private static final int FILE_HEADER_SIZE = 16; // Magic, format and region size at the start of a journal.
+    private static final int RECORD_HEADER_SIZE = 8; // Length and checksum preceding each record.
+    private static final int SKIP = -1; // Length marking the unused end of a region.
+    private static final int MIN_REGION_SIZE = 64 * 1024; // Smallest region size accepted.
+
+    private static final byte PUT = 1; // Record holding the new state of a customer.
+    private static final byte DELETE = 2; // Record holding the ID of a deleted customer.
+    private static final byte IMPORTED_CHUNK = 3; // Record holding a loaded chunk of an import.
+    private static final byte END = 4; // Last record of a snapshot, holding the number of records before it.
+
+    /**
+     * Receives the records read while recovering.
+     */
+    interface Replay {
+
+        void put(Customer customer);
+
+        void delete(int id);
+
+        void importedChunk(String chunk);
+    }
+
+    private final Path directory; // Directory holding the snapshots and journals.
+    private final CustomerListPersistenceProperties.Sync sync; // When writes are durable.
+    private final long syncIntervalMillis; // Milliseconds between fsyncs in interval mode.
+    private final int configuredRegionSize; // Region size of journals started by this instance.
+    private int highestId; // Highest customer ID recovered.
+
+    private final Object syncLock = new Object(); // Guards the fsync progress, and is waited on for it.
+    private final Object snapshotLock = new Object(); // Keeps snapshots from overlapping.
+    private final LongAdder[] activeWriters = {new LongAdder(), new LongAdder()}; // Writes in flight, by epoch parity.
+    private volatile int epoch; // Incremented by every rotation.
+    private final Thread syncer; // Background thread running the fsyncs.
+
+    // Guarded by this:
+    private int generation; // Generation of the current journal.
+    private FileChannel channel; // Channel of the current journal.
+    private List<MappedByteBuffer> regions = new ArrayList<>(); // Mapped regions of the current journal, in order.
+    private MappedByteBuffer region; // Region being written.
+    private int regionSize; // Region size of the current journal.
+    private int offset; // Position of the next record in the region being written.
+    private long base; // Position of the start of the current journal.
+
+    private volatile long written; // Position after the last appended record, counted over all generations.
+    private volatile long synced; // Position up to which the journal is fsynced.
+    private volatile boolean open = true; // Cleared on close.
+    private volatile RuntimeException failure; // Why the last fsync failed, if it did.
+
+    /**
+     * Opens the journal of a directory, replaying the newest snapshot and the journals after it.
+     *
+     * @param properties The directory and sync settings.
+     * @param replay     The receiver of the recovered records.
+     * @throws IOException If the files cannot be read or created.
+     */
+    CustomerJournal(CustomerListPersistenceProperties properties, Replay replay) throws IOException {
+        this.directory = properties.directory();
+        this.sync = properties.sync();
+        this.syncIntervalMillis = Math.max(1, properties.syncInterval().toMillis());
+        this.configuredRegionSize = (int) Math.min(Integer.MAX_VALUE, properties.journalRegionSize().toBytes());
+        if (configuredRegionSize < MIN_REGION_SIZE) {
+            throw new IllegalArgumentException("customer.list.persistence.journal-region-size must be at least 64KB");
+        }
+        Files.createDirectories(directory);
+        NavigableSet<Integer> snapshots = generations("snapshot-", ".dat");
+        NavigableSet<Integer> journals = generations("journal-", ".log");
+
+        int first = snapshots.isEmpty() ? 0 : snapshots.last();
+        if (!snapshots.isEmpty()) {
+            readSnapshot(snapshotFile(first), replay);
+        } else if (!journals.isEmpty() && journals.first() != 0) {
+            throw new IllegalStateException("The customer journals in " + directory
+                    + " start at generation " + journals.first() + " but the snapshot before them is missing");
+        }
+        generation = first;
+        long end = -1;
+        for (int journal : journals.tailSet(first, true)) {
+            generation = journal;
+            end = replayJournal(journalFile(journal), replay);
+        }
+        openJournal(end);
+        synced = written;
+        deleteBefore(first);
+
+        syncer = new Thread(this::syncLoop, "customer-journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * Returns the highest customer ID recovered, including those of deleted customers.
+     */
+    int highestId() {
+        return highestId;
+    }
+
+    /**
+     * Returns the size of the current journal in bytes.
+     */
+    synchronized long size() {
+        return written - base;
+    }
+
+    /**
+     * Marks the start of a write: from its journal record up to the point the store shows it.
+     * A snapshot waits for the writes that started before it, so it does not read a store lagging behind the journal.
+     *
+     * @return The token to pass to {@link #endWrite(int)}.
+     */
+    int beginWrite() {
+        int current = epoch;
+        activeWriters[current & 1].increment();
+        return current;
+    }
+
+    /**
+     * Marks the end of a write started with {@link #beginWrite()}.
+     *
+     * @param token The token returned by beginWrite.
+     */
+    void endWrite(int token) {
+        activeWriters[token & 1].decrement();
+    }
+
+    /**
+     * Appends the new state of a customer.
+     *
+     * @param customer The stored customer, with its ID and version.
+     */
+    void put(Customer customer) {
+        append(encodePut(customer));
+    }
+
+    /**
+     * Appends the deletion of a customer.
+     *
+     * @param id The ID of the deleted customer.
+     */
+    void delete(int id) {
+        append(seal(record(DELETE, 4).putInt(id)));
+    }
+
+    /**
+     * Appends a loaded chunk of an import.
+     *
+     * @param chunk The import ID and first row of the chunk.
+     */
+    void importedChunk(String chunk) {
+        append(encodeImportedChunk(chunk));
+    }
+
+    /**
+     * Waits until everything appended so far is fsynced, in group mode; returns at once in interval mode.
+     */
+    void awaitDurable() {
+        if (sync != CustomerListPersistenceProperties.Sync.GROUP) {
+            return;
+        }
+        long target = written;
+        synchronized (syncLock) {
+            if (synced >= target) {
+                return;
+            }
+            syncLock.notifyAll();
+            while (synced < target) {
+                if (failure != null) {
+                    throw new IllegalStateException("The customer journal could not be synced", failure);
+                }
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store and drops the journals it replaces.
+     * The journal is rotated first; once the writes journaled before the rotation have reached the store,
+     * the store is read while further writes go to the new journal.
+     *
+     * @param idSequence     Supplies the last ID handed out, read after the rotation.
+     * @param customers      The stored customers.
+     * @param importedChunks The loaded chunks of imports.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void snapshot(IntSupplier idSequence, Collection<Customer> customers, Collection<String> importedChunks)
+            throws IOException {
+        synchronized (snapshotLock) {
+            int previousEpoch = epoch;
+            int snapshotGeneration = rotate();
+            while (activeWriters[previousEpoch & 1].sum() != 0) {
+                LockSupport.parkNanos(10_000);
+            }
+
+            long start = System.nanoTime();
+            Path temporary = directory.resolve(String.format("snapshot-%010d.tmp", snapshotGeneration));
+            long count = 0;
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+                stream.writeInt(SNAPSHOT_MAGIC);
+                stream.writeInt(FORMAT);
+                stream.writeInt(snapshotGeneration);
+                stream.writeInt(idSequence.getAsInt());
+                for (Customer customer : customers) {
+                    stream.write(encodePut(customer));
+                    count++;
+                }
+                for (String chunk : importedChunks) {
+                    stream.write(encodeImportedChunk(chunk));
+                    count++;
+                }
+                stream.write(seal(record(END, 8).putLong(count)));
+                stream.flush();
+                out.force(true);
+            }
+            Files.move(temporary, snapshotFile(snapshotGeneration), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            deleteBefore(snapshotGeneration);
+            log.info("Wrote customer snapshot {} with {} records in {} ms",
+                    snapshotGeneration, count, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Fsyncs what is left and closes the journal; later writes fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            open = false;
+        }
+        synchronized (syncLock) {
+            syncLock.notifyAll();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            forceRange(regions, synced - base, written - base, regionSize);
+            channel.close();
+        }
+        markSynced(written);
+    }
+
+    private synchronized void append(byte[] record) {
+        if (!open) {
+            throw new IllegalStateException("The customer journal is closed");
+        }
+        if (record.length > regionSize - FILE_HEADER_SIZE) {
+            throw new IllegalArgumentException("A customer record of " + record.length + " bytes exceeds the journal region size");
+        }
+        if (offset + record.length > regionSize) {
+            if (regionSize - offset >= 4) {
+                region.putInt(offset, SKIP);
+            }
+            region = map(regions.size());
+            regions.add(region);
+            offset = 0;
+        }
+        region.put(offset, record);
+        offset += record.length;
+        written = base + (long) (regions.size() - 1) * regionSize + offset;
+    }
+
+    /**
+     * Fsyncs the current journal and starts the next generation.
+     *
+     * @return The generation of the new journal.
+     */
+    private int rotate() throws IOException {
+        FileChannel previous;
+        long start;
+        synchronized (this) {
+            forceRange(regions, synced - base, written - base, regionSize);
+            previous = channel;
+            generation++;
+            base = written;
+            regions = new ArrayList<>();
+            openJournal(-1);
+            start = written;
+            epoch++;
+        }
+        markSynced(start);
+        previous.close();
+        syncDirectory();
+        return generation;
+    }
+
+    /**
+     * Opens the journal of the current generation for appending, cut at the given position.
+     *
+     * @param end The position after the last valid record, or -1 for a new journal.
+     */
+    private void openJournal(long end) throws IOException {
+        channel = FileChannel.open(journalFile(generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (end < FILE_HEADER_SIZE) {
+            regionSize = configuredRegionSize;
+            channel.truncate(0);
+            region = map(0);
+            region.putInt(0, JOURNAL_MAGIC).putInt(4, FORMAT).putInt(8, regionSize);
+            region.force(0, FILE_HEADER_SIZE);
+            regions.add(region);
+            offset = FILE_HEADER_SIZE;
+        } else {
+            // Keeps the region size the journal was started with, as its records are laid out by it.
+            channel.truncate(end);
+            int last = (int) (end / regionSize);
+            for (int i = 0; i <= last; i++) {
+                regions.add(map(i));
+            }
+            region = regions.get(last);
+            offset = (int) (end - (long) last * regionSize);
+        }
+        written = base + (long) (regions.size() - 1) * regionSize + offset;
+    }
+
+    private MappedByteBuffer map(int index) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, (long) index * regionSize, regionSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot extend the customer journal", e);
+        }
+    }
+
+    private void syncLoop() {
+        try {
+            while (true) {
+                synchronized (syncLock) {
+                    long timeout = sync == CustomerListPersistenceProperties.Sync.INTERVAL ? syncIntervalMillis : 0;
+                    if (timeout > 0 && open) {
+                        syncLock.wait(timeout);
+                    }
+                    while (open && written <= synced) {
+                        syncLock.wait(timeout);
+                    }
+                    if (!open) {
+                        return;
+                    }
+                }
+                long target;
+                long journalBase;
+                List<MappedByteBuffer> mapped;
+                int size;
+                synchronized (this) {
+                    target = written;
+                    journalBase = base;
+                    mapped = List.copyOf(regions);
+                    size = regionSize;
+                }
+                forceRange(mapped, Math.max(synced, journalBase) - journalBase, target - journalBase, size);
+                markSynced(target);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Cannot sync the customer journal; writes waiting for it will fail", e);
+            synchronized (syncLock) {
+                failure = e;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    private void markSynced(long position) {
+        synchronized (syncLock) {
+            if (position > synced) {
+                synced = position;
+            }
+            syncLock.notifyAll();
+        }
+    }
+
+    /**
+     * Fsyncs the given byte range of a journal, region by region.
+     */
+    private static void forceRange(List<MappedByteBuffer> mapped, long from, long to, int regionSize) {
+        for (int i = (int) (from / regionSize); i < mapped.size() && (long) i * regionSize < to; i++) {
+            long regionStart = (long) i * regionSize;
+            int start = (int) Math.max(0, from - regionStart);
+            int end = (int) Math.min(regionSize, to - regionStart);
+            if (end > start) {
+                mapped.get(i).force(start, end - start);
+            }
+        }
+    }
+
+    /**
+     * Replays the records of a journal until its end or its first invalid record.
+     *
+     * @return The position after the last valid record.
+     */
+    private long replayJournal(Path file, Replay replay) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < FILE_HEADER_SIZE) {
+                return -1;
+            }
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            in.read(header, 0);
+            if (header.getInt(0) == 0) {
+                return -1; // Created, but its header never reached the disk.
+            }
+            if (header.getInt(0) != JOURNAL_MAGIC || header.getInt(4) != FORMAT) {
+                throw new IOException(file + " is not a customer journal");
+            }
+            regionSize = header.getInt(8);
+            long records = 0;
+            for (long start = 0; start < size; start += regionSize) {
+                MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionSize, size - start));
+                int position = start == 0 ? FILE_HEADER_SIZE : 0;
+                while (buffer.limit() - position >= 4) {
+                    int length = buffer.getInt(position);
+                    if (length == SKIP) {
+                        break;
+                    }
+                    if (length == 0) {
+                        log.info("Replayed {} records of customer journal {}", records, file.getFileName());
+                        return start + position;
+                    }
+                    if (length < 0 || length > buffer.limit() - position - RECORD_HEADER_SIZE
+                            || checksum(buffer.slice(position + RECORD_HEADER_SIZE, length)) != buffer.getInt(position + 4)) {
+                        log.warn("Customer journal {} has a torn or corrupt record at byte {}; replayed {} records before it",
+                                file.getFileName(), start + position, records);
+                        return start + position;
+                    }
+                    decode(buffer.slice(position + RECORD_HEADER_SIZE, length), replay);
+                    position += RECORD_HEADER_SIZE + length;
+                    records++;
+                }
+            }
+            log.info("Replayed {} records of customer journal {}", records, file.getFileName());
+            return size;
+        }
+    }
+
+    private void readSnapshot(Path file, Replay replay) throws IOException {
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT) {
+                throw new IOException(file + " is not a customer snapshot");
+            }
+            in.readInt(); // Generation, given by the file name.
+            highestId = in.readInt();
+            byte[] record = new byte[256];
+            long count = 0;
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > configuredRegionSize) {
+                    throw new IOException("Customer snapshot " + file + " is corrupt after " + count + " records");
+                }
+                if (record.length < length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                in.readFully(record, 0, length);
+                ByteBuffer buffer = ByteBuffer.wrap(record, 0, length).slice();
+                if (checksum(buffer) != checksum) {
+                    throw new IOException("Customer snapshot " + file + " is corrupt after " + count + " records");
+                }
+                if (buffer.get(0) == END) {
+                    if (buffer.getLong(1) != count) {
+                        throw new IOException("Customer snapshot " + file + " is incomplete");
+                    }
+                    log.info("Loaded {} records of customer snapshot {} in {} ms",
+                            count, file.getFileName(), (System.nanoTime() - start) / 1_000_000);
+                    return;
+                }
+                decode(buffer, replay);
+                count++;
+            }
+        } catch (EOFException e) {
+            throw new IOException("Customer snapshot " + file + " is incomplete", e);
+        }
+    }
+
+    private void decode(ByteBuffer record, Replay replay) throws IOException {
+        byte type = record.get();
+        switch (type) {
+            case PUT -> {
+                int id = record.getInt();
+                long version = record.getLong();
+                int age = record.getInt();
+                Customer customer = new Customer(id, string(record), string(record), age);
+                customer.setVersion(version);
+                highestId = Math.max(highestId, id);
+                replay.put(customer);
+            }
+            case DELETE -> {
+                int id = record.getInt();
+                highestId = Math.max(highestId, id);
+                replay.delete(id);
+            }
+            case IMPORTED_CHUNK -> replay.importedChunk(string(record));
+            default -> throw new IOException("Unknown customer record type " + type);
+        }
+    }
+
+    private static byte[] encodePut(Customer customer) {
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = customer.getEmail().getBytes(StandardCharsets.UTF_8);
+        return seal(record(PUT, 4 + 8 + 4 + 4 + name.length + 4 + email.length)
+                .putInt(customer.getId())
+                .putLong(customer.getVersion())
+                .putInt(customer.getAge())
+                .putInt(name.length).put(name)
+                .putInt(email.length).put(email));
+    }
+
+    private static byte[] encodeImportedChunk(String chunk) {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        return seal(record(IMPORTED_CHUNK, 4 + bytes.length).putInt(bytes.length).put(bytes));
+    }
+
+    /**
+     * Allocates a record of the given type, positioned after its type.
+     */
+    private static ByteBuffer record(byte type, int payloadLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + 1 + payloadLength);
+        return buffer.putInt(1 + payloadLength).putInt(0).put(type);
+    }
+
+    /**
+     * Fills in the checksum of a record.
+     */
+    private static byte[] seal(ByteBuffer record) {
+        byte[] bytes = record.array();
+        record.putInt(4, checksum(ByteBuffer.wrap(bytes, RECORD_HEADER_SIZE, bytes.length - RECORD_HEADER_SIZE)));
+        return bytes;
+    }
+
+    private static int checksum(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static String string(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path journalFile(int generation) {
+        return directory.resolve(String.format("journal-%010d.log", generation));
+    }
+
+    private Path snapshotFile(int generation) {
+        return directory.resolve(String.format("snapshot-%010d.dat", generation));
+    }
+
+    /**
+     * Lists the generations of the files with the given prefix and suffix.
+     */
+    private NavigableSet<Integer> generations(String prefix, String suffix) throws IOException {
+        NavigableSet<Integer> generations = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .forEach(name -> generations.add(Integer.parseInt(name, prefix.length(), name.length() - suffix.length(), 10)));
+        }
+        return generations;
+    }
+
+    /**
+     * Deletes the snapshots and journals older than the given generation, and unfinished snapshots.
+     * Snapshots are written one at a time, so no snapshot is being written meanwhile.
+     */
+    private void deleteBefore(int generation) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                boolean older = (name.startsWith("snapshot-") || name.startsWith("journal-"))
+                        && Integer.parseInt(name, name.indexOf('-') + 1, name.indexOf('.'), 10) < generation;
+                if (older || name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes created and renamed files durable; not every platform can sync a directory.
+     */
+    private void syncDirectory() {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            log.debug("Cannot sync directory {}", directory, e);
+        }
+    }
+}
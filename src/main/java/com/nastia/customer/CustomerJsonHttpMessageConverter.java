@@ -0,0 +1,63 @@
+package com.nastia.customer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Message converter writing {@link Customer} and {@link CustomerPage} responses with the {@link CustomerJsonWriter}.
+ * Spring Boot registers converter beans ahead of its defaults, so these two types bypass Jackson's data binding
+ * while every other type, and every request body, is still handled by the default Jackson converter.
+ * The JSON goes straight into the response stream; compression is left to the server, which negotiates it
+ * per request from Accept-Encoding.
+ */
+@Component // Registers the converter with Spring MVC, ahead of the default Jackson converter.
+public class CustomerJsonHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    private final CustomerJsonWriter writer; // Writes the customers.
+
+    /**
+     * Constructs the converter.
+     *
+     * @param writer The customer JSON writer.
+     */
+    public CustomerJsonHttpMessageConverter(CustomerJsonWriter writer) {
+        super(MediaType.APPLICATION_JSON);
+        this.writer = writer;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == Customer.class || clazz == CustomerPage.class;
+    }
+
+    /**
+     * Declines to read: request bodies are bound by the default Jackson converter.
+     */
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Customers are only written by this converter", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        try (JsonGenerator generator = writer.createGenerator(outputMessage.getBody())) {
+            if (body instanceof CustomerPage page) {
+                writer.writePage(generator, page);
+            } else {
+                writer.writeCustomer(generator, (Customer) body);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.nastia.customer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Hand-written JSON writer for customers and listing pages, producing the same documents as Jackson's
+ * data binding but without it: no reflective property lookup, no serializer resolution per call and no
+ * boxing beyond the entity's own fields. Field names are quoted and UTF-8 encoded once, up front.
+ *
+ * Generators write straight to the given stream through Jackson's recycled per-thread buffers, so a response
+ * is encoded without building an intermediate String or byte array.
+ */
+@Component // Marks this class as a Spring-managed component, shared by the message converter and the streamed listing.
+public class CustomerJsonWriter {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString AGE = new SerializedString("age");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString CUSTOMERS = new SerializedString("customers");
+    private static final SerializableString NEXT_CURSOR = new SerializedString("nextCursor");
+
+    private final JsonFactory jsonFactory; // Creates generators with pooled buffers.
+
+    /**
+     * Constructs the writer.
+     *
+     * @param objectMapper The Jackson mapper configured by Spring Boot, whose factory settings are reused.
+     */
+    public CustomerJsonWriter(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Creates a UTF-8 generator writing to a stream. Closing the generator flushes it and returns its buffers
+     * to the pool, but leaves the stream open.
+     *
+     * @param outputStream The stream to write to, typically the response body.
+     * @return The generator.
+     * @throws IOException If the generator cannot be created.
+     */
+    public JsonGenerator createGenerator(OutputStream outputStream) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    /**
+     * Writes a customer as a JSON object.
+     *
+     * @param generator The generator to write to.
+     * @param customer  The customer.
+     * @throws IOException If writing fails.
+     */
+    public void writeCustomer(JsonGenerator generator, Customer customer) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ID);
+        writeNumber(generator, customer.getId());
+        generator.writeFieldName(NAME);
+        generator.writeString(customer.getName());
+        generator.writeFieldName(EMAIL);
+        generator.writeString(customer.getEmail());
+        generator.writeFieldName(AGE);
+        writeNumber(generator, customer.getAge());
+        generator.writeFieldName(VERSION);
+        Long version = customer.getVersion();
+        if (version == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(version.longValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a listing page as a JSON object, its customers one by one straight from the page's list.
+     *
+     * @param generator The generator to write to.
+     * @param page      The page.
+     * @throws IOException If writing fails.
+     */
+    public void writePage(JsonGenerator generator, CustomerPage page) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(CUSTOMERS);
+        generator.writeStartArray();
+        for (Customer customer : page.customers()) {
+            writeCustomer(generator, customer);
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(NEXT_CURSOR);
+        if (page.nextCursor() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(page.nextCursor());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeNumber(JsonGenerator generator, Integer value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.intValue());
+        }
+    }
+}
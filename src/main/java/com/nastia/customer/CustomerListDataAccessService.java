@@ -1,116 +1,731 @@
 package com.nastia.customer;
 
+import com.nastia.exception.DuplicateResourceException;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * A mock data access service for customers, storing data in a static list instead of a database.
- * This implementation is for demonstration or testing purposes.
+ * An in-memory data access service for customers, storing data in concurrent maps instead of a database.
+ * Customers are kept in a primary map keyed by ID, with a secondary index from email to ID,
+ * so point lookups, email-uniqueness checks and deletes are O(1) even under many concurrent writers.
+ * Sorted indexes on age, lower-cased name and email, and a map from email domain to IDs serve filtered
+ * listings without scanning every customer.
+ * Stored customers are never handed out directly: reads return copies, writes store copies.
+ * With {@code customer.list.persistence.enabled}, every change is also appended to a {@link CustomerJournal}
+ * on disk, and the customers are recovered from it at startup; only the primary map is recovered, the email
+ * and filter indexes are rebuilt from it.
  */
 @Repository("list") // Marks this class as a Spring-managed repository, with "list" as its identifier.
-public class CustomerListDataAccessService implements CustomerDAO {
+@EnableConfigurationProperties(CustomerListPersistenceProperties.class) // Binds the settings of the journal.
+public class CustomerListDataAccessService implements CustomerDAO, AutoCloseable {
 
-    // Simulated database represented by a static list of customers.
-    private static final List<Customer> customers;
+    // Primary store of customers keyed by their ID.
+    private final Map<Integer, Customer> customers = new ConcurrentHashMap<>();
+    // Secondary index from email to the ID of the customer owning it.
+    private final Map<String, Integer> idsByEmail = new ConcurrentHashMap<>();
+    // Sorted view of all IDs, used for ordered listing and keyset pagination.
+    private final NavigableSet<Integer> orderedIds = new ConcurrentSkipListSet<>();
+    // Source of IDs for customers inserted without one.
+    private final AtomicInteger idSequence = new AtomicInteger();
+    // Index of (age, ID) pairs packed into longs, ordered by age then ID, for age ranges and age ordering.
+    private final NavigableSet<Long> idsByAge = new ConcurrentSkipListSet<>();
+    // Index of lower-cased names, ordered, for name prefix filters.
+    private final NavigableSet<TextKey> idsByName = new ConcurrentSkipListSet<>();
+    // Index of lower-cased emails, ordered, for email prefix filters.
+    private final NavigableSet<TextKey> idsByLowerEmail = new ConcurrentSkipListSet<>();
+    // Index from email domain to the IDs of the customers in it, in ID order.
+    private final Map<String, NavigableSet<Integer>> idsByDomain = new ConcurrentHashMap<>();
+    // Chunks of imports loaded so far, as import ID and first row.
+    private final Set<String> importedChunks = ConcurrentHashMap.newKeySet();
+    // Durable log of the changes, or null if the customers only live in memory.
+    private final CustomerJournal journal;
+    // Journal size in bytes beyond which it is compacted into a snapshot.
+    private final long compactAfter;
+    /**
+     * Constructs the store. With persistence enabled, the customers are recovered from the snapshot and journal
+     * in the configured directory. A new store starts empty; sample customers are only seeded by the dev profile.
+     * @param persistence The settings of the snapshot and journal.
+     * @throws IOException If the snapshot or journal cannot be read.
+     */
+    public CustomerListDataAccessService(CustomerListPersistenceProperties persistence) throws IOException {
+        this.compactAfter = persistence.compactAfter().toBytes();
+        if (persistence.enabled()) {
+            journal = new CustomerJournal(persistence, new CustomerJournal.Replay() {
+                @Override
+                public void put(Customer customer) {
+                    customers.put(customer.getId(), customer);
+                }
 
-    static {
-        // Initialize the simulated database.
-        customers = new ArrayList<>();
+                @Override
+                public void delete(int id) {
+                    customers.remove(id);
+                }
 
-        // Pre-populate the list with some customer entries.
-        Customer alex = new Customer(
-                1,
-                "Alex",
-                "alex@gmail.com",
-                21
-        );
-        customers.add(alex);
-
-        Customer jamila = new Customer(
-                2,
-                "Jamila",
-                "jamila@gmail.com",
-                19
-        );
-        customers.add(jamila);
+                @Override
+                public void importedChunk(String chunk) {
+                    importedChunks.add(chunk);
+                }
+            });
+            idSequence.set(journal.highestId());
+            rebuildIndexes();
+        } else {
+            journal = null;
+        }
     }
 
     /**
-     * Retrieves all customers from the simulated database.
+     * Retrieves all customers from the in-memory store, ordered by ID.
      * @return A list of all customers.
      */
     @Override
     public List<Customer> selectAllCustomers() {
-        return new ArrayList<>(customers);
+        List<Customer> result = new ArrayList<>(customers.size());
+        streamAllCustomers(Integer.MAX_VALUE, result::add);
+        return result;
+    }
+
+    /**
+     * Retrieves a page of customers ordered by ID, starting right after the given ID.
+     * @param afterId The ID of the last customer of the previous page, or null to start from the beginning.
+     * @param limit The maximum number of customers to return.
+     * @return A list of at most {@code limit} customers ordered by ID.
+     */
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        NavigableSet<Integer> ids = afterId == null ? orderedIds : orderedIds.tailSet(afterId, false);
+        List<Customer> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Integer id : ids) {
+            if (page.size() == limit) {
+                break;
+            }
+            selectCustomerById(id).ifPresent(page::add);
+        }
+        return page;
+    }
+
+    /**
+     * Retrieves a page of filtered, sorted customers, driven by the most selective index the filter allows.
+     * When the driving index is already in the requested order (ID order, or age order without text filters)
+     * the walk starts at the cursor and stops as soon as the page is full; otherwise the candidates from
+     * the index are filtered and sorted.
+     * @param filter The filters the customers must match.
+     * @param sort The order of the listing.
+     * @param after The last customer of the previous page, or null to start from the beginning.
+     * @param limit The maximum number of customers to return.
+     * @return A list of at most {@code limit} matching customers, in the given order.
+     */
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit) {
+        NavigableSet<Integer> idOrdered = idOrderedCandidates(filter);
+        if (sort.field() == CustomerSort.Field.ID && idOrdered != null) {
+            NavigableSet<Integer> ids = sort.descending() ? idOrdered.descendingSet() : idOrdered;
+            if (after != null) {
+                ids = ids.tailSet(after.getId(), false);
+            }
+            return firstMatches(ids.stream(), filter, limit);
+        }
+        if (sort.field() == CustomerSort.Field.AGE
+                && filter.name() == null && filter.email() == null && filter.emailDomain() == null) {
+            NavigableSet<Long> keys = sort.descending() ? ageRange(filter).descendingSet() : ageRange(filter);
+            if (after != null) {
+                keys = keys.tailSet(ageKey(after.getAge(), after.getId()), false);
+            }
+            return firstMatches(keys.stream().map(key -> (int) key.longValue()), filter, limit);
+        }
+
+        Comparator<Customer> order = sort.comparator();
+        Stream<Integer> candidates = idOrdered != null ? idOrdered.stream() : indexedCandidates(filter);
+        return candidates
+                .map(customers::get)
+                .filter(customer -> customer != null && filter.matches(customer))
+                .filter(customer -> after == null || order.compare(customer, after) > 0)
+                .sorted(order)
+                .limit(limit)
+                .map(Customer::new)
+                .toList();
+    }
+
+    /**
+     * Streams all customers ordered by ID to the given consumer.
+     * @param chunkSize Ignored, customers are read one by one straight from the store.
+     * @param consumer The consumer receiving each customer.
+     */
+    @Override
+    public void streamAllCustomers(int chunkSize, Consumer<Customer> consumer) {
+        for (Integer id : orderedIds) {
+            selectCustomerById(id).ifPresent(consumer);
+        }
     }
 
     /**
-     * Searches for a customer by ID.
+     * Writes all customers in ID order as CSV, straight from the primary map without copying them.
+     * @param outputStream The stream receiving the CSV.
+     * @throws IOException If writing to the stream fails.
+     */
+    @Override
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.append(CustomerCsv.HEADER).append('\n');
+        for (Integer id : orderedIds) {
+            Customer customer = customers.get(id);
+            if (customer != null) {
+                CustomerCsv.writeRow(writer, customer);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Looks up a customer by ID.
      * @param id The ID of the customer to find.
-     * @return An Optional containing the found customer, if any.
+     * @return An Optional containing a copy of the found customer, if any.
      */
     @Override
     public Optional<Customer> selectCustomerById(Integer id) {
-        return customers.stream()
-                .filter(c -> c.getId().equals(id))
-                .findFirst();
+        Customer customer = customers.get(id);
+        return customer == null ? Optional.empty() : Optional.of(new Customer(customer));
+    }
+
+    /**
+     * Looks up the version of a customer without copying it.
+     * @param id The ID of the customer.
+     * @return An Optional containing the customer's version, if the customer exists.
+     */
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer id) {
+        Customer customer = customers.get(id);
+        return customer == null ? Optional.empty() : Optional.of(customer.getVersion());
     }
 
     /**
-     * Inserts a new customer into the simulated database.
+     * Inserts a new customer into the in-memory store, allocating an ID if it has none.
+     * The allocated ID is written back to the given customer, as a JPA save would do.
+     * Throws DuplicateResourceException if another writer claimed the email first, or if a customer with the
+     * given ID already exists; an existing customer is never overwritten.
      * @param customer The customer to insert.
      */
     @Override
     public void insertCustomer(Customer customer) {
-        customers.add(customer);
+        insert(customer);
+        awaitDurable();
+    }
+
+    /**
+     * Inserts a new customer without waiting for the journal.
+     */
+    private void insert(Customer customer) {
+        Integer id = customer.getId();
+        if (id == null) {
+            id = idSequence.incrementAndGet();
+        } else {
+            idSequence.accumulateAndGet(id, Math::max);
+        }
+        if (idsByEmail.putIfAbsent(customer.getEmail(), id) != null) {
+            throw new DuplicateResourceException("email already taken");
+        }
+        customer.setId(id);
+        customer.setVersion(0L);
+        Customer stored = new Customer(customer);
+        Customer existing = write(() -> customers.compute(stored.getId(), (key, current) -> {
+            if (current != null) {
+                return current;
+            }
+            journalPut(stored);
+            return stored;
+        }));
+        if (existing != stored) {
+            idsByEmail.remove(stored.getEmail(), id);
+            throw new DuplicateResourceException("customer with id [%s] already exists".formatted(id));
+        }
+        orderedIds.add(id);
+        index(stored);
+    }
+
+    /**
+     * Inserts a batch of new customers into the in-memory store, all or nothing.
+     * If one of the emails is taken, the customers of the batch inserted so far are removed again
+     * and DuplicateResourceException is thrown.
+     * @param customers The customers to insert.
+     */
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        List<Integer> inserted = new ArrayList<>(customers.size());
+        try {
+            for (Customer customer : customers) {
+                insert(customer);
+                inserted.add(customer.getId());
+            }
+        } catch (DuplicateResourceException e) {
+            inserted.forEach(this::remove);
+            throw e;
+        }
+        awaitDurable();
+    }
+
+    /**
+     * Loads a chunk of an import, inserting its customers one by one and skipping those whose email is taken.
+     * The chunk is claimed before it is loaded, so a concurrent run of the same import skips it. It is journaled
+     * after its customers, so a chunk cut short by a crash is loaded again, skipping the customers it had inserted.
+     * @param importId The ID of the import.
+     * @param firstRow The position of the chunk's first row in the imported file.
+     * @param customers The customers of the chunk.
+     * @return Copies of the inserted customers, or an empty Optional if the chunk had been loaded before.
+     */
+    @Override
+    public Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers) {
+        String chunk = importId + '@' + firstRow;
+        if (!importedChunks.add(chunk)) {
+            return Optional.empty();
+        }
+        List<Customer> inserted = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            try {
+                insert(customer);
+                inserted.add(new Customer(customer));
+            } catch (DuplicateResourceException e) {
+                // Taken email: skipped.
+            }
+        }
+        if (journal != null) {
+            journal.importedChunk(chunk);
+        }
+        awaitDurable();
+        return Optional.of(inserted);
+    }
+
+    /**
+     * Finds which of the given emails are already taken, using the email index.
+     * @param emails The emails to check.
+     * @return The emails among the given ones that belong to existing customers.
+     */
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        return emails.stream()
+                .filter(idsByEmail::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Finds which of the given IDs exist, using the primary map.
+     * @param ids The IDs to check.
+     * @return The IDs among the given ones that belong to existing customers.
+     */
+    @Override
+    public Set<Integer> selectExistingIds(Collection<Integer> ids) {
+        return ids.stream()
+                .filter(customers::containsKey)
+                .collect(Collectors.toSet());
     }
 
     /**
-     * Checks if a customer with the specified email exists in the simulated database.
+     * Checks if a customer with the specified email exists in the in-memory store.
      * @param email The email to check.
      * @return True if a customer with the specified email exists, otherwise false.
      */
     @Override
     public boolean existsPersonWithEmail(String email) {
-        return customers.stream()
-                .anyMatch(c -> c.getEmail().equals(email));
+        return idsByEmail.containsKey(email);
     }
 
     /**
-     * Checks if a customer with the specified ID exists in the simulated database.
+     * Checks if a customer with the specified ID exists in the in-memory store.
      * @param id The ID to check.
      * @return True if a customer with the specified ID exists, otherwise false.
      */
     @Override
     public boolean existsPersonWithId(Integer id) {
-        return customers.stream()
-                .anyMatch(c -> c.getId().equals(id));
+        return customers.containsKey(id);
     }
 
     /**
-     * Deletes a customer by their ID from the simulated database.
+     * Deletes a customer by their ID from the in-memory store, releasing their email.
      * @param customerId The ID of the customer to delete.
      */
     @Override
     public void deleteCustomerById(Integer customerId) {
-        customers.stream()
-                .filter(c -> c.getId().equals(customerId))
-                .findFirst()
-                .ifPresent(customers::remove);
+        remove(customerId);
+        awaitDurable();
+    }
+
+    /**
+     * Deletes customers by their IDs from the in-memory store, releasing their emails.
+     * @param ids The IDs of the customers to delete.
+     * @return The IDs of the customers that were deleted.
+     */
+    @Override
+    public Set<Integer> deleteCustomersByIds(Collection<Integer> ids) {
+        Set<Integer> deleted = new HashSet<>();
+        for (Integer id : ids) {
+            if (remove(id)) {
+                deleted.add(id);
+            }
+        }
+        awaitDurable();
+        return deleted;
+    }
+
+    /**
+     * Removes a customer and its index entries.
+     * @return True if the customer existed.
+     */
+    private boolean remove(Integer customerId) {
+        Customer[] removed = new Customer[1];
+        write(() -> customers.computeIfPresent(customerId, (id, existing) -> {
+            if (journal != null) {
+                journal.delete(id);
+            }
+            removed[0] = existing;
+            return null;
+        }));
+        if (removed[0] == null) {
+            return false;
+        }
+        idsByEmail.remove(removed[0].getEmail(), customerId);
+        orderedIds.remove(customerId);
+        unindex(removed[0]);
+        return true;
     }
 
     /**
-     * Updates the information of an existing customer in the simulated database.
-     * Note: This implementation currently adds the customer instead of updating.
+     * Replaces an existing customer in the in-memory store and increments its version.
+     * The replacement is atomic per customer: the email index is moved to the new email
+     * within the same map operation, and DuplicateResourceException is thrown, leaving the
+     * customer unchanged, if the new email belongs to someone else. As with JPA, a customer
+     * carrying a stale version is rejected with an optimistic locking failure.
      * @param customer The customer with updated information to replace the old customer.
      */
     @Override
     public void updateCustomer(Customer customer) {
-        // This method should be implemented to correctly update a customer's details.
-        // The current implementation simply adds the customer to the list.
-        customers.add(customer);
+        Integer id = customer.getId();
+        write(() -> customers.computeIfPresent(id, (key, existing) -> {
+            if (customer.getVersion() != null && !customer.getVersion().equals(existing.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Customer.class, id);
+            }
+            moveEmail(id, existing.getEmail(), customer.getEmail());
+            Customer replacement = new Customer(customer);
+            replacement.setVersion(existing.getVersion() + 1);
+            journalPut(replacement);
+            unindex(existing);
+            index(replacement);
+            return replacement;
+        }));
+        awaitDurable();
+    }
+
+    /**
+     * Applies a partial update atomically per customer, incrementing the version if anything changed.
+     * @param id The ID of the customer to update.
+     * @param update The fields to change; null fields are left untouched.
+     * @param expectedVersion The version the caller last saw, or null to skip the version check.
+     * @return A copy of the updated customer, or an empty Optional if nothing was written.
+     */
+    @Override
+    public Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        Optional<Customer> updated = updateFields(id, update, expectedVersion);
+        awaitDurable();
+        return updated;
+    }
+
+    /**
+     * Applies a partial update without waiting for the journal.
+     */
+    private Optional<Customer> updateFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        Customer[] updated = new Customer[1];
+        write(() -> customers.computeIfPresent(id, (key, existing) -> {
+            if (expectedVersion != null && !expectedVersion.equals(existing.getVersion())) {
+                return existing;
+            }
+            Customer replacement = new Customer(existing);
+            if (update.name() != null) {
+                replacement.setName(update.name());
+            }
+            if (update.email() != null) {
+                replacement.setEmail(update.email());
+            }
+            if (update.age() != null) {
+                replacement.setAge(update.age());
+            }
+            if (replacement.equals(existing)) {
+                return existing;
+            }
+            moveEmail(id, existing.getEmail(), replacement.getEmail());
+            replacement.setVersion(existing.getVersion() + 1);
+            journalPut(replacement);
+            unindex(existing);
+            index(replacement);
+            updated[0] = replacement;
+            return replacement;
+        }));
+        return Optional.ofNullable(updated[0]).map(Customer::new);
+    }
+
+    /**
+     * Applies partial updates one customer at a time, all or nothing.
+     * If one of the new emails is taken, the customers of the batch updated so far are put back as they were,
+     * with their version incremented once more, and DuplicateResourceException is thrown.
+     * @param updates The fields to change, keyed by customer ID; null fields are left untouched.
+     * @return Copies of the updated customers.
+     */
+    @Override
+    public List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates) {
+        List<Customer> updated = new ArrayList<>(updates.size());
+        List<Customer> previous = new ArrayList<>(updates.size());
+        try {
+            for (Map.Entry<Integer, CustomerUpdateRequest> entry : updates.entrySet()) {
+                Customer before = customers.get(entry.getKey());
+                Optional<Customer> after = updateFields(entry.getKey(), entry.getValue(), null);
+                if (after.isPresent()) {
+                    updated.add(after.get());
+                    previous.add(before);
+                }
+            }
+        } catch (DuplicateResourceException e) {
+            previous.forEach(this::restore);
+            awaitDurable();
+            throw e;
+        }
+        awaitDurable();
+        return updated;
+    }
+
+    /**
+     * Puts a stored customer back as it was before an update of a failed batch. The version moves on rather than
+     * back, so a client that read the briefly updated customer cannot then overwrite it with a stale version.
+     */
+    private void restore(Customer previous) {
+        write(() -> customers.computeIfPresent(previous.getId(), (id, current) -> {
+            Customer restored = new Customer(previous);
+            restored.setVersion(current.getVersion() + 1);
+            moveEmail(id, current.getEmail(), restored.getEmail());
+            journalPut(restored);
+            unindex(current);
+            index(restored);
+            return restored;
+        }));
+    }
+
+    /**
+     * Writes a snapshot and starts a new journal once the journal has grown beyond {@code compact-after},
+     * bounding how much has to be replayed at startup. Writes go on while the snapshot is written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    @Scheduled(fixedDelayString = "${customer.list.persistence.compact-check-interval:60000}") // Milliseconds between checks.
+    public void compact() throws IOException {
+        if (journal != null && journal.size() >= compactAfter) {
+            journal.snapshot(idSequence::get, customers.values(), importedChunks);
+        }
+    }
+
+    /**
+     * Syncs and closes the journal.
+     * @throws IOException If the journal cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Runs a change of the primary map, from its journal record up to the map showing it, as one write of the
+     * journal, so a snapshot starting meanwhile waits for it.
+     */
+    private <T> T write(Supplier<T> change) {
+        if (journal == null) {
+            return change.get();
+        }
+        int token = journal.beginWrite();
+        try {
+            return change.get();
+        } finally {
+            journal.endWrite(token);
+        }
+    }
+
+    /**
+     * Appends the new state of a stored customer to the journal, if there is one.
+     */
+    private void journalPut(Customer stored) {
+        if (journal != null) {
+            journal.put(stored);
+        }
+    }
+
+    /**
+     * Waits until the changes made so far are durable, as configured for the journal.
+     */
+    private void awaitDurable() {
+        if (journal != null) {
+            journal.awaitDurable();
+        }
+    }
+
+    /**
+     * Moves the email index entry of a customer from its old email to its new one.
+     * Throws DuplicateResourceException if the new email belongs to someone else.
+     */
+    private void moveEmail(Integer id, String oldEmail, String newEmail) {
+        if (!oldEmail.equals(newEmail)) {
+            if (idsByEmail.putIfAbsent(newEmail, id) != null) {
+                throw new DuplicateResourceException("email already taken");
+            }
+            idsByEmail.remove(oldEmail, id);
+        }
+    }
+
+    /**
+     * Rebuilds the email and filter indexes from the recovered primary map. Each sorted index is filled in its own
+     * order, which a skip list takes several times faster than the hash order of the map.
+     */
+    private void rebuildIndexes() {
+        Customer[] byId = customers.values().toArray(Customer[]::new);
+        Arrays.parallelSort(byId, Comparator.comparing(Customer::getId));
+        long[] ageKeys = new long[byId.length];
+        TextKey[] names = new TextKey[byId.length];
+        TextKey[] emails = new TextKey[byId.length];
+        for (int i = 0; i < byId.length; i++) {
+            Customer customer = byId[i];
+            int id = customer.getId();
+            idsByEmail.put(customer.getEmail(), id);
+            orderedIds.add(id);
+            idsByDomain.computeIfAbsent(CustomerFilter.domainOf(customer.getEmail()), domain -> new ConcurrentSkipListSet<>())
+                    .add(id);
+            ageKeys[i] = ageKey(customer.getAge(), id);
+            names[i] = new TextKey(CustomerFilter.lowerCase(customer.getName()), id);
+            emails[i] = new TextKey(CustomerFilter.lowerCase(customer.getEmail()), id);
+        }
+        Arrays.parallelSort(ageKeys);
+        for (long key : ageKeys) {
+            idsByAge.add(key);
+        }
+        Arrays.parallelSort(names);
+        idsByName.addAll(Arrays.asList(names));
+        Arrays.parallelSort(emails);
+        idsByLowerEmail.addAll(Arrays.asList(emails));
+    }
+
+    /**
+     * Adds a stored customer to the filter indexes.
+     */
+    private void index(Customer customer) {
+        int id = customer.getId();
+        idsByAge.add(ageKey(customer.getAge(), id));
+        idsByName.add(new TextKey(CustomerFilter.lowerCase(customer.getName()), id));
+        idsByLowerEmail.add(new TextKey(CustomerFilter.lowerCase(customer.getEmail()), id));
+        idsByDomain.compute(CustomerFilter.domainOf(customer.getEmail()), (domain, ids) -> {
+            NavigableSet<Integer> domainIds = ids == null ? new ConcurrentSkipListSet<>() : ids;
+            domainIds.add(id);
+            return domainIds;
+        });
+    }
+
+    /**
+     * Removes a stored customer from the filter indexes.
+     */
+    private void unindex(Customer customer) {
+        int id = customer.getId();
+        idsByAge.remove(ageKey(customer.getAge(), id));
+        idsByName.remove(new TextKey(CustomerFilter.lowerCase(customer.getName()), id));
+        idsByLowerEmail.remove(new TextKey(CustomerFilter.lowerCase(customer.getEmail()), id));
+        idsByDomain.computeIfPresent(CustomerFilter.domainOf(customer.getEmail()), (domain, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Returns the IDs to scan for a filter if they can be read in ID order: the customers of the filtered
+     * email domain, or all customers if no indexed filter is set. Returns null if another index is more selective.
+     */
+    private NavigableSet<Integer> idOrderedCandidates(CustomerFilter filter) {
+        if (filter.emailDomain() != null) {
+            return idsByDomain.getOrDefault(filter.emailDomain(), Collections.emptyNavigableSet());
+        }
+        if (filter.name() == null && filter.email() == null && filter.minAge() == null && filter.maxAge() == null) {
+            return orderedIds;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the IDs matching the name prefix, email prefix or age range of a filter, in that order of preference.
+     */
+    private Stream<Integer> indexedCandidates(CustomerFilter filter) {
+        if (filter.name() != null) {
+            return prefixRange(idsByName, filter.name()).stream().map(TextKey::id);
+        }
+        if (filter.email() != null) {
+            return prefixRange(idsByLowerEmail, filter.email()).stream().map(TextKey::id);
+        }
+        return ageRange(filter).stream().map(key -> (int) key.longValue());
+    }
+
+    /**
+     * Collects copies of the first customers among the given IDs that match the filter.
+     */
+    private List<Customer> firstMatches(Stream<Integer> ids, CustomerFilter filter, int limit) {
+        return ids
+                .map(customers::get)
+                .filter(customer -> customer != null && filter.matches(customer))
+                .limit(limit)
+                .map(Customer::new)
+                .toList();
+    }
+
+    private NavigableSet<Long> ageRange(CustomerFilter filter) {
+        long from = (long) (filter.minAge() == null ? Integer.MIN_VALUE : filter.minAge()) << 32;
+        long to = (long) (filter.maxAge() == null ? Integer.MAX_VALUE : filter.maxAge()) << 32 | 0xFFFFFFFFL;
+        return idsByAge.subSet(from, true, to, true);
+    }
+
+    private static NavigableSet<TextKey> prefixRange(NavigableSet<TextKey> index, String prefix) {
+        return index.subSet(
+                new TextKey(prefix, Integer.MIN_VALUE), true,
+                new TextKey(prefix + Character.MAX_VALUE, Integer.MAX_VALUE), true
+        );
+    }
+
+    private static long ageKey(int age, int id) {
+        return (long) age << 32 | (id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An entry of a text index: the indexed text and the ID of the customer it belongs to.
+     */
+    private record TextKey(String text, int id) implements Comparable<TextKey> {
+
+        @Override
+        public int compareTo(TextKey other) {
+            int byText = text.compareTo(other.text);
+            return byText != 0 ? byText : Integer.compare(id, other.id);
+        }
     }
 }
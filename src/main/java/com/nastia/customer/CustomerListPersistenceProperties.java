@@ -0,0 +1,39 @@
+package com.nastia.customer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * A record binding the {@code customer.list.persistence} properties: where and how the "list" DAO keeps its
+ * customers on disk.
+ */
+@ConfigurationProperties("customer.list.persistence") // Binds the customer.list.persistence properties.
+public record CustomerListPersistenceProperties(
+        // Whether customers are kept on disk and recovered at startup; otherwise they only live in memory.
+        @DefaultValue("false") boolean enabled,
+        // Directory holding the snapshot and the journal.
+        @DefaultValue("data/customers") Path directory,
+        // When a write is considered durable: after a group fsync it waits for, or within one sync interval.
+        @DefaultValue("group") Sync sync,
+        // How often the journal is fsynced in interval mode.
+        @DefaultValue("100ms") Duration syncInterval,
+        // Size of the regions the journal is memory-mapped in; the journal file grows by one region at a time.
+        @DefaultValue("64MB") DataSize journalRegionSize,
+        // Journal size beyond which a snapshot is written and the journal started afresh.
+        @DefaultValue("256MB") DataSize compactAfter
+) {
+
+    /**
+     * When a write to the journal is considered durable.
+     */
+    public enum Sync {
+        // A write returns once an fsync covering it has completed; writes arriving meanwhile share the next fsync.
+        GROUP,
+        // A write returns at once and the journal is fsynced every sync interval.
+        INTERVAL
+    }
+}
@@ -0,0 +1,16 @@
+package com.nastia.customer;
+
+import java.util.List;
+
+/**
+ * A record representing one page of the customer listing.
+ * Pages are keyset-based: the next page is requested by passing {@code nextCursor} as the {@code after} parameter.
+ * The cursor is opaque; it carries the sort key of the last customer of the page.
+ */
+public record CustomerPage(
+        // The customers on this page, in the order of the listing.
+        List<Customer> customers,
+        // The cursor to request the next page with, or null if this is the last page.
+        String nextCursor
+) {
+}
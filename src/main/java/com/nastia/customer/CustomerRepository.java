@@ -1,29 +1,84 @@
 package com.nastia.customer;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for Customer entities. This interface is used for data access operations on Customer data.
- * It extends JpaRepository, which provides JPA related methods for standard data access operations.
+ * It extends JpaRepository, which provides JPA related methods for standard data access operations,
+ * and JpaSpecificationExecutor, which runs the filtered listings built by {@link CustomerSpecifications}.
  */
-public interface CustomerRepository extends JpaRepository<Customer, Integer> {
+public interface CustomerRepository extends JpaRepository<Customer, Integer>, JpaSpecificationExecutor<Customer> {
     // Inherits standard CRUD operations and query methods from JpaRepository.
 
     /**
      * Checks if a customer with the given email exists in the database.
+     * The answer is kept in the query cache until a customer changes.
      *
      * @param email The email to check for existence.
      * @return true if a customer with the specified email exists, false otherwise.
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")) // Answered from the query cache when possible.
     boolean existsCustomersByEmail(String email);
 
     /**
      * Checks if a customer with the given ID exists in the database.
+     * The answer is kept in the query cache until a customer changes.
      *
      * @param id The ID to check for existence.
      * @return true if a customer with the specified ID exists, false otherwise.
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true")) // Answered from the query cache when possible.
     boolean existsCustomerById(Integer id);
 
+    /**
+     * Retrieves customers with an ID greater than the given one, ordered by ID.
+     * Backs keyset pagination: the primary key index is used to seek straight to the start of the page.
+     *
+     * @param id    The ID after which to start.
+     * @param limit The maximum number of customers to return.
+     * @return A list of at most {@code limit} customers ordered by ID.
+     */
+    List<Customer> findByIdGreaterThanOrderByIdAsc(Integer id, Limit limit);
+
+    /**
+     * Retrieves only the version of a customer, answered from a primary key lookup without loading the entity.
+     *
+     * @param id The ID of the customer.
+     * @return The customer's version, or an empty Optional if no customer is found.
+     */
+    @Query("select c.version from Customer c where c.id = :id")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+
+    /**
+     * Finds which of the given emails are already taken, with a single set-based query.
+     *
+     * @param emails The emails to check.
+     * @return The emails among the given ones that belong to existing customers.
+     */
+    @Query("select c.email from Customer c where c.email in :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    /**
+     * Retrieves only the emails greater than the given one, in email order, without loading any entity.
+     * Backs keyset pagination over the unique email index, so nothing enters the persistence context or the entity cache.
+     *
+     * @param email The email after which to start.
+     * @param limit The maximum number of emails to return.
+     * @return A list of at most {@code limit} emails in ascending order.
+     */
+    @Query("select c.email from Customer c where c.email > :email order by c.email")
+    List<String> findEmailsAfter(@Param("email") String email, Limit limit);
+
     // Additional custom queries and operations can be defined here.
 }
@@ -1,12 +1,27 @@
 package com.nastia.customer;
 
 import com.nastia.exception.DuplicateResourceException;
+import com.nastia.exception.PreconditionFailedException;
 import com.nastia.exception.RequestValidationException;
 import com.nastia.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service layer class that handles business logic for customer operations.
@@ -15,110 +30,538 @@ import java.util.List;
 @Service // Marks this class as a Spring service stereotype.
 public class CustomerService {
 
+    static final int DEFAULT_PAGE_SIZE = 100; // Number of customers returned per page when no limit is given.
+    static final int MAX_PAGE_SIZE = 1000; // Upper bound on the page size a client may request.
+    private static final int STREAM_CHUNK_SIZE = 500; // Number of customers fetched per chunk while streaming.
+    static final int MAX_BULK_SIZE = 100_000; // Upper bound on the number of customers in one bulk request.
+    private static final int BULK_CHUNK_SIZE = 5000; // Number of customers written per all-or-nothing insert.
+
     private final CustomerDAO customerDAO;
+    private final CustomerChangeCounter changeCounter; // Counts writes the DAO does not count itself, for the collection ETag.
+    private final CustomerWriteBehind writeBehind; // Queues registrations and updates when write-behind is enabled, otherwise null.
+
+    // Per-method timers, registered once so recording a call allocates nothing.
+    private final Timer pageTimer;
+    private final Timer streamTimer;
+    private final Timer exportTimer;
+    private final Timer getTimer;
+    private final Timer versionTimer;
+    private final Timer addTimer;
+    private final Timer bulkAddTimer;
+    private final Timer deleteTimer;
+    private final Timer bulkDeleteTimer;
+    private final Timer updateTimer;
+    private final Timer bulkUpdateTimer;
 
     /**
      * Constructs the service with a specific implementation of CustomerDAO.
      * The @Qualifier annotation is used to specify which bean to inject when multiple beans of the same type are present.
      *
-     * @param customerDAO The data access object for customer operations.
+     * @param customerDAO   The data access object for customer operations.
+     * @param changeCounter The table-level change counter, bumped after every write the DAO does not count itself.
+     * @param writeBehind   The write-behind queue, available only when write-behind is enabled.
+     * @param meterRegistry The registry the per-method timers are registered with.
      */
-    public CustomerService(@Qualifier("jpa") CustomerDAO customerDAO) {
+    public CustomerService(@Qualifier("cached") CustomerDAO customerDAO,
+                           CustomerChangeCounter changeCounter,
+                           ObjectProvider<CustomerWriteBehind> writeBehind,
+                           MeterRegistry meterRegistry) {
         this.customerDAO = customerDAO;
+        this.changeCounter = changeCounter;
+        this.writeBehind = writeBehind.getIfAvailable();
+        this.pageTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "getCustomersPage");
+        this.streamTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "streamAllCustomers");
+        this.exportTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "exportCustomersAsCsv");
+        this.getTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "getCustomer");
+        this.versionTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "getCustomerVersion");
+        this.addTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "addCustomer");
+        this.bulkAddTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "addCustomers");
+        this.deleteTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "deleteCustomerById");
+        this.bulkDeleteTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "deleteCustomersByIds");
+        this.updateTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "updateCustomer");
+        this.bulkUpdateTimer = CustomerMetrics.timer(meterRegistry, "customer.service", "updateCustomers");
     }
 
     /**
-     * Retrieves all customers from the database.
+     * Retrieves one page of customers ordered by ID, starting right after the given cursor.
+     * Throws RequestValidationException if the limit is out of range.
      *
-     * @return A list of all customers.
+     * @param after The cursor returned with the previous page, or null for the first page.
+     * @param limit The maximum number of customers on the page.
+     * @return The requested page, with the cursor of the next page if there may be more customers.
      */
-    public List<Customer> getAllCustomers() {
-        return customerDAO.selectAllCustomers();
+    public CustomerPage getCustomersPage(Integer after, int limit) {
+        return getCustomersPage(CustomerFilter.NONE, CustomerSort.BY_ID, after == null ? null : after.toString(), limit);
+    }
+
+    /**
+     * Retrieves one page of the customers matching a filter, in the given order, starting right after the cursor.
+     * The cursor carries the sort key of the last customer of the previous page, see {@link CustomerCursor}, so
+     * pages follow each other without gaps or repeats even if that customer has since changed or been deleted.
+     * Throws RequestValidationException if the limit or age range is invalid, or if the cursor is not one issued
+     * for this order.
+     *
+     * @param filter The filters the customers must match.
+     * @param sort   The order of the listing.
+     * @param after  The cursor returned with the previous page, or null for the first page.
+     * @param limit  The maximum number of customers on the page.
+     * @return The requested page, with the cursor of the next page if there may be more customers.
+     */
+    public CustomerPage getCustomersPage(CustomerFilter filter, CustomerSort sort, String after, int limit) {
+        long start = System.nanoTime();
+        try {
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new RequestValidationException(
+                        "limit must be between 1 and %s".formatted(MAX_PAGE_SIZE)
+                );
+            }
+            if (filter.minAge() != null && filter.maxAge() != null && filter.minAge() > filter.maxAge()) {
+                throw new RequestValidationException("minAge must not be greater than maxAge");
+            }
+            Customer cursor = CustomerCursor.decode(sort, after);
+            List<Customer> customers = filter.isEmpty() && sort.equals(CustomerSort.BY_ID)
+                    ? customerDAO.selectCustomersAfter(cursor == null ? null : cursor.getId(), limit)
+                    : customerDAO.selectCustomers(filter, sort, cursor, limit);
+            String nextCursor = customers.size() == limit
+                    ? CustomerCursor.encode(sort, customers.get(customers.size() - 1))
+                    : null;
+            return new CustomerPage(customers, nextCursor);
+        } finally {
+            pageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Streams all customers ordered by ID to the given consumer, one chunk at a time.
+     *
+     * @param consumer The consumer receiving each customer.
+     */
+    public void streamAllCustomers(Consumer<Customer> consumer) {
+        long start = System.nanoTime();
+        try {
+            customerDAO.streamAllCustomers(STREAM_CHUNK_SIZE, consumer);
+        } finally {
+            streamTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Writes all customers ordered by ID to a stream as CSV, without holding them in memory.
+     *
+     * @param outputStream The stream receiving the CSV.
+     * @throws IOException If writing to the stream fails.
+     */
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        try {
+            customerDAO.exportCustomersAsCsv(outputStream);
+        } finally {
+            exportTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
      * Retrieves a specific customer by ID.
+     * With write-behind, a customer whose writes are still queued is returned as last accepted.
      * Throws a ResourceNotFoundException if the customer is not found.
      *
      * @param id The ID of the customer to retrieve.
      * @return The retrieved customer.
      */
     public Customer getCustomer(Integer id) {
-        return customerDAO.selectCustomerById(id)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "customer with id [%s] not found".formatted(id)
-                ));
+        long start = System.nanoTime();
+        try {
+            if (writeBehind != null) {
+                Optional<Customer> pending = writeBehind.pending(id);
+                if (pending.isPresent()) {
+                    return pending.get();
+                }
+            }
+            return customerDAO.selectCustomerById(id)
+                    .orElseThrow(() -> new ResourceNotFoundException(
+                            "customer with id [%s] not found".formatted(id)
+                    ));
+        } finally {
+            getTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Retrieves a customer as last accepted by write-behind, if its writes are still queued. Only looks at the
+     * queue, so callers that read the database on their own can check it first without blocking.
+     *
+     * @param id The ID of the customer.
+     * @return A copy of the pending customer, or an empty Optional if write-behind is off or holds nothing for it.
+     */
+    public Optional<Customer> getPendingCustomer(Integer id) {
+        return writeBehind != null ? writeBehind.pending(id) : Optional.empty();
+    }
+
+    /**
+     * Retrieves only the version of a customer, to validate a client's cached copy without loading it.
+     * Throws a ResourceNotFoundException if the customer is not found.
+     *
+     * @param id The ID of the customer.
+     * @return The customer's current version.
+     */
+    public long getCustomerVersion(Integer id) {
+        long start = System.nanoTime();
+        try {
+            if (writeBehind != null) {
+                Optional<Customer> pending = writeBehind.pending(id);
+                if (pending.isPresent()) {
+                    return pending.get().getVersion();
+                }
+            }
+            return customerDAO.selectCustomerVersion(id)
+                    .orElseThrow(() -> new ResourceNotFoundException(
+                            "customer with id [%s] not found".formatted(id)
+                    ));
+        } finally {
+            versionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the number of writes made to the customer collection so far.
+     * Read it before reading the customers: the counter is only bumped once a write is committed.
+     *
+     * @return The current value of the table-level change counter.
+     */
+    public long getChangeCount() {
+        return changeCounter.current();
+    }
+
+    /**
+     * Returns whether registrations and updates are queued and written behind instead of committed before returning.
+     *
+     * @return True if write-behind is enabled.
+     */
+    public boolean isWriteBehind() {
+        return writeBehind != null;
     }
 
     /**
      * Adds a new customer based on the provided registration request.
-     * Throws DuplicateResourceException if the email is already taken.
+     * With write-behind, the customer is validated and queued, and committed shortly after this method returns;
+     * since a failure could then no longer be reported, missing fields are rejected up front.
+     * Throws DuplicateResourceException if the email is already taken, RequestValidationException if a field
+     * is missing in write-behind mode and ServiceUnavailableException if the write-behind queue stays full.
      *
      * @param customerRegistrationRequest The registration request containing the customer's information.
+     * @return The new customer, with its ID.
      */
-    public void addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
-        String email = customerRegistrationRequest.email();
-        if (customerDAO.existsPersonWithEmail(email)) {
-            throw new DuplicateResourceException("email already taken");
+    public Customer addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
+        long start = System.nanoTime();
+        try {
+            String email = customerRegistrationRequest.email();
+            if (writeBehind != null) {
+                if (customerRegistrationRequest.name() == null || email == null || customerRegistrationRequest.age() == null) {
+                    throw new RequestValidationException("name, email and age are required");
+                }
+                return writeBehind.insert(customerRegistrationRequest.name(), email, customerRegistrationRequest.age());
+            }
+            if (customerDAO.existsPersonWithEmail(email)) {
+                throw new DuplicateResourceException("email already taken");
+            }
+            Customer customer = new Customer(
+                    customerRegistrationRequest.name(),
+                    customerRegistrationRequest.email(),
+                    customerRegistrationRequest.age()
+            );
+            customerDAO.insertCustomer(customer);
+            countChange();
+            return customer;
+        } finally {
+            addTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Registers many customers at once and reports the outcome of each one.
+     * Requests with missing fields, emails repeated within the request and emails that are already
+     * taken, or claimed by a queued write-behind write, are rejected individually; duplicates are found with one set-based lookup rather than a
+     * query per customer. The remaining customers are written in chunks of batched inserts. If a chunk
+     * is rejected because another request took one of its emails meanwhile, its customers are retried
+     * one by one so that only the conflicting ones fail.
+     * Throws RequestValidationException if the request is empty or too large.
+     *
+     * @param requests The registration requests, in the order their results are reported.
+     * @return One result per request, at the same position.
+     */
+    public List<BulkRegistrationResult> addCustomers(List<CustomerRegistrationRequest> requests) {
+        long start = System.nanoTime();
+        try {
+            if (requests == null || requests.isEmpty() || requests.size() > MAX_BULK_SIZE) {
+                throw new RequestValidationException(
+                        "bulk registration must contain between 1 and %s customers".formatted(MAX_BULK_SIZE)
+                );
+            }
+
+            BulkRegistrationResult[] results = new BulkRegistrationResult[requests.size()];
+            List<Integer> candidates = new ArrayList<>(requests.size());
+            Set<String> emailsInRequest = new HashSet<>();
+            for (int i = 0; i < requests.size(); i++) {
+                CustomerRegistrationRequest request = requests.get(i);
+                if (request == null || request.name() == null || request.email() == null || request.age() == null) {
+                    results[i] = BulkRegistrationResult.failed(i, "name, email and age are required");
+                } else if (!emailsInRequest.add(request.email())) {
+                    results[i] = BulkRegistrationResult.failed(i, "email repeated within the request");
+                } else {
+                    candidates.add(i);
+                }
+            }
+
+            Set<String> takenEmails = customerDAO.selectExistingEmails(emailsInRequest);
+            List<Integer> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+            for (Integer i : candidates) {
+                String email = requests.get(i).email();
+                if (takenEmails.contains(email) || (writeBehind != null && writeBehind.isEmailPending(email))) {
+                    results[i] = BulkRegistrationResult.failed(i, "email already taken");
+                    continue;
+                }
+                chunk.add(i);
+                if (chunk.size() == BULK_CHUNK_SIZE) {
+                    insertChunk(requests, chunk, results);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                insertChunk(requests, chunk, results);
+            }
+            return List.of(results);
+        } finally {
+            bulkAddTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Inserts one chunk of a bulk registration, falling back to single inserts if the chunk is rejected.
+     *
+     * @param requests The registration requests of the bulk registration.
+     * @param chunk    The positions of the requests to insert.
+     * @param results  The results to fill in for the inserted positions.
+     */
+    private void insertChunk(List<CustomerRegistrationRequest> requests,
+                             List<Integer> chunk,
+                             BulkRegistrationResult[] results) {
+        List<Customer> customers = new ArrayList<>(chunk.size());
+        for (Integer i : chunk) {
+            CustomerRegistrationRequest request = requests.get(i);
+            customers.add(new Customer(request.name(), request.email(), request.age()));
+        }
+        try {
+            customerDAO.insertCustomers(customers);
+            for (int j = 0; j < chunk.size(); j++) {
+                results[chunk.get(j)] = BulkRegistrationResult.created(chunk.get(j), customers.get(j).getId());
+            }
+            countChange();
+        } catch (DuplicateResourceException e) {
+            for (int j = 0; j < chunk.size(); j++) {
+                Integer i = chunk.get(j);
+                Customer customer = new Customer(customers.get(j).getName(), customers.get(j).getEmail(), customers.get(j).getAge());
+                try {
+                    customerDAO.insertCustomer(customer);
+                    results[i] = BulkRegistrationResult.created(i, customer.getId());
+                } catch (DuplicateResourceException duplicate) {
+                    results[i] = BulkRegistrationResult.failed(i, duplicate.getMessage());
+                }
+            }
+            countChange();
         }
-        customerDAO.insertCustomer(
-                new Customer(
-                        customerRegistrationRequest.name(),
-                        customerRegistrationRequest.email(),
-                        customerRegistrationRequest.age()
-                )
-        );
     }
 
     /**
      * Deletes a customer by their ID.
+     * The delete itself tells whether the customer existed, so no existence check precedes it.
+     * With write-behind, the customer's queued writes are flushed first, so the delete comes after them.
      * Throws ResourceNotFoundException if the customer does not exist.
      *
      * @param customerId The ID of the customer to delete.
      */
     public void deleteCustomerById(Integer customerId) {
-        if (!customerDAO.existsPersonWithId(customerId)) {
-            throw new ResourceNotFoundException("customer with id [%s] not found".formatted(customerId));
+        long start = System.nanoTime();
+        try {
+            if (writeBehind != null) {
+                writeBehind.awaitFlushed(customerId);
+            }
+            if (customerDAO.deleteCustomersByIds(List.of(customerId)).isEmpty()) {
+                throw new ResourceNotFoundException("customer with id [%s] not found".formatted(customerId));
+            }
+            countChange();
+        } finally {
+            deleteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        customerDAO.deleteCustomerById(customerId);
     }
 
     /**
-     * Updates the information of an existing customer.
-     * Validates changes and ensures the new email (if changed) is not already taken.
-     * Throws RequestValidationException if no changes are detected.
+     * Deletes many customers at once with one set-based delete, and reports the IDs that did not exist.
+     * IDs repeated within the request are deleted once.
+     * With write-behind, the customers' queued writes are flushed first, so the delete comes after them.
+     * Throws RequestValidationException if the request is empty, too large or contains a null ID.
      *
-     * @param customerId     The ID of the customer to update.
-     * @param updateRequest The request containing the updated customer information.
+     * @param ids The IDs of the customers to delete.
+     * @return The number of customers deleted and the IDs that did not exist.
      */
-    public void updateCustomer(Integer customerId, CustomerUpdateRequest updateRequest) {
-        Customer customer = getCustomer(customerId);
-
-        boolean changes = false;
+    public BulkChangeResult deleteCustomersByIds(List<Integer> ids) {
+        long start = System.nanoTime();
+        try {
+            if (ids == null || ids.isEmpty() || ids.size() > MAX_BULK_SIZE) {
+                throw new RequestValidationException(
+                        "bulk delete must contain between 1 and %s customer ids".formatted(MAX_BULK_SIZE)
+                );
+            }
+            Set<Integer> requested = new LinkedHashSet<>(ids);
+            if (requested.contains(null)) {
+                throw new RequestValidationException("customer ids must not be null");
+            }
+            if (writeBehind != null) {
+                requested.forEach(writeBehind::awaitFlushed);
+            }
 
-        if (updateRequest.name() != null && !updateRequest.name().equals(customer.getName())) {
-            customer.setName(updateRequest.name());
-            changes = true;
+            Set<Integer> deleted = customerDAO.deleteCustomersByIds(requested);
+            if (!deleted.isEmpty()) {
+                countChange();
+            }
+            return new BulkChangeResult(requested.size(), deleted.size(), missing(requested, deleted));
+        } finally {
+            bulkDeleteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
+    }
 
-        if (updateRequest.age() != null && !updateRequest.age().equals(customer.getAge())) {
-            customer.setAge(updateRequest.age());
-            changes = true;
+    /**
+     * Applies partial updates to many customers at once, all or nothing, and reports the IDs that did not exist.
+     * The updates are written with one set-based statement per chunk, which skips missing customers and
+     * customers the update would not change; only the customers it skipped are then looked up, with one
+     * query, to tell the missing ones apart. Unlike single updates, no version is checked.
+     * With write-behind, the customers' queued writes are flushed first and the updates are written directly.
+     * Throws RequestValidationException if the request is empty or too large, or if an update has no ID or
+     * no field, names a customer already updated by the request, or sets an email another update also sets;
+     * throws DuplicateResourceException, writing nothing, if a new email belongs to another customer.
+     *
+     * @param requests The updates, one per customer.
+     * @return The number of customers updated and the IDs that did not exist.
+     */
+    public BulkChangeResult updateCustomers(List<BulkUpdateRequest> requests) {
+        long start = System.nanoTime();
+        try {
+            if (requests == null || requests.isEmpty() || requests.size() > MAX_BULK_SIZE) {
+                throw new RequestValidationException(
+                        "bulk update must contain between 1 and %s customers".formatted(MAX_BULK_SIZE)
+                );
+            }
+            Map<Integer, CustomerUpdateRequest> updates = new LinkedHashMap<>();
+            Set<String> emailsInRequest = new HashSet<>();
+            for (int i = 0; i < requests.size(); i++) {
+                BulkUpdateRequest request = requests.get(i);
+                if (request == null || request.id() == null) {
+                    throw new RequestValidationException("update at index [%s] has no customer id".formatted(i));
+                }
+                if (request.name() == null && request.email() == null && request.age() == null) {
+                    throw new RequestValidationException("no data changes found for customer [%s]".formatted(request.id()));
+                }
+                if (updates.putIfAbsent(request.id(), request.changes()) != null) {
+                    throw new RequestValidationException("customer [%s] repeated within the request".formatted(request.id()));
+                }
+                if (request.email() != null && !emailsInRequest.add(request.email())) {
+                    throw new RequestValidationException("email repeated within the request");
+                }
+            }
+            if (writeBehind != null) {
+                updates.keySet().forEach(writeBehind::awaitFlushed);
+                if (emailsInRequest.stream().anyMatch(writeBehind::isEmailPending)) {
+                    throw new DuplicateResourceException("email already taken");
+                }
+            }
+
+            List<Customer> updated = customerDAO.updateCustomersFields(updates);
+            Set<Integer> skipped = new LinkedHashSet<>(updates.keySet());
+            updated.forEach(customer -> skipped.remove(customer.getId()));
+            List<Integer> missingIds = skipped.isEmpty()
+                    ? List.of()
+                    : missing(skipped, customerDAO.selectExistingIds(skipped));
+            if (!updated.isEmpty()) {
+                countChange();
+            }
+            return new BulkChangeResult(updates.size(), updated.size(), missingIds);
+        } finally {
+            bulkUpdateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
+    }
 
-        if (updateRequest.email() != null && !updateRequest.email().equals(customer.getEmail())) {
-            if (customerDAO.existsPersonWithEmail(updateRequest.email())) {
-                throw new DuplicateResourceException("email already taken");
+    /**
+     * Lists the requested IDs that are not among the found ones, in request order.
+     */
+    private static List<Integer> missing(Set<Integer> requested, Set<Integer> found) {
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : requested) {
+            if (!found.contains(id)) {
+                missing.add(id);
             }
-            customer.setEmail(updateRequest.email());
-            changes = true;
         }
+        return missing;
+    }
+
+    /**
+     * Updates the information of an existing customer, whatever its current version.
+     *
+     * @param customerId    The ID of the customer to update.
+     * @param updateRequest The request containing the updated customer information.
+     * @return The updated customer.
+     */
+    public Customer updateCustomer(Integer customerId, CustomerUpdateRequest updateRequest) {
+        return updateCustomer(customerId, updateRequest, null);
+    }
+
+    /**
+     * Updates the information of an existing customer.
+     * The update is a single conditional write: it only succeeds if the customer exists, is still at the
+     * expected version and at least one field changes, and a taken email is reported by the data store.
+     * Only when nothing was written is the customer read again, to tell the caller why.
+     * With write-behind, the update is instead validated against the customer's latest accepted state and queued.
+     * Throws ResourceNotFoundException if the customer does not exist, PreconditionFailedException if it was
+     * modified since {@code expectedVersion}, DuplicateResourceException if the new email is already taken and
+     * RequestValidationException if no changes are detected.
+     *
+     * @param customerId      The ID of the customer to update.
+     * @param updateRequest   The request containing the updated customer information.
+     * @param expectedVersion The version the client last saw, or null to update whatever the current version is.
+     * @return The updated customer.
+     */
+    public Customer updateCustomer(Integer customerId, CustomerUpdateRequest updateRequest, Long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            if (updateRequest.name() == null && updateRequest.email() == null && updateRequest.age() == null) {
+                throw new RequestValidationException("no data changes found");
+            }
+            if (writeBehind != null) {
+                return writeBehind.update(customerId, updateRequest, expectedVersion);
+            }
+
+            Optional<Customer> updated = customerDAO.updateCustomerFields(customerId, updateRequest, expectedVersion);
+            if (updated.isPresent()) {
+                countChange();
+                return updated.get();
+            }
 
-        if (!changes) {
+            Customer customer = getCustomer(customerId);
+            if (expectedVersion != null && !expectedVersion.equals(customer.getVersion())) {
+                throw new PreconditionFailedException(
+                        "customer with id [%s] has been modified since version [%s]".formatted(customerId, expectedVersion)
+                );
+            }
             throw new RequestValidationException("no data changes found");
+        } finally {
+            updateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
+    }
 
-        customerDAO.updateCustomer(customer);
+    /**
+     * Counts a write on the table-level change counter, unless the DAO already counted it in the write's transaction.
+     */
+    private void countChange() {
+        if (!customerDAO.countsChanges()) {
+            changeCounter.increment();
+        }
     }
 }
-
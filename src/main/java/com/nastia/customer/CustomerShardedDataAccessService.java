@@ -0,0 +1,992 @@
+package com.nastia.customer;
+
+import com.nastia.datasource.ShardDataSources;
+import com.nastia.exception.DuplicateResourceException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Data access service spreading customers over several databases, sharded by a hash of the customer ID.
+ *
+ * A customer lives on exactly one shard, so lookups, updates and deletes by ID touch one database.
+ * IDs come from the pooled allocator on the primary database, which makes them unique across shards.
+ * Emails are unique across shards through the email directory on the primary database: a write claims
+ * its email there before touching a shard and releases it again if the shard write fails, so checking
+ * an email stays a single primary-key lookup. A claim whose release never happened, because the process died
+ * or a compensation failed, is removed by {@link #reconcileEmailDirectory(Duration)}, and customers written
+ * while another data store was in use get their missing claims from {@link #backfillEmailDirectory()}.
+ *
+ * Listings scatter the same keyset query to every shard in parallel and merge the sorted pages, so each
+ * shard returns at most one page. Names and emails are sorted in the "C" collation on PostgreSQL, byte order,
+ * which is the order the merge compares them in, whatever the collation of each shard database. Writes are not recorded in the customer outbox, which lives in the primary
+ * database and cannot share a transaction with a shard. The number of shards must not change once customers
+ * are stored, since that would move customers to other shards.
+ */
+@Repository("sharded") // Marks this class as a Spring-managed repository, with "sharded" as its identifier.
+public class CustomerShardedDataAccessService implements CustomerDAO, AutoCloseable {
+
+    private static final int JDBC_BATCH_SIZE = 1000; // Rows per JDBC batch.
+    private static final int EMAIL_LOOKUP_CHUNK_SIZE = 1000; // Emails per IN list when checking for existing emails.
+    private static final int EXPORT_CHUNK_SIZE = 1000; // Customers fetched per shard and page while exporting.
+    private static final int RECONCILE_CHUNK_SIZE = 1000; // Directory claims checked against the shards at a time.
+    private static final String COLUMNS = "id, name, email, age, version"; // Columns read into a Customer.
+    private static final RowMapper<Customer> CUSTOMER_ROW_MAPPER = (resultSet, rowNum) -> {
+        Customer customer = new Customer(
+                resultSet.getInt("id"),
+                resultSet.getString("name"),
+                resultSet.getString("email"),
+                resultSet.getInt("age")
+        );
+        customer.setVersion(resultSet.getLong("version"));
+        return customer;
+    };
+
+    private final List<JdbcTemplate> shards = new ArrayList<>(); // One template per shard, in shard order.
+    private final List<TransactionTemplate> shardTransactions = new ArrayList<>(); // Local transactions on each shard.
+    private final JdbcTemplate directory; // JDBC template on the primary database holding the email directory.
+    private final TransactionTemplate directoryTransaction; // Transactions on the primary database.
+    private final CustomerIdAllocator idAllocator; // Allocates IDs that are unique across all shards.
+    private final ExecutorService scatterExecutor; // Runs the per-shard queries of a scatter-gather in parallel.
+    private final String textCollation; // Appended to text columns sorted or compared in listings, so shards sort as the merge does.
+
+    /**
+     * Constructs the sharded DAO.
+     *
+     * @param shardDataSources     The shard databases, in shard order.
+     * @param jdbcTemplate         JDBC template on the primary database, for the email directory.
+     * @param transactionTemplate  Template on the primary (JDBC) transaction manager.
+     * @param idAllocator          Allocator of customer IDs in pooled blocks.
+     */
+    public CustomerShardedDataAccessService(ShardDataSources shardDataSources,
+                                            JdbcTemplate jdbcTemplate,
+                                            TransactionTemplate transactionTemplate,
+                                            CustomerIdAllocator idAllocator) {
+        for (DataSource dataSource : shardDataSources.dataSources()) {
+            shards.add(new JdbcTemplate(dataSource));
+            shardTransactions.add(new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        }
+        this.directory = jdbcTemplate;
+        this.directoryTransaction = transactionTemplate;
+        this.idAllocator = idAllocator;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("customer-shard-");
+        threadFactory.setDaemon(true);
+        this.scatterExecutor = Executors.newFixedThreadPool(shards.size() * 4, threadFactory);
+        String product = shards.get(0).execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        // H2 already compares strings by code point, as String.compareTo does.
+        this.textCollation = DatabaseDriver.fromProductName(product) == DatabaseDriver.POSTGRESQL ? " COLLATE \"C\"" : "";
+    }
+
+    /**
+     * Retrieves all customers from every shard, merged into ID order.
+     *
+     * @return A list of all customers, ordered by ID.
+     */
+    @Override
+    public List<Customer> selectAllCustomers() {
+        List<List<Customer>> perShard = scatter(shard -> shard.query(
+                "SELECT " + COLUMNS + " FROM customer ORDER BY id", CUSTOMER_ROW_MAPPER
+        ));
+        return merge(perShard, CustomerSort.BY_ID.comparator(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a page of customers ordered by ID, starting right after the given ID.
+     *
+     * @param afterId The ID of the last customer of the previous page, or null to start from the beginning.
+     * @param limit   The maximum number of customers to return.
+     * @return A list of at most {@code limit} customers ordered by ID.
+     */
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        Customer after = afterId == null ? null : new Customer(afterId, null, null, null);
+        return selectCustomers(CustomerFilter.NONE, CustomerSort.BY_ID, after, limit);
+    }
+
+    /**
+     * Retrieves a page of filtered, sorted customers by sending the same keyset query to every shard
+     * in parallel and merging the sorted results. Each shard returns at most {@code limit} rows, and
+     * the page is made of the first {@code limit} rows of the merge. Shards sort and compare names and emails
+     * in the collation the merge's comparator follows.
+     *
+     * @param filter The filters the customers must match.
+     * @param sort   The order of the listing.
+     * @param after  The last customer of the previous page, or null to start from the beginning.
+     * @param limit  The maximum number of customers to return.
+     * @return A list of at most {@code limit} matching customers, in the given order.
+     */
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> arguments = new ArrayList<>();
+        addFilter(filter, conditions, arguments);
+        if (after != null) {
+            addAfter(sort, after, conditions, arguments);
+        }
+        String direction = sort.descending() ? " DESC" : " ASC";
+        String sql = "SELECT " + COLUMNS + " FROM customer"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY " + sortKey(sort.field()) + direction
+                + (sort.field() == CustomerSort.Field.ID ? "" : ", id" + direction)
+                + " LIMIT ?";
+        arguments.add(limit);
+        Object[] parameters = arguments.toArray();
+        List<List<Customer>> perShard = scatter(shard -> shard.query(sql, CUSTOMER_ROW_MAPPER, parameters));
+        return merge(perShard, sort.comparator(), limit);
+    }
+
+    /**
+     * Streams all customers ordered by ID, one merged keyset page at a time.
+     *
+     * @param chunkSize The number of customers to fetch per page.
+     * @param consumer  The consumer receiving each customer.
+     */
+    @Override
+    public void streamAllCustomers(int chunkSize, Consumer<Customer> consumer) {
+        Integer afterId = null;
+        List<Customer> page;
+        do {
+            page = selectCustomersAfter(afterId, chunkSize);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == chunkSize);
+    }
+
+    /**
+     * Writes all customers as CSV, merging the shards page by page as a streamed listing does.
+     *
+     * @param outputStream The stream receiving the CSV.
+     * @throws IOException If writing to the stream fails.
+     */
+    @Override
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.append(CustomerCsv.HEADER).append('\n');
+        try {
+            streamAllCustomers(EXPORT_CHUNK_SIZE, customer -> {
+                try {
+                    CustomerCsv.writeRow(writer, customer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Retrieves a customer by their ID from its shard.
+     *
+     * @param id The ID of the customer to retrieve.
+     * @return An Optional containing the found customer or an empty Optional if no customer is found.
+     */
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        return shardOf(id).query("SELECT " + COLUMNS + " FROM customer WHERE id = ?", CUSTOMER_ROW_MAPPER, id)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Retrieves only the version of a customer from its shard.
+     *
+     * @param id The ID of the customer.
+     * @return An Optional containing the customer's version or an empty Optional if no customer is found.
+     */
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer id) {
+        return shardOf(id).queryForList("SELECT version FROM customer WHERE id = ?", Long.class, id)
+                .stream()
+                .findFirst();
+    }
+
+    /**
+     * Inserts a new customer on its shard, after claiming its email in the directory.
+     * Throws DuplicateResourceException if the email is already taken.
+     *
+     * @param customer The customer to insert.
+     */
+    @Override
+    public void insertCustomer(Customer customer) {
+        if (customer.getId() == null) {
+            customer.setId(idAllocator.nextId());
+        }
+        claimEmail(customer.getEmail(), customer.getId());
+        try {
+            shardOf(customer.getId()).update(
+                    "INSERT INTO customer (id, name, email, age, version) VALUES (?, ?, ?, ?, 0)",
+                    customer.getId(), customer.getName(), customer.getEmail(), customer.getAge()
+            );
+        } catch (RuntimeException e) {
+            releaseEmail(customer.getEmail(), customer.getId());
+            throw e;
+        }
+        customer.setVersion(0L);
+    }
+
+    /**
+     * Inserts a batch of new customers, all or nothing.
+     * All emails are claimed in the directory in one transaction first; then every shard inserts its
+     * customers in one local transaction, in parallel with the others. If any shard fails, the customers
+     * already inserted on the other shards are deleted again and the claims are released.
+     * Throws DuplicateResourceException if any of the emails is already taken.
+     *
+     * @param customers The customers to insert.
+     */
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        Map<Integer, List<Customer>> byShard = new TreeMap<>();
+        for (Customer customer : customers) {
+            if (customer.getId() == null) {
+                customer.setId(idAllocator.nextId());
+            }
+            byShard.computeIfAbsent(shardIndex(customer.getId()), shard -> new ArrayList<>()).add(customer);
+        }
+        try {
+            directoryTransaction.executeWithoutResult(status -> directory.batchUpdate(
+                    "INSERT INTO customer_email_directory (email, customer_id) VALUES (?, ?)",
+                    customers,
+                    JDBC_BATCH_SIZE,
+                    (statement, customer) -> {
+                        statement.setString(1, customer.getEmail());
+                        statement.setInt(2, customer.getId());
+                    }
+            ));
+        } catch (DataIntegrityViolationException e) {
+            throw new DuplicateResourceException("email already taken");
+        }
+
+        Map<Integer, CompletableFuture<Void>> inserts = new TreeMap<>();
+        byShard.forEach((shard, shardCustomers) -> inserts.put(shard, CompletableFuture.runAsync(
+                () -> shardTransactions.get(shard).executeWithoutResult(status -> shards.get(shard).batchUpdate(
+                        "INSERT INTO customer (id, name, email, age, version) VALUES (?, ?, ?, ?, 0)",
+                        shardCustomers,
+                        JDBC_BATCH_SIZE,
+                        (statement, customer) -> {
+                            statement.setInt(1, customer.getId());
+                            statement.setString(2, customer.getName());
+                            statement.setString(3, customer.getEmail());
+                            statement.setInt(4, customer.getAge());
+                        }
+                )),
+                scatterExecutor
+        )));
+        RuntimeException failure = null;
+        List<Integer> insertedShards = new ArrayList<>();
+        for (Map.Entry<Integer, CompletableFuture<Void>> insert : inserts.entrySet()) {
+            try {
+                insert.getValue().join();
+                insertedShards.add(insert.getKey());
+            } catch (CompletionException e) {
+                failure = unwrap(e);
+            }
+        }
+        if (failure != null) {
+            for (Integer shard : insertedShards) {
+                shards.get(shard).batchUpdate("DELETE FROM customer WHERE id = ?", byShard.get(shard), JDBC_BATCH_SIZE,
+                        (statement, customer) -> statement.setInt(1, customer.getId()));
+            }
+            directory.batchUpdate("DELETE FROM customer_email_directory WHERE email = ? AND customer_id = ?",
+                    customers, JDBC_BATCH_SIZE, (statement, customer) -> {
+                        statement.setString(1, customer.getEmail());
+                        statement.setInt(2, customer.getId());
+                    });
+            throw failure;
+        }
+        customers.forEach(customer -> customer.setVersion(0L));
+    }
+
+    /**
+     * Loads a chunk of an import: skips emails the directory already holds or the chunk repeats, and inserts
+     * the rest as a bulk insert. If a concurrent writer took one of the emails meanwhile, the customers are
+     * inserted one by one instead, skipping the taken ones. The checkpoint is recorded in the primary database
+     * afterwards; the shards cannot share its transaction, so a crash in between makes the next run load the
+     * chunk again, which then finds all its emails taken.
+     *
+     * @param importId  The ID of the import.
+     * @param firstRow  The position of the chunk's first row in the imported file.
+     * @param customers The customers of the chunk.
+     * @return The inserted customers, or an empty Optional if the chunk had been loaded before.
+     */
+    @Override
+    public Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers) {
+        if (!directory.queryForList("SELECT imported FROM customer_import_chunk WHERE import_id = ? AND first_row = ?",
+                Integer.class, importId, firstRow).isEmpty()) {
+            return Optional.empty();
+        }
+        Set<String> emails = new HashSet<>();
+        customers.forEach(customer -> emails.add(customer.getEmail()));
+        Set<String> taken = selectExistingEmails(emails);
+        List<Customer> fresh = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            if (taken.add(customer.getEmail())) { // Also skips emails repeated within the chunk.
+                fresh.add(customer);
+            }
+        }
+        List<Customer> inserted = new ArrayList<>(fresh.size());
+        if (!fresh.isEmpty()) {
+            try {
+                insertCustomers(fresh);
+                inserted.addAll(fresh);
+            } catch (DuplicateResourceException e) {
+                for (Customer customer : fresh) {
+                    try {
+                        insertCustomer(customer);
+                        inserted.add(customer);
+                    } catch (DuplicateResourceException duplicate) {
+                        // Taken by a concurrent writer; skipped like the emails found taken above.
+                    }
+                }
+            }
+        }
+        directory.update("INSERT INTO customer_import_chunk (import_id, first_row, imported, imported_at)"
+                        + " VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING",
+                importId, firstRow, inserted.size(), Timestamp.from(Instant.now()));
+        return Optional.of(inserted);
+    }
+
+    /**
+     * Finds which of the given emails are already taken, with one IN query on the directory per chunk of emails.
+     *
+     * @param emails The emails to check.
+     * @return The emails among the given ones that belong to existing customers.
+     */
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        List<String> all = new ArrayList<>(emails);
+        for (int start = 0; start < all.size(); start += EMAIL_LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = all.subList(start, Math.min(all.size(), start + EMAIL_LOOKUP_CHUNK_SIZE));
+            existing.addAll(directory.queryForList(
+                    "SELECT email FROM customer_email_directory WHERE email IN ("
+                            + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")",
+                    String.class,
+                    chunk.toArray()
+            ));
+        }
+        return existing;
+    }
+
+    /**
+     * Finds which of the given IDs exist, with one query per shard holding any of them, run in parallel.
+     *
+     * @param ids The IDs to check.
+     * @return The IDs among the given ones that belong to existing customers.
+     */
+    @Override
+    public Set<Integer> selectExistingIds(Collection<Integer> ids) {
+        Set<Integer> existing = new HashSet<>();
+        for (CompletableFuture<List<Integer>> shard : perShard(ids, (shard, shardIds) -> shards.get(shard).query(
+                connection -> withIds(connection, "SELECT id FROM customer WHERE id = ANY(?)", shardIds),
+                (resultSet, rowNum) -> resultSet.getInt(1)
+        )).values()) {
+            try {
+                existing.addAll(shard.join());
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Checks whether an email is taken with a single primary-key lookup in the directory.
+     *
+     * @param email The email to check for existence.
+     * @return True if a customer with the specified email exists, false otherwise.
+     */
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        return !directory.queryForList("SELECT customer_id FROM customer_email_directory WHERE email = ?", Integer.class, email)
+                .isEmpty();
+    }
+
+    /**
+     * Checks if a customer exists on its shard with the specified ID.
+     *
+     * @param id The ID to check for existence.
+     * @return True if a customer with the specified ID exists, false otherwise.
+     */
+    @Override
+    public boolean existsPersonWithId(Integer id) {
+        return !shardOf(id).queryForList("SELECT id FROM customer WHERE id = ?", Integer.class, id).isEmpty();
+    }
+
+    /**
+     * Deletes a customer from its shard, then releases its email in the directory.
+     *
+     * @param customerId The ID of the customer to delete.
+     */
+    @Override
+    public void deleteCustomerById(Integer customerId) {
+        String email = shardTransactions.get(shardIndex(customerId)).execute(status -> {
+            List<String> emails = shardOf(customerId).queryForList(
+                    "SELECT email FROM customer WHERE id = ? FOR UPDATE", String.class, customerId
+            );
+            shardOf(customerId).update("DELETE FROM customer WHERE id = ?", customerId);
+            return emails.isEmpty() ? null : emails.get(0);
+        });
+        if (email != null) {
+            releaseEmail(email, customerId);
+        }
+    }
+
+    /**
+     * Deletes customers with one DELETE ... WHERE id = ANY(?) per shard holding any of them, the shards in
+     * parallel, then releases their emails in the directory with one batch. Each shard locks and reads the
+     * rows first, in the same local transaction, to learn the emails to release. Shards cannot share a
+     * transaction, so if one of them fails the deletes of the others stand; their emails are released all
+     * the same before the failure is rethrown.
+     *
+     * @param ids The IDs of the customers to delete.
+     * @return The IDs of the customers that were deleted.
+     */
+    @Override
+    public Set<Integer> deleteCustomersByIds(Collection<Integer> ids) {
+        Map<Integer, CompletableFuture<List<Customer>>> deletes = perShard(ids, (shard, shardIds) ->
+                shardTransactions.get(shard).execute(status -> {
+                    List<Customer> rows = shards.get(shard).query(
+                            connection -> withIds(connection,
+                                    "SELECT " + COLUMNS + " FROM customer WHERE id = ANY(?) FOR UPDATE", shardIds),
+                            CUSTOMER_ROW_MAPPER
+                    );
+                    if (!rows.isEmpty()) {
+                        shards.get(shard).update(
+                                connection -> withIds(connection, "DELETE FROM customer WHERE id = ANY(?)", shardIds)
+                        );
+                    }
+                    return rows;
+                }));
+        RuntimeException failure = null;
+        List<Customer> deleted = new ArrayList<>();
+        for (CompletableFuture<List<Customer>> delete : deletes.values()) {
+            try {
+                deleted.addAll(delete.join());
+            } catch (CompletionException e) {
+                failure = unwrap(e);
+            }
+        }
+        directory.batchUpdate("DELETE FROM customer_email_directory WHERE email = ? AND customer_id = ?",
+                deleted, JDBC_BATCH_SIZE, (statement, customer) -> {
+                    statement.setString(1, customer.getEmail());
+                    statement.setInt(2, customer.getId());
+                });
+        if (failure != null) {
+            throw failure;
+        }
+        Set<Integer> deletedIds = new HashSet<>(deleted.size() * 2);
+        deleted.forEach(customer -> deletedIds.add(customer.getId()));
+        return deletedIds;
+    }
+
+    /**
+     * Replaces an existing customer on its shard and increments its version.
+     * Throws DuplicateResourceException if the new email belongs to someone else, and an optimistic
+     * locking failure if the customer carries a stale version.
+     *
+     * @param update The customer with updated information.
+     */
+    @Override
+    public void updateCustomer(Customer update) {
+        Integer id = update.getId();
+        write(id, update.getEmail(), current -> {
+            if (update.getVersion() != null && !update.getVersion().equals(current.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Customer.class, id);
+            }
+            Customer replacement = new Customer(update);
+            replacement.setVersion(current.getVersion() + 1);
+            return replacement;
+        });
+    }
+
+    /**
+     * Applies a partial update on the customer's shard, with the row locked for the read and the write.
+     * A new email is claimed in the directory first and the old one released once the update is committed.
+     * Throws DuplicateResourceException if the new email is already taken.
+     *
+     * @param id              The ID of the customer to update.
+     * @param update          The fields to change; null fields are left untouched.
+     * @param expectedVersion The version the caller last saw, or null to skip the version check.
+     * @return The updated customer, or an empty Optional if nothing was written.
+     */
+    @Override
+    public Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        return write(id, update.email(), current -> {
+            if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+                return null;
+            }
+            return applyFields(current, update);
+        });
+    }
+
+    /**
+     * Applies partial updates one customer at a time, each as {@link #updateCustomerFields} does: a new email
+     * has to be claimed in the directory before its shard is written, which a set-based statement cannot do.
+     * If an update fails, for instance because a new email is taken or a shard is unreachable, the customers
+     * updated so far are written back as they were, with their version incremented once more, and the failure
+     * is rethrown. The shards share no transaction, so this restore is best-effort: a customer whose restore
+     * fails, say because its shard is down too, keeps its update, the restore failures are attached to the
+     * rethrown exception as suppressed ones, and a claimed email its restore left unused is removed by
+     * {@link #reconcileEmailDirectory(Duration)}.
+     *
+     * @param updates The fields to change, keyed by customer ID; null fields are left untouched.
+     * @return The updated customers.
+     */
+    @Override
+    public List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates) {
+        List<Customer> updated = new ArrayList<>(updates.size());
+        List<Customer> previous = new ArrayList<>(updates.size());
+        try {
+            for (Map.Entry<Integer, CustomerUpdateRequest> entry : updates.entrySet()) {
+                Customer[] before = new Customer[1];
+                write(entry.getKey(), entry.getValue().email(), current -> {
+                    before[0] = current;
+                    return applyFields(current, entry.getValue());
+                }).ifPresent(customer -> {
+                    updated.add(customer);
+                    previous.add(before[0]);
+                });
+            }
+        } catch (RuntimeException e) {
+            for (Customer customer : previous) {
+                try {
+                    write(customer.getId(), customer.getEmail(), current -> {
+                        Customer restored = new Customer(customer);
+                        restored.setVersion(current.getVersion() + 1);
+                        return restored;
+                    });
+                } catch (RuntimeException restoreFailure) {
+                    e.addSuppressed(restoreFailure); // Keeps restoring the others.
+                }
+            }
+            throw e;
+        }
+        return updated;
+    }
+
+    /**
+     * Removes the directory claims older than {@code grace} whose customer is not stored with that email on its
+     * shard: claims a crash left between the directory and the shard write, or that a failed compensation of
+     * {@link #insertCustomers(List)} did not release. The directory is walked in chunks of claims, each checked
+     * with one query per shard. A claim is removed only if it is still older than {@code grace} then, since
+     * a write reclaiming its email refreshes it first.
+     *
+     * @param grace How long a write may take between claiming an email and committing its shard row.
+     * @return The number of claims removed.
+     */
+    public int reconcileEmailDirectory(Duration grace) {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(grace));
+        int removed = 0;
+        String afterEmail = "";
+        List<EmailClaim> claims;
+        do {
+            claims = directory.query(
+                    "SELECT email, customer_id FROM customer_email_directory WHERE email > ? AND claimed_at < ?"
+                            + " ORDER BY email LIMIT ?",
+                    (resultSet, rowNum) -> new EmailClaim(resultSet.getString("email"), resultSet.getInt("customer_id")),
+                    afterEmail, cutoff, RECONCILE_CHUNK_SIZE
+            );
+            if (claims.isEmpty()) {
+                break;
+            }
+            Map<Integer, String> stored = new HashMap<>();
+            for (CompletableFuture<List<Customer>> shard : perShard(
+                    claims.stream().map(EmailClaim::customerId).toList(),
+                    (shard, shardIds) -> shards.get(shard).query(
+                            connection -> withIds(connection, "SELECT " + COLUMNS + " FROM customer WHERE id = ANY(?)", shardIds),
+                            CUSTOMER_ROW_MAPPER
+                    )).values()) {
+                try {
+                    shard.join().forEach(customer -> stored.put(customer.getId(), customer.getEmail()));
+                } catch (CompletionException e) {
+                    throw unwrap(e);
+                }
+            }
+            List<EmailClaim> orphans = claims.stream()
+                    .filter(claim -> !claim.email().equals(stored.get(claim.customerId())))
+                    .toList();
+            for (int[] counts : directory.batchUpdate(
+                    "DELETE FROM customer_email_directory WHERE email = ? AND customer_id = ? AND claimed_at < ?",
+                    orphans, JDBC_BATCH_SIZE, (statement, claim) -> {
+                        statement.setString(1, claim.email());
+                        statement.setInt(2, claim.customerId());
+                        statement.setTimestamp(3, cutoff);
+                    })) {
+                for (int count : counts) {
+                    removed += Math.max(count, 0);
+                }
+            }
+            afterEmail = claims.get(claims.size() - 1).email();
+        } while (claims.size() == RECONCILE_CHUNK_SIZE);
+        return removed;
+    }
+
+    /**
+     * Claims in the directory the emails of stored customers that have none, shard by shard in keyset pages of
+     * {@value #RECONCILE_CHUNK_SIZE} customers. The directory is only kept current while this DAO does the writing:
+     * customers registered or changed through another data store, such as the JPA one on the primary database
+     * before a switch to sharding, have no claim there, and their emails could be registered a second time.
+     * A claim whose customer changed its email meanwhile is removed again by {@link #reconcileEmailDirectory(Duration)}.
+     *
+     * @return The number of claims added.
+     */
+    public int backfillEmailDirectory() {
+        int added = 0;
+        for (JdbcTemplate shard : shards) {
+            int afterId = Integer.MIN_VALUE;
+            List<EmailClaim> claims;
+            do {
+                claims = shard.query(
+                        "SELECT id, email FROM customer WHERE id > ? ORDER BY id LIMIT ?",
+                        (resultSet, rowNum) -> new EmailClaim(resultSet.getString("email"), resultSet.getInt("id")),
+                        afterId, RECONCILE_CHUNK_SIZE
+                );
+                if (claims.isEmpty()) {
+                    break;
+                }
+                for (int[] counts : directory.batchUpdate(
+                        "INSERT INTO customer_email_directory (email, customer_id) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                        claims, JDBC_BATCH_SIZE, (statement, claim) -> {
+                            statement.setString(1, claim.email());
+                            statement.setInt(2, claim.customerId());
+                        })) {
+                    for (int count : counts) {
+                        added += Math.max(count, 0);
+                    }
+                }
+                afterId = claims.get(claims.size() - 1).customerId();
+            } while (claims.size() == RECONCILE_CHUNK_SIZE);
+        }
+        return added;
+    }
+
+    /**
+     * Shuts down the scatter-gather threads.
+     */
+    @Override
+    public void close() {
+        scatterExecutor.shutdown();
+    }
+
+    /**
+     * Rewrites one customer: claims {@code newEmail} if it is not the customer's own, locks and reads the row,
+     * lets {@code change} compute the replacement and writes it, then releases whichever email ended up unused.
+     *
+     * @param id       The ID of the customer.
+     * @param newEmail The email the customer will have, or null if it does not change.
+     * @param change   Computes the replacement from the current row, or returns null to write nothing.
+     * @return The written customer, or an empty Optional if the customer does not exist or nothing was written.
+     */
+    private Optional<Customer> write(Integer id, String newEmail, Function<Customer, Customer> change) {
+        boolean claimed = newEmail != null && claimEmail(newEmail, id);
+        String[] previousEmail = new String[1];
+        Optional<Customer> written;
+        try {
+            written = shardTransactions.get(shardIndex(id)).execute(status -> {
+                JdbcTemplate shard = shardOf(id);
+                List<Customer> rows = shard.query(
+                        "SELECT " + COLUMNS + " FROM customer WHERE id = ? FOR UPDATE", CUSTOMER_ROW_MAPPER, id
+                );
+                Customer replacement = rows.isEmpty() ? null : change.apply(rows.get(0));
+                if (replacement == null) {
+                    return Optional.empty();
+                }
+                shard.update(
+                        "UPDATE customer SET name = ?, email = ?, age = ?, version = ? WHERE id = ?",
+                        replacement.getName(), replacement.getEmail(), replacement.getAge(), replacement.getVersion(), id
+                );
+                previousEmail[0] = rows.get(0).getEmail();
+                return Optional.of(replacement);
+            });
+        } catch (RuntimeException e) {
+            if (claimed) {
+                releaseEmail(newEmail, id);
+            }
+            throw e;
+        }
+        if (written.isEmpty() || written.get().getEmail().equals(previousEmail[0])) {
+            if (claimed) {
+                releaseEmail(newEmail, id);
+            }
+        } else {
+            releaseEmail(previousEmail[0], id);
+        }
+        return written;
+    }
+
+    /**
+     * Computes the replacement of a customer under a partial update.
+     *
+     * @return The customer with the non-null fields of the update and its version incremented,
+     * or null if the update changes nothing.
+     */
+    private static Customer applyFields(Customer current, CustomerUpdateRequest update) {
+        Customer replacement = new Customer(
+                current.getId(),
+                update.name() != null ? update.name() : current.getName(),
+                update.email() != null ? update.email() : current.getEmail(),
+                update.age() != null ? update.age() : current.getAge()
+        );
+        if (replacement.getName().equals(current.getName())
+                && replacement.getEmail().equals(current.getEmail())
+                && replacement.getAge().equals(current.getAge())) {
+            return null;
+        }
+        replacement.setVersion(current.getVersion() + 1);
+        return replacement;
+    }
+
+    /**
+     * Claims an email for a customer in the directory.
+     * A claim the customer already holds is refreshed, so the reconciliation sweep does not take it for an orphan
+     * while this write is in progress.
+     * Throws DuplicateResourceException if another customer owns it.
+     *
+     * @return True if the claim is new, false if the customer already owned the email.
+     */
+    private boolean claimEmail(String email, Integer id) {
+        try {
+            directory.update("INSERT INTO customer_email_directory (email, customer_id) VALUES (?, ?)", email, id);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            int refreshed = directory.update(
+                    "UPDATE customer_email_directory SET claimed_at = CURRENT_TIMESTAMP WHERE email = ? AND customer_id = ?",
+                    email, id
+            );
+            if (refreshed > 0) {
+                return false;
+            }
+            throw new DuplicateResourceException("email already taken");
+        }
+    }
+
+    /**
+     * Releases a customer's claim on an email, leaving claims of other customers untouched.
+     */
+    private void releaseEmail(String email, Integer id) {
+        directory.update("DELETE FROM customer_email_directory WHERE email = ? AND customer_id = ?", email, id);
+    }
+
+    /**
+     * Adds the conditions of a filter, as lower(column) LIKE patterns like the JPA specifications use.
+     */
+    private static void addFilter(CustomerFilter filter, List<String> conditions, List<Object> arguments) {
+        String like = " LIKE ? ESCAPE '" + CustomerSpecifications.LIKE_ESCAPE + "'";
+        if (filter.minAge() != null) {
+            conditions.add("age >= ?");
+            arguments.add(filter.minAge());
+        }
+        if (filter.maxAge() != null) {
+            conditions.add("age <= ?");
+            arguments.add(filter.maxAge());
+        }
+        if (filter.name() != null) {
+            conditions.add("LOWER(name)" + like);
+            arguments.add(CustomerSpecifications.escape(filter.name()) + "%");
+        }
+        if (filter.email() != null) {
+            conditions.add("LOWER(email)" + like);
+            arguments.add(CustomerSpecifications.escape(filter.email()) + "%");
+        }
+        if (filter.emailDomain() != null) {
+            conditions.add("LOWER(email)" + like);
+            arguments.add("%@" + CustomerSpecifications.escape(filter.emailDomain()));
+        }
+        if (filter.search() != null) {
+            String pattern = "%" + CustomerSpecifications.escape(filter.search()) + "%";
+            conditions.add("(LOWER(name)" + like + " OR LOWER(email)" + like + ")");
+            arguments.add(pattern);
+            arguments.add(pattern);
+        }
+    }
+
+    /**
+     * Returns the expression a listing sorts by: the column, in the collation the merge compares text in.
+     */
+    private String sortKey(CustomerSort.Field field) {
+        return field == CustomerSort.Field.NAME || field == CustomerSort.Field.EMAIL
+                ? field.attribute() + textCollation
+                : field.attribute();
+    }
+
+    /**
+     * Adds the keyset condition selecting the customers after the cursor, with the ID as tie-breaker,
+     * comparing in the same collation as the sort.
+     */
+    private void addAfter(CustomerSort sort, Customer cursor, List<String> conditions, List<Object> arguments) {
+        String comparison = sort.descending() ? " < ?" : " > ?";
+        if (sort.field() == CustomerSort.Field.ID) {
+            conditions.add("id" + comparison);
+            arguments.add(cursor.getId());
+            return;
+        }
+        String column = sortKey(sort.field());
+        Object value = switch (sort.field()) {
+            case NAME -> cursor.getName();
+            case EMAIL -> cursor.getEmail();
+            case AGE -> cursor.getAge();
+            case ID -> cursor.getId();
+        };
+        conditions.add("(" + column + comparison + " OR (" + column + " = ? AND id" + comparison + "))");
+        arguments.add(value);
+        arguments.add(value);
+        arguments.add(cursor.getId());
+    }
+
+    /**
+     * Runs a query on every shard in parallel and returns the results in shard order.
+     * With a single shard the query runs on the calling thread.
+     */
+    private <T> List<T> scatter(Function<JdbcTemplate, T> query) {
+        if (shards.size() == 1) {
+            return List.of(query.apply(shards.get(0)));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (JdbcTemplate shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), scatterExecutor));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Groups IDs by shard and runs {@code work} on every shard holding any of them, in parallel.
+     * With a single shard the work runs on the calling thread.
+     *
+     * @return The pending result of each shard, keyed by shard index.
+     */
+    private <T> Map<Integer, CompletableFuture<T>> perShard(Collection<Integer> ids,
+                                                            BiFunction<Integer, List<Integer>, T> work) {
+        Map<Integer, List<Integer>> byShard = new TreeMap<>();
+        for (Integer id : ids) {
+            byShard.computeIfAbsent(shardIndex(id), shard -> new ArrayList<>()).add(id);
+        }
+        Map<Integer, CompletableFuture<T>> results = new TreeMap<>();
+        byShard.forEach((shard, shardIds) -> results.put(shard, shards.size() == 1
+                ? CompletableFuture.completedFuture(work.apply(shard, shardIds))
+                : CompletableFuture.supplyAsync(() -> work.apply(shard, shardIds), scatterExecutor)));
+        return results;
+    }
+
+    /**
+     * Prepares a statement whose only parameter is an array of customer IDs, as in {@code id = ANY(?)}.
+     */
+    private static PreparedStatement withIds(Connection connection, String sql, Collection<Integer> ids)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+        return statement;
+    }
+
+    /**
+     * Merges lists that are each sorted by {@code order} into the first {@code limit} elements of their union.
+     */
+    private static List<Customer> merge(List<List<Customer>> sorted, Comparator<Customer> order, int limit) {
+        if (sorted.size() == 1) {
+            List<Customer> only = sorted.get(0);
+            return only.size() <= limit ? only : only.subList(0, limit);
+        }
+        int[] positions = new int[sorted.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(
+                Comparator.comparing((Integer list) -> sorted.get(list).get(positions[list]), order)
+        );
+        for (int list = 0; list < sorted.size(); list++) {
+            if (!sorted.get(list).isEmpty()) {
+                heads.add(list);
+            }
+        }
+        List<Customer> merged = new ArrayList<>();
+        while (merged.size() < limit && !heads.isEmpty()) {
+            int list = heads.poll();
+            merged.add(sorted.get(list).get(positions[list]++));
+            if (positions[list] < sorted.get(list).size()) {
+                heads.add(list);
+            }
+        }
+        return merged;
+    }
+
+    private JdbcTemplate shardOf(Integer id) {
+        return shards.get(shardIndex(id));
+    }
+
+    /**
+     * Returns the shard of a customer from a hash of its ID, so consecutively allocated IDs spread evenly.
+     */
+    private int shardIndex(Integer id) {
+        int hash = id;
+        // Finalization step of MurmurHash3: every bit of the ID affects every bit of the hash.
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shards.size());
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+
+    /**
+     * One row of the email directory.
+     *
+     * @param email      The claimed email.
+     * @param customerId The ID of the customer claiming it.
+     */
+    private record EmailClaim(String email, Integer customerId) {
+    }
+}
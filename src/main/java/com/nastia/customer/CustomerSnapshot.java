@@ -0,0 +1,502 @@
+package com.nastia.customer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Compact, off-heap store of customers, read without creating any object until a customer is materialized.
+ *
+ * Customers live in two direct buffers outside the Java heap: a column block of fixed-size slots holding the
+ * primitive ID, age and version of each customer along with the offset of its text, and a byte arena holding
+ * the name and email as length-prefixed UTF-8. Two open-addressing tables of primitive ints map IDs and email
+ * hashes to slots, so the heap holds a handful of arrays instead of several objects per customer, and the
+ * garbage collector has nothing to trace.
+ *
+ * Writers are serialized by a StampedLock. Readers run optimistically without taking it and retry under the
+ * read lock only if a write overlapped them. Text of replaced and deleted customers is reclaimed by compacting
+ * the arena once more than half of it is dead. IDs are never reused, so a deleted ID stays in the ID table as
+ * a tombstone: a late change event for a deleted customer cannot bring it back.
+ */
+final class CustomerSnapshot {
+
+    private static final int SLOT_BYTES = 20; // Bytes per slot: id, age, version, text offset.
+    private static final int SLOT_ID = 0; // Offset of the int ID within a slot; FREE for a free slot.
+    private static final int SLOT_AGE = 4; // Offset of the int age within a slot.
+    private static final int SLOT_VERSION = 8; // Offset of the long version within a slot.
+    private static final int SLOT_TEXT = 16; // Offset of the int arena offset of the name and email within a slot.
+
+    private static final int FREE = Integer.MIN_VALUE; // ID of a free slot and key of an empty ID table entry.
+    private static final int ABSENT = -1; // Slot of an ID that was never stored.
+    private static final int DELETED = -2; // Slot of a deleted ID: its tombstone.
+    private static final int NO_SLOT = -1; // Slot of an empty email table entry.
+    private static final int MIN_COMPACTION_BYTES = 1 << 20; // Arenas smaller than this are never compacted.
+
+    private final StampedLock lock = new StampedLock();
+
+    private ByteBuffer slots = ByteBuffer.allocateDirect(1024 * SLOT_BYTES); // Fixed-size customer slots.
+    private int slotCount; // Number of slots ever handed out; slots below it are live or free.
+    private int[] freeSlots = new int[16]; // Stack of free slots below slotCount, reused first.
+    private int freeCount; // Number of free slots on the stack.
+
+    private ByteBuffer text = ByteBuffer.allocateDirect(64 * 1024); // Arena of names and emails.
+    private int textEnd; // End of the used part of the arena.
+    private int deadText; // Bytes of the arena no longer referenced by any slot.
+
+    private int[] idKeys = filled(1024, FREE); // ID table keys, FREE for an empty entry.
+    private int[] idSlots = new int[1024]; // ID table values: slot of the ID, or DELETED.
+    private int idEntries; // Used ID table entries, tombstones included.
+
+    private int[] emailHashes = new int[1024]; // Email table keys: the hash of the email.
+    private int[] emailSlots = filled(1024, NO_SLOT); // Email table values: slot of the customer, NO_SLOT if empty.
+    private int emailEntries; // Used email table entries.
+
+    private int size; // Number of live customers.
+
+    /**
+     * Materializes a customer.
+     *
+     * @param id The ID of the customer.
+     * @return A new Customer, or null if the customer is not stored.
+     */
+    Customer get(int id) {
+        return optimistically(() -> {
+            int slot = slotOf(id);
+            return slot < 0 ? null : materialize(slot);
+        });
+    }
+
+    /**
+     * Reads the version of a customer without materializing it.
+     *
+     * @param id The ID of the customer.
+     * @return The version, or -1 if the customer is not stored.
+     */
+    long version(int id) {
+        return optimistically(() -> {
+            int slot = slotOf(id);
+            return slot < 0 ? -1L : slots.getLong(slot * SLOT_BYTES + SLOT_VERSION);
+        });
+    }
+
+    /**
+     * Checks whether a customer is stored.
+     *
+     * @param id The ID of the customer.
+     * @return True if it is stored.
+     */
+    boolean contains(int id) {
+        return optimistically(() -> slotOf(id) >= 0);
+    }
+
+    /**
+     * Checks whether a stored customer has the given email, comparing the encoded bytes in the arena.
+     *
+     * @param email The email to look for.
+     * @return True if a stored customer has this email.
+     */
+    boolean containsEmail(String email) {
+        byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+        int hash = mix(email.hashCode());
+        return optimistically(() -> findEmail(bytes, hash) >= 0);
+    }
+
+    /**
+     * Stores a customer, unless the stored copy is as new or the customer was deleted.
+     * Versions only grow, so applying the same or an older state again changes nothing.
+     *
+     * @param customer The customer, with ID and version set.
+     */
+    void put(Customer customer) {
+        int id = customer.getId();
+        long version = customer.getVersion() == null ? 0 : customer.getVersion();
+        byte[] name = customer.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = customer.getEmail().getBytes(StandardCharsets.UTF_8);
+        long stamp = lock.writeLock();
+        try {
+            int entry = idEntry(id);
+            int slot = idKeys[entry] == id ? idSlots[entry] : ABSENT;
+            if (slot == DELETED) {
+                return;
+            }
+            if (slot == ABSENT) {
+                slot = allocateSlot();
+                if (idKeys[entry] != id) {
+                    idKeys[entry] = id;
+                    idEntries++;
+                }
+                idSlots[entry] = slot;
+                int base = slot * SLOT_BYTES;
+                slots.putInt(base + SLOT_ID, id);
+                slots.putInt(base + SLOT_AGE, customer.getAge());
+                slots.putLong(base + SLOT_VERSION, version);
+                slots.putInt(base + SLOT_TEXT, appendText(name, email));
+                addEmail(mix(customer.getEmail().hashCode()), slot);
+                size++;
+                growIdTableIfFull();
+                return;
+            }
+            int base = slot * SLOT_BYTES;
+            if (slots.getLong(base + SLOT_VERSION) >= version) {
+                return;
+            }
+            slots.putInt(base + SLOT_AGE, customer.getAge());
+            slots.putLong(base + SLOT_VERSION, version);
+            int offset = slots.getInt(base + SLOT_TEXT);
+            if (!textEquals(offset, name, email)) {
+                String oldEmail = decode(emailOffset(offset));
+                deadText += textLength(offset);
+                slots.putInt(base + SLOT_TEXT, appendText(name, email));
+                if (!oldEmail.equals(customer.getEmail())) {
+                    removeEmail(mix(oldEmail.hashCode()), slot);
+                    addEmail(mix(customer.getEmail().hashCode()), slot);
+                }
+                compactIfWasteful();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a customer and leaves a tombstone for its ID.
+     *
+     * @param id The ID of the deleted customer.
+     */
+    void remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int entry = idEntry(id);
+            if (idKeys[entry] != id) {
+                idKeys[entry] = id;
+                idSlots[entry] = DELETED;
+                idEntries++;
+                growIdTableIfFull();
+                return;
+            }
+            int slot = idSlots[entry];
+            idSlots[entry] = DELETED;
+            if (slot < 0) {
+                return;
+            }
+            int base = slot * SLOT_BYTES;
+            int offset = slots.getInt(base + SLOT_TEXT);
+            removeEmail(mix(decode(emailOffset(offset)).hashCode()), slot);
+            deadText += textLength(offset);
+            slots.putInt(base + SLOT_ID, FREE);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            size--;
+            compactIfWasteful();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of live customers.
+     */
+    int size() {
+        return optimistically(() -> size);
+    }
+
+    /**
+     * Returns the bytes of direct memory held by the slot block and the text arena.
+     */
+    long offHeapBytes() {
+        return optimistically(() -> (long) slots.capacity() + text.capacity());
+    }
+
+    /**
+     * Returns the bytes of heap held by the index tables.
+     */
+    long heapBytes() {
+        return optimistically(() ->
+                4L * (idKeys.length + idSlots.length + emailHashes.length + emailSlots.length + freeSlots.length));
+    }
+
+    /**
+     * Runs a read without locking and validates it; if a write overlapped it, or a torn read of replaced
+     * buffers and tables failed, runs it again under the read lock.
+     */
+    private <T> T optimistically(Supplier<T> read) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = read.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A write replaced what was being read; retried under the read lock below.
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks up the slot of an ID. The probe count is bounded, so even a torn optimistic read terminates.
+     *
+     * @return The slot, ABSENT or DELETED.
+     */
+    private int slotOf(int id) {
+        int[] keys = idKeys;
+        int[] values = idSlots;
+        int mask = keys.length - 1;
+        for (int i = mix(id) & mask, probes = 0; probes < keys.length; i = (i + 1) & mask, probes++) {
+            int key = keys[i];
+            if (key == id) {
+                return values[i];
+            }
+            if (key == FREE) {
+                return ABSENT;
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Returns the ID table entry holding an ID, or the empty entry it would go into.
+     */
+    private int idEntry(int id) {
+        int mask = idKeys.length - 1;
+        int i = mix(id) & mask;
+        while (idKeys[i] != id && idKeys[i] != FREE) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the slot of a customer with the given email.
+     *
+     * @return The slot, or NO_SLOT if no stored customer has the email.
+     */
+    private int findEmail(byte[] email, int hash) {
+        int[] hashes = emailHashes;
+        int[] values = emailSlots;
+        ByteBuffer columns = slots;
+        int mask = hashes.length - 1;
+        for (int i = hash & mask, probes = 0; probes < hashes.length; i = (i + 1) & mask, probes++) {
+            int slot = values[i];
+            if (slot == NO_SLOT) {
+                return NO_SLOT;
+            }
+            if (hashes[i] == hash && bytesEqual(emailOffset(columns.getInt(slot * SLOT_BYTES + SLOT_TEXT)), email)) {
+                return slot;
+            }
+        }
+        return NO_SLOT;
+    }
+
+    private void addEmail(int hash, int slot) {
+        int mask = emailSlots.length - 1;
+        int i = hash & mask;
+        while (emailSlots[i] != NO_SLOT) {
+            i = (i + 1) & mask;
+        }
+        emailHashes[i] = hash;
+        emailSlots[i] = slot;
+        if (++emailEntries * 2 > emailSlots.length) {
+            int[] oldHashes = emailHashes;
+            int[] oldSlots = emailSlots;
+            emailHashes = new int[oldSlots.length * 2];
+            emailSlots = filled(oldSlots.length * 2, NO_SLOT);
+            emailEntries = 0;
+            for (int j = 0; j < oldSlots.length; j++) {
+                if (oldSlots[j] != NO_SLOT) {
+                    addEmail(oldHashes[j], oldSlots[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the email table entry of a slot, shifting later entries of the probe run back into the gap
+     * so lookups never stop early at it.
+     */
+    private void removeEmail(int hash, int slot) {
+        int mask = emailSlots.length - 1;
+        int gap = hash & mask;
+        while (emailSlots[gap] != slot) {
+            if (emailSlots[gap] == NO_SLOT) {
+                return;
+            }
+            gap = (gap + 1) & mask;
+        }
+        for (int i = (gap + 1) & mask; emailSlots[i] != NO_SLOT; i = (i + 1) & mask) {
+            int home = emailHashes[i] & mask;
+            boolean homeAfterGap = gap <= i ? home > gap && home <= i : home > gap || home <= i;
+            if (!homeAfterGap) {
+                emailHashes[gap] = emailHashes[i];
+                emailSlots[gap] = emailSlots[i];
+                gap = i;
+            }
+        }
+        emailSlots[gap] = NO_SLOT;
+        emailEntries--;
+    }
+
+    private void growIdTableIfFull() {
+        if (idEntries * 2 <= idKeys.length) {
+            return;
+        }
+        int[] oldKeys = idKeys;
+        int[] oldSlots = idSlots;
+        idKeys = filled(oldKeys.length * 2, FREE);
+        idSlots = new int[oldKeys.length * 2];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != FREE) {
+                int entry = idEntry(oldKeys[j]);
+                idKeys[entry] = oldKeys[j];
+                idSlots[entry] = oldSlots[j];
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if ((slotCount + 1) * SLOT_BYTES > slots.capacity()) {
+            slots = grow(slots, slots.capacity(), (long) slots.capacity() * 2);
+        }
+        return slotCount++;
+    }
+
+    /**
+     * Appends a name and email to the arena.
+     *
+     * @return The offset of the appended text.
+     */
+    private int appendText(byte[] name, byte[] email) {
+        int length = 4 + name.length + email.length;
+        if (textEnd + (long) length > text.capacity()) {
+            text = grow(text, textEnd, Math.max((long) text.capacity() * 2, textEnd + (long) length));
+        }
+        int offset = textEnd;
+        text.putShort(offset, (short) name.length);
+        text.put(offset + 2, name);
+        text.putShort(offset + 2 + name.length, (short) email.length);
+        text.put(offset + 4 + name.length, email);
+        textEnd += length;
+        return offset;
+    }
+
+    /**
+     * Rewrites the arena without dead text once more than half of it is dead.
+     */
+    private void compactIfWasteful() {
+        if (textEnd < MIN_COMPACTION_BYTES || deadText * 2 <= textEnd) {
+            return;
+        }
+        int live = textEnd - deadText;
+        ByteBuffer compacted = ByteBuffer.allocateDirect(Math.max(live * 2, 64 * 1024));
+        int end = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int base = slot * SLOT_BYTES;
+            if (slots.getInt(base + SLOT_ID) == FREE) {
+                continue;
+            }
+            int offset = slots.getInt(base + SLOT_TEXT);
+            int length = textLength(offset);
+            compacted.put(end, text, offset, length);
+            slots.putInt(base + SLOT_TEXT, end);
+            end += length;
+        }
+        text = compacted;
+        textEnd = end;
+        deadText = 0;
+    }
+
+    private Customer materialize(int slot) {
+        int base = slot * SLOT_BYTES;
+        int offset = slots.getInt(base + SLOT_TEXT);
+        Customer customer = new Customer(
+                slots.getInt(base + SLOT_ID),
+                decode(offset),
+                decode(emailOffset(offset)),
+                slots.getInt(base + SLOT_AGE)
+        );
+        customer.setVersion(slots.getLong(base + SLOT_VERSION));
+        return customer;
+    }
+
+    /**
+     * Decodes the length-prefixed string at an arena offset.
+     */
+    private String decode(int offset) {
+        ByteBuffer arena = text;
+        byte[] bytes = new byte[Short.toUnsignedInt(arena.getShort(offset))];
+        arena.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean bytesEqual(int offset, byte[] bytes) {
+        ByteBuffer arena = text;
+        if (Short.toUnsignedInt(arena.getShort(offset)) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(offset + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean textEquals(int offset, byte[] name, byte[] email) {
+        return bytesEqual(offset, name) && bytesEqual(emailOffset(offset), email);
+    }
+
+    /**
+     * Returns the arena offset of the email following the name at an offset.
+     */
+    private int emailOffset(int offset) {
+        return offset + 2 + Short.toUnsignedInt(text.getShort(offset));
+    }
+
+    private int textLength(int offset) {
+        int email = emailOffset(offset);
+        return email + 2 + Short.toUnsignedInt(text.getShort(email)) - offset;
+    }
+
+    /**
+     * Copies the used part of a buffer into a larger direct buffer.
+     * Throws IllegalStateException if the buffer would exceed the 2 GiB a ByteBuffer can address.
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int used, long capacity) {
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("customer snapshot exceeds 2 GiB");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+        grown.put(0, buffer, 0, used);
+        return grown;
+    }
+
+    /**
+     * Spreads the bits of a hash, so sequential IDs do not fill runs of adjacent entries (murmur3 finalizer).
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ hash >>> 16;
+    }
+
+    private static int[] filled(int length, int value) {
+        int[] array = new int[length];
+        Arrays.fill(array, value);
+        return array;
+    }
+}
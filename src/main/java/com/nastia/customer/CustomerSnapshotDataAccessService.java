@@ -0,0 +1,351 @@
+package com.nastia.customer;
+
+import com.nastia.outbox.CustomerChangeEvent;
+import com.nastia.outbox.CustomerEventSink;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Read-optimized tier over the JPA DAO, answering lookups by ID and email from a {@link CustomerSnapshot}
+ * of every customer kept off the Java heap. It serves the application once {@code customer.data-store} is set
+ * to {@code snapshot}, see {@link MeteredCustomerDAO}.
+ *
+ * The snapshot is loaded from the primary database on the first read, so an application that does not route
+ * reads here pays nothing, and a lagging replica cannot hand it a state older than the events it then ignores.
+ * From then on it is refreshed incrementally: writes through this DAO are applied once they are committed, after
+ * the caller's transaction if there is one, so a write rolled back with its transaction never reaches the
+ * snapshot; and as a {@link CustomerEventSink} it applies the change events the outbox
+ * relay hands every sink of every instance, so writes made by other instances show up within one relay interval.
+ * The event of this instance's own write usually arrives after the write was applied, and an event of an earlier
+ * change can arrive after a later write of the same customer. Every change is applied by version and a stored
+ * customer never goes back to an older one, so such late events change nothing, and a deleted customer stays
+ * deleted whatever arrives after its deletion.
+ *
+ * Lookups, version reads and email checks never create objects besides the returned Customer, which is only
+ * materialized from the snapshot when asked for. Listings are passed straight through to the delegate.
+ */
+@Repository("snapshot") // Marks this class as a Spring-managed repository, with "snapshot" as its identifier.
+public class CustomerSnapshotDataAccessService implements CustomerDAO, CustomerEventSink {
+
+    private final CustomerDAO delegate; // The DAO holding the source of truth.
+    private final CustomerSnapshot snapshot = new CustomerSnapshot(); // Off-heap copy of every customer.
+    private final TransactionTemplate primaryRead; // New read-write transaction loads and refreshes read in, which keeps them on the primary.
+    private final int loadChunkSize; // Customers read per chunk while loading the snapshot.
+    private final Object loadLock = new Object(); // Makes the first readers wait for a single load.
+    private volatile boolean started; // Whether the load has begun; changes are only applied from then on.
+    private volatile boolean loaded; // Whether the load has finished.
+
+    /**
+     * Constructs the snapshot tier. The snapshot itself is only loaded on the first read.
+     *
+     * @param delegate      The DAO to load from and write through to.
+     * @param loadChunkSize The number of customers read per chunk while loading.
+     * @param meterRegistry      The registry the snapshot's size gauges are registered with.
+     * @param transactionManager The primary (JDBC) transaction manager, loads and refreshes read under.
+     */
+    public CustomerSnapshotDataAccessService(@Qualifier("jpa") CustomerDAO delegate,
+                                             @Value("${customer.snapshot.load-chunk-size:10000}") int loadChunkSize,
+                                             MeterRegistry meterRegistry,
+                                             PlatformTransactionManager transactionManager) {
+        this.delegate = delegate;
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        // A new transaction, since a caller's may be a read-only one on a replica, or one that has just committed.
+        this.primaryRead.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadChunkSize = loadChunkSize;
+        Gauge.builder("customer.snapshot.size", snapshot, CustomerSnapshot::size).register(meterRegistry);
+        Gauge.builder("customer.snapshot.off-heap", snapshot, CustomerSnapshot::offHeapBytes)
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("customer.snapshot.heap", snapshot, CustomerSnapshot::heapBytes)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        return delegate.selectAllCustomers();
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return delegate.selectCustomersAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit) {
+        return delegate.selectCustomers(filter, sort, after, limit);
+    }
+
+    @Override
+    public void streamAllCustomers(int chunkSize, Consumer<Customer> consumer) {
+        delegate.streamAllCustomers(chunkSize, consumer);
+    }
+
+    @Override
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        delegate.exportCustomersAsCsv(outputStream);
+    }
+
+    /**
+     * Retrieves a customer by ID from the snapshot.
+     *
+     * @param id The ID of the customer to retrieve.
+     * @return An Optional containing a new copy of the customer, or an empty Optional if no customer is found.
+     */
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        ensureLoaded();
+        return Optional.ofNullable(snapshot.get(id));
+    }
+
+    /**
+     * Retrieves the version of a customer from the snapshot, without materializing the customer.
+     *
+     * @param id The ID of the customer.
+     * @return An Optional containing the customer's version, or an empty Optional if no customer is found.
+     */
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer id) {
+        ensureLoaded();
+        long version = snapshot.version(id);
+        return version < 0 ? Optional.empty() : Optional.of(version);
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        delegate.insertCustomer(customer);
+        if (customer.getVersion() != null) {
+            apply(customer);
+        } else {
+            afterCommit(() -> refresh(customer.getId()));
+        }
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        delegate.insertCustomers(customers);
+        apply(customers);
+    }
+
+    @Override
+    public Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers) {
+        Optional<List<Customer>> inserted = delegate.importCustomers(importId, firstRow, customers);
+        inserted.ifPresent(this::apply);
+        return inserted;
+    }
+
+    /**
+     * Finds which of the given emails are taken, using the snapshot's email index.
+     *
+     * @param emails The emails to check.
+     * @return The emails among the given ones that belong to customers in the snapshot.
+     */
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        ensureLoaded();
+        return emails.stream()
+                .filter(snapshot::containsEmail)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Checks the snapshot's email index for an email. A change made by another instance is seen one relay
+     * interval late at most; the unique email index of the database still rejects a duplicate in the meantime.
+     *
+     * @param email The email to check for existence.
+     * @return True if a customer in the snapshot has the email.
+     */
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        ensureLoaded();
+        return snapshot.containsEmail(email);
+    }
+
+    /**
+     * Finds which of the given IDs exist, using the snapshot's ID index.
+     *
+     * @param ids The IDs to check.
+     * @return The IDs among the given ones that belong to customers in the snapshot.
+     */
+    @Override
+    public Set<Integer> selectExistingIds(Collection<Integer> ids) {
+        ensureLoaded();
+        return ids.stream()
+                .filter(snapshot::contains)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public boolean existsPersonWithId(Integer id) {
+        ensureLoaded();
+        return snapshot.contains(id);
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId) {
+        delegate.deleteCustomerById(customerId);
+        remove(Set.of(customerId));
+    }
+
+    @Override
+    public Set<Integer> deleteCustomersByIds(Collection<Integer> ids) {
+        Set<Integer> deleted = delegate.deleteCustomersByIds(ids);
+        remove(deleted);
+        return deleted;
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        delegate.updateCustomer(update);
+        afterCommit(() -> refresh(update.getId()));
+    }
+
+    @Override
+    public Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        Optional<Customer> updated = delegate.updateCustomerFields(id, update, expectedVersion);
+        updated.ifPresent(customer -> apply(List.of(customer)));
+        return updated;
+    }
+
+    @Override
+    public List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates) {
+        List<Customer> updated = delegate.updateCustomersFields(updates);
+        apply(updated);
+        return updated;
+    }
+
+    @Override
+    public boolean countsChanges() {
+        return delegate.countsChanges();
+    }
+
+    /**
+     * Applies a batch of change events published by the outbox relay. Ignored until the snapshot is loaded,
+     * since the load reads the current state anyway.
+     *
+     * @param events The events of the batch, in increasing offset order.
+     */
+    @Override
+    public void publish(List<CustomerChangeEvent> events) {
+        if (!started) {
+            return;
+        }
+        for (CustomerChangeEvent event : events) {
+            if (event.type() == CustomerChangeEvent.Type.DELETED) {
+                snapshot.remove(event.customerId());
+            } else {
+                snapshot.put(event.customer());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of customers in the snapshot.
+     *
+     * @return The number of customers, 0 before the snapshot is loaded.
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Returns the memory the snapshot holds outside the Java heap.
+     *
+     * @return The capacity of its direct buffers, in bytes.
+     */
+    public long offHeapBytes() {
+        return snapshot.offHeapBytes();
+    }
+
+    /**
+     * Returns the memory the snapshot's indexes hold on the Java heap.
+     *
+     * @return The size of its index arrays, in bytes.
+     */
+    public long heapBytes() {
+        return snapshot.heapBytes();
+    }
+
+    /**
+     * Loads the snapshot from the delegate unless that already happened. It is read from the primary: change
+     * events published before the load began are ignored, so what it reads must be at least as new as they are.
+     * Changes arriving while it loads are applied right away; being versioned, they win over older rows the load
+     * reads afterwards.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (!loaded) {
+                started = true;
+                primaryRead.executeWithoutResult(status -> delegate.streamAllCustomers(loadChunkSize, snapshot::put));
+                loaded = true;
+            }
+        }
+    }
+
+    private void apply(Customer customer) {
+        apply(List.of(customer));
+    }
+
+    private void apply(List<Customer> customers) {
+        afterCommit(() -> {
+            if (started) {
+                customers.forEach(snapshot::put);
+            }
+        });
+    }
+
+    private void remove(Set<Integer> ids) {
+        afterCommit(() -> {
+            if (started) {
+                ids.forEach(snapshot::remove);
+            }
+        });
+    }
+
+    /**
+     * Runs a change of the snapshot once the write it reflects is committed: right away if the delegate committed
+     * it on its own, otherwise after the caller's transaction commits, and never if that transaction rolls back.
+     */
+    private static void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    /**
+     * Reloads a customer from the delegate after a committed write that did not return its new state. The read
+     * runs in a read-write transaction of its own, so it is served by the primary and sees the write, never by a
+     * lagging replica. A customer the delegate does not find is left alone, as deletions arrive as events anyway.
+     */
+    private void refresh(Integer id) {
+        if (started) {
+            primaryRead.execute(status -> delegate.selectCustomerById(id)).ifPresent(snapshot::put);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * A record representing the order of a customer listing.
+ * Customers with equal sort values are ordered by ID in the same direction, so the order is total and
+ * the last customer of a page is a stable cursor for the next one.
+ */
+public record CustomerSort(
+        // The field to sort on.
+        Field field,
+        // Whether to sort in descending order.
+        boolean descending
+) {
+
+    /**
+     * The default order of the listing: by ID, ascending.
+     */
+    public static final CustomerSort BY_ID = new CustomerSort(Field.ID, false);
+
+    /**
+     * The fields a listing can be sorted on, with the name of the matching entity attribute.
+     */
+    public enum Field {
+        ID("id", Comparator.comparing(Customer::getId)),
+        NAME("name", Comparator.comparing(Customer::getName)),
+        EMAIL("email", Comparator.comparing(Customer::getEmail)),
+        AGE("age", Comparator.comparing(Customer::getAge));
+
+        private final String attribute; // Name of the entity attribute and table column.
+        private final Comparator<Customer> order; // Orders customers by this field, ascending.
+
+        Field(String attribute, Comparator<Customer> order) {
+            this.attribute = attribute;
+            this.order = order;
+        }
+
+        public String attribute() {
+            return attribute;
+        }
+    }
+
+    /**
+     * Parses a sort parameter of the form {@code field} or {@code field,asc|desc}, e.g. {@code age,desc}.
+     * Throws RequestValidationException if the field or direction is unknown.
+     *
+     * @param value the sort parameter, or null for the default order.
+     * @return the parsed sort order.
+     */
+    public static CustomerSort parse(String value) {
+        if (value == null || value.isBlank()) {
+            return BY_ID;
+        }
+        String[] parts = value.trim().split(",", 2);
+        String direction = parts.length > 1 ? parts[1].trim().toLowerCase(Locale.ROOT) : "asc";
+        if (!direction.equals("asc") && !direction.equals("desc")) {
+            throw new RequestValidationException("sort direction must be asc or desc");
+        }
+        for (Field field : Field.values()) {
+            if (field.attribute.equalsIgnoreCase(parts[0].trim())) {
+                return new CustomerSort(field, direction.equals("desc"));
+            }
+        }
+        throw new RequestValidationException("customers can only be sorted by id, name, email or age");
+    }
+
+    /**
+     * Returns a comparator ordering customers the way the database orders this sort.
+     *
+     * @return a comparator on the sort field, then on the ID.
+     */
+    public Comparator<Customer> comparator() {
+        Comparator<Customer> ascending = field == Field.ID
+                ? field.order
+                : field.order.thenComparing(Field.ID.order);
+        return descending ? ascending.reversed() : ascending;
+    }
+}
@@ -0,0 +1,101 @@
+package com.nastia.customer;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the JPA specifications and sort orders behind filtered customer listings.
+ * Every filter becomes a bound parameter of a single query. Text filters compare lower(column) with LIKE,
+ * the form the trigram indexes on PostgreSQL are defined on.
+ */
+final class CustomerSpecifications {
+
+    static final char LIKE_ESCAPE = '\\'; // Escapes wildcards in user input.
+
+    private CustomerSpecifications() {
+    }
+
+    /**
+     * Returns a specification matching the customers the filter matches.
+     *
+     * @param filter The filters to apply.
+     * @return The specification, matching everything for an empty filter.
+     */
+    static Specification<Customer> matching(CustomerFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            Expression<String> name = cb.lower(root.get("name"));
+            Expression<String> email = cb.lower(root.get("email"));
+            if (filter.minAge() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("age"), filter.minAge()));
+            }
+            if (filter.maxAge() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("age"), filter.maxAge()));
+            }
+            if (filter.name() != null) {
+                predicates.add(cb.like(name, escape(filter.name()) + "%", LIKE_ESCAPE));
+            }
+            if (filter.email() != null) {
+                predicates.add(cb.like(email, escape(filter.email()) + "%", LIKE_ESCAPE));
+            }
+            if (filter.emailDomain() != null) {
+                predicates.add(cb.like(email, "%@" + escape(filter.emailDomain()), LIKE_ESCAPE));
+            }
+            if (filter.search() != null) {
+                String pattern = "%" + escape(filter.search()) + "%";
+                predicates.add(cb.or(cb.like(name, pattern, LIKE_ESCAPE), cb.like(email, pattern, LIKE_ESCAPE)));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Returns a specification matching the customers that come after the cursor in the given order (keyset pagination).
+     *
+     * @param sort   The order of the listing.
+     * @param cursor The last customer of the previous page; only its ID and sort field are read.
+     * @return The specification.
+     */
+    static Specification<Customer> after(CustomerSort sort, Customer cursor) {
+        return (root, query, cb) -> {
+            Expression<Integer> id = root.get("id");
+            return switch (sort.field()) {
+                case ID -> sort.descending() ? cb.lessThan(id, cursor.getId()) : cb.greaterThan(id, cursor.getId());
+                case NAME -> after(cb, root.get("name"), cursor.getName(), id, cursor.getId(), sort.descending());
+                case EMAIL -> after(cb, root.get("email"), cursor.getEmail(), id, cursor.getId(), sort.descending());
+                case AGE -> after(cb, root.get("age"), cursor.getAge(), id, cursor.getId(), sort.descending());
+            };
+        };
+    }
+
+    /**
+     * Returns the sort order of a listing, with the ID as tie-breaker.
+     *
+     * @param sort The order of the listing.
+     * @return The Spring Data sort.
+     */
+    static Sort toSort(CustomerSort sort) {
+        Sort.Direction direction = sort.descending() ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort order = Sort.by(direction, sort.field().attribute());
+        return sort.field() == CustomerSort.Field.ID ? order : order.and(Sort.by(direction, "id"));
+    }
+
+    private static <Y extends Comparable<? super Y>> Predicate after(CriteriaBuilder cb, Expression<Y> field, Y value,
+                                                                     Expression<Integer> id, Integer cursorId,
+                                                                     boolean descending) {
+        if (descending) {
+            return cb.or(cb.lessThan(field, value), cb.and(cb.equal(field, value), cb.lessThan(id, cursorId)));
+        }
+        return cb.or(cb.greaterThan(field, value), cb.and(cb.equal(field, value), cb.greaterThan(id, cursorId)));
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,469 @@
+package com.nastia.customer;
+
+import com.nastia.exception.DuplicateResourceException;
+import com.nastia.exception.PreconditionFailedException;
+import com.nastia.exception.RequestValidationException;
+import com.nastia.exception.ResourceNotFoundException;
+import com.nastia.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind queue accepting customer registrations and updates without waiting for their commit.
+ *
+ * A write is validated synchronously, against the customers and emails of writes still in the queue
+ * and then against the database, and queued. A single flusher thread drains the queue and writes
+ * everything it took, up to {@code batch-size} writes or whatever arrived within {@code max-delay}
+ * of the first one, in one transaction, so a burst of registrations pays for one commit instead of
+ * one per request. Once the queue holds {@code capacity} writes, new ones wait up to
+ * {@code offer-timeout} for room and are then rejected with 503 Service Unavailable.
+ *
+ * Until its write is committed, an accepted customer is served from this queue, so a client reads
+ * its own writes right away. Listings only show it once it is committed. A write can still fail at
+ * flush time, if a synchronous writer took its email meanwhile; it is then logged and counted, and
+ * the customer disappears from the overlay. An update is flushed only if the stored customer still has the version
+ * it was accepted against, so the version handed to the client is the one the database ends up with.
+ *
+ * Stopping waits for writes being accepted, refuses further ones and flushes everything accepted before returning.
+ */
+@Component // Marks this class as a Spring-managed component, started and stopped with the application.
+@ConditionalOnProperty(name = "customer.write-behind.enabled", havingValue = "true") // Only active when enabled.
+public class CustomerWriteBehind implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerWriteBehind.class);
+
+    private static final int LOCK_STRIPES = 64; // Number of locks serializing updates, striped by customer ID.
+    private static final long POLL_INTERVAL_MILLIS = 100; // How often an idle flusher checks whether it should stop.
+    private static final Duration FLUSH_WAIT = Duration.ofSeconds(30); // How long a caller waits for pending writes to be flushed.
+
+    private final CustomerDAO customerDAO; // The DAO queued writes are flushed to.
+    private final CustomerIdAllocator idAllocator; // Allocates the ID handed out when a registration is accepted.
+    private final CustomerChangeCounter changeCounter; // Bumped once per flushed group the DAO does not count itself.
+    private final TransactionTemplate transactionTemplate; // Wraps each group in one transaction.
+    private final int batchSize; // Maximum number of writes flushed in one transaction.
+    private final long maxDelayNanos; // How long the flusher waits for more writes after the first one of a group.
+    private final long offerTimeoutNanos; // How long a write may wait for room in a full queue.
+
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>(); // Accepted writes, in order.
+    private final Semaphore capacity; // One permit per write the queue may still take; released once a write is flushed.
+    private final Map<Integer, PendingWrite> pendingById = new ConcurrentHashMap<>(); // Latest unflushed write per customer.
+    private final Map<String, Integer> pendingEmails = new ConcurrentHashMap<>(); // Emails claimed by unflushed writes.
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ReadWriteLock admission = new ReentrantReadWriteLock(); // Held shared while queueing, exclusively while stopping.
+
+    private final Timer flushTimer;
+    private final DistributionSummary groupSizes; // Number of writes per flushed group.
+    private final Counter failedWrites; // Accepted writes that could not be applied.
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    /**
+     * Constructs the write-behind queue.
+     *
+     * @param customerDAO         The data access object writes are flushed to.
+     * @param idAllocator         Allocator of customer IDs in pooled blocks.
+     * @param changeCounter       The table-level change counter.
+     * @param transactionTemplate Template on the primary (JDBC) transaction manager.
+     * @param meterRegistry       The registry the queue's metrics are registered with.
+     * @param capacity            The maximum number of unflushed writes.
+     * @param batchSize           The maximum number of writes per transaction.
+     * @param maxDelay            How long to wait for more writes before flushing a group.
+     * @param offerTimeout        How long a write may wait for room in a full queue.
+     */
+    public CustomerWriteBehind(@Qualifier("cached") CustomerDAO customerDAO,
+                               CustomerIdAllocator idAllocator,
+                               CustomerChangeCounter changeCounter,
+                               TransactionTemplate transactionTemplate,
+                               MeterRegistry meterRegistry,
+                               @Value("${customer.write-behind.capacity:10000}") int capacity,
+                               @Value("${customer.write-behind.batch-size:500}") int batchSize,
+                               @Value("${customer.write-behind.max-delay:10ms}") Duration maxDelay,
+                               @Value("${customer.write-behind.offer-timeout:1s}") Duration offerTimeout) {
+        this.customerDAO = customerDAO;
+        this.idAllocator = idAllocator;
+        this.changeCounter = changeCounter;
+        this.transactionTemplate = transactionTemplate;
+        this.capacity = new Semaphore(capacity, true);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.flushTimer = CustomerMetrics.timer(meterRegistry, "customer.write-behind", "flush");
+        this.groupSizes = DistributionSummary.builder("customer.write-behind.group.size").register(meterRegistry);
+        this.failedWrites = Counter.builder("customer.write-behind.failed").register(meterRegistry);
+        Gauge.builder("customer.write-behind.pending", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    /**
+     * Accepts a new customer, allocating its ID right away.
+     * Throws DuplicateResourceException if the email is already taken or claimed by a queued write,
+     * and ServiceUnavailableException if the queue stays full.
+     *
+     * @param name  The name of the customer.
+     * @param email The email of the customer.
+     * @param age   The age of the customer.
+     * @return The accepted customer, with its ID and version 0.
+     */
+    public Customer insert(String name, String email, Integer age) {
+        Customer customer = new Customer(idAllocator.nextId(), name, email, age);
+        customer.setVersion(0L);
+        claimEmail(email, customer.getId());
+        try {
+            enqueue(new PendingWrite(customer, null, true, new CompletableFuture<>()));
+        } catch (RuntimeException e) {
+            pendingEmails.remove(email, customer.getId());
+            throw e;
+        }
+        return new Customer(customer);
+    }
+
+    /**
+     * Accepts a partial update of a customer, validated against its latest accepted state.
+     * Updates of the same customer are serialized, so the versions they are checked against and assign stay consecutive.
+     * Throws ResourceNotFoundException if the customer does not exist, PreconditionFailedException if it was
+     * modified since {@code expectedVersion}, RequestValidationException if nothing changes,
+     * DuplicateResourceException if the new email is taken and ServiceUnavailableException if the queue stays full.
+     *
+     * @param id              The ID of the customer to update.
+     * @param update          The fields to change; null fields are left untouched.
+     * @param expectedVersion The version the client last saw, or null to update whatever the current version is.
+     * @return The customer as it will be once the update is flushed.
+     */
+    public Customer update(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        synchronized (locks[Math.floorMod(id, LOCK_STRIPES)]) {
+            Customer current = pending(id)
+                    .or(() -> customerDAO.selectCustomerById(id))
+                    .orElseThrow(() -> new ResourceNotFoundException(
+                            "customer with id [%s] not found".formatted(id)
+                    ));
+            if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+                throw new PreconditionFailedException(
+                        "customer with id [%s] has been modified since version [%s]".formatted(id, expectedVersion)
+                );
+            }
+
+            // Only the fields that actually change are written, so the flushed UPDATE matches exactly when this one would have.
+            CustomerUpdateRequest changes = new CustomerUpdateRequest(
+                    changed(current.getName(), update.name()),
+                    changed(current.getEmail(), update.email()),
+                    changed(current.getAge(), update.age())
+            );
+            if (changes.name() == null && changes.email() == null && changes.age() == null) {
+                throw new RequestValidationException("no data changes found");
+            }
+            Customer updated = new Customer(
+                    id,
+                    changes.name() != null ? changes.name() : current.getName(),
+                    changes.email() != null ? changes.email() : current.getEmail(),
+                    changes.age() != null ? changes.age() : current.getAge()
+            );
+            updated.setVersion(current.getVersion() + 1);
+
+            if (changes.email() != null) {
+                claimEmail(changes.email(), id);
+            }
+            try {
+                enqueue(new PendingWrite(updated, changes, changes.email() != null, new CompletableFuture<>()));
+            } catch (RuntimeException e) {
+                if (changes.email() != null) {
+                    pendingEmails.remove(changes.email(), id);
+                }
+                throw e;
+            }
+            return new Customer(updated);
+        }
+    }
+
+    /**
+     * Returns the latest accepted state of a customer whose writes are not flushed yet.
+     *
+     * @param id The ID of the customer.
+     * @return A copy of the customer as last accepted, or an empty Optional if nothing is pending for it.
+     */
+    public Optional<Customer> pending(Integer id) {
+        PendingWrite write = pendingById.get(id);
+        return write == null ? Optional.empty() : Optional.of(new Customer(write.customer()));
+    }
+
+    /**
+     * Checks whether an email is claimed by a write that is not flushed yet.
+     *
+     * @param email The email to check.
+     * @return True if a queued registration or update writes this email.
+     */
+    public boolean isEmailPending(String email) {
+        return pendingEmails.containsKey(email);
+    }
+
+    /**
+     * Waits until every accepted write of a customer is flushed, so a synchronous write sees them in the database.
+     * Throws ServiceUnavailableException if they are not flushed in time.
+     *
+     * @param id The ID of the customer.
+     */
+    public void awaitFlushed(Integer id) {
+        PendingWrite write = pendingById.get(id);
+        if (write == null) {
+            return;
+        }
+        try {
+            // Writes are flushed in order, so the latest one being done means all earlier ones are too.
+            write.flushed().get(FLUSH_WAIT.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("interrupted while waiting for pending writes");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new ServiceUnavailableException("pending writes of customer [%s] were not flushed in time".formatted(id));
+        }
+    }
+
+    /**
+     * Claims an email for a queued write, checking queued writes first and the database second,
+     * so an email committed by a flush that released its claim meanwhile is still seen.
+     */
+    private void claimEmail(String email, Integer id) {
+        Integer owner = pendingEmails.putIfAbsent(email, id);
+        if (owner != null && !owner.equals(id)) {
+            throw new DuplicateResourceException("email already taken");
+        }
+        if (customerDAO.existsPersonWithEmail(email)) {
+            pendingEmails.remove(email, id);
+            throw new DuplicateResourceException("email already taken");
+        }
+    }
+
+    /**
+     * Waits for room in the queue, then makes the write visible to readers and queues it.
+     * Runs under the shared admission lock, so {@link #stop()} cannot let the flusher finish between the running
+     * check and the write reaching the queue.
+     */
+    private void enqueue(PendingWrite write) {
+        admission.readLock().lock();
+        try {
+            if (!running) {
+                throw new ServiceUnavailableException("customer writes are not accepted while shutting down");
+            }
+            boolean acquired;
+            try {
+                acquired = capacity.tryAcquire(offerTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                throw new ServiceUnavailableException("too many pending customer writes, retry later");
+            }
+            pendingById.put(write.customer().getId(), write);
+            queue.add(write);
+        } finally {
+            admission.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the new value of a field, or null if it does not change it.
+     */
+    private static <T> T changed(T current, T value) {
+        return value == null || value.equals(current) ? null : value;
+    }
+
+    /**
+     * Takes groups of writes off the queue and flushes them until stopped and drained.
+     */
+    private void run() {
+        List<PendingWrite> group = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (group.size() < batchSize) {
+                    queue.drainTo(group, batchSize - group.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (group.size() == batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Stop waiting for more writes and flush what was taken; only stop() ends the loop, once nothing more can be queued.
+            }
+            if (!group.isEmpty()) {
+                flush(group);
+                capacity.release(group.size());
+                group.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a group in one transaction. If the group is rolled back, for example because a synchronous
+     * writer took one of its emails, its writes are retried one by one so only the failing ones are lost.
+     */
+    private void flush(List<PendingWrite> group) {
+        long start = System.nanoTime();
+        try {
+            try {
+                Integer unmatched = transactionTemplate.execute(status -> apply(group));
+                failedWrites.increment(Objects.requireNonNull(unmatched));
+            } catch (RuntimeException e) {
+                for (PendingWrite write : group) {
+                    try {
+                        failedWrites.increment(apply(List.of(write)));
+                    } catch (RuntimeException failure) {
+                        failedWrites.increment();
+                        log.warn("Dropping accepted write of customer [{}]: {}", write.customer().getId(), failure.getMessage());
+                    }
+                }
+            }
+            countChange();
+            for (PendingWrite write : group) {
+                Integer id = write.customer().getId();
+                pendingById.remove(id, write);
+                if (write.claimsEmail()) {
+                    pendingEmails.remove(write.customer().getEmail(), id);
+                }
+                write.flushed().complete(null);
+            }
+        } finally {
+            groupSizes.record(group.size());
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Applies writes in order, batching consecutive registrations into one multi-row insert.
+     *
+     * An update expects the version preceding the one it was accepted with, so it matches no row if the customer
+     * was deleted or changed by a synchronous writer meanwhile, rather than committing under a different version.
+     *
+     * @return The number of updates that matched no row.
+     */
+    private int apply(List<PendingWrite> writes) {
+        int unmatched = 0;
+        List<Customer> inserts = new ArrayList<>();
+        for (PendingWrite write : writes) {
+            if (write.changes() == null) {
+                inserts.add(new Customer(write.customer()));
+                continue;
+            }
+            if (!inserts.isEmpty()) {
+                customerDAO.insertCustomers(inserts);
+                inserts = new ArrayList<>();
+            }
+            Integer id = write.customer().getId();
+            Long expectedVersion = write.customer().getVersion() - 1;
+            if (customerDAO.updateCustomerFields(id, write.changes(), expectedVersion).isEmpty()) {
+                log.warn("Dropping accepted update of customer [{}]: it was deleted or modified since version [{}]",
+                        id, expectedVersion);
+                unmatched++;
+            }
+        }
+        if (!inserts.isEmpty()) {
+            customerDAO.insertCustomers(inserts);
+        }
+        return unmatched;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        flusher = new Thread(this::run, "customer-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops accepting writes and waits until the flusher has drained the queue.
+     * Taking the admission lock exclusively waits for writes being queued, so each of them is either rejected or
+     * queued before the flusher can see it stopped.
+     */
+    @Override
+    public void stop() {
+        admission.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            admission.writeLock().unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before and stops after the web server, so no request is accepted once the queue has been drained.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    /**
+     * One accepted write.
+     *
+     * @param customer    The customer as it is once the write is applied.
+     * @param changes     The fields an update changes, or null for a registration.
+     * @param claimsEmail Whether the write claimed its customer's email in {@code pendingEmails}.
+     * @param flushed     Completed once the write has been committed or dropped.
+     */
+    private record PendingWrite(Customer customer,
+                                CustomerUpdateRequest changes,
+                                boolean claimsEmail,
+                                CompletableFuture<Void> flushed) {
+    }
+
+    /**
+     * Counts a write on the table-level change counter, unless the DAO already counted it in the write's transaction.
+     */
+    private void countChange() {
+        if (!customerDAO.countsChanges()) {
+            changeCounter.increment();
+        }
+    }
+}
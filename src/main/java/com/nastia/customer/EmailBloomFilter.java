@@ -0,0 +1,94 @@
+package com.nastia.customer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free Bloom filter over email addresses.
+ * {@link #mightContain(String)} never returns false for an email that was {@link #put(String) put},
+ * and returns true for an email that was not put with roughly the configured false positive probability.
+ * Emails cannot be removed: once the filter has seen an email it keeps answering "maybe" for it.
+ */
+class EmailBloomFilter {
+
+    private static final double LN_2 = Math.log(2);
+
+    private final AtomicLongArray words; // Bit array packed into 64-bit words, set with CAS.
+    private final long bitCount; // Number of usable bits in the array.
+    private final int hashFunctions; // Number of bits set per email.
+
+    /**
+     * Sizes the filter for the expected number of emails and the wanted false positive probability.
+     *
+     * @param expectedInsertions        The number of emails the filter is expected to hold.
+     * @param falsePositiveProbability  The wanted probability of a false positive at that size.
+     */
+    EmailBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        long n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (LN_2 * LN_2));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / n * LN_2));
+    }
+
+    /**
+     * Records an email in the filter.
+     *
+     * @param email The email to record.
+     */
+    void put(String email) {
+        long hash = hash64(email);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1; // Odd, so the probe sequence never degenerates.
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                word = words.get(index);
+            }
+        }
+    }
+
+    /**
+     * Checks whether an email may have been recorded.
+     *
+     * @param email The email to check.
+     * @return False if the email was definitely never recorded, true if it may have been.
+     */
+    boolean mightContain(String email) {
+        long hash = hash64(email);
+        long h1 = hash;
+        long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of an email with 64-bit FNV-1a followed by a finalizing mix.
+     */
+    private static long hash64(String email) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : email.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreading every input bit over the whole output.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
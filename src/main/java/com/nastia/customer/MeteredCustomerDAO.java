@@ -0,0 +1,291 @@
+package com.nastia.customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Timing decorator around the CustomerDAO selected with {@code customer.data-store}: the JPA one by default,
+ * or the off-heap "snapshot", the "sharded" or the in-memory "list" one.
+ * Every call is recorded in a {@code customer.dao} timer tagged with the method name, so the time
+ * spent in the data store can be told apart from the service and web layers. It sits below the
+ * cache, so cache hits are not counted as data store calls.
+ */
+@Repository("metered") // Registers this decorator as a Spring-managed repository, with "metered" as its identifier.
+public class MeteredCustomerDAO implements CustomerDAO {
+
+    private static final String METRIC = "customer.dao"; // Name of the DAO timers.
+    private static final List<String> DATA_STORES = List.of("jpa", "snapshot", "sharded", "list"); // Beans customer.data-store may name.
+
+    private final CustomerDAO delegate; // The DAO whose calls are timed.
+
+    // Per-method timers, registered once so recording a call allocates nothing.
+    private final Timer selectAllTimer;
+    private final Timer selectAfterTimer;
+    private final Timer selectFilteredTimer;
+    private final Timer streamTimer;
+    private final Timer exportTimer;
+    private final Timer selectByIdTimer;
+    private final Timer selectVersionTimer;
+    private final Timer insertTimer;
+    private final Timer insertBatchTimer;
+    private final Timer importTimer;
+    private final Timer existingEmailsTimer;
+    private final Timer existingIdsTimer;
+    private final Timer existsByEmailTimer;
+    private final Timer existsByIdTimer;
+    private final Timer deleteTimer;
+    private final Timer deleteBatchTimer;
+    private final Timer updateTimer;
+    private final Timer updateFieldsTimer;
+    private final Timer updateFieldsBatchTimer;
+
+    /**
+     * Constructs the timing decorator around the selected data store.
+     * Throws IllegalStateException if {@code dataStore} names no data store.
+     *
+     * @param beanFactory   The bean factory the data store is looked up in.
+     * @param dataStore     The name of the CustomerDAO bean whose calls are timed.
+     * @param meterRegistry The registry the timers are registered with.
+     */
+    public MeteredCustomerDAO(BeanFactory beanFactory,
+                              @Value("${customer.data-store:jpa}") String dataStore,
+                              MeterRegistry meterRegistry) {
+        if (!DATA_STORES.contains(dataStore)) {
+            throw new IllegalStateException("customer.data-store must be one of %s, not [%s]".formatted(DATA_STORES, dataStore));
+        }
+        this.delegate = beanFactory.getBean(dataStore, CustomerDAO.class);
+        this.selectAllTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectAllCustomers");
+        this.selectAfterTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectCustomersAfter");
+        this.selectFilteredTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectCustomers");
+        this.streamTimer = CustomerMetrics.timer(meterRegistry, METRIC, "streamAllCustomers");
+        this.exportTimer = CustomerMetrics.timer(meterRegistry, METRIC, "exportCustomersAsCsv");
+        this.selectByIdTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectCustomerById");
+        this.selectVersionTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectCustomerVersion");
+        this.insertTimer = CustomerMetrics.timer(meterRegistry, METRIC, "insertCustomer");
+        this.insertBatchTimer = CustomerMetrics.timer(meterRegistry, METRIC, "insertCustomers");
+        this.importTimer = CustomerMetrics.timer(meterRegistry, METRIC, "importCustomers");
+        this.existingEmailsTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectExistingEmails");
+        this.existingIdsTimer = CustomerMetrics.timer(meterRegistry, METRIC, "selectExistingIds");
+        this.existsByEmailTimer = CustomerMetrics.timer(meterRegistry, METRIC, "existsPersonWithEmail");
+        this.existsByIdTimer = CustomerMetrics.timer(meterRegistry, METRIC, "existsPersonWithId");
+        this.deleteTimer = CustomerMetrics.timer(meterRegistry, METRIC, "deleteCustomerById");
+        this.deleteBatchTimer = CustomerMetrics.timer(meterRegistry, METRIC, "deleteCustomersByIds");
+        this.updateTimer = CustomerMetrics.timer(meterRegistry, METRIC, "updateCustomer");
+        this.updateFieldsTimer = CustomerMetrics.timer(meterRegistry, METRIC, "updateCustomerFields");
+        this.updateFieldsBatchTimer = CustomerMetrics.timer(meterRegistry, METRIC, "updateCustomersFields");
+    }
+
+    @Override
+    public List<Customer> selectAllCustomers() {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectAllCustomers();
+        } finally {
+            selectAllTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomersAfter(afterId, limit);
+        } finally {
+            selectAfterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Customer> selectCustomers(CustomerFilter filter, CustomerSort sort, Customer after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomers(filter, sort, after, limit);
+        } finally {
+            selectFilteredTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Streams all customers from the delegate. The recorded time includes the time spent in the consumer.
+     */
+    @Override
+    public void streamAllCustomers(int chunkSize, Consumer<Customer> consumer) {
+        long start = System.nanoTime();
+        try {
+            delegate.streamAllCustomers(chunkSize, consumer);
+        } finally {
+            streamTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Exports all customers from the delegate. The recorded time includes the time spent writing to the stream.
+     */
+    @Override
+    public void exportCustomersAsCsv(OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.exportCustomersAsCsv(outputStream);
+        } finally {
+            exportTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Optional<Customer> selectCustomerById(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomerById(id);
+        } finally {
+            selectByIdTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Optional<Long> selectCustomerVersion(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectCustomerVersion(id);
+        } finally {
+            selectVersionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void insertCustomer(Customer customer) {
+        long start = System.nanoTime();
+        try {
+            delegate.insertCustomer(customer);
+        } finally {
+            insertTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void insertCustomers(List<Customer> customers) {
+        long start = System.nanoTime();
+        try {
+            delegate.insertCustomers(customers);
+        } finally {
+            insertBatchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Optional<List<Customer>> importCustomers(String importId, long firstRow, List<Customer> customers) {
+        long start = System.nanoTime();
+        try {
+            return delegate.importCustomers(importId, firstRow, customers);
+        } finally {
+            importTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Set<String> selectExistingEmails(Collection<String> emails) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectExistingEmails(emails);
+        } finally {
+            existingEmailsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Set<Integer> selectExistingIds(Collection<Integer> ids) {
+        long start = System.nanoTime();
+        try {
+            return delegate.selectExistingIds(ids);
+        } finally {
+            existingIdsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean existsPersonWithEmail(String email) {
+        long start = System.nanoTime();
+        try {
+            return delegate.existsPersonWithEmail(email);
+        } finally {
+            existsByEmailTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean existsPersonWithId(Integer id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.existsPersonWithId(id);
+        } finally {
+            existsByIdTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void deleteCustomerById(Integer customerId) {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteCustomerById(customerId);
+        } finally {
+            deleteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Set<Integer> deleteCustomersByIds(Collection<Integer> ids) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteCustomersByIds(ids);
+        } finally {
+            deleteBatchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void updateCustomer(Customer update) {
+        long start = System.nanoTime();
+        try {
+            delegate.updateCustomer(update);
+        } finally {
+            updateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Optional<Customer> updateCustomerFields(Integer id, CustomerUpdateRequest update, Long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateCustomerFields(id, update, expectedVersion);
+        } finally {
+            updateFieldsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Customer> updateCustomersFields(Map<Integer, CustomerUpdateRequest> updates) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateCustomersFields(updates);
+        } finally {
+            updateFieldsBatchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean countsChanges() {
+        return delegate.countsChanges();
+    }
+}
@@ -0,0 +1,115 @@
+package com.nastia.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * Declares the JDBC datasource explicitly from the {@code spring.datasource} properties.
+ *
+ * Spring Boot skips its own JDBC datasource as soon as an R2DBC connection factory is present,
+ * which is the case in builds with the reactive Maven profile. JPA, Flyway and the JDBC-based DAO
+ * paths still need it there, since the reactive stack writes through them.
+ *
+ * Such builds also have an R2DBC transaction manager; the JPA one is primary, so plain @Transactional
+ * keeps meaning a JDBC transaction.
+ *
+ * The datasource everything uses routes read-only transactions to the read replicas configured under
+ * {@code customer.datasource.replicas} and everything else to the primary. It hands out connection proxies
+ * and only picks the database once the first statement runs, by which time the transaction has marked
+ * the connection read-only. Asynchronous request processing, such as streamed response bodies, runs on the
+ * application task executor, whose tasks carry the read-your-writes state of the request that started them.
+ */
+@Configuration // Marks this class as a source of bean definitions.
+@EnableConfigurationProperties({DataSourceProperties.class, ReplicaProperties.class, ShardProperties.class}) // Binds the datasource, replica and shard properties.
+@ImportRuntimeHints(MigrationRuntimeHints.class) // Ships the vendor-specific migrations in native images.
+public class DataSourceConfig {
+
+    /**
+     * Creates the Hikari connection pool for the primary customer database.
+     *
+     * @param properties The spring.datasource properties (URL, credentials, driver).
+     * @return The pooled datasource, further configured from spring.datasource.hikari.
+     */
+    @Bean // Registers the datasource as a Spring bean.
+    @ConfigurationProperties("spring.datasource.hikari") // Applies pool settings such as maximum-pool-size.
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    /**
+     * Creates the datasource serving read-only transactions from the replicas, falling back to the primary.
+     *
+     * @param primary    The primary datasource.
+     * @param properties The customer.datasource properties.
+     * @return The replica datasource, health-checked on a schedule.
+     */
+    @Bean // Registers the replica datasource as a Spring bean, so its health checks are scheduled and its pools closed.
+    public ReplicaDataSource replicaDataSource(@Qualifier("primaryDataSource") DataSource primary, ReplicaProperties properties) {
+        return new ReplicaDataSource(primary, properties);
+    }
+
+    /**
+     * Creates the datasource used by JPA, JdbcTemplate and Flyway, routing by the read-only flag of the transaction.
+     *
+     * @param primary  The primary datasource, for writes and for reads outside read-only transactions.
+     * @param replicas The replica datasource, for read-only transactions.
+     * @return The routing datasource.
+     */
+    @Bean // Registers the routing datasource as a Spring bean.
+    @Primary // Injected wherever a datasource is needed without naming one.
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary, ReplicaDataSource replicas) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(replicas);
+        return dataSource;
+    }
+
+    /**
+     * Creates the decorator the application task executor applies to its tasks, so asynchronous request processing
+     * such as streamed listings and exports reads from the same databases as the request thread would.
+     *
+     * @return The task decorator propagating the client's last write.
+     */
+    @Bean // Registers the decorator as a Spring bean, picked up by the task execution auto-configuration.
+    public TaskDecorator readYourWritesTaskDecorator() {
+        return ReadYourWrites::propagate;
+    }
+
+    /**
+     * Creates the connection pools of the shard databases used by the sharded customer DAO.
+     *
+     * @param properties The customer.sharding properties.
+     * @param primary    The primary datasource, the only shard when none is configured.
+     * @return The migrated shard datasources.
+     */
+    @Bean // Registers the shard pools as a Spring bean, so they are closed on shutdown.
+    public ShardDataSources shardDataSources(ShardProperties properties, @Qualifier("primaryDataSource") DataSource primary) {
+        return new ShardDataSources(properties, primary);
+    }
+
+    /**
+     * Creates the transaction manager used by @Transactional, shared by JPA and JdbcTemplate.
+     *
+     * @param entityManagerFactory The JPA entity manager factory.
+     * @return The primary transaction manager.
+     */
+    @Bean // Registers the transaction manager as a Spring bean, replacing Spring Boot's default one.
+    @Primary // Preferred over the R2DBC transaction manager of reactive builds when no manager is named.
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+}
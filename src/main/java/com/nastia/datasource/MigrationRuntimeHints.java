@@ -0,0 +1,17 @@
+package com.nastia.datasource;
+
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Makes the vendor-specific Flyway migrations available in a native image.
+ * Spring Boot only registers the default {@code db/migration} location; resources outside of it
+ * are not included in the image unless they are declared here.
+ */
+class MigrationRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources().registerPattern("db/vendor/*/*.sql");
+    }
+}
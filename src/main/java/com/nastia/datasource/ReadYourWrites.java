@@ -0,0 +1,60 @@
+package com.nastia.datasource;
+
+/**
+ * Holds, for the current thread, when the client being served last wrote to the customer database,
+ * so reads on its behalf avoid replicas that may not have received that write yet.
+ * Work handed to another thread on the client's behalf, such as a streamed response body, carries it along
+ * through {@link #propagate(Runnable)}.
+ */
+final class ReadYourWrites {
+
+    private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<>(); // Epoch milliseconds of the client's last write.
+
+    private ReadYourWrites() {
+    }
+
+    /**
+     * Records when the client served by the current thread last wrote.
+     *
+     * @param epochMillis The time of the write, in epoch milliseconds.
+     */
+    static void set(long epochMillis) {
+        LAST_WRITE.set(epochMillis);
+    }
+
+    /**
+     * Returns how long ago the client served by the current thread last wrote.
+     *
+     * @return The elapsed milliseconds, or {@link Long#MAX_VALUE} if no write is known.
+     */
+    static long millisSinceLastWrite() {
+        Long lastWrite = LAST_WRITE.get();
+        return lastWrite == null ? Long.MAX_VALUE : System.currentTimeMillis() - lastWrite;
+    }
+
+    /**
+     * Forgets the current thread's client.
+     */
+    static void clear() {
+        LAST_WRITE.remove();
+    }
+
+    /**
+     * Wraps a task so it runs with the last write of the client served by the calling thread, whichever thread runs it.
+     *
+     * @param task The task to run on the client's behalf.
+     * @return The wrapped task, restoring the runner's own state once done.
+     */
+    static Runnable propagate(Runnable task) {
+        Long lastWrite = LAST_WRITE.get();
+        return () -> {
+            Long previous = LAST_WRITE.get();
+            LAST_WRITE.set(lastWrite);
+            try {
+                task.run();
+            } finally {
+                LAST_WRITE.set(previous);
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package com.nastia.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Servlet filter remembering when each client last wrote, so its reads are kept off replicas that may lag behind.
+ *
+ * A request that may write stamps the client with a cookie holding the current time, and all its own reads
+ * go to the primary. Later requests carrying the cookie hand that time to {@link ReplicaDataSource}, which only
+ * picks a replica whose measured lag it has outlived. The cookie expires once every replica in rotation must
+ * have caught up.
+ *
+ * The cookie is client-controlled, so its time is capped at the present and ignored once it is older than the
+ * cookie itself may live: a forged value can at most keep that client's own reads on the primary for as long as
+ * a genuine write would. Without replicas there is nothing to route around, so the filter is not registered.
+ */
+@Component // Registers the filter with the servlet container.
+@ConditionalOnProperty("customer.datasource.replicas[0].url") // Only registered when at least one read replica is configured.
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String LAST_WRITE_COOKIE = "customer-last-write"; // Epoch milliseconds of the client's last write.
+
+    private final int cookieMaxAgeSeconds; // How long a write can still be missing on a replica in rotation.
+    private final long maxAgeMillis; // Older last-write times are ignored.
+
+    /**
+     * Constructs the filter.
+     *
+     * @param properties The replica routing settings.
+     */
+    public ReadYourWritesFilter(ReplicaProperties properties) {
+        this.maxAgeMillis = properties.maxLag().plus(properties.readYourWritesMargin()).toMillis();
+        this.cookieMaxAgeSeconds = (int) (maxAgeMillis / 1000) + 1;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Long lastWrite;
+        if (isSafe(request.getMethod())) {
+            lastWrite = lastWrite(request);
+        } else {
+            lastWrite = System.currentTimeMillis();
+            Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(lastWrite));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge(cookieMaxAgeSeconds);
+            response.addCookie(cookie);
+        }
+        if (lastWrite == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        ReadYourWrites.set(lastWrite);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReadYourWrites.clear();
+        }
+    }
+
+    private static boolean isSafe(String method) {
+        return method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS");
+    }
+
+    /**
+     * Reads the client's last write time from its cookie, capped at the present.
+     *
+     * @return The time in epoch milliseconds, or null if the client sent none, a malformed one or one too old to matter.
+     */
+    private Long lastWrite(HttpServletRequest request) {
+        Long lastWrite = cookieValue(request);
+        if (lastWrite == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (lastWrite < now - maxAgeMillis) {
+            return null;
+        }
+        return Math.min(lastWrite, now);
+    }
+
+    /**
+     * Reads the raw last write time the client sent.
+     *
+     * @return The time in epoch milliseconds, or null if the client sent none or a malformed one.
+     */
+    private static Long cookieValue(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (cookie.getName().equals(LAST_WRITE_COOKIE)) {
+                try {
+                    return Long.valueOf(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
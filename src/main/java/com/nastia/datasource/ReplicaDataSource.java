@@ -0,0 +1,143 @@
+package com.nastia.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Datasource handing out connections for read-only transactions, spread round-robin over the read replicas.
+ *
+ * A replica is only used while its last health check succeeded and its measured lag stays below
+ * {@code max-lag}. If the client being served wrote recently (see {@link ReadYourWritesFilter}), a replica
+ * is only used once more time has passed since that write than its lag plus {@code read-your-writes-margin},
+ * so the client reads its own write. When no replica qualifies, or the chosen one cannot hand out a
+ * connection, the connection comes from the primary.
+ */
+public class ReplicaDataSource extends AbstractDataSource implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaDataSource.class);
+
+    private final DataSource primary; // Fallback for reads no replica can serve.
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis; // Replicas lagging further behind are out of rotation.
+    private final long marginMillis; // Safety margin on top of a replica's lag after a client's own write.
+    private final AtomicInteger next = new AtomicInteger(); // Round-robin position.
+
+    /**
+     * Constructs the datasource. Replica pools connect lazily and start out of rotation until their first health check.
+     *
+     * @param primary    The primary datasource, used when no replica qualifies.
+     * @param properties The replicas and routing settings.
+     */
+    public ReplicaDataSource(DataSource primary, ReplicaProperties properties) {
+        this.primary = primary;
+        this.maxLagMillis = properties.maxLag().toMillis();
+        this.marginMillis = properties.readYourWritesMargin().toMillis();
+        for (int i = 0; i < properties.replicas().size(); i++) {
+            ReplicaProperties.Replica replica = properties.replicas().get(i);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("replica-" + i);
+            pool.setJdbcUrl(replica.url());
+            pool.setUsername(replica.username());
+            pool.setPassword(replica.password());
+            pool.setConnectionTimeout(properties.connectionTimeout().toMillis());
+            pool.setInitializationFailTimeout(-1); // A replica that is down at startup must not keep the application from starting.
+            replicas.add(new Replica(pool, replica.lagQuery()));
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long sinceWrite = ReadYourWrites.millisSinceLastWrite();
+        int size = replicas.size();
+        int first = size == 0 ? 0 : Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((first + i) % size);
+            if (!replica.healthy || replica.lagMillis + marginMillis > sinceWrite) {
+                continue;
+            }
+            try {
+                return replica.pool.getConnection();
+            } catch (SQLException e) {
+                replica.healthy = false;
+                log.warn("Taking replica {} out of rotation: {}", replica.pool.getPoolName(), e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLException("Replica connections always use the configured credentials");
+    }
+
+    /**
+     * Checks that every replica answers and measures its lag, putting it back into or taking it out of rotation.
+     */
+    @Scheduled(fixedDelayString = "${customer.datasource.health-check-interval:5000}") // Milliseconds between checks.
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.pool.getConnection(); Statement statement = connection.createStatement()) {
+                long lag = 0;
+                if (replica.lagQuery != null) {
+                    try (ResultSet result = statement.executeQuery(replica.lagQuery)) {
+                        lag = result.next() ? result.getLong(1) : 0;
+                    }
+                } else if (!connection.isValid(1)) {
+                    throw new SQLException("connection is not valid");
+                }
+                replica.lagMillis = lag;
+                healthy = lag <= maxLagMillis;
+                if (!healthy && replica.healthy) {
+                    log.warn("Taking replica {} out of rotation: {} ms behind the primary", replica.pool.getPoolName(), lag);
+                }
+            } catch (SQLException e) {
+                healthy = false;
+                if (replica.healthy) {
+                    log.warn("Taking replica {} out of rotation: {}", replica.pool.getPoolName(), e.getMessage());
+                }
+            }
+            if (healthy && !replica.healthy) {
+                log.info("Putting replica {} into rotation", replica.pool.getPoolName());
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * Closes the replica pools.
+     */
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    /**
+     * One read replica and what its last health check found.
+     */
+    private static final class Replica {
+
+        private final HikariDataSource pool;
+        private final String lagQuery; // Query measuring the lag in milliseconds, or null.
+        private volatile boolean healthy; // Whether the replica is in rotation.
+        private volatile long lagMillis; // Lag measured by the last health check.
+
+        private Replica(HikariDataSource pool, String lagQuery) {
+            this.pool = pool;
+            this.lagQuery = lagQuery;
+        }
+    }
+}
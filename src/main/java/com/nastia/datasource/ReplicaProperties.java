@@ -0,0 +1,39 @@
+package com.nastia.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A record binding the {@code customer.datasource} properties: the read replicas of the customer database
+ * and how reads are routed to them.
+ */
+@ConfigurationProperties("customer.datasource") // Binds the customer.datasource properties.
+public record ReplicaProperties(
+        // The read replicas; without any, every read goes to the primary.
+        @DefaultValue List<Replica> replicas,
+        // A replica lagging further behind the primary is taken out of rotation.
+        @DefaultValue("30s") Duration maxLag,
+        // Extra time, on top of a replica's measured lag, before a client's own write is assumed to have reached it.
+        @DefaultValue("1s") Duration readYourWritesMargin,
+        // How long a read waits for a replica connection before falling back to the primary.
+        @DefaultValue("1s") Duration connectionTimeout
+) {
+
+    /**
+     * A record describing one read replica.
+     */
+    public record Replica(
+            // JDBC URL of the replica.
+            String url,
+            // Database username for authentication.
+            String username,
+            // Database password for authentication.
+            String password,
+            // Query returning the replica's lag in milliseconds, or null if the lag cannot be measured.
+            String lagQuery
+    ) {
+    }
+}
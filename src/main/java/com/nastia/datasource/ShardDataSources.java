@@ -0,0 +1,69 @@
+package com.nastia.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.jdbc.DatabaseDriver;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The connection pools of the shard databases, in shard order.
+ *
+ * Each configured shard gets its own Hikari pool and is brought up to date with the same Flyway
+ * migrations as the primary database before it is used. Without configured shards, the primary
+ * database, already migrated by Spring Boot, is the single shard.
+ */
+public class ShardDataSources implements Closeable {
+
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private final List<HikariDataSource> pools = new ArrayList<>(); // The pools created here, closed with this object.
+
+    /**
+     * Creates and migrates the shard pools.
+     *
+     * @param properties The customer.sharding properties.
+     * @param primary    The primary datasource, used as the only shard when none is configured.
+     */
+    public ShardDataSources(ShardProperties properties, DataSource primary) {
+        if (properties.shards().isEmpty()) {
+            dataSources.add(primary);
+            return;
+        }
+        for (int i = 0; i < properties.shards().size(); i++) {
+            ShardProperties.Shard shard = properties.shards().get(i);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + i);
+            pool.setJdbcUrl(shard.url());
+            pool.setUsername(shard.username());
+            pool.setPassword(shard.password());
+            pool.setMaximumPoolSize(properties.maximumPoolSize());
+            pools.add(pool);
+            Flyway.configure()
+                    .dataSource(pool)
+                    .locations("classpath:db/migration", "classpath:db/vendor/" + DatabaseDriver.fromJdbcUrl(shard.url()).getId())
+                    .load()
+                    .migrate();
+            dataSources.add(pool);
+        }
+    }
+
+    /**
+     * Returns the shard datasources; a customer's shard is identified by its position in this list.
+     *
+     * @return The datasources, in shard order.
+     */
+    public List<DataSource> dataSources() {
+        return dataSources;
+    }
+
+    /**
+     * Closes the shard pools.
+     */
+    @Override
+    public void close() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
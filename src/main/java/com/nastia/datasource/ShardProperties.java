@@ -0,0 +1,31 @@
+package com.nastia.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * A record binding the {@code customer.sharding} properties: the databases the sharded customer DAO spreads customers over.
+ */
+@ConfigurationProperties("customer.sharding") // Binds the customer.sharding properties.
+public record ShardProperties(
+        // The shard databases, in shard order; without any, the primary database is the only shard.
+        @DefaultValue List<Shard> shards,
+        // Maximum number of connections per shard pool.
+        @DefaultValue("10") int maximumPoolSize
+) {
+
+    /**
+     * A record describing one shard database.
+     */
+    public record Shard(
+            // JDBC URL of the shard.
+            String url,
+            // Database username for authentication.
+            String username,
+            // Database password for authentication.
+            String password
+    ) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.nastia.exception;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Counts the application's own exceptions as they leave a controller, in a {@code customer.errors}
+ * counter tagged with the exception type.
+ *
+ * The resolver runs before all others and never handles the exception itself: it always returns null,
+ * so the @ResponseStatus mapping of each exception still produces the HTTP response.
+ */
+@Component // Registers the resolver so Spring MVC picks it up.
+public class ExceptionMetricsResolver implements HandlerExceptionResolver, Ordered {
+
+    private final Counter duplicateResource; // Counts DuplicateResourceException outcomes.
+    private final Counter resourceNotFound; // Counts ResourceNotFoundException outcomes.
+    private final Counter requestValidation; // Counts RequestValidationException outcomes.
+    private final Counter preconditionFailed; // Counts PreconditionFailedException outcomes.
+
+    /**
+     * Constructs the resolver and registers one counter per exception type.
+     *
+     * @param meterRegistry The registry the counters are registered with.
+     */
+    public ExceptionMetricsResolver(MeterRegistry meterRegistry) {
+        this.duplicateResource = counter(meterRegistry, DuplicateResourceException.class);
+        this.resourceNotFound = counter(meterRegistry, ResourceNotFoundException.class);
+        this.requestValidation = counter(meterRegistry, RequestValidationException.class);
+        this.preconditionFailed = counter(meterRegistry, PreconditionFailedException.class);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, Class<? extends RuntimeException> type) {
+        return Counter.builder("customer.errors")
+                .tag("exception", type.getSimpleName())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ModelAndView resolveException(HttpServletRequest request, HttpServletResponse response,
+                                         Object handler, Exception ex) {
+        if (ex instanceof DuplicateResourceException) {
+            duplicateResource.increment();
+        } else if (ex instanceof ResourceNotFoundException) {
+            resourceNotFound.increment();
+        } else if (ex instanceof RequestValidationException) {
+            requestValidation.increment();
+        } else if (ex instanceof PreconditionFailedException) {
+            preconditionFailed.increment();
+        }
+        return null; // Leaves the actual handling to the resolvers that follow.
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,27 @@
+package com.nastia.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+
+/**
+ * Custom exception class for conditional requests whose precondition does not hold.
+ * This exception is thrown when a client asks to modify a resource only if it is still at the
+ * version the client last saw (e.g. through an If-Match header), but the resource has been
+ * modified by someone else in the meantime.
+ *
+ * The @ResponseStatus annotation marks this exception class to automatically trigger
+ * an HTTP 412 Precondition Failed response when the exception is thrown and uncaught in a controller
+ * method, telling the client to reload the resource before retrying its change.
+ */
+@ResponseStatus(code = HttpStatus.PRECONDITION_FAILED) // Specifies the HTTP status code to return when this exception is thrown.
+public class PreconditionFailedException extends RuntimeException {
+    /**
+     * Constructs a new PreconditionFailedException with the specified detail message.
+     *
+     * @param message the detail message. The detail message is saved for later retrieval by the Throwable.getMessage() method.
+     */
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,26 @@
+package com.nastia.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+
+/**
+ * Custom exception class for requests the service cannot take on right now.
+ * This exception is thrown when a bounded resource, such as the write-behind queue, stays full
+ * for longer than a request is allowed to wait for it.
+ *
+ * The @ResponseStatus annotation marks this exception class to automatically trigger
+ * an HTTP 503 Service Unavailable response when the exception is thrown and uncaught in a controller
+ * method, telling the client to back off and retry later.
+ */
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE) // Specifies the HTTP status code to return when this exception is thrown.
+public class ServiceUnavailableException extends RuntimeException {
+    /**
+     * Constructs a new ServiceUnavailableException with the specified detail message.
+     *
+     * @param message the detail message. The detail message is saved for later retrieval by the Throwable.getMessage() method.
+     */
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
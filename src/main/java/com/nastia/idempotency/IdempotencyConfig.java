@@ -0,0 +1,32 @@
+package com.nastia.idempotency;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Configuration class selecting where idempotency keys are kept.
+ */
+@Configuration // Marks this class as a source of bean definitions.
+@ConditionalOnProperty(name = "customer.idempotency.enabled", havingValue = "true") // Only active when enabled.
+@EnableConfigurationProperties(IdempotencyProperties.class) // Binds the idempotency properties.
+public class IdempotencyConfig {
+
+    /**
+     * Creates the idempotency store: in memory, which suits a single instance, or in the primary database,
+     * which every instance shares.
+     *
+     * @param properties   The idempotency properties.
+     * @param jdbcTemplate JDBC template on the primary database.
+     * @return The idempotency store.
+     */
+    @Bean // Registers the store as a Spring bean.
+    public IdempotencyStore idempotencyStore(IdempotencyProperties properties, JdbcTemplate jdbcTemplate) {
+        return switch (properties.store()) {
+            case MEMORY -> new InMemoryIdempotencyStore(properties);
+            case JDBC -> new JdbcIdempotencyStore(jdbcTemplate, properties);
+        };
+    }
+}
@@ -0,0 +1,335 @@
+package com.nastia.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.error.ErrorAttributes;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Servlet filter making registrations and updates safe to retry: a POST or PUT carrying an Idempotency-Key
+ * header runs once, and every retry with the same key gets the response of that first run.
+ *
+ * The filter claims the key in the {@link IdempotencyStore} before the request reaches the controller, so
+ * {@code CustomerService} never sees a retry: a client whose registration timed out no longer gets 409 Conflict
+ * for the email it just registered. A retry arriving while the first run is still going waits for its response
+ * rather than running alongside it. Only responses below 500 are kept; after a server error or a response too
+ * large to keep, the key is released and the next retry runs again. Reusing a key for a different request,
+ * told apart by a digest of its method, path, If-Match header and body, is answered with 422 Unprocessable Entity.
+ * Error responses are replayed through the error page with their original status and message.
+ *
+ * Keys are scoped to the client, identified by its {@code client-header} or else its IP address, so one client
+ * reusing another's key neither gets that client's response nor blocks its retries. The body of a request with
+ * a key is buffered to digest it, so a body beyond {@code maximum-request-size} is refused with 413 Content Too
+ * Large before it is read in full.
+ */
+@Component // Registers the filter with the servlet container.
+@ConditionalOnProperty(name = "customer.idempotency.enabled", havingValue = "true") // Only active when enabled.
+@Order(Ordered.HIGHEST_PRECEDENCE + 15) // Runs after the rate limit but before the concurrency limits, so waiting retries take no slot.
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyFilter.class);
+    private static final String METRIC = "customer.idempotency.requests"; // Name of the idempotency counters.
+    private static final String REPLAYED_HEADER = "Idempotent-Replayed"; // Marks a replayed response.
+    private static final int MAX_KEY_LENGTH = 255; // Matches the key column of the jdbc store.
+
+    private final IdempotencyStore store; // Keys and the responses they produced.
+    private final IdempotencyProperties properties; // Header, wait timeout and body limit.
+    private final ErrorAttributes errorAttributes; // Exposes the exception behind an error response.
+    private final Counter executed; // Requests that ran.
+    private final Counter replayed; // Retries answered with a stored response.
+    private final Counter inProgress; // Retries that gave up waiting for the first run.
+    private final Counter mismatched; // Keys reused for a different request.
+
+    /**
+     * Constructs the filter.
+     *
+     * @param store           The idempotency store.
+     * @param properties      The idempotency properties.
+     * @param errorAttributes The error attributes, giving the message of an error response.
+     * @param meterRegistry   The registry the idempotency counters are registered with.
+     */
+    public IdempotencyFilter(IdempotencyStore store, IdempotencyProperties properties, ErrorAttributes errorAttributes,
+                             MeterRegistry meterRegistry) {
+        this.store = store;
+        this.properties = properties;
+        this.errorAttributes = errorAttributes;
+        this.executed = counter(meterRegistry, "executed");
+        this.replayed = counter(meterRegistry, "replayed");
+        this.inProgress = counter(meterRegistry, "in-progress");
+        this.mismatched = counter(meterRegistry, "mismatched");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !request.getRequestURI().startsWith("/api/")
+                || !method.equals("POST") && !method.equals("PUT")
+                || request.getHeader(properties.header()) == null
+                || request.getRequestURI().endsWith("/import"); // Imports resume by import ID, and are too large to buffer.
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = request.getHeader(properties.header());
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(),
+                    properties.header() + " must be between 1 and " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        int limit = properties.maximumRequestSize();
+        byte[] body = request.getContentLengthLong() > limit ? null : request.getInputStream().readNBytes(limit + 1);
+        if (body == null || body.length > limit) {
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "a request with an " + properties.header() + " must not be larger than " + limit + " bytes");
+            return;
+        }
+        key = scoped(request, key);
+        IdempotencyStore.Claim claim = store.claim(key, fingerprint(request, body), properties.waitTimeout());
+        switch (claim.outcome()) {
+            case ACQUIRED -> execute(key, claim, new CachedBodyRequest(request, body), response, filterChain);
+            case COMPLETED -> replay(claim.response(), response);
+            case IN_PROGRESS -> {
+                inProgress.increment();
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                response.sendError(HttpStatus.CONFLICT.value(),
+                        "a request with this " + properties.header() + " is still in progress");
+            }
+            case MISMATCH -> {
+                mismatched.increment();
+                response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                        properties.header() + " was already used for a different request");
+            }
+        }
+    }
+
+    /**
+     * Runs a request that acquired its key and stores its response for retries, or releases the key if the
+     * response is not to be replayed.
+     */
+    private void execute(String key, IdempotencyStore.Claim claim, HttpServletRequest request,
+                         HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        executed.increment();
+        CapturingResponse capturing = new CapturingResponse(response);
+        IdempotentResponse outcome = null;
+        try {
+            filterChain.doFilter(request, capturing);
+            outcome = capturing.toIdempotentResponse(request);
+        } finally {
+            try {
+                if (outcome != null && outcome.status() < 500 && outcome.body().length <= properties.maximumBodySize()) {
+                    store.complete(key, claim, outcome);
+                } else {
+                    store.release(key, claim);
+                }
+            } catch (RuntimeException e) {
+                // The request itself succeeded; only its retries will run again.
+                log.warn("Storing the response for idempotency key {} failed", key, e);
+            }
+            capturing.copyBodyToResponse();
+        }
+    }
+
+    /**
+     * Answers a retry with the stored response of its first run.
+     */
+    private void replay(IdempotentResponse stored, HttpServletResponse response) throws IOException {
+        replayed.increment();
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.location() != null) {
+            response.setHeader(HttpHeaders.LOCATION, stored.location());
+        }
+        if (stored.errorMessage() != null) {
+            response.sendError(stored.status(), stored.errorMessage());
+            return;
+        }
+        response.setStatus(stored.status());
+        if (stored.eTag() != null) {
+            response.setHeader(HttpHeaders.ETAG, stored.eTag());
+        }
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    /**
+     * Scopes a key to the client that sent it: its client header or, without one, its IP address. The digest
+     * keeps the scoped key within the key column however long the client header is, and keeps client
+     * credentials out of the store.
+     *
+     * @return The SHA-256 digest of the client and the key, in hex.
+     */
+    private String scoped(HttpServletRequest request, String key) {
+        String client = request.getHeader(properties.clientHeader());
+        String scope = client != null ? "client:" + client : "ip:" + request.getRemoteAddr();
+        return HexFormat.of().formatHex(sha256().digest((scope + '\n' + key).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Digests what makes a request the same request: its method, path, query, precondition and body.
+     *
+     * @return The SHA-256 digest, in hex.
+     */
+    private static String fingerprint(HttpServletRequest request, byte[] body) {
+        MessageDigest digest = sha256();
+        String head = request.getMethod() + ' ' + request.getRequestURI() + '?' + request.getQueryString()
+                + '\n' + request.getHeader(HttpHeaders.IF_MATCH) + '\n';
+        digest.update(head.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest(body));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every Java platform supports SHA-256.
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder(METRIC)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Response wrapper buffering the body and remembering whether the request ended in an error, and with which message.
+     */
+    private final class CapturingResponse extends ContentCachingResponseWrapper {
+
+        private boolean error; // Whether sendError was called.
+        private String errorMessage; // The message passed to sendError, if any.
+
+        CapturingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            error = true;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            error = true;
+            errorMessage = msg;
+            super.sendError(sc, msg);
+        }
+
+        /**
+         * Describes the response for replay. An error passed to sendError without a message, as by
+         * {@code @ResponseStatus} exceptions, keeps the message of the exception, as the error page shows it.
+         */
+        IdempotentResponse toIdempotentResponse(HttpServletRequest request) {
+            if (error) {
+                String message = errorMessage;
+                if (message == null || message.isEmpty()) {
+                    Throwable exception = errorAttributes.getError(new ServletWebRequest(request));
+                    message = exception != null && exception.getMessage() != null ? exception.getMessage() : "";
+                }
+                return new IdempotentResponse(getStatus(), null, null, getHeader(HttpHeaders.LOCATION), message, new byte[0]);
+            }
+            return new IdempotentResponse(getStatus(), getContentType(), getHeader(HttpHeaders.ETAG),
+                    getHeader(HttpHeaders.LOCATION), null, getContentAsByteArray());
+        }
+    }
+
+    /**
+     * Request wrapper serving a body that was already read, so the controller can read it again.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body; // The request body.
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * The whole body is already in memory, so the listener is told at once that it is available
+                 * and then that it was read.
+                 */
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        readListener.onDataAvailable();
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? encoding : StandardCharsets.ISO_8859_1.name()));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.nastia.idempotency;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * A record binding the {@code customer.idempotency} properties: how idempotency keys are kept and honoured.
+ */
+@ConfigurationProperties("customer.idempotency") // Binds the customer.idempotency properties.
+public record IdempotencyProperties(
+        // Header carrying the client's key.
+        @DefaultValue("Idempotency-Key") String header,
+        // Header identifying the client whose keys these are; clients without it are told apart by their IP address.
+        @DefaultValue("X-API-Key") String clientHeader,
+        // Where keys are kept: in this instance's memory, or in the database shared by all instances.
+        @DefaultValue("memory") Store store,
+        // How long a key and its response are kept; a retry arriving later runs again.
+        @DefaultValue("24h") Duration ttl,
+        // Maximum number of keys kept in memory; the least recently used ones are dropped first.
+        @DefaultValue("100000") long maximumKeys,
+        // How long a retry waits for the request holding its key to finish before it gets 409 Conflict.
+        @DefaultValue("10s") Duration waitTimeout,
+        // How long a key may stay claimed in the database without a response, and without its holder renewing the
+        // claim, before another instance takes it over.
+        @DefaultValue("1m") Duration claimTimeout,
+        // Largest response body kept, in bytes; requests with larger responses run again when retried.
+        @DefaultValue("8192") int maximumBodySize,
+        // Largest request body accepted with a key, in bytes; the body is buffered to tell retries apart.
+        @DefaultValue("65536") int maximumRequestSize
+) {
+
+    /**
+     * Where idempotency keys are kept.
+     */
+    public enum Store {
+        MEMORY,
+        JDBC
+    }
+}
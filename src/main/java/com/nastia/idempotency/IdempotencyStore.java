@@ -0,0 +1,77 @@
+package com.nastia.idempotency;
+
+import java.time.Duration;
+
+/**
+ * Keeps the idempotency keys of recent requests together with the responses they produced.
+ *
+ * A request first claims its key. The first request with a key acquires it, runs, and then either completes
+ * the key with its response or releases it if the response should not be replayed. A request finding the
+ * key completed gets the stored response instead of running; one finding it still claimed waits for it.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * Claims a key for a request, waiting up to {@code wait} while another request holds it.
+     * If the holder releases the key meanwhile, this request acquires it in its place.
+     *
+     * @param key         The client's idempotency key.
+     * @param fingerprint A digest of the request, telling a retry apart from a different request reusing the key.
+     * @param wait        How long to wait for a request holding the key.
+     * @return The outcome of the claim.
+     */
+    Claim claim(String key, String fingerprint, Duration wait);
+
+    /**
+     * Stores the response of a request that acquired its key, for retries to replay until the key expires.
+     *
+     * @param key      The idempotency key.
+     * @param claim    The claim that acquired it.
+     * @param response The response to replay.
+     */
+    void complete(String key, Claim claim, IdempotentResponse response);
+
+    /**
+     * Gives up a key acquired by a request, so the next request with it runs again.
+     *
+     * @param key   The idempotency key.
+     * @param claim The claim that acquired it.
+     */
+    void release(String key, Claim claim);
+
+    /**
+     * How a claim on a key turned out.
+     */
+    enum Outcome {
+        ACQUIRED, // The request holds the key and runs.
+        COMPLETED, // An earlier request with the key finished; its response is replayed.
+        IN_PROGRESS, // An earlier request with the key is still running after the wait.
+        MISMATCH // The key was used by a request with a different method, path, precondition or body.
+    }
+
+    /**
+     * A record describing the outcome of a claim.
+     *
+     * @param outcome  How the claim turned out.
+     * @param response The stored response if the outcome is COMPLETED, otherwise null.
+     * @param token    Identifies an ACQUIRED claim to the store when it is completed or released.
+     */
+    record Claim(Outcome outcome, IdempotentResponse response, Object token) {
+
+        static Claim acquired(Object token) {
+            return new Claim(Outcome.ACQUIRED, null, token);
+        }
+
+        static Claim completed(IdempotentResponse response) {
+            return new Claim(Outcome.COMPLETED, response, null);
+        }
+
+        static Claim inProgress() {
+            return new Claim(Outcome.IN_PROGRESS, null, null);
+        }
+
+        static Claim mismatch() {
+            return new Claim(Outcome.MISMATCH, null, null);
+        }
+    }
+}
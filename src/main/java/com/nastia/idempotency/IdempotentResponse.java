@@ -0,0 +1,20 @@
+package com.nastia.idempotency;
+
+/**
+ * A record holding the response of a request made with an idempotency key, as replayed to its retries.
+ */
+public record IdempotentResponse(
+        // HTTP status code.
+        int status,
+        // Content-Type header, or null if the response had none.
+        String contentType,
+        // ETag header, or null if the response had none.
+        String eTag,
+        // Location header, or null if the response had none.
+        String location,
+        // Message of an error response, rendered again by the error page; null for other responses.
+        String errorMessage,
+        // Response body, empty for error responses, whose body is rendered by the error page.
+        byte[] body
+) {
+}
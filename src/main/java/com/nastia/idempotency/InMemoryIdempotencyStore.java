@@ -0,0 +1,80 @@
+package com.nastia.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotency store keeping keys in this instance's memory, bounded in size and evicting keys once they expire.
+ *
+ * Each key maps to the future response of the request holding it, so retries arriving while it runs simply
+ * wait on that future. A released key completes the future with null, waking the retries to claim it anew.
+ */
+final class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final Cache<String, Entry> entries; // Keys by value, evicted after the TTL or when the bound is reached.
+
+    /**
+     * Constructs the store.
+     *
+     * @param properties The TTL and maximum number of keys.
+     */
+    InMemoryIdempotencyStore(IdempotencyProperties properties) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(properties.maximumKeys())
+                .expireAfterWrite(properties.ttl())
+                .build();
+    }
+
+    @Override
+    public Claim claim(String key, String fingerprint, Duration wait) {
+        long deadline = System.nanoTime() + wait.toNanos();
+        while (true) {
+            Entry entry = new Entry(fingerprint, new CompletableFuture<>());
+            Entry existing = entries.asMap().putIfAbsent(key, entry);
+            if (existing == null) {
+                return Claim.acquired(entry);
+            }
+            if (!existing.fingerprint().equals(fingerprint)) {
+                return Claim.mismatch();
+            }
+            try {
+                IdempotentResponse response = existing.response().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (response != null) {
+                    return Claim.completed(response);
+                }
+                // Released by its holder; claim the key again.
+            } catch (TimeoutException e) {
+                return Claim.inProgress();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Claim.inProgress();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e); // Never happens: futures are only completed normally.
+            }
+        }
+    }
+
+    @Override
+    public void complete(String key, Claim claim, IdempotentResponse response) {
+        ((Entry) claim.token()).response().complete(response);
+    }
+
+    @Override
+    public void release(String key, Claim claim) {
+        Entry entry = (Entry) claim.token();
+        entries.asMap().remove(key, entry);
+        entry.response().complete(null);
+    }
+
+    /**
+     * A record holding a claimed key: the fingerprint of its request and the response it will produce.
+     */
+    private record Entry(String fingerprint, CompletableFuture<IdempotentResponse> response) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.nastia.idempotency;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotency store keeping keys in the {@code customer_idempotency_key} table, so that a retry reaching another
+ * instance than the original request is still recognised.
+ *
+ * A request claims its key by inserting its row; the primary key makes exactly one of several concurrent
+ * duplicates succeed. The others poll the row until it holds a response, the holder deletes it, or the wait
+ * runs out. While a request runs, its instance keeps renewing the claim, so a slow request keeps its key however
+ * long it takes. A claim left without a response and unrenewed for longer than the claim timeout, by an instance
+ * that died mid-request, is taken over by the next request with the key.
+ */
+final class JdbcIdempotencyStore implements IdempotencyStore {
+
+    private static final long POLL_INTERVAL_MILLIS = 50; // How often a waiting request checks the row again.
+
+    private static final RowMapper<Row> ROW_MAPPER = (resultSet, rowNum) -> {
+        int status = resultSet.getInt("status");
+        IdempotentResponse response = resultSet.wasNull() ? null : new IdempotentResponse(
+                status,
+                resultSet.getString("content_type"),
+                resultSet.getString("etag"),
+                resultSet.getString("location"),
+                resultSet.getString("error_message"),
+                resultSet.getString("body").getBytes(StandardCharsets.UTF_8)
+        );
+        return new Row(
+                resultSet.getString("fingerprint"),
+                resultSet.getString("claim_token"),
+                resultSet.getTimestamp("claimed_at").toInstant(),
+                response
+        );
+    };
+
+    private final JdbcTemplate jdbcTemplate; // JDBC template on the primary database.
+    private final Duration ttl; // How long keys are kept.
+    private final Duration claimTimeout; // How long a claim without a response is honoured.
+    private final Map<String, String> heldKeysByToken = new ConcurrentHashMap<>(); // Claims of requests still running here.
+
+    /**
+     * Constructs the store.
+     *
+     * @param jdbcTemplate JDBC template on the primary database.
+     * @param properties   The TTL and claim timeout.
+     */
+    JdbcIdempotencyStore(JdbcTemplate jdbcTemplate, IdempotencyProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = properties.ttl();
+        this.claimTimeout = properties.claimTimeout();
+    }
+
+    @Override
+    public Claim claim(String key, String fingerprint, Duration wait) {
+        long deadline = System.nanoTime() + wait.toNanos();
+        while (true) {
+            String token = UUID.randomUUID().toString();
+            Instant now = Instant.now();
+            try {
+                jdbcTemplate.update("INSERT INTO customer_idempotency_key (idempotency_key, fingerprint, claim_token, claimed_at) "
+                        + "VALUES (?, ?, ?, ?)", key, fingerprint, token, Timestamp.from(now));
+                return acquired(key, token);
+            } catch (DuplicateKeyException e) {
+                // Claimed before; look at the claim below.
+            }
+            List<Row> rows = jdbcTemplate.query("SELECT fingerprint, claim_token, claimed_at, status, content_type, etag, "
+                    + "location, error_message, body FROM customer_idempotency_key WHERE idempotency_key = ?", ROW_MAPPER, key);
+            if (rows.isEmpty()) {
+                continue; // Released or purged meanwhile.
+            }
+            Row row = rows.get(0);
+            if (row.claimedAt().isBefore(now.minus(ttl))) {
+                // Expired but not purged yet: drop it and claim afresh.
+                jdbcTemplate.update("DELETE FROM customer_idempotency_key WHERE idempotency_key = ? AND claim_token = ?",
+                        key, row.token());
+                continue;
+            }
+            if (!row.fingerprint().equals(fingerprint)) {
+                return Claim.mismatch();
+            }
+            if (row.response() != null) {
+                return Claim.completed(row.response());
+            }
+            if (row.claimedAt().isBefore(now.minus(claimTimeout))) {
+                // Abandoned by its holder; take it over unless another request just did.
+                int taken = jdbcTemplate.update("UPDATE customer_idempotency_key SET claim_token = ?, claimed_at = ? "
+                                + "WHERE idempotency_key = ? AND claim_token = ? AND status IS NULL",
+                        token, Timestamp.from(now), key, row.token());
+                if (taken == 1) {
+                    return acquired(key, token);
+                }
+                continue;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return Claim.inProgress();
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Claim.inProgress();
+            }
+        }
+    }
+
+    @Override
+    public void complete(String key, Claim claim, IdempotentResponse response) {
+        heldKeysByToken.remove((String) claim.token());
+        jdbcTemplate.update("UPDATE customer_idempotency_key SET status = ?, content_type = ?, etag = ?, location = ?, "
+                        + "error_message = ?, body = ? WHERE idempotency_key = ? AND claim_token = ?",
+                response.status(), response.contentType(), response.eTag(), response.location(), response.errorMessage(),
+                new String(response.body(), StandardCharsets.UTF_8), key, claim.token());
+    }
+
+    @Override
+    public void release(String key, Claim claim) {
+        heldKeysByToken.remove((String) claim.token());
+        jdbcTemplate.update("DELETE FROM customer_idempotency_key WHERE idempotency_key = ? AND claim_token = ?",
+                key, claim.token());
+    }
+
+    /**
+     * Moves the claims of the requests still running on this instance forward, so other instances do not take
+     * them over as abandoned. Runs well within the claim timeout.
+     */
+    @Scheduled(fixedDelayString = "${customer.idempotency.renew-interval:15000}") // Milliseconds between renewals.
+    public void renewClaims() {
+        Timestamp now = Timestamp.from(Instant.now());
+        heldKeysByToken.forEach((token, key) -> jdbcTemplate.update("UPDATE customer_idempotency_key SET claimed_at = ? "
+                + "WHERE idempotency_key = ? AND claim_token = ? AND status IS NULL", now, key, token));
+    }
+
+    /**
+     * Deletes keys that have outlived the TTL.
+     */
+    @Scheduled(fixedDelayString = "${customer.idempotency.purge-interval:60000}") // Milliseconds between purges.
+    public void purge() {
+        jdbcTemplate.update("DELETE FROM customer_idempotency_key WHERE claimed_at < ?",
+                Timestamp.from(Instant.now().minus(ttl)));
+    }
+
+    private Claim acquired(String key, String token) {
+        heldKeysByToken.put(token, key);
+        return Claim.acquired(token);
+    }
+
+    /**
+     * A record holding a row of the key table: its claim, and its response once the request completed.
+     */
+    private record Row(String fingerprint, String token, Instant claimedAt, IdempotentResponse response) {
+    }
+}
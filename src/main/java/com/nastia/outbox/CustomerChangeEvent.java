@@ -0,0 +1,33 @@
+package com.nastia.outbox;
+
+import com.nastia.customer.Customer;
+
+import java.time.Instant;
+
+/**
+ * A record representing one change to a customer, as written to the outbox and published to subscribers.
+ */
+public record CustomerChangeEvent(
+        // Position of the event in the published stream, gapless and increasing; used to resume a subscription.
+        long offset,
+        // Unique ID of the outbox row, stable across redeliveries.
+        long eventId,
+        // The kind of change.
+        Type type,
+        // The ID of the changed customer.
+        Integer customerId,
+        // The customer after the change, or as it was when deleted.
+        Customer customer,
+        // When the change was committed.
+        Instant occurredAt
+) {
+
+    /**
+     * The kinds of changes made to customers.
+     */
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,22 @@
+package com.nastia.outbox;
+
+import com.nastia.customer.Customer;
+
+import java.util.List;
+
+/**
+ * Listener told about the changes recorded in the outbox by this instance, as soon as the transaction making them
+ * has committed. Unlike a {@link CustomerEventSink}, it hears every change made here, whichever instance's relay
+ * publishes it, and none made by other instances.
+ * Implementations are picked up as Spring beans.
+ */
+public interface CustomerChangeListener {
+
+    /**
+     * Handles committed changes. Called on the committing thread, after the commit; must not throw.
+     *
+     * @param type      The kind of change.
+     * @param customers The customers after the change, or as they were when deleted.
+     */
+    void afterCommit(CustomerChangeEvent.Type type, List<Customer> customers);
+}
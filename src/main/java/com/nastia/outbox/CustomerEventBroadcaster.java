@@ -0,0 +1,36 @@
+package com.nastia.outbox;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-process sink fanning every published batch out to the listeners subscribed at that moment.
+ * Listeners are called on the relay thread and must only hand the events off, never block.
+ */
+@Component // Registers the broadcaster as a sink picked up by the relay.
+public class CustomerEventBroadcaster implements CustomerEventSink {
+
+    private final Set<Consumer<List<CustomerChangeEvent>>> listeners = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void publish(List<CustomerChangeEvent> events) {
+        for (Consumer<List<CustomerChangeEvent>> listener : listeners) {
+            listener.accept(events);
+        }
+    }
+
+    /**
+     * Subscribes a listener to every batch published from now on.
+     *
+     * @param listener The listener, called on the relay thread.
+     * @return An action that unsubscribes the listener.
+     */
+    public Runnable subscribe(Consumer<List<CustomerChangeEvent>> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+}
@@ -0,0 +1,96 @@
+package com.nastia.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controller streaming customer changes as Server-Sent Events.
+ * Each event carries its offset as SSE id, so a reconnecting client resumes where it left off by sending
+ * Last-Event-ID, which browsers' EventSource does on its own. Replacing full rescans of the listing,
+ * downstream copies load the listing once and then apply the deltas.
+ */
+@RestController // Marks this class as a controller where every method returns a domain object instead of a view.
+@RequestMapping("api/v1/customers/events") // Maps HTTP requests to handler methods of MVC and REST controllers.
+@Profile("!reactive") // Server-Sent Events are served with the servlet stack.
+public class CustomerEventController {
+
+    private final CustomerOutbox outbox; // Source of replayed events and of the current offset.
+    private final CustomerEventBroadcaster broadcaster; // Source of live events.
+    private final Semaphore subscriberSlots; // Bounds the number of open subscriptions, each holding a thread.
+    private final Duration timeout; // How long a subscription stays open before the client must reconnect.
+    private final Duration heartbeat; // Idle time after which a heartbeat comment is sent.
+    private final int queueCapacity; // Live events buffered per subscriber.
+    private final ExecutorService executor; // Runs one drain loop per subscription.
+
+    /**
+     * Constructs the controller.
+     *
+     * @param outbox         The customer outbox.
+     * @param broadcaster    The in-process sink of live events.
+     * @param maxSubscribers The maximum number of concurrent subscriptions.
+     * @param timeout        How long a subscription stays open.
+     * @param heartbeat      Idle time after which a heartbeat is sent.
+     * @param queueCapacity  The number of live events buffered per subscriber.
+     */
+    public CustomerEventController(CustomerOutbox outbox,
+                                   CustomerEventBroadcaster broadcaster,
+                                   @Value("${customer.events.max-subscribers:100}") int maxSubscribers,
+                                   @Value("${customer.events.timeout:30m}") Duration timeout,
+                                   @Value("${customer.events.heartbeat:15s}") Duration heartbeat,
+                                   @Value("${customer.events.queue-capacity:10000}") int queueCapacity) {
+        this.outbox = outbox;
+        this.broadcaster = broadcaster;
+        this.subscriberSlots = new Semaphore(maxSubscribers);
+        this.timeout = timeout;
+        this.heartbeat = heartbeat;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "customer-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Handles GET requests to subscribe to customer changes.
+     * Without an offset only changes made from now on are sent.
+     * @param lastEventId The offset of the last event received, sent by reconnecting EventSource clients.
+     * @param offset The offset to resume after, for clients that keep it themselves; Last-Event-ID takes precedence.
+     * @return The event stream, or 503 Service Unavailable if too many subscriptions are open.
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE) // Maps subscriptions, served as Server-Sent Events.
+    public ResponseEntity<SseEmitter> subscribe(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                                @RequestParam(value = "offset", required = false) Long offset) {
+        if (!subscriberSlots.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        long after = lastEventId != null ? lastEventId : offset != null ? offset : outbox.lastOffset();
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        CustomerEventSubscription subscription = new CustomerEventSubscription(
+                emitter, outbox, broadcaster, after, queueCapacity, heartbeat);
+        emitter.onCompletion(() -> {
+            subscription.close();
+            subscriberSlots.release();
+        });
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscription.close());
+        executor.execute(subscription);
+        return ResponseEntity.ok(emitter);
+    }
+}
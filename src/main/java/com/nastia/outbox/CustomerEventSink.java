@@ -0,0 +1,19 @@
+package com.nastia.outbox;
+
+import java.util.List;
+
+/**
+ * Destination the outbox relay publishes customer change events to.
+ * Implementations are picked up as Spring beans; each receives every published event in offset order, once it
+ * is committed, whichever instance published it. After a failed publish the same events are handed over again.
+ */
+public interface CustomerEventSink {
+
+    /**
+     * Publishes a batch of events. Called by a single relay thread, after the batch is committed as published.
+     * Throwing makes the relay hand over the same events again on its next run.
+     *
+     * @param events the events of the batch, in increasing offset order.
+     */
+    void publish(List<CustomerChangeEvent> events);
+}
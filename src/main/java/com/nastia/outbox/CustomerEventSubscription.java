@@ -0,0 +1,111 @@
+package com.nastia.outbox;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Server-Sent Events subscriber of the customer change stream, drained by its own thread.
+ * It first replays the retained events after the requested offset from the outbox, then forwards live
+ * events from the broadcaster. Because offsets are gapless, a live event further ahead than the next offset
+ * means events were missed (while replaying, because the queue overflowed, or because a relay run failed),
+ * and the subscription catches up from the outbox before going on. It also catches up whenever no live event
+ * arrived for a heartbeat interval, so events missed right before a quiet spell are not held back until the
+ * next change, and only sends the heartbeat if there was nothing to catch up on. The subscriber therefore sees
+ * every retained event exactly once and in order, and a slow subscriber never holds up the relay.
+ */
+class CustomerEventSubscription implements Runnable {
+
+    private static final int REPLAY_BATCH_SIZE = 500; // Events read from the outbox per query while replaying.
+
+    private final SseEmitter emitter; // The response stream of the subscriber.
+    private final CustomerOutbox outbox; // Source of replayed events.
+    private final BlockingQueue<CustomerChangeEvent> live; // Live events waiting to be sent, bounded.
+    private final long heartbeatNanos; // Idle time after which the outbox is checked and a comment sent, to detect gone subscribers.
+    private final Runnable unsubscribe; // Detaches the subscription from the broadcaster.
+    private long lastSent; // Offset of the last event sent to the subscriber.
+    private volatile boolean closed;
+
+    /**
+     * Subscribes to the broadcaster right away, so no event published while replaying is lost.
+     */
+    CustomerEventSubscription(SseEmitter emitter, CustomerOutbox outbox, CustomerEventBroadcaster broadcaster,
+                              long afterOffset, int queueCapacity, Duration heartbeat) {
+        this.emitter = emitter;
+        this.outbox = outbox;
+        this.live = new LinkedBlockingQueue<>(queueCapacity);
+        this.heartbeatNanos = heartbeat.toNanos();
+        this.lastSent = afterOffset;
+        // Events that do not fit are dropped here and replayed from the outbox once the gap is noticed.
+        this.unsubscribe = broadcaster.subscribe(events -> events.forEach(live::offer));
+    }
+
+    @Override
+    public void run() {
+        try {
+            replay();
+            while (!closed) {
+                CustomerChangeEvent event = live.poll(heartbeatNanos, TimeUnit.NANOSECONDS);
+                if (event == null) {
+                    if (!replay()) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                    continue;
+                }
+                if (event.offset() > lastSent + 1) {
+                    replay();
+                }
+                if (event.offset() == lastSent + 1) {
+                    send(event);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            emitter.completeWithError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops the subscription; called when the response completes, times out or fails.
+     */
+    void close() {
+        closed = true;
+        unsubscribe.run();
+    }
+
+    /**
+     * Sends every retained event after the last one sent.
+     *
+     * @return True if any event was sent.
+     */
+    private boolean replay() throws IOException {
+        long before = lastSent;
+        List<CustomerChangeEvent> batch;
+        do {
+            batch = outbox.selectAfter(lastSent, REPLAY_BATCH_SIZE);
+            for (CustomerChangeEvent event : batch) {
+                send(event);
+            }
+        } while (batch.size() == REPLAY_BATCH_SIZE && !closed);
+        return lastSent != before;
+    }
+
+    private void send(CustomerChangeEvent event) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(event.offset()))
+                .name(event.type().name().toLowerCase(Locale.ROOT))
+                .data(event, MediaType.APPLICATION_JSON));
+        lastSent = event.offset();
+    }
+}
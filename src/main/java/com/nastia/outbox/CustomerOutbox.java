@@ -0,0 +1,193 @@
+package com.nastia.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerChangeCounter;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data access for the customer outbox, the {@code customer_outbox} table.
+ * Writers append a row per change in the transaction of the change itself, so a change is recorded if and only
+ * if it is committed. The relay later claims unpublished rows and gives them consecutive offsets under a lock on
+ * {@code customer_outbox_relay}, so offsets follow publication order and never leave gaps, even though rows
+ * from concurrent transactions commit out of ID order.
+ * Every {@link CustomerChangeListener} is also told about the changes appended here once they are committed.
+ */
+@Repository // Marks this class as a Data Access Object for the outbox tables.
+@RegisterReflectionForBinding(CustomerChangeEvent.class) // Events are serialized by Jackson, also in native images.
+public class CustomerOutbox {
+
+    private static final String SELECT_EVENTS =
+            "SELECT id, position, type, customer_id, payload, created_at FROM customer_outbox";
+    private static final int JDBC_BATCH_SIZE = 1000; // Rows per JDBC batch when appending or claiming.
+
+    private final JdbcTemplate jdbcTemplate; // Runs the outbox statements in the caller's transaction.
+    private final ObjectMapper objectMapper; // Serializes customers into the event payload.
+    private final ObjectProvider<CustomerChangeListener> listeners; // Told about appended changes once committed.
+    private final CustomerChangeCounter changeCounter; // Counts the changes, in their transaction, for the collection ETag.
+
+    /**
+     * Constructs the outbox.
+     *
+     * @param jdbcTemplate  JDBC template on the customer datasource.
+     * @param objectMapper  The Jackson mapper configured by Spring Boot.
+     * @param listeners     The listeners to committed changes, looked up on first use.
+     * @param changeCounter The table-level change counter, bumped by every transaction appending changes.
+     */
+    public CustomerOutbox(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                          ObjectProvider<CustomerChangeListener> listeners, CustomerChangeCounter changeCounter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.listeners = listeners;
+        this.changeCounter = changeCounter;
+    }
+
+    /**
+     * Records a change to one customer. Must be called in the transaction making the change.
+     *
+     * @param type     The kind of change.
+     * @param customer The customer after the change, or as it was when deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY) // Only meaningful as part of the change's own transaction.
+    public void append(CustomerChangeEvent.Type type, Customer customer) {
+        appendAll(type, List.of(customer));
+    }
+
+    /**
+     * Records the same kind of change to many customers, with batched inserts, and counts the changes on the
+     * table-level change counter. Must be called in the transaction making the changes.
+     *
+     * @param type      The kind of change.
+     * @param customers The customers after the change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY) // Only meaningful as part of the changes' own transaction.
+    public void appendAll(CustomerChangeEvent.Type type, List<Customer> customers) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO customer_outbox (type, customer_id, payload, created_at) VALUES (?, ?, ?, ?)",
+                customers,
+                JDBC_BATCH_SIZE,
+                (statement, customer) -> {
+                    statement.setString(1, type.name());
+                    statement.setInt(2, customer.getId());
+                    statement.setString(3, toJson(customer));
+                    statement.setTimestamp(4, now);
+                }
+        );
+        changeCounter.incrementOnCommit();
+        List<Customer> committed = List.copyOf(customers);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                listeners.orderedStream().forEach(listener -> listener.afterCommit(type, committed));
+            }
+        });
+    }
+
+    /**
+     * Claims the oldest unpublished events and gives them the next offsets.
+     * Locks the relay row first, so relays of several instances take turns instead of handing out the same offsets.
+     *
+     * @param limit The maximum number of events to claim.
+     * @return The claimed events, in offset order.
+     */
+    @Transactional(propagation = Propagation.MANDATORY) // The offsets must commit together with the relay row.
+    List<CustomerChangeEvent> claim(int limit) {
+        Long lastPosition = jdbcTemplate.queryForObject(
+                "SELECT last_position FROM customer_outbox_relay WHERE id = 1 FOR UPDATE", Long.class);
+        List<CustomerChangeEvent> unpublished = jdbcTemplate.query(
+                SELECT_EVENTS + " WHERE position IS NULL ORDER BY id LIMIT ?", this::toEvent, limit);
+        if (unpublished.isEmpty()) {
+            return unpublished;
+        }
+        List<CustomerChangeEvent> claimed = new ArrayList<>(unpublished.size());
+        long position = lastPosition;
+        for (CustomerChangeEvent event : unpublished) {
+            claimed.add(new CustomerChangeEvent(++position, event.eventId(), event.type(),
+                    event.customerId(), event.customer(), event.occurredAt()));
+        }
+        jdbcTemplate.batchUpdate(
+                "UPDATE customer_outbox SET position = ? WHERE id = ?",
+                claimed,
+                JDBC_BATCH_SIZE,
+                (statement, event) -> {
+                    statement.setLong(1, event.offset());
+                    statement.setLong(2, event.eventId());
+                }
+        );
+        jdbcTemplate.update("UPDATE customer_outbox_relay SET last_position = ? WHERE id = 1", position);
+        return claimed;
+    }
+
+    /**
+     * Reads published events following an offset, to replay them to a subscriber.
+     *
+     * @param offset The offset of the last event the subscriber has seen.
+     * @param limit  The maximum number of events to read.
+     * @return The events with an offset greater than {@code offset}, in offset order.
+     */
+    public List<CustomerChangeEvent> selectAfter(long offset, int limit) {
+        return jdbcTemplate.query(
+                SELECT_EVENTS + " WHERE position > ? ORDER BY position LIMIT ?", this::toEvent, offset, limit);
+    }
+
+    /**
+     * Returns the offset of the last published event.
+     *
+     * @return The last offset handed out by the relay, 0 if none was.
+     */
+    public long lastOffset() {
+        return jdbcTemplate.queryForObject("SELECT last_position FROM customer_outbox_relay WHERE id = 1", Long.class);
+    }
+
+    /**
+     * Deletes published events older than the given instant. Unpublished events are always kept.
+     *
+     * @param cutoff The instant before which published events are deleted.
+     * @return The number of deleted events.
+     */
+    int purgePublishedBefore(Instant cutoff) {
+        return jdbcTemplate.update(
+                "DELETE FROM customer_outbox WHERE position IS NOT NULL AND created_at < ?", Timestamp.from(cutoff));
+    }
+
+    private CustomerChangeEvent toEvent(ResultSet row, int rowNumber) throws SQLException {
+        long position = row.getLong("position");
+        try {
+            return new CustomerChangeEvent(
+                    row.wasNull() ? 0 : position,
+                    row.getLong("id"),
+                    CustomerChangeEvent.Type.valueOf(row.getString("type")),
+                    row.getInt("customer_id"),
+                    objectMapper.readValue(row.getString("payload"), Customer.class),
+                    row.getTimestamp("created_at").toInstant()
+            );
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String toJson(Customer customer) {
+        try {
+            return objectMapper.writeValueAsString(customer);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
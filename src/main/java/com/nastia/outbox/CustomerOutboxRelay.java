@@ -0,0 +1,139 @@
+package com.nastia.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * Background relay moving customer change events from the outbox to every {@link CustomerEventSink}.
+ * Each run claims batches of unpublished events until the outbox is drained, giving them their offsets; relays
+ * of several instances take turns claiming. Then every sink of this instance is handed the published events
+ * after its own offset, read back from the outbox, so each sink receives every event once its offset is
+ * committed, whichever instance claimed it. A sink that fails keeps its offset and is retried from there on the
+ * next run, without holding up the others; sinks must therefore tolerate receiving a batch again after a failure.
+ * Published events stay in the outbox for the retention period, so subscribers can resume from an offset.
+ */
+@Component // Marks this class as a Spring-managed component, scheduled by Spring's task scheduler.
+public class CustomerOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerOutboxRelay.class);
+
+    private final CustomerOutbox outbox; // The outbox events are claimed from.
+    private final List<CustomerEventSink> sinks; // Every sink receives every batch.
+    private final TransactionTemplate transactionTemplate; // Wraps each claim in its own transaction.
+    private final int batchSize; // Maximum number of events claimed and published at once.
+    private final Duration retention; // How long published events are kept for replay.
+    private final Map<CustomerEventSink, Long> offsets = new IdentityHashMap<>(); // Last offset each sink received; only touched by the relay.
+
+    /**
+     * Constructs the relay.
+     *
+     * @param outbox              The outbox to drain.
+     * @param sinks               The sinks to publish to.
+     * @param transactionTemplate Template on the primary (JDBC) transaction manager.
+     * @param batchSize           The maximum number of events per batch.
+     * @param retention           How long published events are kept.
+     */
+    public CustomerOutboxRelay(CustomerOutbox outbox,
+                               List<CustomerEventSink> sinks,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${customer.outbox.batch-size:500}") int batchSize,
+                               @Value("${customer.outbox.retention:7d}") Duration retention) {
+        this.outbox = outbox;
+        this.sinks = sinks;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    /**
+     * Publishes all unpublished events, one batch at a time, then brings every sink up to date.
+     * On the first run the sinks start from the last offset published before, as events older than the
+     * application are not theirs to receive.
+     */
+    @Scheduled(fixedDelayString = "${customer.outbox.relay-interval:200}") // Milliseconds between the end of a run and the next.
+    public void relay() {
+        if (offsets.isEmpty() && !sinks.isEmpty()) {
+            long start = outbox.lastOffset();
+            sinks.forEach(sink -> offsets.put(sink, start));
+        }
+        List<CustomerChangeEvent> batch;
+        do {
+            batch = transactionTemplate.execute(status -> outbox.claim(batchSize));
+        } while (batch.size() == batchSize);
+        deliver();
+    }
+
+    /**
+     * Deletes published events that have outlived the retention period.
+     */
+    @Scheduled(fixedDelayString = "${customer.outbox.purge-interval:60000}") // Milliseconds between purges.
+    public void purge() {
+        outbox.purgePublishedBefore(Instant.now().minus(retention));
+    }
+
+    /**
+     * Hands every sink the published events after its offset, reading each batch once for all sinks at the
+     * same offset. A failing sink is left behind at its offset until the next run.
+     */
+    private void deliver() {
+        Set<CustomerEventSink> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (true) {
+            OptionalLong from = offsets.entrySet().stream()
+                    .filter(entry -> !failed.contains(entry.getKey()))
+                    .mapToLong(Map.Entry::getValue)
+                    .min();
+            if (from.isEmpty()) {
+                return;
+            }
+            List<CustomerChangeEvent> events = outbox.selectAfter(from.getAsLong(), batchSize);
+            if (events.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<CustomerEventSink, Long> entry : offsets.entrySet()) {
+                if (failed.contains(entry.getKey())) {
+                    continue;
+                }
+                List<CustomerChangeEvent> pending = after(events, entry.getValue());
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                try {
+                    entry.getKey().publish(pending);
+                    entry.setValue(pending.get(pending.size() - 1).offset());
+                } catch (RuntimeException e) {
+                    failed.add(entry.getKey());
+                    log.warn("Publishing customer events {}..{} to {} failed, retrying from offset {} on the next run",
+                            pending.get(0).offset(), pending.get(pending.size() - 1).offset(),
+                            entry.getKey().getClass().getSimpleName(), entry.getValue(), e);
+                }
+            }
+            if (events.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the events of a batch following an offset.
+     */
+    private static List<CustomerChangeEvent> after(List<CustomerChangeEvent> events, long offset) {
+        int start = 0;
+        while (start < events.size() && events.get(start).offset() <= offset) {
+            start++;
+        }
+        return events.subList(start, events.size());
+    }
+}
@@ -0,0 +1,52 @@
+package com.nastia.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sink appending customer change events to a file as newline-delimited JSON, one event per line.
+ * Each batch is written and flushed as a whole, so the file can be tailed by other processes. A batch whose write
+ * failed is handed over again by the relay, so lines may repeat; readers skip them by their offset.
+ */
+@Component // Registers the sink with the relay.
+@ConditionalOnProperty(name = "customer.outbox.file.path") // Only active when a file is configured.
+public class FileCustomerEventSink implements CustomerEventSink {
+
+    private final Path path; // The file events are appended to.
+    private final ObjectMapper objectMapper; // Serializes events.
+
+    /**
+     * Constructs the sink.
+     *
+     * @param path         The file to append to; created if missing.
+     * @param objectMapper The Jackson mapper configured by Spring Boot.
+     */
+    public FileCustomerEventSink(@Value("${customer.outbox.file.path}") Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void publish(List<CustomerChangeEvent> events) {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (CustomerChangeEvent event : events) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
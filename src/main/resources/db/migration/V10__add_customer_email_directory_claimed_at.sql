@@ -0,0 +1,5 @@
+-- When each email was claimed in the directory of the sharded customer DAO. A claim whose customer never reached
+-- its shard, left behind by a crash or a failed compensation, is only swept once it is older than a grace period,
+-- so claims of writes still in progress are never taken for orphans.
+ALTER TABLE customer_email_directory
+    ADD COLUMN claimed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL;
@@ -0,0 +1,5 @@
+-- Spreads the change counter over 16 rows, so concurrent writers bump different rows instead of queuing on one.
+-- The counter is the sum of all rows; the existing row keeps the count so far.
+INSERT INTO customer_change (id, version)
+VALUES (2, 0), (3, 0), (4, 0), (5, 0), (6, 0), (7, 0), (8, 0), (9, 0),
+       (10, 0), (11, 0), (12, 0), (13, 0), (14, 0), (15, 0), (16, 0);
@@ -0,0 +1,11 @@
+-- Customer table and its id sequence, as previously generated by Hibernate.
+-- The sequence increments by 50 to match the pooled allocation of @SequenceGenerator.
+CREATE SEQUENCE IF NOT EXISTS customer_id_sequence START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS customer
+(
+    id    INTEGER      NOT NULL PRIMARY KEY,
+    name  VARCHAR(255) NOT NULL,
+    email VARCHAR(255) NOT NULL,
+    age   INTEGER      NOT NULL
+);
@@ -0,0 +1,3 @@
+-- Emails identify customers: the unique index backs the duplicate-email check
+-- and is the final arbiter when two registrations race for the same email.
+CREATE UNIQUE INDEX customer_email_unique ON customer (email);
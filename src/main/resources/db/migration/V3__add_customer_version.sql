@@ -0,0 +1,2 @@
+-- Optimistic locking: every update bumps the version, and conditional updates compare it.
+ALTER TABLE customer ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
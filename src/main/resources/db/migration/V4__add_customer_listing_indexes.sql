@@ -0,0 +1,5 @@
+-- Listings filtered by age range or sorted by age or name: (column, id) matches the keyset
+-- condition and tie-breaker of the listing, so a page is read straight off the index.
+-- Sorting by email is already served by customer_email_unique.
+CREATE INDEX customer_age_idx ON customer (age, id);
+CREATE INDEX customer_name_idx ON customer (name, id);
@@ -0,0 +1,7 @@
+-- Table-level change counter for the customer collection: bumped after every committed write,
+-- so pollers can tell whether the listing changed with a primary key lookup instead of a query.
+CREATE TABLE customer_change (
+    id      INTEGER PRIMARY KEY,
+    version BIGINT  NOT NULL
+);
+INSERT INTO customer_change (id, version) VALUES (1, 0);
@@ -0,0 +1,18 @@
+-- Transactional outbox: every customer write appends its change event here in the same transaction.
+-- The relay assigns position, the gapless offset subscribers resume from, when it publishes the event.
+CREATE TABLE customer_outbox (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    position    BIGINT,
+    type        VARCHAR(16)   NOT NULL,
+    customer_id INTEGER       NOT NULL,
+    payload     VARCHAR(2048) NOT NULL,
+    created_at  TIMESTAMP     NOT NULL
+);
+CREATE UNIQUE INDEX customer_outbox_position_unique ON customer_outbox (position);
+
+-- Single row holding the last position handed out; relays lock it to take turns.
+CREATE TABLE customer_outbox_relay (
+    id            INTEGER PRIMARY KEY,
+    last_position BIGINT NOT NULL
+);
+INSERT INTO customer_outbox_relay (id, last_position) VALUES (1, 0);
@@ -0,0 +1,12 @@
+-- Global email directory of the sharded customer DAO: one row per taken email, pointing at the customer owning it.
+-- It lives in the primary database, so checking an email is one primary-key lookup whatever the number of shards.
+-- Existing customers are copied in, so the primary database can serve as the first shard right away.
+CREATE TABLE IF NOT EXISTS customer_email_directory
+(
+    email       VARCHAR(255) NOT NULL PRIMARY KEY,
+    customer_id INTEGER      NOT NULL
+);
+
+INSERT INTO customer_email_directory (email, customer_id)
+SELECT email, id
+FROM customer;
@@ -0,0 +1,17 @@
+-- Idempotency keys of recent registrations and updates, shared by every instance when the jdbc store is selected.
+-- A row is inserted when a request claims its key; status stays NULL until the request completes and its
+-- response is stored for retries to replay. claim_token identifies the request holding the claim.
+CREATE TABLE customer_idempotency_key
+(
+    idempotency_key VARCHAR(255)  NOT NULL PRIMARY KEY,
+    fingerprint     VARCHAR(64)   NOT NULL,
+    claim_token     VARCHAR(36)   NOT NULL,
+    claimed_at      TIMESTAMP     NOT NULL,
+    status          INTEGER,
+    content_type    VARCHAR(255),
+    etag            VARCHAR(255),
+    location        VARCHAR(2048),
+    error_message   VARCHAR(2048),
+    body            VARCHAR(8192)
+);
+CREATE INDEX customer_idempotency_key_claimed_at ON customer_idempotency_key (claimed_at);
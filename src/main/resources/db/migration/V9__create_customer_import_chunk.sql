@@ -0,0 +1,11 @@
+-- Checkpoints of customer imports: one row per chunk of a file that was loaded, written in the chunk's transaction.
+-- An import run again under the same ID skips the chunks recorded here, so an interrupted import resumes
+-- where it stopped. Chunks are identified by the file row they start at.
+CREATE TABLE customer_import_chunk
+(
+    import_id   VARCHAR(64) NOT NULL,
+    first_row   BIGINT      NOT NULL,
+    imported    INTEGER     NOT NULL,
+    imported_at TIMESTAMP   NOT NULL,
+    PRIMARY KEY (import_id, first_row)
+);
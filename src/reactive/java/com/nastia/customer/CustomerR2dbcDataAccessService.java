@@ -0,0 +1,68 @@
+package com.nastia.customer;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking read access to customers using R2DBC, for the reactive profile.
+ * It reads the same table the JPA service writes, so both stacks can share a database.
+ */
+@Repository("r2dbc") // Marks this class as a Data Access Object (Repository) that uses R2DBC for data operations.
+@Profile("reactive") // Only created when the reactive stack is selected.
+public class CustomerR2dbcDataAccessService implements ReactiveCustomerDAO {
+
+    private static final String SELECT_CUSTOMERS = "SELECT id, name, email, age, version FROM customer";
+    private static final int FETCH_SIZE = 500; // Rows fetched per round trip while streaming, bounding buffered rows.
+
+    private final DatabaseClient databaseClient; // Non-blocking SQL client on the R2DBC connection pool.
+
+    /**
+     * Constructs a CustomerR2dbcDataAccessService with a DatabaseClient.
+     *
+     * @param databaseClient Spring's R2DBC client, configured from spring.r2dbc.
+     */
+    public CustomerR2dbcDataAccessService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Flux<Customer> selectAllCustomers() {
+        return databaseClient.sql(SELECT_CUSTOMERS + " ORDER BY id")
+                .filter(statement -> statement.fetchSize(FETCH_SIZE))
+                .map(CustomerR2dbcDataAccessService::toCustomer)
+                .all();
+    }
+
+    @Override
+    public Flux<Customer> selectCustomersAfter(Integer afterId, int limit) {
+        return databaseClient.sql(SELECT_CUSTOMERS + " WHERE id > :after ORDER BY id LIMIT :limit")
+                .bind("after", afterId == null ? Integer.MIN_VALUE : afterId)
+                .bind("limit", limit)
+                .filter(statement -> statement.fetchSize(Math.min(limit, FETCH_SIZE)))
+                .map(CustomerR2dbcDataAccessService::toCustomer)
+                .all();
+    }
+
+    @Override
+    public Mono<Customer> selectCustomerById(Integer id) {
+        return databaseClient.sql(SELECT_CUSTOMERS + " WHERE id = :id")
+                .bind("id", id)
+                .map(CustomerR2dbcDataAccessService::toCustomer)
+                .one();
+    }
+
+    private static Customer toCustomer(Readable row) {
+        Customer customer = new Customer(
+                row.get("id", Integer.class),
+                row.get("name", String.class),
+                row.get("email", String.class),
+                row.get("age", Integer.class)
+        );
+        customer.setVersion(row.get("version", Long.class));
+        return customer;
+    }
+}
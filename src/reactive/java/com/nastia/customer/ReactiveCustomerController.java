@@ -0,0 +1,130 @@
+package com.nastia.customer;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Controller class for managing customer-related requests on the reactive stack.
+ * Serves the single-customer routes, listing and stream of {@link CustomerController} with the same responses,
+ * without blocking a thread per request. Bulk changes, import, export and change events are only served by the
+ * servlet stack, and so are the servlet filters: rate limiting, concurrency limits, idempotency keys and
+ * read-your-writes, which is why {@link ReactiveStackGuard} refuses to start with any of them enabled.
+ */
+@RestController // Marks this class as a controller where every method returns a domain object instead of a view.
+@RequestMapping("api/v1/customers") // Maps HTTP requests to handler methods of WebFlux and REST controllers.
+@Profile("reactive") // Only created when the reactive stack is selected.
+public class ReactiveCustomerController {
+
+    private final ReactiveCustomerService customerService; // Declares a dependency on the ReactiveCustomerService.
+
+    /**
+     * Constructs a ReactiveCustomerController with a ReactiveCustomerService.
+     * @param customerService The reactive service layer for customer operations.
+     */
+    public ReactiveCustomerController(ReactiveCustomerService customerService) {
+        this.customerService = customerService;
+    }
+
+    /**
+     * Handles GET requests to retrieve a page of customers, as {@link CustomerController} does.
+     * @param after The cursor returned with the previous page; omit it to get the first page.
+     * @param limit The maximum number of customers on the page.
+     * @param minAge The minimum age, inclusive.
+     * @param maxAge The maximum age, inclusive.
+     * @param name A case-insensitive prefix of the name.
+     * @param email A case-insensitive prefix of the email.
+     * @param domain The email domain, e.g. {@code gmail.com}.
+     * @param search Case-insensitive text the name or email must contain.
+     * @param sort The order of the page, e.g. {@code age,desc}; by ID if omitted.
+     * @return The requested page together with the cursor of the next one.
+     */
+    @GetMapping // Maps HTTP GET requests onto specific handler methods.
+    public Mono<CustomerPage> getCustomers(@RequestParam(value = "after", required = false) String after,
+                                           @RequestParam(value = "limit", defaultValue = "" + CustomerService.DEFAULT_PAGE_SIZE) int limit,
+                                           @RequestParam(value = "minAge", required = false) Integer minAge,
+                                           @RequestParam(value = "maxAge", required = false) Integer maxAge,
+                                           @RequestParam(value = "name", required = false) String name,
+                                           @RequestParam(value = "email", required = false) String email,
+                                           @RequestParam(value = "domain", required = false) String domain,
+                                           @RequestParam(value = "q", required = false) String search,
+                                           @RequestParam(value = "sort", required = false) String sort) {
+        return Mono.defer(() -> customerService.getCustomersPage(
+                new CustomerFilter(minAge, maxAge, name, email, domain, search), CustomerSort.parse(sort), after, limit));
+    }
+
+    /**
+     * Handles GET requests to stream all customers as newline-delimited JSON.
+     * Each customer is written as soon as it is read, paced by how fast the client consumes them.
+     * @return A Flux of every customer.
+     */
+    @GetMapping(value = "/stream", produces = CustomerController.NDJSON) // Maps streaming GET requests, served as NDJSON.
+    public Flux<Customer> streamCustomers() {
+        return customerService.streamAllCustomers();
+    }
+
+    /**
+     * Handles GET requests to retrieve a specific customer by their ID, tagged with its version.
+     * A matching If-None-Match header is answered with an empty 304 Not Modified by WebFlux.
+     * @param customerId The ID of the customer to retrieve.
+     * @return The customer with the specified ID.
+     */
+    @GetMapping("/{customerId}") // Maps HTTP GET requests for a customer's ID onto specific handler methods.
+    public Mono<ResponseEntity<Customer>> getCustomer(@PathVariable("customerId") Integer customerId) {
+        return customerService.getCustomer(customerId)
+                .map(customer -> ResponseEntity.ok().eTag(CustomerController.eTag(customer.getVersion())).body(customer));
+    }
+
+    /**
+     * Handles POST requests to register a new customer.
+     * With write-behind enabled the response is 202 Accepted with the allocated customer, its location and its ETag.
+     * @param request The request body containing the new customer's information.
+     * @param exchange The current exchange, the location of the new customer is resolved against.
+     * @return An empty 200 response, or 202 Accepted with the new customer in write-behind mode.
+     */
+    @PostMapping // Maps HTTP POST requests onto specific handler methods, used to create a new customer.
+    public Mono<ResponseEntity<Customer>> registerCustomer(@RequestBody CustomerRegistrationRequest request,
+                                                           ServerWebExchange exchange) {
+        return customerService.addCustomer(request)
+                .map(customer -> !customerService.isWriteBehind()
+                        ? ResponseEntity.ok().<Customer>build()
+                        : ResponseEntity.accepted()
+                                .location(UriComponentsBuilder.fromUri(exchange.getRequest().getURI())
+                                        .path("/{id}").buildAndExpand(customer.getId()).toUri())
+                                .eTag(CustomerController.eTag(customer.getVersion()))
+                                .body(customer));
+    }
+
+    /**
+     * Handles DELETE requests to remove a customer by their ID.
+     * @param customerId The ID of the customer to be deleted.
+     * @return A Mono completing once the customer is deleted.
+     */
+    @DeleteMapping("{customerId}") // Maps HTTP DELETE requests onto specific handler methods, used to delete a customer.
+    public Mono<Void> deleteCustomer(@PathVariable("customerId") Integer customerId) {
+        return customerService.deleteCustomerById(customerId);
+    }
+
+    /**
+     * Handles PUT requests to update an existing customer's information, honouring If-Match as
+     * {@link CustomerController} does.
+     * @param customerId The ID of the customer to update.
+     * @param ifMatch The optional If-Match header, e.g. {@code "3"}.
+     * @param updateRequest The request body containing the customer's updated information.
+     * @return An empty response carrying the ETag of the updated customer, 202 Accepted in write-behind mode.
+     */
+    @PutMapping("{customerId}") // Maps HTTP PUT requests onto specific handler methods, used to update a customer's information.
+    public Mono<ResponseEntity<Void>> updateCustomer(@PathVariable("customerId") Integer customerId,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                     @RequestBody CustomerUpdateRequest updateRequest) {
+        return Mono.defer(() -> customerService.updateCustomer(customerId, updateRequest, CustomerController.parseVersion(ifMatch)))
+                .map(updated -> (customerService.isWriteBehind() ? ResponseEntity.accepted() : ResponseEntity.ok())
+                        .eTag(CustomerController.eTag(updated.getVersion()))
+                        .<Void>build());
+    }
+}
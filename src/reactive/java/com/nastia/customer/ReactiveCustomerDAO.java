@@ -0,0 +1,37 @@
+package com.nastia.customer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of the reads of {@link CustomerDAO}, for the reactive stack.
+ * Single results are returned as a Mono and listings as a Flux that emits customers as they are read.
+ * Writes have no counterpart here: the reactive stack sends them through {@link CustomerService}, so they
+ * produce change events and invalidate caches exactly like the writes of the servlet stack.
+ */
+public interface ReactiveCustomerDAO {
+
+    /**
+     * Streams all customers from the data store, ordered by ID.
+     *
+     * @return a Flux emitting every customer, honouring the subscriber's demand.
+     */
+    Flux<Customer> selectAllCustomers();
+
+    /**
+     * Streams customers ordered by ID, starting right after the given ID (keyset pagination).
+     *
+     * @param afterId the ID of the last customer already seen, or null to start from the beginning.
+     * @param limit   the maximum number of customers to emit.
+     * @return a Flux emitting at most {@code limit} customers with an ID greater than {@code afterId}.
+     */
+    Flux<Customer> selectCustomersAfter(Integer afterId, int limit);
+
+    /**
+     * Retrieves a customer by their ID.
+     *
+     * @param id the ID of the customer to retrieve.
+     * @return a Mono emitting the found customer, or completing empty if no customer is found.
+     */
+    Mono<Customer> selectCustomerById(Integer id);
+}
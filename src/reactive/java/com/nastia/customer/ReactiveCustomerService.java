@@ -0,0 +1,156 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Service layer class that handles business logic for customer operations on the reactive stack.
+ * Plain reads by ID and unfiltered listings by ID are served by R2DBC without blocking. Everything else goes
+ * through {@link CustomerService} on the bounded elastic scheduler: writes, so they are recorded in the outbox,
+ * bump the change counter, honour write-behind and invalidate the caches exactly as on the servlet stack, and
+ * filtered or sorted listings, so both stacks apply the same rules. Its exceptions are signalled instead of thrown.
+ */
+@Service // Marks this class as a Spring service stereotype.
+@Profile("reactive") // Only created when the reactive stack is selected.
+public class ReactiveCustomerService {
+
+    private final ReactiveCustomerDAO customerDAO; // Non-blocking reads.
+    private final CustomerService customerService; // Writes and the reads R2DBC does not serve.
+
+    /**
+     * Constructs the service with a specific implementation of ReactiveCustomerDAO.
+     *
+     * @param customerDAO     The non-blocking data access object for customer reads.
+     * @param customerService The blocking customer service, writes and filtered listings are delegated to.
+     */
+    public ReactiveCustomerService(@Qualifier("r2dbc") ReactiveCustomerDAO customerDAO, CustomerService customerService) {
+        this.customerDAO = customerDAO;
+        this.customerService = customerService;
+    }
+
+    /**
+     * Retrieves one page of the customers matching a filter, in the given order, starting right after the cursor,
+     * as {@link CustomerService#getCustomersPage(CustomerFilter, CustomerSort, String, int)} does.
+     * Signals RequestValidationException if the limit is out of range.
+     *
+     * @param filter The filters the customers must match.
+     * @param sort   The order of the listing.
+     * @param after  The cursor returned with the previous page, or null for the first page.
+     * @param limit  The maximum number of customers on the page.
+     * @return A Mono emitting the requested page, with the cursor of the next page if there may be more customers.
+     */
+    public Mono<CustomerPage> getCustomersPage(CustomerFilter filter, CustomerSort sort, String after, int limit) {
+        if (limit < 1 || limit > CustomerService.MAX_PAGE_SIZE) {
+            return Mono.error(new RequestValidationException(
+                    "limit must be between 1 and %s".formatted(CustomerService.MAX_PAGE_SIZE)
+            ));
+        }
+        if (!filter.isEmpty() || !sort.equals(CustomerSort.BY_ID)) {
+            return blocking(() -> customerService.getCustomersPage(filter, sort, after, limit));
+        }
+        Customer cursor;
+        try {
+            cursor = CustomerCursor.decode(sort, after);
+        } catch (RequestValidationException e) {
+            return Mono.error(e);
+        }
+        return customerDAO.selectCustomersAfter(cursor == null ? null : cursor.getId(), limit)
+                .collectList()
+                .map(customers -> new CustomerPage(
+                        customers,
+                        customers.size() == limit ? CustomerCursor.encode(sort, customers.get(customers.size() - 1)) : null
+                ));
+    }
+
+    /**
+     * Streams every customer ordered by ID; the subscriber's demand paces the reads.
+     *
+     * @return A Flux of all customers.
+     */
+    public Flux<Customer> streamAllCustomers() {
+        return customerDAO.selectAllCustomers();
+    }
+
+    /**
+     * Retrieves a customer by ID. A customer with writes queued by write-behind is returned as last accepted,
+     * since the database still holds its previous version. Otherwise R2DBC reads it, and a customer R2DBC does
+     * not find is looked up through {@link CustomerService}, which also knows registrations accepted meanwhile.
+     * Signals ResourceNotFoundException if the customer is not found.
+     *
+     * @param id The ID of the customer to retrieve.
+     * @return A Mono emitting the found customer.
+     */
+    public Mono<Customer> getCustomer(Integer id) {
+        return Mono.defer(() -> customerService.getPendingCustomer(id)
+                        .map(Mono::just)
+                        .orElseGet(() -> customerDAO.selectCustomerById(id)))
+                .switchIfEmpty(blocking(() -> customerService.getCustomer(id)));
+    }
+
+    /**
+     * Returns whether registrations and updates are queued and written behind, see {@link CustomerService#isWriteBehind()}.
+     *
+     * @return True if write-behind is enabled.
+     */
+    public boolean isWriteBehind() {
+        return customerService.isWriteBehind();
+    }
+
+    /**
+     * Adds a new customer through {@link CustomerService#addCustomer(CustomerRegistrationRequest)}.
+     * Signals DuplicateResourceException if the email already exists.
+     *
+     * @param customerRegistrationRequest The registration request containing customer details.
+     * @return A Mono emitting the new customer, with its ID.
+     */
+    public Mono<Customer> addCustomer(CustomerRegistrationRequest customerRegistrationRequest) {
+        return blocking(() -> customerService.addCustomer(customerRegistrationRequest));
+    }
+
+    /**
+     * Deletes a customer by their ID through {@link CustomerService#deleteCustomerById(Integer)}.
+     * Signals ResourceNotFoundException if the customer does not exist.
+     *
+     * @param customerId The ID of the customer to delete.
+     * @return A Mono completing once the customer is deleted.
+     */
+    public Mono<Void> deleteCustomerById(Integer customerId) {
+        return blocking(() -> {
+            customerService.deleteCustomerById(customerId);
+            return null;
+        }).then();
+    }
+
+    /**
+     * Updates the information of an existing customer through
+     * {@link CustomerService#updateCustomer(Integer, CustomerUpdateRequest, Long)}.
+     * Signals ResourceNotFoundException, PreconditionFailedException, DuplicateResourceException or
+     * RequestValidationException under the same conditions.
+     *
+     * @param customerId      The ID of the customer to update.
+     * @param updateRequest   The request containing the updated customer information.
+     * @param expectedVersion The version the client last saw, or null to update whatever the current version is.
+     * @return A Mono emitting the updated customer.
+     */
+    public Mono<Customer> updateCustomer(Integer customerId, CustomerUpdateRequest updateRequest, Long expectedVersion) {
+        return blocking(() -> customerService.updateCustomer(customerId, updateRequest, expectedVersion));
+    }
+
+    /**
+     * Runs a blocking call on the bounded elastic scheduler, off the event loop, once subscribed.
+     * Its outcome is signalled on the parallel scheduler: the response must not be written by the blocking task
+     * itself, which a cancellation interrupts, failing the write of a response already committed.
+     */
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call)
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.parallel());
+    }
+}
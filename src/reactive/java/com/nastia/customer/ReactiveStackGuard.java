@@ -0,0 +1,49 @@
+package com.nastia.customer;
+
+import com.nastia.datasource.ReplicaProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Refuses to start the reactive stack with features that only the servlet stack enforces.
+ * Rate limiting, the concurrency limits and idempotency keys are servlet filters, and read-your-writes is a
+ * servlet filter too, so replicas would serve a client's reads before its own writes reached them. WebFlux
+ * never runs servlet filters: rather than silently serving without them, startup fails naming the settings.
+ */
+@Component // Registers the guard as a Spring-managed bean, checked when the context starts.
+@Profile("reactive") // Only created when the reactive stack is selected.
+public class ReactiveStackGuard {
+
+    private static final List<String> SERVLET_ONLY_FEATURES = List.of(
+            "customer.rate-limit.enabled",
+            "customer.concurrency-limit.enabled",
+            "customer.adaptive-concurrency.enabled",
+            "customer.idempotency.enabled"
+    ); // Switches of features implemented as servlet filters.
+
+    /**
+     * Checks the configuration of the reactive stack.
+     * Throws IllegalStateException if a servlet-only feature is enabled or read replicas are configured.
+     *
+     * @param environment The environment holding the feature switches.
+     * @param replicas    The customer.datasource properties.
+     */
+    public ReactiveStackGuard(Environment environment, ReplicaProperties replicas) {
+        List<String> enabled = SERVLET_ONLY_FEATURES.stream()
+                .filter(property -> environment.getProperty(property, Boolean.class, false))
+                .toList();
+        if (!enabled.isEmpty()) {
+            throw new IllegalStateException(
+                    "the reactive stack does not support %s, disable them".formatted(String.join(", ", enabled))
+            );
+        }
+        if (!replicas.replicas().isEmpty()) {
+            throw new IllegalStateException(
+                    "the reactive stack does not support read-your-writes, remove customer.datasource.replicas"
+            );
+        }
+    }
+}
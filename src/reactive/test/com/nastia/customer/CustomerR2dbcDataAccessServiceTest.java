@@ -0,0 +1,71 @@
+package com.nastia.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the R2DBC reads on an H2 database, filled through the JPA stack they share the table with.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"reactive", "test"})
+class CustomerR2dbcDataAccessServiceTest {
+
+    @Autowired
+    private CustomerR2dbcDataAccessService r2dbc;
+
+    @Autowired
+    private CustomerService customerService;
+
+    private List<Integer> ids;
+
+    @BeforeEach
+    void registerCustomers() {
+        String run = UUID.randomUUID().toString();
+        ids = List.of(
+                customerService.addCustomer(new CustomerRegistrationRequest("Ada", "ada-" + run + "@r2dbc.test", 36)).getId(),
+                customerService.addCustomer(new CustomerRegistrationRequest("Bob", "bob-" + run + "@r2dbc.test", 41)).getId(),
+                customerService.addCustomer(new CustomerRegistrationRequest("Cy", "cy-" + run + "@r2dbc.test", 29)).getId()
+        );
+    }
+
+    @Test
+    void selectCustomerByIdReadsWhatJpaWrote() {
+        StepVerifier.create(r2dbc.selectCustomerById(ids.get(1)))
+                .assertNext(customer -> {
+                    assertThat(customer.getId()).isEqualTo(ids.get(1));
+                    assertThat(customer.getName()).isEqualTo("Bob");
+                    assertThat(customer.getAge()).isEqualTo(41);
+                    assertThat(customer.getVersion()).isZero();
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void selectCustomerByIdCompletesEmptyForUnknownId() {
+        StepVerifier.create(r2dbc.selectCustomerById(Integer.MAX_VALUE))
+                .verifyComplete();
+    }
+
+    @Test
+    void selectCustomersAfterPagesByIdFromTheCursor() {
+        StepVerifier.create(r2dbc.selectCustomersAfter(ids.get(0), 2).map(Customer::getId))
+                .expectNext(ids.get(1), ids.get(2))
+                .verifyComplete();
+    }
+
+    @Test
+    void selectAllCustomersStreamsInIdOrder() {
+        List<Integer> streamed = r2dbc.selectAllCustomers().map(Customer::getId).collectList().block();
+
+        assertThat(streamed).isSorted().containsSubsequence(ids);
+    }
+}
@@ -0,0 +1,161 @@
+package com.nastia.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of the reactive handlers on an H2 database, checking they answer like the servlet ones and that
+ * their writes take the same path, through the outbox and the change counter.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"reactive", "test"})
+class ReactiveCustomerControllerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CustomerChangeCounter changeCounter;
+
+    private WebTestClient webTestClient;
+
+    /**
+     * Connects without pooling: the server closes the connection after rejecting a request, and a pooled client
+     * could pick that connection for the next request before noticing.
+     */
+    @BeforeEach
+    void connect() {
+        webTestClient = WebTestClient.bindToServer(new ReactorClientHttpConnector(HttpClient.newConnection()))
+                .baseUrl("http://localhost:" + port)
+                .build();
+    }
+
+    @Test
+    void registeredCustomerIsListedAndServedWithItsVersionAsETag() {
+        String email = uniqueEmail();
+        register("Ada", email, 36);
+
+        CustomerPage page = webTestClient.get()
+                .uri(uri -> uri.path("/api/v1/customers").queryParam("email", email).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(CustomerPage.class)
+                .returnResult()
+                .getResponseBody();
+        assertThat(page.customers()).singleElement().extracting(Customer::getName).isEqualTo("Ada");
+        Integer id = page.customers().get(0).getId();
+
+        webTestClient.get().uri("/api/v1/customers/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .expectBody().jsonPath("$.email").isEqualTo(email);
+        webTestClient.get().uri("/api/v1/customers/{id}", id)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void unfilteredPagesFollowTheCursor() {
+        register("Bob", uniqueEmail(), 41);
+        register("Cy", uniqueEmail(), 29);
+
+        CustomerPage first = page(null, 1);
+        assertThat(first.customers()).hasSize(1);
+        assertThat(first.nextCursor()).isEqualTo(first.customers().get(0).getId().toString());
+        CustomerPage second = page(first.nextCursor(), 1);
+        assertThat(second.customers().get(0).getId()).isGreaterThan(first.customers().get(0).getId());
+    }
+
+    @Test
+    void listingRejectsLimitsOutOfRange() {
+        webTestClient.get().uri("/api/v1/customers?limit=0").exchange().expectStatus().isBadRequest();
+        webTestClient.get().uri("/api/v1/customers?limit=" + (CustomerService.MAX_PAGE_SIZE + 1))
+                .exchange().expectStatus().isBadRequest();
+    }
+
+    @Test
+    void writesGoThroughTheOutboxAndChangeCounter() {
+        long changesBefore = changeCounter.current();
+        String email = uniqueEmail();
+        register("Dee", email, 50);
+        Integer id = jdbcTemplate.queryForObject("SELECT id FROM customer WHERE email = ?", Integer.class, email);
+
+        webTestClient.put().uri("/api/v1/customers/{id}", id)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(new CustomerUpdateRequest("Deirdre", null, null))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+        webTestClient.delete().uri("/api/v1/customers/{id}", id)
+                .exchange()
+                .expectStatus().isOk();
+
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT type FROM customer_outbox WHERE customer_id = ? ORDER BY id", String.class, id))
+                .containsExactly("CREATED", "UPDATED", "DELETED");
+        assertThat(changeCounter.current()).isEqualTo(changesBefore + 3);
+        webTestClient.get().uri("/api/v1/customers/{id}", id).exchange().expectStatus().isNotFound();
+    }
+
+    @Test
+    void writesAreRejectedLikeOnTheServletStack() {
+        String email = uniqueEmail();
+        register("Eve", email, 33);
+        Integer id = jdbcTemplate.queryForObject("SELECT id FROM customer WHERE email = ?", Integer.class, email);
+
+        webTestClient.post().uri("/api/v1/customers")
+                .bodyValue(new CustomerRegistrationRequest("Eve", email, 33))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+        webTestClient.put().uri("/api/v1/customers/{id}", id)
+                .header(HttpHeaders.IF_MATCH, "\"7\"")
+                .bodyValue(new CustomerUpdateRequest("Evelyn", null, null))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        webTestClient.delete().uri("/api/v1/customers/{id}", Integer.MAX_VALUE)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private void register(String name, String email, int age) {
+        webTestClient.post().uri("/api/v1/customers")
+                .bodyValue(new CustomerRegistrationRequest(name, email, age))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private CustomerPage page(String after, int limit) {
+        return webTestClient.get()
+                .uri(uri -> uri.path("/api/v1/customers").queryParamIfPresent("after", Optional.ofNullable(after))
+                        .queryParam("limit", limit).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(CustomerPage.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private static String uniqueEmail() {
+        return UUID.randomUUID() + "@reactive.test";
+    }
+}
@@ -0,0 +1,79 @@
+package com.nastia.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the reactive handlers with write-behind: an accepted update is served before it is committed, although
+ * R2DBC still finds the previous version of the customer in the database.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"customer.write-behind.enabled=true", "customer.write-behind.max-delay=2s"})
+@ActiveProfiles({"reactive", "test"})
+class ReactiveWriteBehindTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void connect() {
+        webTestClient = WebTestClient.bindToServer(new ReactorClientHttpConnector(HttpClient.newConnection()))
+                .baseUrl("http://localhost:" + port)
+                .build();
+    }
+
+    @Test
+    void acceptedUpdateIsServedBeforeItIsCommitted() throws InterruptedException {
+        String email = UUID.randomUUID() + "@reactive.test";
+        webTestClient.post().uri("/api/v1/customers")
+                .bodyValue(new CustomerRegistrationRequest("Fay", email, 27))
+                .exchange()
+                .expectStatus().isAccepted();
+        Integer id = awaitCommitted(email);
+
+        webTestClient.put().uri("/api/v1/customers/{id}", id)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(new CustomerUpdateRequest("Faye", null, null))
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        webTestClient.get().uri("/api/v1/customers/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                .expectBody().jsonPath("$.name").isEqualTo("Faye");
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM customer WHERE id = ?", String.class, id))
+                .isEqualTo("Fay");
+    }
+
+    private Integer awaitCommitted(String email) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Integer id = jdbcTemplate.query("SELECT id FROM customer WHERE email = ?",
+                    resultSet -> resultSet.next() ? resultSet.getInt(1) : null, email);
+            if (id != null) {
+                return id;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("the registration of " + email + " was not committed");
+    }
+}
@@ -0,0 +1,60 @@
+package com.nastia.admission;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class AdaptiveConcurrencyLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AdaptiveConcurrencyLimitFilter filter = new AdaptiveConcurrencyLimitFilter(
+            mock(HikariDataSource.class), 1, 1, 1, 2.0, 0.9, meterRegistry
+    );
+
+    @Test
+    void asyncRequestKeepsItsSlotUntilItsResponseIsComplete() throws Exception {
+        MockHttpServletRequest streaming = request("/api/v1/customers/stream");
+        filter.doFilter(streaming, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        AsyncContext asyncContext = streaming.getAsyncContext();
+
+        assertThat(inFlight()).isEqualTo(1);
+        assertThat(status("/api/v1/customers/1")).isEqualTo(503);
+
+        asyncContext.complete();
+
+        assertThat(inFlight()).isZero();
+        assertThat(status("/api/v1/customers/1")).isEqualTo(200);
+    }
+
+    @Test
+    void eventSubscriptionsTakeNoSlot() throws Exception {
+        MockHttpServletRequest subscription = request("/api/v1/customers/events");
+        filter.doFilter(subscription, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+        assertThat(inFlight()).isZero();
+        assertThat(status("/api/v1/customers/1")).isEqualTo(200);
+    }
+
+    private int status(String uri) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(uri), response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("customer.admission.concurrency.in-flight").gauge().value();
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -0,0 +1,64 @@
+package com.nastia.admission;
+
+import jakarta.servlet.AsyncContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitFilterTest {
+
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, Duration.ZERO);
+
+    @Test
+    void streamedResponseKeepsItsPermitUntilItIsComplete() throws Exception {
+        MockHttpServletRequest export = request("/api/v1/customers/export");
+        filter.doFilter(export, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        AsyncContext asyncContext = export.getAsyncContext();
+
+        assertThat(status("/api/v1/customers/1")).isEqualTo(503);
+
+        asyncContext.complete();
+
+        assertThat(status("/api/v1/customers/1")).isEqualTo(200);
+    }
+
+    @Test
+    void permitIsReleasedOnlyOnce() throws Exception {
+        MockHttpServletRequest stream = request("/api/v1/customers/stream");
+        filter.doFilter(stream, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        AsyncContext asyncContext = stream.getAsyncContext();
+
+        asyncContext.complete();
+        asyncContext.complete();
+
+        assertThat(status("/api/v1/customers/1")).isEqualTo(200);
+        MockHttpServletRequest held = request("/api/v1/customers/stream");
+        filter.doFilter(held, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        assertThat(status("/api/v1/customers/1")).isEqualTo(503);
+    }
+
+    @Test
+    void eventSubscriptionsTakeNoPermit() throws Exception {
+        filter.doFilter(request("/api/v1/customers/events"), new MockHttpServletResponse(),
+                (request, response) -> request.startAsync());
+
+        assertThat(status("/api/v1/customers/1")).isEqualTo(200);
+    }
+
+    private int status(String uri) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(uri), response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -0,0 +1,47 @@
+package com.nastia.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private final RateLimitProperties.Budget onePerMinute = new RateLimitProperties.Budget(1.0 / 60, 1);
+    private final RateLimitFilter filter = new RateLimitFilter(
+            new RateLimitProperties("X-API-Key", List.of("issued"), onePerMinute, onePerMinute, onePerMinute,
+                    1000, Duration.ofMinutes(10)),
+            new SimpleMeterRegistry()
+    );
+
+    @Test
+    void madeUpKeysShareTheBudgetOfTheirAddress() throws Exception {
+        assertThat(status("10.0.0.1", "made-up-1")).isEqualTo(200);
+        assertThat(status("10.0.0.1", "made-up-2")).isEqualTo(429);
+        assertThat(status("10.0.0.1", null)).isEqualTo(429);
+    }
+
+    @Test
+    void issuedKeysHaveABudgetOfTheirOwn() throws Exception {
+        assertThat(status("10.0.0.2", null)).isEqualTo(200);
+        assertThat(status("10.0.0.2", "issued")).isEqualTo(200);
+        assertThat(status("10.0.0.3", "issued")).isEqualTo(429);
+    }
+
+    private int status(String remoteAddr, String apiKey) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/customers/1");
+        request.setRemoteAddr(remoteAddr);
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
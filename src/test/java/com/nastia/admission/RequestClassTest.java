@@ -0,0 +1,25 @@
+package com.nastia.admission;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestClassTest {
+
+    @Test
+    void streamAndExportOfEveryCustomerAreFullLists() {
+        assertThat(RequestClass.of(new MockHttpServletRequest("GET", "/api/v1/customers/stream")))
+                .isEqualTo(RequestClass.FULL_LIST);
+        assertThat(RequestClass.of(new MockHttpServletRequest("GET", "/api/v1/customers/export")))
+                .isEqualTo(RequestClass.FULL_LIST);
+    }
+
+    @Test
+    void otherSafeRequestsAreReadsAndTheRestWrites() {
+        assertThat(RequestClass.of(new MockHttpServletRequest("GET", "/api/v1/customers/1")))
+                .isEqualTo(RequestClass.READ);
+        assertThat(RequestClass.of(new MockHttpServletRequest("POST", "/api/v1/customers/import")))
+                .isEqualTo(RequestClass.WRITE);
+    }
+}
@@ -0,0 +1,84 @@
+package com.nastia.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void fullBucketGrantsItsBurstAtOnceThenRefuses() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(now)).isZero();
+        }
+        assertThat(bucket.tryAcquire(now)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void refusalTellsHowLongUntilTheNextPermit() {
+        TokenBucket bucket = new TokenBucket(2, 1);
+        long now = System.nanoTime();
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now + SECOND / 4)).isEqualTo(SECOND / 4);
+        assertThat(bucket.tryAcquire(now + SECOND / 2)).isZero();
+    }
+
+    @Test
+    void bucketRefillsAtItsRateButNeverBeyondItsBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            bucket.tryAcquire(now);
+        }
+
+        long later = now + SECOND / 10;
+        assertThat(bucket.tryAcquire(later)).isZero();
+        assertThat(bucket.tryAcquire(later)).isPositive();
+
+        long idle = later + 60 * SECOND;
+        assertThat(granted(bucket, idle, 10)).isEqualTo(3);
+    }
+
+    @Test
+    void concurrentCallersNeverTakeMoreThanTheBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        long now = System.nanoTime();
+        AtomicInteger grantedPermits = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] callers = new Future<?>[8];
+            for (int i = 0; i < callers.length; i++) {
+                callers[i] = executor.submit(() -> grantedPermits.addAndGet(granted(bucket, now, 50)));
+            }
+            for (Future<?> caller : callers) {
+                caller.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(grantedPermits).hasValue(100);
+    }
+
+    private static int granted(TokenBucket bucket, long now, int attempts) {
+        int granted = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (bucket.tryAcquire(now) == 0) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+}
@@ -0,0 +1,108 @@
+package com.nastia.cache;
+
+import com.nastia.customer.Customer;
+import com.nastia.customer.CustomerDAO;
+import com.nastia.customer.CustomerRepository;
+import com.nastia.customer.CustomerUpdateRequest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that a customer changed with plain JDBC, behind Hibernate's back, leaves no stale entry in any region of
+ * the second-level cache once the change commits, with the in-process invalidation channel of the default setup.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomerCacheInvalidatorTest {
+
+    @Autowired
+    @Qualifier("jpa")
+    private CustomerDAO customerDAO;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CacheManager secondLevelCacheManager;
+
+    @Autowired
+    private CustomerCacheInvalidationChannel channel;
+
+    @Test
+    void bulkWriteEvictsTheEntityTheEmailResolutionAndCachedQueries() {
+        assertThat(channel).isInstanceOf(InProcessCacheInvalidationChannel.class);
+        List<CustomerCacheInvalidation> published = new ArrayList<>();
+        channel.subscribe(published::add);
+        String email = uniqueEmail();
+        Customer customer = new Customer("Ada", email, 36);
+        customerDAO.insertCustomer(customer);
+        Integer id = customer.getId();
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+
+        find(id);
+        try (Session session = sessionFactory.openSession()) {
+            session.bySimpleNaturalId(Customer.class).load(email);
+        }
+        customerRepository.existsCustomersByEmail(email);
+        long queryHits = statistics.getQueryCacheHitCount();
+        assertThat(customerRepository.existsCustomersByEmail(email)).isTrue();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(queryHits + 1);
+        assertThat(sessionFactory.getCache().containsEntity(Customer.class, id)).isTrue();
+        assertThat(entries(Customer.NATURAL_ID_CACHE_REGION)).isPositive();
+        assertThat(entries(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME)).isPositive();
+
+        String newEmail = uniqueEmail();
+        customerDAO.updateCustomersFields(Map.of(id, new CustomerUpdateRequest("Ada L.", newEmail, null)));
+
+        assertThat(published).anySatisfy(invalidation -> assertThat(invalidation.customerIds()).contains(id));
+        assertThat(sessionFactory.getCache().containsEntity(Customer.class, id)).isFalse();
+        assertThat(entries(Customer.NATURAL_ID_CACHE_REGION)).isZero();
+        queryHits = statistics.getQueryCacheHitCount();
+        assertThat(customerRepository.existsCustomersByEmail(email)).isFalse();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(queryHits);
+        assertThat(find(id)).extracting(Customer::getName, Customer::getEmail).containsExactly("Ada L.", newEmail);
+    }
+
+    private Customer find(Integer id) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.find(Customer.class, id);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private int entries(String region) {
+        int entries = 0;
+        for (Cache.Entry<Object, Object> ignored : secondLevelCacheManager.<Object, Object>getCache(region)) {
+            entries++;
+        }
+        return entries;
+    }
+
+    private static String uniqueEmail() {
+        return UUID.randomUUID() + "@example.com";
+    }
+}
@@ -0,0 +1,50 @@
+package com.nastia.customer;
+
+import com.nastia.cache.InProcessCacheInvalidationChannel;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that the read-through cache loads its misses from the primary, in a read-write transaction
+ * the delegate's read-only one joins, rather than caching what a lagging replica returns.
+ */
+class CachingCustomerDAOTest {
+
+    @Test
+    void missIsLoadedInReadWriteTransaction() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:caching-customer-dao");
+        CustomerDAO delegate = mock(CustomerDAO.class);
+        AtomicBoolean readWrite = new AtomicBoolean();
+        when(delegate.selectCustomerById(1)).thenAnswer(invocation -> {
+            readWrite.set(TransactionSynchronizationManager.isActualTransactionActive()
+                    && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            return Optional.of(new Customer(1, "Ada", "ada@example.com", 36));
+        });
+        CachingCustomerDAO cachingDAO = new CachingCustomerDAO(
+                delegate,
+                100,
+                Duration.ofMinutes(5),
+                new InProcessCacheInvalidationChannel(),
+                new DataSourceTransactionManager(dataSource)
+        );
+
+        assertThat(cachingDAO.selectCustomerById(1)).map(Customer::getName).contains("Ada");
+        assertThat(cachingDAO.selectCustomerById(1)).map(Customer::getName).contains("Ada");
+
+        assertThat(readWrite).isTrue();
+        verify(delegate, times(1)).selectCustomerById(1);
+    }
+}
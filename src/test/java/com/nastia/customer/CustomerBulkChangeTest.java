@@ -0,0 +1,122 @@
+package com.nastia.customer;
+
+import com.nastia.exception.DuplicateResourceException;
+import com.nastia.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests bulk updates and deletes through the JPA DAO.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomerBulkChangeTest {
+
+    private static final int MISSING_ID = Integer.MAX_VALUE; // No customer gets this ID in a test run.
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Test
+    void bulkDeleteReportsMissingIdsInRequestOrder() {
+        Customer ada = add("Ada");
+        Customer bob = add("Bob");
+
+        BulkChangeResult result = customerService.deleteCustomersByIds(
+                List.of(MISSING_ID, ada.getId(), bob.getId(), ada.getId(), MISSING_ID - 1));
+
+        assertThat(result).isEqualTo(new BulkChangeResult(4, 2, List.of(MISSING_ID, MISSING_ID - 1)));
+        assertThatThrownBy(() -> customerService.getCustomer(ada.getId())).isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> customerService.getCustomer(bob.getId())).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void bulkUpdateBumpsVersionsAndSkipsMissingAndUnchangedCustomers() {
+        Customer ada = add("Ada");
+        Customer bob = add("Bob");
+        long adaVersion = customerService.getCustomerVersion(ada.getId());
+        long bobVersion = customerService.getCustomerVersion(bob.getId());
+
+        BulkChangeResult result = customerService.updateCustomers(List.of(
+                new BulkUpdateRequest(ada.getId(), "Ada Lovelace", null, null),
+                new BulkUpdateRequest(MISSING_ID, "Nobody", null, null),
+                new BulkUpdateRequest(bob.getId(), "Bob", null, 30)
+        ));
+
+        assertThat(result).isEqualTo(new BulkChangeResult(3, 1, List.of(MISSING_ID)));
+        Customer updated = customerService.getCustomer(ada.getId());
+        assertThat(updated.getName()).isEqualTo("Ada Lovelace");
+        assertThat(updated.getVersion()).isEqualTo(adaVersion + 1);
+        assertThat(customerService.getCustomerVersion(bob.getId())).isEqualTo(bobVersion);
+    }
+
+    @Test
+    void bulkUpdateWithATakenEmailWritesNothing() {
+        Customer ada = add("Ada");
+        Customer bob = add("Bob");
+        long adaVersion = customerService.getCustomerVersion(ada.getId());
+
+        assertThatThrownBy(() -> customerService.updateCustomers(List.of(
+                new BulkUpdateRequest(ada.getId(), "Ada Lovelace", null, null),
+                new BulkUpdateRequest(bob.getId(), null, ada.getEmail(), null)
+        ))).isInstanceOf(DuplicateResourceException.class);
+
+        Customer unchanged = customerService.getCustomer(ada.getId());
+        assertThat(unchanged.getName()).isEqualTo("Ada");
+        assertThat(unchanged.getVersion()).isEqualTo(adaVersion);
+        assertThat(customerService.getCustomer(bob.getId()).getEmail()).isEqualTo(bob.getEmail());
+    }
+
+    @Test
+    void overlappingBulkUpdatesInOppositeOrdersDoNotDeadlock() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(add("Cy" + i).getId());
+        }
+        long before = customerService.getCustomerVersion(ids.get(0));
+        List<Integer> reversed = new ArrayList<>(ids);
+        Collections.reverse(reversed);
+        int rounds = 10;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Ages never repeat across rounds or threads, so every update changes every customer.
+            Future<?> ascending = executor.submit(() -> updateAges(ids, 100, rounds));
+            Future<?> descending = executor.submit(() -> updateAges(reversed, 200, rounds));
+            ascending.get();
+            descending.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        for (Integer id : ids) {
+            assertThat(customerService.getCustomerVersion(id)).isEqualTo(before + 2L * rounds);
+        }
+    }
+
+    private void updateAges(List<Integer> ids, int firstAge, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int age = firstAge + round;
+            BulkChangeResult result = customerService.updateCustomers(
+                    ids.stream().map(id -> new BulkUpdateRequest(id, null, null, age)).toList());
+            assertThat(result.changed()).isEqualTo(ids.size());
+        }
+    }
+
+    private Customer add(String name) {
+        return customerService.addCustomer(new CustomerRegistrationRequest(name, UUID.randomUUID() + "@bulk.test", 30));
+    }
+}
@@ -0,0 +1,103 @@
+package com.nastia.customer;
+
+import com.nastia.exception.DuplicateResourceException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests that writes through the JPA DAO are counted once, in their own transaction.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CustomerChangeCounterTest {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerChangeCounter changeCounter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void eachWriteIsCountedOnce() {
+        long before = changeCounter.current();
+
+        Customer customer = customerService.addCustomer(new CustomerRegistrationRequest("Ada", uniqueEmail(), 36));
+        customerService.updateCustomer(customer.getId(), new CustomerUpdateRequest("Ada L.", null, null));
+        customerService.deleteCustomerById(customer.getId());
+
+        assertThat(changeCounter.current()).isEqualTo(before + 3);
+    }
+
+    @Test
+    void bulkWriteInOneTransactionIsCountedOnce() {
+        long before = changeCounter.current();
+
+        customerService.addCustomers(List.of(
+                new CustomerRegistrationRequest("Bob", uniqueEmail(), 41),
+                new CustomerRegistrationRequest("Cy", uniqueEmail(), 29)
+        ));
+
+        assertThat(changeCounter.current()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void rolledBackWriteIsNotCounted() {
+        long before = changeCounter.current();
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            changeCounter.incrementOnCommit();
+            throw new DuplicateResourceException("email already taken");
+        })).isInstanceOf(DuplicateResourceException.class);
+
+        assertThat(changeCounter.current()).isEqualTo(before);
+    }
+
+    @Test
+    void incrementsAreSpreadOverTheRowsAndSummed() {
+        long before = changeCounter.current();
+        List<Long> rowsBefore = rows();
+
+        for (int i = 0; i < 64; i++) {
+            changeCounter.increment();
+        }
+
+        assertThat(changeCounter.current()).isEqualTo(before + 64);
+        List<Long> rowsAfter = rows();
+        long bumpedRows = IntStream.range(0, rowsAfter.size())
+                .filter(i -> !rowsAfter.get(i).equals(rowsBefore.get(i)))
+                .count();
+        assertThat(bumpedRows).isGreaterThan(1);
+    }
+
+    @Test
+    void incrementOnCommitNeedsATransaction() {
+        assertThatThrownBy(() -> changeCounter.incrementOnCommit())
+                .isInstanceOf(IllegalTransactionStateException.class);
+    }
+
+    private List<Long> rows() {
+        return jdbcTemplate.queryForList("SELECT version FROM customer_change ORDER BY id", Long.class);
+    }
+
+    private static String uniqueEmail() {
+        return UUID.randomUUID() + "@counter.test";
+    }
+}
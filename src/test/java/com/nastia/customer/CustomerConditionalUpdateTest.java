@@ -0,0 +1,105 @@
+package com.nastia.customer;
+
+import com.nastia.exception.DuplicateResourceException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests the conditional UPDATE ... RETURNING of single updates through the JPA DAO and its HTTP mapping.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class CustomerConditionalUpdateTest {
+
+    @Autowired
+    @Qualifier("jpa")
+    private CustomerDAO customerDAO;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void returnedRowCarriesTheNewVersion() {
+        Customer ada = add("Ada");
+        long version = customerService.getCustomerVersion(ada.getId());
+
+        Customer updated = customerDAO.updateCustomerFields(ada.getId(), new CustomerUpdateRequest(null, null, 37), version)
+                .orElseThrow();
+
+        assertThat(updated.getVersion()).isEqualTo(version + 1);
+        assertThat(updated.getAge()).isEqualTo(37);
+        assertThat(updated.getName()).isEqualTo("Ada");
+        assertThat(customerDAO.selectCustomerVersion(ada.getId())).contains(version + 1);
+    }
+
+    @Test
+    void versionMismatchWritesNothing() {
+        Customer ada = add("Ada");
+        long version = customerService.getCustomerVersion(ada.getId());
+
+        assertThat(customerDAO.updateCustomerFields(ada.getId(), new CustomerUpdateRequest("Ada L.", null, null), version + 1))
+                .isEmpty();
+
+        assertThat(customerDAO.selectCustomerById(ada.getId()).orElseThrow().getName()).isEqualTo("Ada");
+        assertThat(customerDAO.selectCustomerVersion(ada.getId())).contains(version);
+    }
+
+    @Test
+    void unchangedFieldsMatchNoRow() {
+        Customer ada = add("Ada");
+
+        assertThat(customerDAO.updateCustomerFields(ada.getId(), new CustomerUpdateRequest("Ada", null, 30), null)).isEmpty();
+    }
+
+    @Test
+    void takenEmailIsReportedAsDuplicate() {
+        Customer ada = add("Ada");
+        Customer bob = add("Bob");
+
+        assertThatThrownBy(() -> customerDAO.updateCustomerFields(
+                bob.getId(), new CustomerUpdateRequest(null, ada.getEmail(), null), null))
+                .isInstanceOf(DuplicateResourceException.class);
+    }
+
+    @Test
+    void staleIfMatchIsAnsweredWith412() throws Exception {
+        Customer ada = add("Ada");
+        long version = customerService.getCustomerVersion(ada.getId());
+
+        mockMvc.perform(put("/api/v1/customers/{id}", ada.getId())
+                        .header(HttpHeaders.IF_MATCH, CustomerController.eTag(version + 1))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"age\": 40}"))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put("/api/v1/customers/{id}", ada.getId())
+                        .header(HttpHeaders.IF_MATCH, CustomerController.eTag(version))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"age\": 40}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, CustomerController.eTag(version + 1)));
+    }
+
+    private Customer add(String name) {
+        return customerService.addCustomer(new CustomerRegistrationRequest(name, UUID.randomUUID() + "@update.test", 30));
+    }
+}
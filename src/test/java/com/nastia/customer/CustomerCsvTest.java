@@ -0,0 +1,71 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerCsvTest {
+
+    @Test
+    void quotedFieldsKeepCommasQuotesAndLineBreaks() throws IOException {
+        List<List<String>> records = parse("name,email\n\"Doe, Jane\",\"say \"\"hi\"\"\"\n\"two\nlines\",x\n");
+
+        assertThat(records).containsExactly(
+                List.of("name", "email"),
+                List.of("Doe, Jane", "say \"hi\""),
+                List.of("two\nlines", "x"));
+    }
+
+    @Test
+    void crlfEndsRecords() throws IOException {
+        assertThat(parse("a,b\r\nc,d\r\n")).containsExactly(List.of("a", "b"), List.of("c", "d"));
+    }
+
+    @Test
+    void lastRecordNeedsNoLineBreak() throws IOException {
+        assertThat(parse("a,b\nc,")).containsExactly(List.of("a", "b"), List.of("c", ""));
+    }
+
+    @Test
+    void unterminatedQuoteIsRejected() {
+        assertThatThrownBy(() -> parse("name,email\n\"Jane,jane@example.com\n"))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("row 1: unterminated quoted field");
+    }
+
+    @Test
+    void overlongFieldIsRejected() {
+        assertThatThrownBy(() -> parse("name\n" + "x".repeat(4097) + "\n"))
+                .isInstanceOf(RequestValidationException.class)
+                .hasMessage("row 1: field longer than 4096 characters");
+    }
+
+    @Test
+    void writtenRowsParseBackToTheSameFields() throws IOException {
+        Customer customer = new Customer(7, "O'Hara, \"Scarlett\"", "scarlett@example.com", 28);
+        customer.setVersion(0L);
+        StringBuilder out = new StringBuilder();
+        CustomerCsv.writeRow(out, customer);
+
+        assertThat(out).hasToString("7,\"O'Hara, \"\"Scarlett\"\"\",scarlett@example.com,28,0\n");
+        assertThat(parse(out.toString())).containsExactly(
+                List.of("7", "O'Hara, \"Scarlett\"", "scarlett@example.com", "28", "0"));
+    }
+
+    private static List<List<String>> parse(String csv) throws IOException {
+        CustomerCsv.Parser parser = new CustomerCsv.Parser(new StringReader(csv));
+        List<List<String>> records = new ArrayList<>();
+        List<String> record;
+        while ((record = parser.next()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,67 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerCursorTest {
+
+    private final CustomerSort byName = CustomerSort.parse("name");
+    private final CustomerSort byAgeDescending = CustomerSort.parse("age,desc");
+
+    @Test
+    void cursorCarriesTheSortKeyOfTheLastCustomer() {
+        Customer last = new Customer(7, "Ada, \"the\"\nCountess", "ada@example.com", 36);
+
+        Customer byNameKey = CustomerCursor.decode(byName, CustomerCursor.encode(byName, last));
+        Customer byAgeKey = CustomerCursor.decode(byAgeDescending, CustomerCursor.encode(byAgeDescending, last));
+
+        assertThat(byNameKey.getId()).isEqualTo(7);
+        assertThat(byNameKey.getName()).isEqualTo(last.getName());
+        assertThat(byAgeKey.getAge()).isEqualTo(36);
+        assertThat(CustomerCursor.encode(CustomerSort.BY_ID, last)).isEqualTo("7");
+    }
+
+    @Test
+    void cursorOfAnotherOrderOrMalformedCursorIsRejected() {
+        String byNameCursor = CustomerCursor.encode(byName, new Customer(7, "Ada", "ada@example.com", 36));
+
+        assertThatThrownBy(() -> CustomerCursor.decode(CustomerSort.parse("name,desc"), byNameCursor))
+                .isInstanceOf(RequestValidationException.class);
+        assertThatThrownBy(() -> CustomerCursor.decode(byName, "not a cursor"))
+                .isInstanceOf(RequestValidationException.class);
+        assertThatThrownBy(() -> CustomerCursor.decode(CustomerSort.BY_ID, "abc"))
+                .isInstanceOf(RequestValidationException.class);
+    }
+
+    @Test
+    void nextPageFollowsOnAfterItsCursorCustomerChangedOrWasDeleted() throws IOException {
+        CustomerListDataAccessService store = new CustomerListDataAccessService(
+                new CustomerListPersistenceProperties(false, Path.of("unused"), CustomerListPersistenceProperties.Sync.GROUP,
+                        Duration.ofMillis(100), DataSize.ofMegabytes(1), DataSize.ofMegabytes(1))
+        );
+        CustomerFilter domain = new CustomerFilter(null, null, null, null, "cursor.test", null);
+        for (String name : List.of("Ada", "Bob", "Cy", "Dee")) {
+            store.insertCustomer(new Customer(name, name.toLowerCase() + "@cursor.test", 30));
+        }
+
+        List<Customer> first = store.selectCustomers(domain, byName, null, 1);
+        String afterAda = CustomerCursor.encode(byName, first.get(0));
+        store.deleteCustomerById(first.get(0).getId());
+        List<Customer> second = store.selectCustomers(domain, byName, CustomerCursor.decode(byName, afterAda), 1);
+        String afterBob = CustomerCursor.encode(byName, second.get(0));
+        store.updateCustomerFields(second.get(0).getId(), new CustomerUpdateRequest("Zed", null, null), null);
+        List<Customer> third = store.selectCustomers(domain, byName, CustomerCursor.decode(byName, afterBob), 1);
+
+        assertThat(second).extracting(Customer::getName).containsExactly("Bob");
+        assertThat(third).extracting(Customer::getName).containsExactly("Cy");
+    }
+}
@@ -0,0 +1,52 @@
+package com.nastia.customer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerEmailFilterTest {
+
+    private final CustomerRepository repository = mock(CustomerRepository.class);
+    private final CustomerEmailFilter filter = new CustomerEmailFilter(repository, 10_000, 0.01);
+
+    @Test
+    void everyEmailMightBeTakenUntilWarm() {
+        assertThat(filter.mightBeTaken("nobody@example.com")).isTrue();
+    }
+
+    @Test
+    void warmUpPagesThroughEmailsWithoutLoadingCustomers() {
+        List<String> firstPage = IntStream.range(0, 1000).mapToObj(i -> "a%04d@example.com".formatted(i)).toList();
+        when(repository.findEmailsAfter("", Limit.of(1000))).thenReturn(firstPage);
+        when(repository.findEmailsAfter(firstPage.get(999), Limit.of(1000))).thenReturn(List.of("b@example.com"));
+
+        filter.warmUp();
+
+        assertThat(filter.mightBeTaken("a0000@example.com")).isTrue();
+        assertThat(filter.mightBeTaken("a0999@example.com")).isTrue();
+        assertThat(filter.mightBeTaken("b@example.com")).isTrue();
+        assertThat(filter.mightBeTaken("nobody@example.com")).isFalse();
+        verify(repository, never()).findByIdGreaterThanOrderByIdAsc(anyInt(), any());
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void addedEmailsAreNeverReportedFree() {
+        when(repository.findEmailsAfter("", Limit.of(1000))).thenReturn(List.of());
+        filter.warmUp();
+
+        filter.add("new@example.com");
+
+        assertThat(filter.mightBeTaken("new@example.com")).isTrue();
+    }
+}
@@ -0,0 +1,74 @@
+package com.nastia.customer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nastia.exception.RequestValidationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class CustomerImporterTest {
+
+    private static final String ROWS = """
+            name,email,age
+            Ann,ann@example.com,30
+            Bob,bob@example.com,31
+            Cid,cid@example.com,32
+            Dee,dee@example.com,33
+            """;
+
+    private final CustomerListDataAccessService store = new CustomerListDataAccessService(
+            new CustomerListPersistenceProperties(false, Path.of("unused"), CustomerListPersistenceProperties.Sync.GROUP,
+                    Duration.ofMillis(100), DataSize.ofMegabytes(1), DataSize.ofMegabytes(1))
+    );
+    private final CustomerImporter importer = new CustomerImporter(store, mock(CustomerChangeCounter.class),
+            new ObjectMapper(), 2, 1, 1, new SimpleMeterRegistry());
+
+    CustomerImporterTest() throws IOException {
+    }
+
+    @Test
+    void resumedImportSkipsCheckpointedChunks() throws IOException {
+        assertThatThrownBy(() -> importer.importCsv("resume", csv(ROWS + "\"Eve,eve@example.com,34\n")))
+                .isInstanceOf(RequestValidationException.class);
+        assertThat(store.selectExistingEmails(List.of("ann@example.com", "dee@example.com", "eve@example.com")))
+                .containsExactlyInAnyOrder("ann@example.com", "dee@example.com");
+
+        CustomerImportResult result = importer.importCsv("resume", csv(ROWS + """
+                Eve,eve@example.com,34
+                Ann Again,ann@example.com,35
+                Fay,fay@example.com,old
+                """));
+
+        assertThat(result).isEqualTo(new CustomerImportResult(
+                "resume", 7, 1, 1, 1, 4, List.of("row 7: age must be a whole number")));
+        assertThat(store.selectExistingEmails(List.of("eve@example.com", "fay@example.com")))
+                .containsExactly("eve@example.com");
+    }
+
+    @Test
+    void importUnderAnotherIdLoadsEveryChunkAgain() throws IOException {
+        importer.importCsv("first", csv(ROWS));
+
+        CustomerImportResult result = importer.importCsv("second", csv(ROWS));
+
+        assertThat(result.imported()).isZero();
+        assertThat(result.duplicates()).isEqualTo(4);
+        assertThat(result.resumed()).isZero();
+    }
+
+    private static InputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
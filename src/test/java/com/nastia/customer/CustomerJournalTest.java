@@ -0,0 +1,93 @@
+package com.nastia.customer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerJournalTest {
+
+    private static final int FILE_HEADER_SIZE = 16; // Magic, format and region size at the start of a journal.
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void replayStopsAtATornRecordAndLaterRecordsFollowTheCut() throws IOException {
+        Map<Integer, Customer> recovered = new TreeMap<>();
+        try (CustomerJournal journal = open(recovered)) {
+            journal.put(customer(1, "Ada"));
+            journal.put(customer(2, "Bob"));
+            journal.put(customer(3, "Cy"));
+        }
+        tearLastRecord(directory.resolve("journal-0000000000.log"));
+
+        try (CustomerJournal journal = open(recovered)) {
+            assertThat(recovered).containsOnlyKeys(1, 2);
+            journal.put(customer(4, "Dee"));
+        }
+
+        recovered.clear();
+        try (CustomerJournal journal = open(recovered)) {
+            assertThat(recovered).containsOnlyKeys(1, 2, 4);
+            assertThat(recovered.get(4).getName()).isEqualTo("Dee");
+            assertThat(journal.highestId()).isEqualTo(4);
+        }
+    }
+
+    private CustomerJournal open(Map<Integer, Customer> recovered) throws IOException {
+        return new CustomerJournal(
+                new CustomerListPersistenceProperties(true, directory, CustomerListPersistenceProperties.Sync.GROUP,
+                        Duration.ofMillis(100), DataSize.ofKilobytes(64), DataSize.ofMegabytes(1)),
+                new CustomerJournal.Replay() {
+                    @Override
+                    public void put(Customer customer) {
+                        recovered.put(customer.getId(), customer);
+                    }
+
+                    @Override
+                    public void delete(int id) {
+                        recovered.remove(id);
+                    }
+
+                    @Override
+                    public void importedChunk(String chunk) {
+                    }
+                }
+        );
+    }
+
+    /**
+     * Zeroes the second half of the last record, as a crash in the middle of writing it would leave it.
+     */
+    private static void tearLastRecord(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            long position = FILE_HEADER_SIZE;
+            long last = position;
+            while (channel.read(length.clear(), position) == 4 && length.getInt(0) > 0) {
+                last = position;
+                position += 8 + length.getInt(0);
+            }
+            long end = position;
+            long middle = last + (end - last) / 2;
+            channel.write(ByteBuffer.allocate((int) (end - middle)), middle);
+        }
+    }
+
+    private static Customer customer(int id, String name) {
+        Customer customer = new Customer(id, name, name.toLowerCase() + "@example.com", 30);
+        customer.setVersion(0L);
+        return customer;
+    }
+}
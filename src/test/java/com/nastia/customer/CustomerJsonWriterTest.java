@@ -0,0 +1,73 @@
+package com.nastia.customer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the hand-written JSON writer produces the same documents as Jackson's data binding
+ * with the mapper Spring Boot configures.
+ */
+@JsonTest
+class CustomerJsonWriterTest {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void customerMatchesDataBinding() throws IOException {
+        Customer customer = new Customer(42, "Zoë \"Z\" O'Brien\n ", "zoe+test@exämple.com", 31);
+        customer.setVersion(7L);
+
+        assertSameAsDataBinding(customer, write(generator -> new CustomerJsonWriter(objectMapper).writeCustomer(generator, customer)));
+    }
+
+    @Test
+    void customerWithoutVersionMatchesDataBinding() throws IOException {
+        Customer customer = new Customer(1, "Ada", "ada@example.com", 36);
+
+        assertSameAsDataBinding(customer, write(generator -> new CustomerJsonWriter(objectMapper).writeCustomer(generator, customer)));
+    }
+
+    @Test
+    void pageMatchesDataBinding() throws IOException {
+        Customer first = new Customer(1, "Ada", "ada@example.com", 36);
+        first.setVersion(0L);
+        Customer second = new Customer(2, "Bob 😀", "bob@example.com", 41);
+        second.setVersion(3L);
+        CustomerPage page = new CustomerPage(List.of(first, second), "2");
+        CustomerPage lastPage = new CustomerPage(List.of(), null);
+
+        assertSameAsDataBinding(page, write(generator -> new CustomerJsonWriter(objectMapper).writePage(generator, page)));
+        assertSameAsDataBinding(lastPage, write(generator -> new CustomerJsonWriter(objectMapper).writePage(generator, lastPage)));
+    }
+
+    private void assertSameAsDataBinding(Object value, String written) throws IOException {
+        // Encoded to UTF-8 bytes as the default message converter does, which escapes characters outside the BMP.
+        String bound = new String(objectMapper.writeValueAsBytes(value), StandardCharsets.UTF_8);
+        assertThat(objectMapper.readTree(written)).isEqualTo(objectMapper.readTree(bound));
+        assertThat(written).isEqualTo(bound);
+    }
+
+    private String write(Writing writing) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JsonGenerator generator = new CustomerJsonWriter(objectMapper).createGenerator(outputStream)) {
+            writing.write(generator);
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Writing {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
@@ -0,0 +1,67 @@
+package com.nastia.customer;
+
+import com.nastia.exception.DuplicateResourceException;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerListDataAccessServiceTest {
+
+    private final CustomerListDataAccessService store = new CustomerListDataAccessService(
+            new CustomerListPersistenceProperties(false, Path.of("unused"), CustomerListPersistenceProperties.Sync.GROUP,
+                    Duration.ofMillis(100), DataSize.ofMegabytes(1), DataSize.ofMegabytes(1))
+    );
+
+    CustomerListDataAccessServiceTest() throws IOException {
+    }
+
+    @Test
+    void newStoreStartsEmpty() {
+        assertThat(store.selectAllCustomers()).isEmpty();
+    }
+
+    @Test
+    void failedBatchPutsCustomersBackUnderANewVersion() {
+        Customer ada = insert("Ada", "ada@example.com");
+        Customer bob = insert("Bob", "bob@example.com");
+        insert("Cy", "cy@example.com");
+        Map<Integer, CustomerUpdateRequest> updates = new LinkedHashMap<>();
+        updates.put(ada.getId(), new CustomerUpdateRequest("Ada Lovelace", null, null));
+        updates.put(bob.getId(), new CustomerUpdateRequest(null, "cy@example.com", null));
+
+        assertThatThrownBy(() -> store.updateCustomersFields(updates)).isInstanceOf(DuplicateResourceException.class);
+
+        Customer restored = store.selectCustomerById(ada.getId()).orElseThrow();
+        assertThat(restored.getName()).isEqualTo("Ada");
+        assertThat(restored.getVersion()).isEqualTo(2L);
+        assertThat(store.selectCustomerVersion(bob.getId())).contains(0L);
+    }
+
+    @Test
+    void staleVersionOfTheBrieflyUpdatedCustomerIsRejected() {
+        Customer ada = insert("Ada", "ada@example.com");
+        insert("Cy", "cy@example.com");
+        Map<Integer, CustomerUpdateRequest> updates = new LinkedHashMap<>();
+        updates.put(ada.getId(), new CustomerUpdateRequest("Ada Lovelace", null, null));
+        updates.put(insert("Bob", "bob@example.com").getId(), new CustomerUpdateRequest(null, "cy@example.com", null));
+
+        assertThatThrownBy(() -> store.updateCustomersFields(updates)).isInstanceOf(DuplicateResourceException.class);
+
+        assertThat(store.updateCustomerFields(ada.getId(), new CustomerUpdateRequest(null, null, 40), 1L)).isEmpty();
+        assertThat(store.updateCustomerFields(ada.getId(), new CustomerUpdateRequest(null, null, 40), 2L)).isPresent();
+    }
+
+    private Customer insert(String name, String email) {
+        Customer customer = new Customer(name, email, 30);
+        store.insertCustomer(customer);
+        return customer;
+    }
+}
@@ -0,0 +1,127 @@
+package com.nastia.customer;
+
+import com.nastia.exception.DuplicateResourceException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the sharded DAO over two H2 shard databases: listings merged from both shards page through every
+ * customer in order, a failed batch update restores the customers it already updated, and the reconciliation
+ * sweeps add the missing email claims and remove only those without a customer.
+ */
+@SpringBootTest(properties = {
+        "customer.sharding.shards[0].url=jdbc:h2:mem:sharded-test-0;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "customer.sharding.shards[0].username=sa",
+        "customer.sharding.shards[1].url=jdbc:h2:mem:sharded-test-1;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+        "customer.sharding.shards[1].username=sa"
+})
+@ActiveProfiles("test")
+class CustomerShardedDataAccessServiceTest {
+
+    private static final List<String> NAMES = List.of("adam", "Adam", "Zoe", "zoe", "Émile", "Eve", "_x", "Ölaf", "Ada");
+
+    @Autowired
+    private CustomerShardedDataAccessService shardedDAO;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void mergedPagesFollowTheSortAcrossShards() {
+        String domain = UUID.randomUUID() + ".example.com";
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            customers.add(new Customer(NAMES.get(i % NAMES.size()), "c" + i + "@" + domain, 20 + i % 7));
+        }
+        shardedDAO.insertCustomers(customers);
+        CustomerFilter filter = new CustomerFilter(null, null, null, null, domain, null);
+
+        for (CustomerSort sort : List.of(CustomerSort.parse("name"), CustomerSort.parse("name,desc"),
+                CustomerSort.parse("email"), CustomerSort.parse("age,desc"), CustomerSort.BY_ID)) {
+            List<Customer> expected = new ArrayList<>(customers);
+            expected.sort(sort.comparator());
+
+            List<Customer> paged = new ArrayList<>();
+            List<Customer> page;
+            Customer after = null;
+            do {
+                page = shardedDAO.selectCustomers(filter, sort, after, 4);
+                paged.addAll(page);
+                after = page.isEmpty() ? null : page.get(page.size() - 1);
+            } while (page.size() == 4);
+
+            assertThat(paged).extracting(Customer::getId)
+                    .as("listing sorted by %s", sort)
+                    .containsExactlyElementsOf(expected.stream().map(Customer::getId).toList());
+        }
+    }
+
+    @Test
+    void batchUpdateFailingForAnyReasonRestoresTheCustomersAlreadyUpdated() {
+        Customer ada = new Customer("Ada", UUID.randomUUID() + "@example.com", 36);
+        Customer bob = new Customer("Bob", UUID.randomUUID() + "@example.com", 41);
+        shardedDAO.insertCustomers(List.of(ada, bob));
+        String newEmail = UUID.randomUUID() + "@example.com";
+        Map<Integer, CustomerUpdateRequest> updates = new LinkedHashMap<>();
+        updates.put(ada.getId(), new CustomerUpdateRequest("Ada Lovelace", newEmail, null));
+        updates.put(bob.getId(), new CustomerUpdateRequest("B".repeat(300), null, null)); // Too long for the column.
+
+        assertThatThrownBy(() -> shardedDAO.updateCustomersFields(updates))
+                .isNotInstanceOf(DuplicateResourceException.class);
+
+        Customer restored = shardedDAO.selectCustomerById(ada.getId()).orElseThrow();
+        assertThat(restored.getName()).isEqualTo("Ada");
+        assertThat(restored.getEmail()).isEqualTo(ada.getEmail());
+        assertThat(restored.getVersion()).isEqualTo(2L);
+        assertThat(shardedDAO.existsPersonWithEmail(newEmail)).isFalse();
+        assertThat(shardedDAO.selectCustomerById(bob.getId()).orElseThrow().getName()).isEqualTo("Bob");
+    }
+
+    @Test
+    void backfillClaimsTheEmailsOfCustomersWrittenWithoutTheDirectory() {
+        Customer customer = new Customer("Ada", UUID.randomUUID() + "@example.com", 36);
+        shardedDAO.insertCustomer(customer);
+        jdbcTemplate.update("DELETE FROM customer_email_directory WHERE email = ?", customer.getEmail());
+        assertThat(shardedDAO.existsPersonWithEmail(customer.getEmail())).isFalse();
+
+        assertThat(shardedDAO.backfillEmailDirectory()).isPositive();
+
+        assertThat(shardedDAO.existsPersonWithEmail(customer.getEmail())).isTrue();
+        assertThat(shardedDAO.backfillEmailDirectory()).isZero();
+    }
+
+    @Test
+    void reconciliationRemovesOnlyStaleClaimsWithoutCustomer() {
+        Customer customer = new Customer("Ada", UUID.randomUUID() + "@example.com", 36);
+        shardedDAO.insertCustomer(customer);
+        String staleOrphan = UUID.randomUUID() + "@example.com";
+        String freshOrphan = UUID.randomUUID() + "@example.com";
+        Timestamp old = Timestamp.from(Instant.now().minus(Duration.ofHours(1)));
+        jdbcTemplate.update("INSERT INTO customer_email_directory (email, customer_id, claimed_at) VALUES (?, ?, ?)",
+                staleOrphan, Integer.MAX_VALUE, old);
+        jdbcTemplate.update("INSERT INTO customer_email_directory (email, customer_id) VALUES (?, ?)",
+                freshOrphan, Integer.MAX_VALUE - 1);
+        jdbcTemplate.update("UPDATE customer_email_directory SET claimed_at = ? WHERE email = ?", old, customer.getEmail());
+
+        assertThat(shardedDAO.reconcileEmailDirectory(Duration.ofMinutes(5))).isPositive();
+
+        assertThat(shardedDAO.existsPersonWithEmail(staleOrphan)).isFalse();
+        assertThat(shardedDAO.existsPersonWithEmail(freshOrphan)).isTrue();
+        assertThat(shardedDAO.existsPersonWithEmail(customer.getEmail())).isTrue();
+    }
+}
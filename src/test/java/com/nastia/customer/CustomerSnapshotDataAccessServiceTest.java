@@ -0,0 +1,126 @@
+package com.nastia.customer;
+
+import com.nastia.outbox.CustomerChangeEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the application with {@code customer.data-store=snapshot}: lookups are served by the off-heap snapshot,
+ * which follows this instance's writes and ignores change events older than what it holds.
+ */
+@SpringBootTest(properties = "customer.data-store=snapshot")
+@ActiveProfiles("test")
+class CustomerSnapshotDataAccessServiceTest {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    @Qualifier("snapshot")
+    private CustomerSnapshotDataAccessService snapshotDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void keepsWritesOfARolledBackTransactionOut() {
+        snapshotDAO.existsPersonWithId(0);
+        Customer rolledBack = new Customer("Dee", uniqueEmail(), 33);
+        Customer committed = new Customer("Eve", uniqueEmail(), 34);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            snapshotDAO.insertCustomer(rolledBack);
+            assertThat(snapshotDAO.existsPersonWithEmail(rolledBack.getEmail())).isFalse();
+            status.setRollbackOnly();
+        });
+        transaction.executeWithoutResult(status -> snapshotDAO.insertCustomer(committed));
+
+        assertThat(snapshotDAO.existsPersonWithEmail(rolledBack.getEmail())).isFalse();
+        assertThat(snapshotDAO.existsPersonWithEmail(committed.getEmail())).isTrue();
+    }
+
+    @Test
+    void loadsFromThePrimaryEvenUnderAReadOnlyTransaction() {
+        CustomerDAO delegate = mock(CustomerDAO.class);
+        AtomicBoolean readWrite = new AtomicBoolean();
+        doAnswer(invocation -> {
+            readWrite.set(TransactionSynchronizationManager.isActualTransactionActive()
+                    && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+            invocation.<Consumer<Customer>>getArgument(1).accept(new Customer(1, "Ada", "ada@example.com", 36));
+            return null;
+        }).when(delegate).streamAllCustomers(anyInt(), any());
+        CustomerSnapshotDataAccessService snapshot =
+                new CustomerSnapshotDataAccessService(delegate, 100, new SimpleMeterRegistry(), transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        readOnly.executeWithoutResult(status -> assertThat(snapshot.existsPersonWithId(1)).isTrue());
+
+        assertThat(readWrite).isTrue();
+    }
+
+    @Test
+    void servesWritesOfThisInstance() {
+        Customer customer = customerService.addCustomer(new CustomerRegistrationRequest("Ada", uniqueEmail(), 36));
+        customerService.updateCustomer(customer.getId(), new CustomerUpdateRequest("Ada L.", null, null));
+
+        assertThat(snapshotDAO.selectCustomerById(customer.getId())).map(Customer::getName).contains("Ada L.");
+        assertThat(snapshotDAO.selectCustomerVersion(customer.getId())).contains(1L);
+        assertThat(snapshotDAO.existsPersonWithEmail(customer.getEmail())).isTrue();
+    }
+
+    @Test
+    void ignoresEventsOlderThanItsOwnWrite() {
+        Customer customer = customerService.addCustomer(new CustomerRegistrationRequest("Bob", uniqueEmail(), 41));
+        Customer created = snapshotDAO.selectCustomerById(customer.getId()).orElseThrow();
+        customerService.updateCustomer(customer.getId(), new CustomerUpdateRequest(null, null, 42));
+
+        snapshotDAO.publish(List.of(event(CustomerChangeEvent.Type.CREATED, created)));
+
+        assertThat(snapshotDAO.selectCustomerById(customer.getId()))
+                .hasValueSatisfying(current -> {
+                    assertThat(current.getAge()).isEqualTo(42);
+                    assertThat(current.getVersion()).isEqualTo(1L);
+                });
+    }
+
+    @Test
+    void keepsDeletedCustomersDeleted() {
+        Customer customer = customerService.addCustomer(new CustomerRegistrationRequest("Cy", uniqueEmail(), 29));
+        Customer created = snapshotDAO.selectCustomerById(customer.getId()).orElseThrow();
+        customerService.deleteCustomerById(customer.getId());
+
+        snapshotDAO.publish(List.of(event(CustomerChangeEvent.Type.CREATED, created)));
+
+        assertThat(snapshotDAO.selectCustomerById(customer.getId())).isEmpty();
+        assertThat(snapshotDAO.existsPersonWithEmail(customer.getEmail())).isFalse();
+    }
+
+    private static CustomerChangeEvent event(CustomerChangeEvent.Type type, Customer customer) {
+        return new CustomerChangeEvent(0, 0, type, customer.getId(), customer, Instant.now());
+    }
+
+    private static String uniqueEmail() {
+        return UUID.randomUUID() + "@example.com";
+    }
+}
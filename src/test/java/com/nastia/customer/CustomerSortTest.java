@@ -0,0 +1,42 @@
+package com.nastia.customer;
+
+import com.nastia.exception.RequestValidationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerSortTest {
+
+    private final Customer ada = new Customer(1, "Ada", "ada@example.com", 36);
+    private final Customer bob = new Customer(2, "Bob", "bob@example.com", 29);
+    private final Customer cy = new Customer(3, "Cy", "cy@example.com", 36);
+
+    @Test
+    void comparatorBreaksTiesByIdInTheSortDirection() {
+        assertThat(sorted("age")).containsExactly(bob, ada, cy);
+        assertThat(sorted("age,desc")).containsExactly(cy, ada, bob);
+    }
+
+    @Test
+    void comparatorOrdersByEveryField() {
+        assertThat(sorted(null)).containsExactly(ada, bob, cy);
+        assertThat(sorted("name,desc")).containsExactly(cy, bob, ada);
+        assertThat(sorted("EMAIL, asc")).containsExactly(ada, bob, cy);
+    }
+
+    @Test
+    void parseRejectsUnknownFieldsAndDirections() {
+        assertThatThrownBy(() -> CustomerSort.parse("version")).isInstanceOf(RequestValidationException.class);
+        assertThatThrownBy(() -> CustomerSort.parse("age,up")).isInstanceOf(RequestValidationException.class);
+    }
+
+    private List<Customer> sorted(String sort) {
+        List<Customer> customers = new ArrayList<>(List.of(cy, ada, bob));
+        customers.sort(CustomerSort.parse(sort).comparator());
+        return customers;
+    }
+}
@@ -0,0 +1,126 @@
+package com.nastia.customer;
+
+import com.nastia.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that the write-behind queue commits every write it accepted, also while it is being stopped,
+ * and flushes updates against the version they were accepted with.
+ */
+class CustomerWriteBehindTest {
+
+    private final CustomerDAO customerDAO = mock(CustomerDAO.class);
+    private final CustomerIdAllocator idAllocator = mock(CustomerIdAllocator.class);
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private CustomerWriteBehind writeBehind() {
+        when(idAllocator.nextId()).thenAnswer(invocation -> ids.incrementAndGet());
+        when(customerDAO.existsPersonWithEmail(anyString())).thenReturn(false);
+        return new CustomerWriteBehind(
+                customerDAO,
+                idAllocator,
+                mock(CustomerChangeCounter.class),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new SimpleMeterRegistry(),
+                10_000,
+                50,
+                Duration.ofMillis(5),
+                Duration.ofSeconds(1)
+        );
+    }
+
+    @Test
+    void stopFlushesEveryAcceptedWrite() throws Exception {
+        Set<Integer> flushed = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            customers.forEach(customer -> flushed.add(customer.getId()));
+            return null;
+        }).when(customerDAO).insertCustomers(anyList());
+        CustomerWriteBehind writeBehind = writeBehind();
+        writeBehind.start();
+
+        Set<Integer> accepted = ConcurrentHashMap.newKeySet();
+        AtomicInteger refused = new AtomicInteger();
+        CountDownLatch writing = new CountDownLatch(4);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int w = 0; w < 4; w++) {
+            writers.submit(() -> {
+                writing.countDown();
+                for (int i = 0; i < 5_000; i++) {
+                    try {
+                        accepted.add(writeBehind.insert("Ada", UUID.randomUUID() + "@example.com", 36).getId());
+                    } catch (ServiceUnavailableException e) {
+                        refused.incrementAndGet();
+                    }
+                }
+            });
+        }
+        writing.await();
+        Thread.sleep(20);
+        writeBehind.stop();
+        writers.shutdown();
+        assertThat(writers.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(refused.get()).isPositive();
+        assertThat(flushed).containsExactlyInAnyOrderElementsOf(accepted);
+        assertThat(writeBehind.isRunning()).isFalse();
+    }
+
+    @Test
+    void writesAfterStopAreRefused() {
+        CustomerWriteBehind writeBehind = writeBehind();
+        writeBehind.start();
+        writeBehind.stop();
+
+        assertThatThrownBy(() -> writeBehind.insert("Ada", "ada@example.com", 36))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(writeBehind.isEmailPending("ada@example.com")).isFalse();
+    }
+
+    @Test
+    void updateIsFlushedAgainstTheVersionItWasAcceptedWith() {
+        Customer stored = new Customer(7, "Ada", "ada@example.com", 36);
+        stored.setVersion(4L);
+        when(customerDAO.selectCustomerById(7)).thenReturn(Optional.of(stored));
+        when(customerDAO.updateCustomerFields(eq(7), any(), any())).thenReturn(Optional.of(stored));
+        CustomerWriteBehind writeBehind = writeBehind();
+        writeBehind.start();
+
+        Customer first = writeBehind.update(7, new CustomerUpdateRequest("Ada L.", null, null), 4L);
+        Customer second = writeBehind.update(7, new CustomerUpdateRequest(null, null, 37), 5L);
+        writeBehind.stop();
+
+        assertThat(first.getVersion()).isEqualTo(5L);
+        assertThat(second.getVersion()).isEqualTo(6L);
+        verify(customerDAO, timeout(1000)).updateCustomerFields(eq(7), any(), eq(4L));
+        verify(customerDAO, timeout(1000)).updateCustomerFields(eq(7), any(), eq(5L));
+    }
+}
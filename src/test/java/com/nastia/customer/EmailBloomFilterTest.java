@@ -0,0 +1,71 @@
+package com.nastia.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailBloomFilterTest {
+
+    @Test
+    void concurrentPutsLoseNoEmail() throws Exception {
+        // Small enough that the threads keep setting bits in the same words.
+        EmailBloomFilter filter = new EmailBloomFilter(1_000, 0.01);
+        int threads = 8;
+        int emailsPerThread = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                puts.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < emailsPerThread; i++) {
+                        filter.put(email(thread, i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> put : puts) {
+                put.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < emailsPerThread; i++) {
+                assertThat(filter.mightContain(email(t, i))).as(email(t, i)).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheConfiguredOne() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(email(0, i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(email(1, i))) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    private static String email(int thread, int i) {
+        return "user" + i + "@thread" + thread + ".test";
+    }
+}
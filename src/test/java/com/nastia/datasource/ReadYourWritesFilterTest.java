@@ -0,0 +1,78 @@
+package com.nastia.datasource;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesFilterTest {
+
+    private final ReadYourWritesFilter filter = new ReadYourWritesFilter(
+            new ReplicaProperties(List.of(), Duration.ofSeconds(30), Duration.ofSeconds(1), Duration.ofSeconds(1)));
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withBean(ReplicaProperties.class, () -> new ReplicaProperties(
+                    List.of(), Duration.ofSeconds(30), Duration.ofSeconds(1), Duration.ofSeconds(1)))
+            .withUserConfiguration(ReadYourWritesFilter.class);
+
+    @Test
+    void isNotRegisteredWithoutReplicas() {
+        contextRunner.run(context -> assertThat(context).doesNotHaveBean(ReadYourWritesFilter.class));
+    }
+
+    @Test
+    void isRegisteredWithReplicas() {
+        contextRunner.withPropertyValues("customer.datasource.replicas[0].url=jdbc:h2:mem:replica")
+                .run(context -> assertThat(context).hasSingleBean(ReadYourWritesFilter.class));
+    }
+
+    @Test
+    void writeStampsTheClient() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("PUT", "/api/v1/customers/1"), response, (req, res) -> { });
+
+        Cookie cookie = response.getCookie(ReadYourWritesFilter.LAST_WRITE_COOKIE);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.getMaxAge()).isEqualTo(32);
+    }
+
+    @Test
+    void recentWriteKeepsReadsOffLaggingReplicas() throws Exception {
+        long sinceWrite = read(Long.toString(System.currentTimeMillis() - 2_000));
+
+        assertThat(sinceWrite).isBetween(2_000L, 10_000L);
+    }
+
+    @Test
+    void futureTimeIsCappedAtThePresent() throws Exception {
+        long sinceWrite = read(Long.toString(System.currentTimeMillis() + Duration.ofDays(365).toMillis()));
+
+        assertThat(sinceWrite).isBetween(0L, 10_000L);
+    }
+
+    @Test
+    void timeOlderThanAnyReplicaLagIsIgnored() throws Exception {
+        assertThat(read(Long.toString(System.currentTimeMillis() - 60_000))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void malformedTimeIsIgnored() throws Exception {
+        assertThat(read("soon")).isEqualTo(Long.MAX_VALUE);
+    }
+
+    private long read(String lastWrite) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/customers/1");
+        request.setCookies(new Cookie(ReadYourWritesFilter.LAST_WRITE_COOKIE, lastWrite));
+        AtomicLong sinceWrite = new AtomicLong();
+        filter.doFilter(request, new MockHttpServletResponse(),
+                (req, res) -> sinceWrite.set(ReadYourWrites.millisSinceLastWrite()));
+        return sinceWrite.get();
+    }
+}
@@ -0,0 +1,112 @@
+package com.nastia.datasource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the routing of transactions between a primary and a replica, two H2 databases telling themselves apart
+ * by a marker row, wired as in {@link DataSourceConfig}.
+ */
+class ReplicaRoutingTest {
+
+    private ReplicaDataSource replicas;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        String primaryUrl = "jdbc:h2:mem:primary-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        String replicaUrl = "jdbc:h2:mem:replica-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        JdbcDataSource primary = new JdbcDataSource();
+        primary.setURL(primaryUrl);
+        JdbcDataSource replica = new JdbcDataSource();
+        replica.setURL(replicaUrl);
+        replica.setUser("sa");
+        new JdbcTemplate(primary).execute("CREATE TABLE marker (name VARCHAR(16)); INSERT INTO marker VALUES ('primary')");
+        new JdbcTemplate(replica).execute("CREATE TABLE marker (name VARCHAR(16)); INSERT INTO marker VALUES ('replica')");
+
+        replicas = new ReplicaDataSource(primary, new ReplicaProperties(
+                List.of(new ReplicaProperties.Replica(replicaUrl, "sa", "", null)),
+                Duration.ofSeconds(30),
+                Duration.ofSeconds(1),
+                Duration.ofSeconds(1)
+        ));
+        replicas.checkReplicas();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(replicas);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWrites.clear();
+        replicas.close();
+    }
+
+    @Test
+    void readOnlyTransactionReadsFromReplica() {
+        assertThat(read(readOnly)).isEqualTo("replica");
+        assertThat(read(readWrite)).isEqualTo("primary");
+    }
+
+    @Test
+    void readOnlyReadJoiningReadWriteTransactionStaysOnPrimary() {
+        assertThat(readWrite.<String>execute(status -> read(readOnly))).isEqualTo("primary");
+    }
+
+    @Test
+    void clientsOwnRecentWritePinsReadsToPrimary() {
+        ReadYourWrites.set(System.currentTimeMillis());
+        assertThat(read(readOnly)).isEqualTo("primary");
+
+        ReadYourWrites.set(System.currentTimeMillis() - 5_000);
+        assertThat(read(readOnly)).isEqualTo("replica");
+    }
+
+    @Test
+    void propagatedTaskKeepsClientPinnedToPrimary() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ReadYourWrites.set(System.currentTimeMillis());
+            CompletableFuture<String> pinned = new CompletableFuture<>();
+            executor.execute(ReadYourWrites.propagate(() -> pinned.complete(read(readOnly))));
+            ReadYourWrites.clear();
+            CompletableFuture<String> unpinned = new CompletableFuture<>();
+            executor.execute(() -> unpinned.complete(read(readOnly)));
+
+            assertThat(pinned.get()).isEqualTo("primary");
+            assertThat(unpinned.get()).isEqualTo("replica");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String read(TransactionTemplate transaction) {
+        return transaction.execute(status -> marker());
+    }
+
+    private String marker() {
+        return jdbcTemplate.queryForObject("SELECT name FROM marker", String.class);
+    }
+}
@@ -0,0 +1,106 @@
+package com.nastia.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.servlet.error.DefaultErrorAttributes;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyFilterTest {
+
+    private final IdempotencyProperties properties = new IdempotencyProperties("Idempotency-Key", "X-API-Key",
+            IdempotencyProperties.Store.MEMORY, Duration.ofHours(1), 1000, Duration.ZERO, Duration.ofMinutes(1), 8192, 64);
+    private final IdempotencyFilter filter = new IdempotencyFilter(new InMemoryIdempotencyStore(properties), properties,
+            new DefaultErrorAttributes(), new SimpleMeterRegistry());
+    private final AtomicInteger runs = new AtomicInteger();
+    private final FilterChain registration = (request, response) -> {
+        runs.incrementAndGet();
+        request.getInputStream().readAllBytes();
+        response.getWriter().write("{\"id\":" + runs.get() + "}");
+    };
+
+    @Test
+    void retryOfTheSameClientIsReplayed() throws Exception {
+        MockHttpServletResponse first = post("10.0.0.1", "client-a", "{}", registration);
+        MockHttpServletResponse retry = post("10.0.0.2", "client-a", "{}", registration);
+
+        assertThat(runs).hasValue(1);
+        assertThat(retry.getHeader("Idempotent-Replayed")).isEqualTo("true");
+        assertThat(retry.getContentAsString()).isEqualTo(first.getContentAsString());
+    }
+
+    @Test
+    void sameKeyOfAnotherClientRunsOnItsOwn() throws Exception {
+        post("10.0.0.1", "client-a", "{}", registration);
+        MockHttpServletResponse other = post("10.0.0.1", "client-b", "{}", registration);
+        MockHttpServletResponse anonymous = post("10.0.0.3", null, "{\"other\":true}", registration);
+
+        assertThat(runs).hasValue(3);
+        assertThat(other.getHeader("Idempotent-Replayed")).isNull();
+        assertThat(anonymous.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void oversizedBodyIsRefusedBeforeItRuns() throws Exception {
+        MockHttpServletResponse response = post("10.0.0.1", "client-a", "x".repeat(65), registration);
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(runs).hasValue(0);
+    }
+
+    @Test
+    void bufferedBodyCanBeReadThroughAReadListener() throws Exception {
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        AtomicInteger allRead = new AtomicInteger();
+        FilterChain nonBlocking = (request, response) -> {
+            ServletInputStream input = request.getInputStream();
+            input.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    while (input.isReady() && !input.isFinished()) {
+                        read.write(input.read());
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    allRead.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+            });
+        };
+
+        post("10.0.0.1", "client-a", "{\"name\":\"Ada\"}", nonBlocking);
+
+        assertThat(read.toString(StandardCharsets.UTF_8)).isEqualTo("{\"name\":\"Ada\"}");
+        assertThat(allRead).hasValue(1);
+    }
+
+    private MockHttpServletResponse post(String remoteAddr, String client, String body, FilterChain chain)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/customers");
+        request.setRemoteAddr(remoteAddr);
+        request.addHeader("Idempotency-Key", "key-1");
+        if (client != null) {
+            request.addHeader("X-API-Key", client);
+        }
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,70 @@
+package com.nastia.idempotency;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcIdempotencyStoreTest {
+
+    private static final Duration CLAIM_TIMEOUT = Duration.ofMillis(200);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdempotencyProperties properties = new IdempotencyProperties("Idempotency-Key", "X-API-Key",
+            IdempotencyProperties.Store.JDBC, Duration.ofHours(1), 1000, Duration.ZERO, CLAIM_TIMEOUT, 8192, 65536);
+
+    JdbcIdempotencyStoreTest() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        dataSource.setUser("sa");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V8__create_customer_idempotency_key.sql"))
+                .execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void renewedClaimOfARunningRequestIsNotTakenOver() throws InterruptedException {
+        JdbcIdempotencyStore running = new JdbcIdempotencyStore(jdbcTemplate, properties);
+        JdbcIdempotencyStore other = new JdbcIdempotencyStore(jdbcTemplate, properties);
+        assertThat(running.claim("key", "fingerprint", Duration.ZERO).outcome())
+                .isEqualTo(IdempotencyStore.Outcome.ACQUIRED);
+
+        Thread.sleep(CLAIM_TIMEOUT.toMillis() * 2);
+        running.renewClaims();
+
+        assertThat(other.claim("key", "fingerprint", Duration.ZERO).outcome())
+                .isEqualTo(IdempotencyStore.Outcome.IN_PROGRESS);
+    }
+
+    @Test
+    void claimOfAnInstanceThatStoppedRenewingIsTakenOver() throws InterruptedException {
+        JdbcIdempotencyStore dead = new JdbcIdempotencyStore(jdbcTemplate, properties);
+        JdbcIdempotencyStore other = new JdbcIdempotencyStore(jdbcTemplate, properties);
+        dead.claim("key", "fingerprint", Duration.ZERO);
+
+        Thread.sleep(CLAIM_TIMEOUT.toMillis() * 2);
+        other.renewClaims();
+
+        assertThat(other.claim("key", "fingerprint", Duration.ZERO).outcome())
+                .isEqualTo(IdempotencyStore.Outcome.ACQUIRED);
+    }
+
+    @Test
+    void completedClaimIsNoLongerRenewed() {
+        JdbcIdempotencyStore store = new JdbcIdempotencyStore(jdbcTemplate, properties);
+        IdempotencyStore.Claim claim = store.claim("key", "fingerprint", Duration.ZERO);
+        store.complete("key", claim, new IdempotentResponse(201, "application/json", null, null, null, new byte[0]));
+        Object claimedAt = jdbcTemplate.queryForObject("SELECT claimed_at FROM customer_idempotency_key", Object.class);
+
+        store.renewClaims();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT claimed_at FROM customer_idempotency_key", Object.class))
+                .isEqualTo(claimedAt);
+    }
+}
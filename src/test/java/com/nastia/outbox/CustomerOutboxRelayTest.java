@@ -0,0 +1,116 @@
+package com.nastia.outbox;
+
+import com.nastia.customer.Customer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CustomerOutboxRelayTest {
+
+    private static final int BATCH_SIZE = 2;
+
+    private final CustomerOutbox outbox = mock(CustomerOutbox.class);
+    private final List<CustomerChangeEvent> published = new ArrayList<>();
+
+    @BeforeEach
+    void stubOutbox() {
+        when(outbox.lastOffset()).thenReturn(0L);
+        when(outbox.claim(anyInt())).thenReturn(List.of());
+        when(outbox.selectAfter(anyLong(), anyInt())).thenAnswer(invocation -> {
+            long offset = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return published.stream().filter(event -> event.offset() > offset).limit(limit).toList();
+        });
+    }
+
+    @Test
+    void everySinkReceivesEveryPublishedEventInOrder() {
+        RecordingSink first = new RecordingSink(0);
+        RecordingSink second = new RecordingSink(0);
+        CustomerOutboxRelay relay = relay(first, second);
+
+        relay.relay();
+        publish(1, 2, 3);
+        relay.relay();
+
+        assertThat(first.offsets).containsExactly(1L, 2L, 3L);
+        assertThat(second.offsets).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void failedSinkIsRetriedFromItsOffsetWithoutHoldingUpTheOthers() {
+        RecordingSink failing = new RecordingSink(1);
+        RecordingSink healthy = new RecordingSink(0);
+        CustomerOutboxRelay relay = relay(failing, healthy);
+        relay.relay();
+
+        publish(1, 2, 3);
+        relay.relay();
+        assertThat(failing.offsets).isEmpty();
+        assertThat(healthy.offsets).containsExactly(1L, 2L, 3L);
+
+        relay.relay();
+        assertThat(failing.offsets).containsExactly(1L, 2L, 3L);
+        assertThat(healthy.offsets).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void sinksStartAfterTheEventsPublishedBeforeTheFirstRun() {
+        publish(1, 2);
+        when(outbox.lastOffset()).thenReturn(2L);
+        RecordingSink sink = new RecordingSink(0);
+        CustomerOutboxRelay relay = relay(sink);
+
+        relay.relay();
+        publish(3);
+        relay.relay();
+
+        assertThat(sink.offsets).containsExactly(3L);
+    }
+
+    private CustomerOutboxRelay relay(CustomerEventSink... sinks) {
+        return new CustomerOutboxRelay(outbox, List.of(sinks),
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), BATCH_SIZE, Duration.ofDays(1));
+    }
+
+    private void publish(long... offsets) {
+        for (long offset : offsets) {
+            published.add(new CustomerChangeEvent(offset, offset, CustomerChangeEvent.Type.CREATED, (int) offset,
+                    new Customer((int) offset, "Ada", offset + "@relay.test", 36), Instant.now()));
+        }
+    }
+
+    /**
+     * Sink recording the offsets it received, failing its first calls.
+     */
+    private static final class RecordingSink implements CustomerEventSink {
+
+        private final List<Long> offsets = new ArrayList<>();
+        private int failures;
+
+        private RecordingSink(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void publish(List<CustomerChangeEvent> events) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("sink unavailable");
+            }
+            events.forEach(event -> offsets.add(event.offset()));
+        }
+    }
+}